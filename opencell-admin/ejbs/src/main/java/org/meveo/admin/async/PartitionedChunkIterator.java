@@ -0,0 +1,228 @@
+package org.meveo.admin.async;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Splits data of an iterator into chunks that can be processed independently. Items with the same partition key (e.g. subscription or billing account id) are kept in the same chunk, within a window of items read
+ * ahead, and in the order they were read.<br/>
+ * <br/>
+ * Data is read from an underlying iterator as chunks are requested, so the whole data set is not held in memory. Window of items read ahead is a multiple of a chunk size, thus items of the same partition key that
+ * are further apart than that in the underlying iterator might end up in different chunks.<br/>
+ * <br/>
+ * Not thread safe - chunks are expected to be read by a single thread and processed by other threads.
+ *
+ * @param <T> Element class
+ */
+public class PartitionedChunkIterator<T> {
+
+    /**
+     * A number of chunks to read ahead when grouping items by partition key
+     */
+    private static final int CHUNKS_IN_WINDOW = 8;
+
+    /**
+     * Data iterator. Its next() method returns null when there are no more items, same as SynchronizedIterator does.
+     */
+    private Iterator<T> iterator;
+
+    /**
+     * A function to determine a partition key of an item. Optional.
+     */
+    private Function<T, Object> partitionKeyFunction;
+
+    /**
+     * A minimum number of items in a chunk, unless it is the last one
+     */
+    private int chunkSize;
+
+    /**
+     * Chunks formed from a current window of items
+     */
+    private Deque<Chunk<T>> chunks = new ArrayDeque<>();
+
+    private boolean hasMore = true;
+
+    private int chunkIndex;
+
+    /**
+     * Constructor
+     *
+     * @param iterator Data iterator. Its next() method shall return null when there are no more items.
+     * @param partitionKeyFunction A function to determine a partition key of an item. If null or function returns null, items are chunked in the order they are read.
+     * @param chunkSize A minimum number of items in a chunk, unless it is the last one. Items of a single partition key might exceed it.
+     */
+    public PartitionedChunkIterator(Iterator<T> iterator, Function<T, Object> partitionKeyFunction, int chunkSize) {
+        this.iterator = iterator;
+        this.partitionKeyFunction = partitionKeyFunction;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+
+    /**
+     * Get a next chunk of data
+     *
+     * @return A chunk of data or null if no more data is available
+     */
+    public Chunk<T> nextChunk() {
+        if (chunks.isEmpty() && hasMore) {
+            readWindow();
+        }
+        return chunks.poll();
+    }
+
+    /**
+     * Read a window of items, group them by partition key and pack groups into chunks
+     */
+    private void readWindow() {
+
+        Map<Object, List<T>> itemsByKey = new LinkedHashMap<>();
+        List<T> itemsWithoutKey = new ArrayList<>();
+
+        int windowSize = chunkSize * CHUNKS_IN_WINDOW;
+        for (int i = 0; i < windowSize; i++) {
+            T item = iterator.next();
+            if (item == null) {
+                hasMore = false;
+                break;
+            }
+            Object key = partitionKeyFunction != null ? partitionKeyFunction.apply(item) : null;
+            if (key == null) {
+                itemsWithoutKey.add(item);
+            } else {
+                itemsByKey.computeIfAbsent(key, k -> new ArrayList<>()).add(item);
+            }
+        }
+
+        Chunk<T> chunk = null;
+        for (List<T> keyItems : itemsByKey.values()) {
+            if (chunk == null) {
+                chunk = new Chunk<>(chunkIndex++);
+                chunks.add(chunk);
+            }
+            chunk.items.addAll(keyItems);
+            chunk.nbKeys++;
+            if (chunk.items.size() >= chunkSize) {
+                chunk = null;
+            }
+        }
+        for (T item : itemsWithoutKey) {
+            if (chunk == null) {
+                chunk = new Chunk<>(chunkIndex++);
+                chunks.add(chunk);
+            }
+            chunk.items.add(item);
+            chunk.nbKeys++;
+            if (chunk.items.size() >= chunkSize) {
+                chunk = null;
+            }
+        }
+    }
+
+    /**
+     * A chunk of data with its processing progress
+     *
+     * @param <T> Element class
+     */
+    public static class Chunk<T> {
+
+        /**
+         * Sequential chunk number, starting with 0
+         */
+        private int index;
+
+        private List<T> items = new ArrayList<>();
+
+        private int nbItems;
+
+        /**
+         * A number of distinct partition keys in a chunk. Items without a key count as one key each.
+         */
+        private int nbKeys;
+
+        /**
+         * A number of items processed so far
+         */
+        private volatile int nbProcessed;
+
+        private long startTime;
+
+        private long endTime;
+
+        private Chunk(int index) {
+            this.index = index;
+        }
+
+        /**
+         * @return Sequential chunk number, starting with 0
+         */
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * @return Items of a chunk. Null once chunk processing is finished.
+         */
+        public List<T> getItems() {
+            return items;
+        }
+
+        /**
+         * @return A number of items in a chunk
+         */
+        public int getNbItems() {
+            return items != null ? items.size() : nbItems;
+        }
+
+        /**
+         * @return A number of distinct partition keys in a chunk
+         */
+        public int getNbKeys() {
+            return nbKeys;
+        }
+
+        /**
+         * @return A number of items processed so far
+         */
+        public int getNbProcessed() {
+            return nbProcessed;
+        }
+
+        /**
+         * Mark chunk processing as started
+         */
+        public void markStarted() {
+            startTime = System.currentTimeMillis();
+        }
+
+        /**
+         * Register processed items
+         *
+         * @param nbItems A number of items processed
+         */
+        public void addProcessed(int nbItems) {
+            nbProcessed = nbProcessed + nbItems;
+        }
+
+        /**
+         * Mark chunk processing as finished. Items are released, so they can be garbage collected while other chunks are still being processed.
+         */
+        public void markFinished() {
+            endTime = System.currentTimeMillis();
+            nbItems = items.size();
+            items = null;
+        }
+
+        /**
+         * @return Chunk processing duration in milliseconds
+         */
+        public long getDuration() {
+            return endTime - startTime;
+        }
+    }
+}
@@ -1,7 +1,10 @@
 package org.meveo.admin.job;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.meveo.admin.async.SynchronizedIterator;
@@ -47,9 +50,20 @@ public class ArticleMappingJobBean extends IteratorBasedScopedJobBean<Accounting
 
     private void assignAccountingArticles(List<AccountingArticleAssignmentItem> items, JobExecutionResultImpl jobExecutionResult) {
 
-        for (AccountingArticleAssignmentItem item : items) {
-            assignArticle(item);
+        List<AccountingArticle> articles = accountingArticleService.getAccountingArticles(items);
+
+        // Rated transactions of all charge instances resolved to the same article are updated at once
+        Map<AccountingArticle, List<Long>> chargeInstanceIdsByArticle = new HashMap<>();
+        for (int i = 0; i < items.size(); i++) {
+            AccountingArticleAssignmentItem item = items.get(i);
+            if (item.getChargeInstancesIDs() == null) {
+                ratedTransactionService.updateAccountingArticlesByChargeInstanceIdsOrOtherCriterias(null, item.getServiceInstanceId(), item.getOfferTemplateId(), articles.get(i));
+            } else {
+                chargeInstanceIdsByArticle.computeIfAbsent(articles.get(i), k -> new ArrayList<>()).addAll(item.getChargeInstancesIDs());
+            }
         }
+
+        chargeInstanceIdsByArticle.forEach((article, chargeInstanceIds) -> ratedTransactionService.updateAccountingArticlesByChargeInstanceIdsOrOtherCriterias(chargeInstanceIds, null, null, article));
     }
 
     private void assignAccountingArticle(AccountingArticleAssignmentItem item, JobExecutionResultImpl jobExecutionResult) {
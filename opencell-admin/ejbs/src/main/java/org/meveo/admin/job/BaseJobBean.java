@@ -38,6 +38,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.annotation.Resource;
+import jakarta.enterprise.concurrent.ContextService;
 import jakarta.enterprise.concurrent.ManagedExecutorService;
 import jakarta.enterprise.concurrent.ManagedThreadFactory;
 import jakarta.inject.Inject;
@@ -75,6 +76,12 @@ public abstract class BaseJobBean implements Serializable {
     @Resource(lookup = "java:jboss/ee/concurrency/factory/job_thread_factory")
     protected ManagedThreadFactory executorFactory;
 
+    /**
+     * Captures container context of a job thread to apply it to tasks run on threads not created by a container, e.g. virtual threads
+     */
+    @Resource(lookup = "java:comp/DefaultContextService")
+    protected ContextService contextService;
+
     @Inject
     protected CurrentUserProvider currentUserProvider;
 
@@ -0,0 +1,64 @@
+package org.meveo.admin.job;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.meveo.admin.exception.BusinessException;
+import org.meveo.admin.job.utils.CustomFieldTemplateUtils;
+import org.meveo.model.crm.CustomFieldTemplate;
+import org.meveo.model.crm.custom.CustomFieldTypeEnum;
+import org.meveo.model.jobs.JobCategoryEnum;
+import org.meveo.model.jobs.JobExecutionResultImpl;
+import org.meveo.model.jobs.JobInstance;
+import org.meveo.model.jobs.MeveoJobCategoryEnum;
+import org.meveo.service.job.Job;
+
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.inject.Inject;
+
+/**
+ * Job definition to rebuild or verify customer account balance ledger amounts against account operations
+ */
+@Stateless
+public class CustomerAccountBalanceLedgerJob extends Job {
+
+    private static final String APPLIES_TO_NAME = "JobInstance_CustomerAccountBalanceLedgerJob";
+
+    /**
+     * Job instance custom field to only report customer accounts with a ledger out of sync, without repairing it
+     */
+    public static final String CF_VERIFY_ONLY = "verifyOnly";
+
+    @Inject
+    private CustomerAccountBalanceLedgerJobBean customerAccountBalanceLedgerJobBean;
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NEVER)
+    protected JobExecutionResultImpl execute(JobExecutionResultImpl result, JobInstance jobInstance) throws BusinessException {
+        customerAccountBalanceLedgerJobBean.execute(result, jobInstance);
+        return result;
+    }
+
+    @Override
+    public JobCategoryEnum getJobCategory() {
+        return MeveoJobCategoryEnum.ACCOUNT_RECEIVABLES;
+    }
+
+    @Override
+    public Map<String, CustomFieldTemplate> getCustomFields() {
+        Map<String, CustomFieldTemplate> result = new HashMap<>();
+
+        result.put(CF_NB_RUNS, CustomFieldTemplateUtils.buildCF(CF_NB_RUNS, resourceMessages.getString("jobExecution.nbRuns"), CustomFieldTypeEnum.LONG,
+                "tab:Configuration:0;fieldGroup:Configuration:0;field:0", "-1", APPLIES_TO_NAME));
+
+        result.put(Job.CF_WAITING_MILLIS, CustomFieldTemplateUtils.buildCF(Job.CF_WAITING_MILLIS, resourceMessages.getString("jobExecution.waitingMillis"), CustomFieldTypeEnum.LONG,
+                "tab:Configuration:0;fieldGroup:Configuration:0;field:1", "0", APPLIES_TO_NAME));
+
+        result.put(CF_VERIFY_ONLY, CustomFieldTemplateUtils.buildCF(CF_VERIFY_ONLY, resourceMessages.getString("jobExecution.balanceLedger.verifyOnly"), CustomFieldTypeEnum.BOOLEAN,
+                "tab:Configuration:0;fieldGroup:Configuration:0;field:2", "false", false, APPLIES_TO_NAME));
+
+        return result;
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+package org.meveo.admin.job;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+
+import org.meveo.admin.async.SynchronizedIterator;
+import org.meveo.model.jobs.JobExecutionResultImpl;
+import org.meveo.model.jobs.JobInstance;
+import org.meveo.service.payments.impl.CustomerAccountBalanceLedgerService;
+
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.inject.Inject;
+
+/**
+ * Job implementation to reconcile customer account balance ledger with account operations, one customer account at a time. Customer accounts with a ledger out of sync are
+ * reported as warnings and, unless job is run in a verify only mode, their ledger amounts are replaced with the ones aggregated from account operations.
+ */
+@Stateless
+public class CustomerAccountBalanceLedgerJobBean extends IteratorBasedJobBean<Long> {
+
+    private static final long serialVersionUID = -1858461264539263418L;
+
+    @Inject
+    private CustomerAccountBalanceLedgerService customerAccountBalanceLedgerService;
+
+    private boolean verifyOnly;
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NEVER)
+    public void execute(JobExecutionResultImpl jobExecutionResult, JobInstance jobInstance) {
+        super.execute(jobExecutionResult, jobInstance, this::initJobAndGetDataToProcess, this::reconcile, null, null, null);
+    }
+
+    /**
+     * Initialize job settings and retrieve data to process
+     *
+     * @param jobExecutionResult Job execution result
+     * @return An iterator over a list of customer account Ids to reconcile
+     */
+    private Optional<Iterator<Long>> initJobAndGetDataToProcess(JobExecutionResultImpl jobExecutionResult) {
+
+        if (!customerAccountBalanceLedgerService.isEnabled()) {
+            jobExecutionResult.registerWarning("Customer account balance ledger is not enabled. Set customerAccount.balanceLedger.enabled=true to use it.");
+            return Optional.empty();
+        }
+
+        verifyOnly = (boolean) getParamOrCFValue(jobExecutionResult.getJobInstance(), CustomerAccountBalanceLedgerJob.CF_VERIFY_ONLY, false);
+
+        List<Long> ids = customerAccountBalanceLedgerService.getCustomerAccountIds();
+
+        return Optional.of(new SynchronizedIterator<Long>(ids));
+    }
+
+    /**
+     * Reconcile ledger amounts of a customer account
+     *
+     * @param customerAccountId Customer account id
+     * @param jobExecutionResult Job execution result
+     */
+    private void reconcile(Long customerAccountId, JobExecutionResultImpl jobExecutionResult) {
+
+        if (!customerAccountBalanceLedgerService.reconcile(customerAccountId, !verifyOnly)) {
+            jobExecutionResult.registerWarning(customerAccountId, verifyOnly ? "Balance ledger is out of sync with account operations" : "Balance ledger was out of sync and was rebuilt");
+        }
+    }
+}
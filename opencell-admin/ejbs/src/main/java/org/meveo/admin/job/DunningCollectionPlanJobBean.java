@@ -1,7 +1,6 @@
 package org.meveo.admin.job;
 
 import java.math.BigDecimal;
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -11,25 +10,25 @@ import java.util.stream.Collectors;
 
 import org.meveo.admin.job.utils.DunningUtils;
 import org.meveo.admin.util.ResourceBundle;
-import org.meveo.model.billing.Invoice;
+import org.meveo.commons.utils.ParamBean;
 import org.meveo.model.dunning.DunningModeEnum;
 import org.meveo.model.dunning.DunningPolicy;
 import org.meveo.model.dunning.DunningSettings;
 import org.meveo.model.jobs.JobExecutionResultImpl;
 import org.meveo.model.jobs.JobInstance;
-import org.meveo.model.payments.AccountOperation;
 import org.meveo.model.payments.CustomerAccount;
 import org.meveo.model.payments.CustomerBalance;
 import org.meveo.model.payments.OCCTemplate;
-import org.meveo.model.payments.OperationCategoryEnum;
 import org.meveo.service.base.ValueExpressionWrapper;
-import org.meveo.service.payments.impl.AccountOperationService;
 import org.meveo.service.payments.impl.CustomerAccountService;
+import org.meveo.service.payments.impl.DunningPolicyEvaluation;
 import org.meveo.service.payments.impl.DunningPolicyService;
 import org.meveo.service.payments.impl.DunningSettingsService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.collect.Lists;
+
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
 import jakarta.ejb.TransactionAttributeType;
@@ -45,9 +44,6 @@ public class DunningCollectionPlanJobBean extends BaseJobBean {
     @Inject
     private DunningPolicyService dunningPolicyService;
 
-    @Inject
-    private AccountOperationService accountOperationService;
-
     @Inject
     private DunningSettingsService dunningSettingsService;
 
@@ -71,7 +67,7 @@ public class DunningCollectionPlanJobBean extends BaseJobBean {
         try {
             if (!policies.isEmpty()) {
                 if (DunningModeEnum.INVOICE_LEVEL.equals(dunningSettings.getDunningMode())) {
-                    dunningCollectionPlanNumber = processCollectionPlanForInvoiceLevel(policies);
+                    dunningCollectionPlanNumber = processCollectionPlanForInvoiceLevel(policies, jobExecutionResult);
                 } else if (DunningModeEnum.CUSTOMER_LEVEL.equals(dunningSettings.getDunningMode()) && dunningSettings.getCustomerBalance() != null) {
                     dunningCollectionPlanNumber = processCollectionPlanForCustomerLevel(dunningSettings, policies);
                 }
@@ -90,37 +86,42 @@ public class DunningCollectionPlanJobBean extends BaseJobBean {
     }
 
     /**
-     * Process collection plan for invoice level
+     * Process collection plan for invoice level. Policies are evaluated over unpaid invoices in a single pass and collection plans are then created in batches, each in its own
+     * transaction, with a batch size set by "dunning.collectionPlan.batchSize" setting (defaults to 100).
      * @param policies List of {@link DunningPolicy}
+     * @param jobExecutionResult Job execution result to report a number of invoices matched by each policy and policy rule
      * @return Number of collection plan
      */
-    private int processCollectionPlanForInvoiceLevel(List<DunningPolicy> policies) {
+    private int processCollectionPlanForInvoiceLevel(List<DunningPolicy> policies, JobExecutionResultImpl jobExecutionResult) {
         // Sort policies by isDefaultPolicy and policyPriority
         List<DunningPolicy> sortedPolicies = sortDunningPolicies(policies);
-        // Initialize a list of eligible invoices
-        Map<DunningPolicy, List<Invoice>> eligibleInvoicesByPolicy = new HashMap<>();
+        // Assign eligible invoices to policies
+        DunningPolicyEvaluation evaluation = dunningPolicyService.evaluateInvoiceLevelPolicies(sortedPolicies);
 
-        for (DunningPolicy policy : sortedPolicies) {
-            // Get the list of eligible invoices by policy
-            List<Invoice> eligibleInvoice = dunningPolicyService.findEligibleInvoicesForPolicy(policy);
-
-            if (eligibleInvoice != null && !eligibleInvoice.isEmpty()) {
-                List<Invoice> invoicesWithDebitTransaction = new ArrayList<>();
-                eligibleInvoice.forEach(invoice -> {
-                    List<AccountOperation> sdAOs = accountOperationService.listByInvoice(invoice);
-                    boolean isDebitTransaction = sdAOs.stream().anyMatch(ao -> ao.getTransactionCategory().equals(OperationCategoryEnum.DEBIT));
-                    if (isDebitTransaction && eligibleInvoicesByPolicy.values().stream().noneMatch(invoices -> invoices.contains(invoice))) {
-                            invoicesWithDebitTransaction.add(invoice);
-                    }
-                });
+        int batchSize = ParamBean.getInstance().getPropertyAsInteger("dunning.collectionPlan.batchSize", 100);
+        int dunningCollectionPlanNumber = 0;
 
-                if (!invoicesWithDebitTransaction.isEmpty()) {
-                    eligibleInvoicesByPolicy.put(policy, invoicesWithDebitTransaction);
+        for (DunningPolicyEvaluation.CompiledPolicy policy : evaluation.getPolicies()) {
+            List<Long> invoiceIds = evaluation.getEligibleInvoiceIds(policy.getPolicyId());
+            int policyCollectionPlanNumber = 0;
+            for (List<Long> batch : Lists.partition(invoiceIds, batchSize)) {
+                try {
+                    policyCollectionPlanNumber += dunningPolicyService.createCollectionPlans(policy.getPolicyId(), batch);
+                } catch (Exception exception) {
+                    log.error("Failed to create collection plans of policy {} for invoices {}", policy.getPolicyName(), batch, exception);
+                    jobExecutionResult.registerError(exception.getMessage(), batch.size());
                 }
             }
+            dunningCollectionPlanNumber += policyCollectionPlanNumber;
+
+            jobExecutionResult.addReport("Policy " + policy.getPolicyName() + ": " + evaluation.getInvoicesMatchedByPolicy(policy.getPolicyId()) + " invoices matched, "
+                    + invoiceIds.size() + " eligible, " + policyCollectionPlanNumber + " collection plans created");
+            for (Long ruleId : policy.getRuleIds()) {
+                jobExecutionResult.addReport("Policy " + policy.getPolicyName() + " rule " + ruleId + ": " + evaluation.getInvoicesMatchedByRule(ruleId) + " invoices matched");
+            }
         }
 
-        return dunningPolicyService.processEligibleInvoice(eligibleInvoicesByPolicy);
+        return dunningCollectionPlanNumber;
     }
 
     /**
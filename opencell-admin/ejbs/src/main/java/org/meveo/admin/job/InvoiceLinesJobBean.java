@@ -40,6 +40,10 @@ import org.meveo.model.jobs.JobExecutionResultStatusEnum;
 import org.meveo.model.jobs.JobInstance;
 import org.meveo.model.jobs.JobLauncherEnum;
 import org.meveo.service.billing.impl.BasicStatistics;
+import org.meveo.service.billing.impl.BillingRunCheckpoint;
+import org.meveo.service.billing.impl.BillingRunCheckpoint.BillingRunStepEnum;
+import org.meveo.service.billing.impl.BillingRunCheckpointService;
+import org.meveo.service.billing.impl.BillingRunCheckpointTracker;
 import org.meveo.service.billing.impl.BillingRunExtensionService;
 import org.meveo.service.billing.impl.BillingRunService;
 import org.meveo.service.billing.impl.InvoiceLineAggregationService;
@@ -86,6 +90,9 @@ public class InvoiceLinesJobBean extends IteratorBasedScopedJobBean<List<Map<Str
     @Inject
     private JobInstanceService jobInstanceService;
 
+    @Inject
+    private BillingRunCheckpointService billingRunCheckpointService;
+
     private AggregationConfiguration aggregationConfiguration;
     private boolean incrementalInvoiceLines;
 
@@ -97,6 +104,11 @@ public class InvoiceLinesJobBean extends IteratorBasedScopedJobBean<List<Map<Str
     private Long maxId = null;
     private Long nrOfAccounts = null;
 
+    /**
+     * Tracks progress of a current billing run per billing account partition. Null if progress is not recorded, e.g. in case of incremental invoice lines.
+     */
+    private BillingRunCheckpointTracker checkpointTracker;
+
     /**
      * Job process one billing run at a time. A current billing run being processed
      */
@@ -134,6 +146,12 @@ public class InvoiceLinesJobBean extends IteratorBasedScopedJobBean<List<Map<Str
         BillingRun br = currentBillingRun != null ? currentBillingRun : billingRunService.findById(brId);
 
         InvoiceLineCreationStatistics ilBasicStatistics = invoiceLinesService.createInvoiceLines(aggregationInfo, aggregationConfiguration, jobExecutionResult, br, null);
+
+        BillingRunCheckpointTracker tracker = checkpointTracker;
+        if (tracker != null) {
+            List<BillingRunCheckpoint> completed = tracker.itemsProcessed(aggregationInfo.stream().map(item -> ((Number) item.get("billing_account__id")).longValue()).collect(toList()));
+            billingRunCheckpointService.markCompleted(brId, BillingRunStepEnum.INVOICE_LINES, completed);
+        }
 		if (currentBillingRun.isPreReportAutoOnInvoiceLinesJob()) {
 			billingRunsToReport.add(currentBillingRun);
 		}
@@ -218,6 +236,11 @@ public class InvoiceLinesJobBean extends IteratorBasedScopedJobBean<List<Map<Str
             }
             // Otherwise, update directly status of billing run as INVOICE_LINES_CREATED
             else {
+                if (checkpointTracker != null) {
+                    nrOfAccounts = (long) checkpointTracker.getNbAccounts();
+                    checkpointTracker = null;
+                    billingRunCheckpointService.delete(currentBillingRun.getId(), BillingRunStepEnum.INVOICE_LINES);
+                }
                 billingRunExtensionService.updateBillingRunStatistics(currentBillingRun.getId(), aggregatedStats, nrOfAccounts.intValue(),
                     jobExecutionResult.getStatus() != JobExecutionResultStatusEnum.CANCELLED ? BillingRunStatusEnum.INVOICE_LINES_CREATED : BillingRunStatusEnum.NEW);
             }
@@ -228,6 +251,43 @@ public class InvoiceLinesJobBean extends IteratorBasedScopedJobBean<List<Map<Str
         aggregatedStats.reset();
     }
 
+    /**
+     * Record billing account partitions of a current billing run, or, when resuming an interrupted billing run, determine what partitions remain to process. Rated transactions of
+     * completed partitions are already billed, so they are no longer part of aggregated data to process.
+     *
+     * @param resumeBillingRun Is billing run resumed after an interruption
+     * @param jobExecutionResult Job execution result
+     */
+    @SuppressWarnings("unchecked")
+    private void initCheckpoints(boolean resumeBillingRun, JobExecutionResultImpl jobExecutionResult) {
+
+        Long brId = currentBillingRun.getId();
+        List<Object[]> itemsByBA = nrOfAccounts.intValue() == 0 ? emptyList()
+                : emWrapper.getEntityManager()
+                    .createNativeQuery("select billing_account__id, count(*) from " + InvoiceLineAggregationService.getMaterializedAggregationViewName(brId)
+                            + " group by billing_account__id order by billing_account__id")
+                    .getResultList();
+
+        List<BillingRunCheckpoint> checkpoints = resumeBillingRun ? billingRunCheckpointService.list(brId, BillingRunStepEnum.INVOICE_LINES) : emptyList();
+        if (checkpoints.isEmpty()) {
+            int partitionSize = ParamBean.getInstance().getPropertyAsInteger("billingRun.checkpoint.partitionSize", 1000);
+            checkpoints = billingRunCheckpointService.create(brId, BillingRunStepEnum.INVOICE_LINES, itemsByBA.stream().map(item -> ((Number) item[0]).longValue()).collect(toList()),
+                partitionSize > 0 ? partitionSize : 1000, jobExecutionResult.getJobInstance().getId());
+        }
+
+        BillingRunCheckpointTracker tracker = new BillingRunCheckpointTracker(checkpoints);
+        for (Object[] item : itemsByBA) {
+            tracker.addItems(((Number) item[0]).longValue(), ((Number) item[1]).longValue());
+        }
+        billingRunCheckpointService.markCompleted(brId, BillingRunStepEnum.INVOICE_LINES, tracker.completeEmptyPartitions());
+
+        if (resumeBillingRun) {
+            jobExecutionResult.addReport("Billing run #" + brId + ": resuming, " + tracker.getNbPartitionsCompleted() + " of " + tracker.getNbPartitions() + " partitions completed, "
+                    + tracker.getNbAccountsRemaining() + " accounts remaining.");
+        }
+        checkpointTracker = tracker;
+    }
+
     /**
      * Get a min and max ID from RT table
      *
@@ -271,9 +331,22 @@ public class InvoiceLinesJobBean extends IteratorBasedScopedJobBean<List<Map<Str
 
         List<BillingRun> billingRuns = BillinRunApplicationElFilterUtils.filterByApplicationEL(billingRunService.list(pagination), jobInstance);
 
+        // Billing runs interrupted while creating invoice lines are resumed with billing account partitions not completed yet, unless another job instance processing them is still running
+        List<Long> interruptedBRIds = billingRunCheckpointService.isCheckpointEnabled()
+                ? billingRunCheckpointService.claimBillingRunsWithPendingPartitions(BillingRunStepEnum.INVOICE_LINES, jobInstance.getId())
+                : emptyList();
+        if (billingRunIds.isEmpty() && !interruptedBRIds.isEmpty()) {
+            Map<String, Object> interruptedFilters = new HashMap<>();
+            interruptedFilters.put("inList id", interruptedBRIds);
+            interruptedFilters.put("status", BillingRunStatusEnum.CREATING_INVOICE_LINES);
+            PaginationConfiguration interruptedPagination = new PaginationConfiguration(null, null, interruptedFilters, null, asList("billingCycle"), FIELD_PRIORITY_SORT, SortOrder.ASCENDING);
+            billingRuns.addAll(BillinRunApplicationElFilterUtils.filterByApplicationEL(billingRunService.list(interruptedPagination), jobInstance));
+        }
+
         // Extra validation of BR status when billing run list is provided as parameters
         if (!billingRunIds.isEmpty() && !billingRuns.isEmpty()) {
-            List<BillingRun> excludedBRs = billingRuns.stream().filter(br -> br.getStatus() != BillingRunStatusEnum.NEW && (br.getStatus() != BillingRunStatusEnum.OPEN || !br.getIncrementalInvoiceLines()))
+            List<BillingRun> excludedBRs = billingRuns.stream().filter(br -> br.getStatus() != BillingRunStatusEnum.NEW && (br.getStatus() != BillingRunStatusEnum.OPEN || !br.getIncrementalInvoiceLines())
+                    && (br.getStatus() != BillingRunStatusEnum.CREATING_INVOICE_LINES || !interruptedBRIds.contains(br.getId())))
                 .collect(toList());
             excludedBRs.forEach(br -> jobExecutionResult.registerWarning(format("BillingRun[id={%d}] has been ignored as it neither NEW nor OPEN status", br.getId())));
             billingRuns.removeAll(excludedBRs);
@@ -415,6 +488,7 @@ public class InvoiceLinesJobBean extends IteratorBasedScopedJobBean<List<Map<Str
             // and to avoid doing unnecessary joins.
             // The next runs of BR (status has already changed to 'OPEN' at that moment) will apply the appending mode on existing invoice lines
             incrementalInvoiceLines = currentBillingRun.getIncrementalInvoiceLines() && currentBillingRun.getStatus() == BillingRunStatusEnum.OPEN;
+            boolean resumeBillingRun = currentBillingRun.getStatus() == BillingRunStatusEnum.CREATING_INVOICE_LINES;
 
             // set status of billing run as CREATING_INVOICE_LINES, i.e. it indicates that the invoice line job is running
             billingRunExtensionService.updateBillingRun(billingRun.getId(), null, null, BillingRunStatusEnum.CREATING_INVOICE_LINES, null);
@@ -432,6 +506,11 @@ public class InvoiceLinesJobBean extends IteratorBasedScopedJobBean<List<Map<Str
 
             jobExecutionResult.addReport("Billing run #" + billingRun.getId() + ": will process " + nrOfAccounts + " accounts" + (incrementalInvoiceLines ? " in append mode." : "."));
 
+            checkpointTracker = null;
+            if (!incrementalInvoiceLines && billingRunCheckpointService.isCheckpointEnabled()) {
+                initCheckpoints(resumeBillingRun, jobExecutionResult);
+            }
+
             // If no records found for a BR to process, continue to another BR
             if (nrOfAccounts.intValue() == 0) {
                 dropView();
@@ -3,9 +3,7 @@ package org.meveo.admin.job;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
-import java.io.ObjectInputFilter;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -17,7 +15,10 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -35,10 +36,16 @@ import javax.management.remote.JMXServiceURL;
 import org.apache.commons.lang3.StringUtils;
 import org.jboss.as.ee.component.ComponentIsStoppedException;
 import org.jgroups.JChannel;
+import org.meveo.admin.async.PartitionedChunkIterator;
+import org.meveo.admin.async.PartitionedChunkIterator.Chunk;
 import org.meveo.admin.async.SynchronizedIterator;
 import org.meveo.admin.async.SynchronizedIteratorGrouped;
 import org.meveo.admin.async.SynchronizedMultiItemIterator;
 import org.meveo.admin.exception.JobExecutionException;
+import org.meveo.admin.job.payload.IdListPayloadCodec;
+import org.meveo.admin.job.payload.JavaSerializationPayloadCodec;
+import org.meveo.admin.job.payload.JobPayloadCodec;
+import org.meveo.admin.job.payload.JobPayloadCodecs;
 import org.meveo.cache.JobRunningStatusEnum;
 import org.meveo.commons.utils.EjbUtils;
 import org.meveo.commons.utils.MethodCallingUtils;
@@ -55,6 +62,7 @@ import org.meveo.model.jobs.JobLauncherEnum;
 import org.meveo.security.MeveoUser;
 import org.meveo.security.keycloak.CurrentUserProvider;
 import org.meveo.service.audit.AuditOrigin;
+import org.meveo.service.billing.impl.CounterDeltaAccumulator;
 import org.meveo.service.job.Job;
 import org.meveo.service.job.JobExecutionResultService;
 import org.meveo.service.job.JobExecutionService;
@@ -139,11 +147,6 @@ public abstract class IteratorBasedJobBean<T> extends BaseJobBean {
      */
     private static final int LARGE_MESSAGE_BYTE_SIZE = 2900000;
 
-    /**
-     * On WF 34 JVM 21 docker installation for some reason large objects can not be deserialized because of default filter.
-     */
-    private static final ObjectInputFilter OBJECT_INPUT_FILTER = ObjectInputFilter.Config.createFilter("maxdepth=1000;maxarray=10000000;maxbytes=1000000000");
-
     @Inject
     private MethodCallingUtils methodCallingUtils;
 
@@ -157,6 +160,9 @@ public abstract class IteratorBasedJobBean<T> extends BaseJobBean {
     @Inject
     private ClusterEventPublisher clusterEventPublisher;
 
+    @Inject
+    private CounterDeltaAccumulator counterDeltaAccumulator;
+
     @Inject
     @LastJobDataMessageReceived
     protected Event<Long> lastJobDataMsgEventProducer;
@@ -302,7 +308,17 @@ public abstract class IteratorBasedJobBean<T> extends BaseJobBean {
 
         jobExecutionResultService.persistResult(jobExecutionResult);
 
-        Long nbThreads = (Long) this.getParamOrCFValue(jobInstance, Job.CF_NB_RUNS, -1L);
+        // With virtual threads, a number of concurrently processed items is limited by a number of data processing tasks instead of a thread pool size
+        boolean useVirtualThreads = Boolean.parseBoolean(String.valueOf(getParamOrCFValue(jobInstance, Job.CF_VIRTUAL_THREADS, false)));
+
+        Long nbThreads = null;
+        if (useVirtualThreads) {
+            // Max concurrency might be passed as a job parameter of any numeric type or as a string
+            Object maxConcurrencyValue = this.getParamOrCFValue(jobInstance, Job.CF_MAX_CONCURRENCY, ParamBean.getInstance().getPropertyAsInteger("jobs.virtualThreads.maxConcurrency", 100));
+            nbThreads = maxConcurrencyValue instanceof Number ? ((Number) maxConcurrencyValue).longValue() : Long.parseLong(String.valueOf(maxConcurrencyValue).trim());
+        } else {
+            nbThreads = (Long) this.getParamOrCFValue(jobInstance, Job.CF_NB_RUNS, -1L);
+        }
         if (nbThreads <= -1) {
             nbThreads = (long) Runtime.getRuntime().availableProcessors();
         }
@@ -329,6 +345,10 @@ public abstract class IteratorBasedJobBean<T> extends BaseJobBean {
 
         boolean spreadOverCluster = jobInstance.getClusterBehavior() == JobClusterBehaviorEnum.SPREAD_OVER_CLUSTER_NODES && EjbUtils.isRunningInClusterMode();
 
+        // Partitioned data processing applies only to data processed from a DB based iterator on a single node by platform threads
+        boolean usePartitionedExecution = isRunningAsJobManager && !spreadOverCluster && !useVirtualThreads && Boolean
+            .parseBoolean(String.valueOf(getParamOrCFValue(jobInstance, Job.CF_PARTITIONED_EXECUTION, ParamBean.getInstance().getPropertyAsBoolean("jobs.partitionedExecution", false))));
+
         String queueName = JobExecutionService.getJobQueueName(jobInstance.getCode());
 
         final Iterator<T> finalIterator = iterator;
@@ -381,13 +401,25 @@ public abstract class IteratorBasedJobBean<T> extends BaseJobBean {
             countDown = new CountDownLatch(1);
             countDowns.put(jobInstance.getId(), countDown);
 
-            log.info("{}/{} Will submit {} task(s) to process data", jobInstance.getJobTemplate(), jobInstance.getCode(), nbThreads);
+            if (usePartitionedExecution) {
+                // Chunk size might be passed as a job parameter of any numeric type or as a string
+                Object chunkSizeValue = getParamOrCFValue(jobInstance, Job.CF_CHUNK_SIZE, ParamBean.getInstance().getPropertyAsInteger("jobs.partitionedExecution.chunkSize", 1000));
+                long chunkSize = chunkSizeValue instanceof Number ? ((Number) chunkSizeValue).longValue() : Long.parseLong(String.valueOf(chunkSizeValue).trim());
 
-            // Create data processing tasks
-            for (int k = 0; k < nbThreads; k++) {
+                log.info("{}/{} Will submit a task to process data partitioned in chunks of {} items by {} threads", jobInstance.getJobTemplate(), jobInstance.getCode(), chunkSize, nbThreads);
 
-                tasks.add(getDataProcessingTask(jobInstance.getCode(), finalIterator, k, lastCurrentUser, isRunningAsJobManager, spreadOverCluster, jobQueue, batchSize.intValue(), jobExecutionResult, isNewTx,
-                    useMultipleItemProcessing, processSingleItemFunction, processMultipleItemFunction, countDown));
+                tasks.add(getPartitionedDataProcessingTask(jobInstance.getCode(), finalIterator, nbThreads.intValue(), Math.max((int) chunkSize, batchSize.intValue()), lastCurrentUser, batchSize.intValue(),
+                    jobExecutionResult, isNewTx, useMultipleItemProcessing, processSingleItemFunction, processMultipleItemFunction));
+
+            } else {
+                log.info("{}/{} Will submit {} task(s) to process data", jobInstance.getJobTemplate(), jobInstance.getCode(), nbThreads);
+
+                // Create data processing tasks
+                for (int k = 0; k < nbThreads; k++) {
+
+                    tasks.add(getDataProcessingTask(jobInstance.getCode(), finalIterator, k, lastCurrentUser, isRunningAsJobManager, spreadOverCluster, jobQueue, batchSize.intValue(), jobExecutionResult, isNewTx,
+                        useMultipleItemProcessing, processSingleItemFunction, processMultipleItemFunction, countDown));
+                }
             }
 
             // Tracks if job's main thread is still running. Used only to stop job status reporting thread.
@@ -399,13 +431,20 @@ public abstract class IteratorBasedJobBean<T> extends BaseJobBean {
             Thread jobStatusReportThread = new Thread(jobStatusReportTask);
             jobStatusReportThread.start();
 
-            ExecutorService executorService = Executors.newFixedThreadPool(tasks.size(), executorFactory);
+            ExecutorService executorService = null;
+            if (useVirtualThreads) {
+                log.info("{}/{} Will run tasks on virtual threads", jobInstance.getJobTemplate(), jobInstance.getCode());
+                executorService = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(jobInstance.getCode() + "-virtual-", 0).factory());
+            } else {
+                executorService = Executors.newFixedThreadPool(tasks.size(), executorFactory);
+            }
 
             // Launch main publishing and processing tasks
             int i = 0;
             for (Runnable task : tasks) {
                 log.info("{}/{} Will submit data {} task #{} to run", jobInstance.getJobTemplate(), jobInstance.getCode(), nbPublishers != null && i < nbPublishers ? "publishing" : "processing", i++);
-                futures.add(executorService.submit(task));
+                // Virtual threads are not created by a container, so container context (naming, class loader, security) of a job thread is propagated to them. Current user is reestablished by the task itself.
+                futures.add(executorService.submit(useVirtualThreads ? contextService.createContextualProxy(task, Runnable.class) : task));
                 try {
                     Thread.sleep(waitingMillis.longValue());
                 } catch (InterruptedException e) {
@@ -455,6 +494,10 @@ public abstract class IteratorBasedJobBean<T> extends BaseJobBean {
 
             executorService.shutdown();
 
+            // Write counter values accumulated in a write-behind mode, so they are up to date once job is finished. Each node, a job manager or a worker, writes changes of the items
+            // it has processed, before its threads are marked as finished
+            flushCounterValues();
+
             // This will exit the status report task
             isProcessing[0] = false;
             jobStatusReportThread.interrupt();
@@ -491,6 +534,7 @@ public abstract class IteratorBasedJobBean<T> extends BaseJobBean {
         } catch (Exception e) {
             log.error("Failed to run a job {}", jobInstance, e);
             jobExecutionResult.registerError(e.getMessage());
+            flushCounterValues();
         }
 
         if (finalizeFunction != null && !JobExecutionService.isServerIsInShutdownMode()) {
@@ -498,6 +542,17 @@ public abstract class IteratorBasedJobBean<T> extends BaseJobBean {
         }
     }
 
+    /**
+     * Write counter values accumulated by this node in a write-behind mode. Changes that failed to be written remain accumulated and are written by a periodic flush.
+     */
+    private void flushCounterValues() {
+        try {
+            counterDeltaAccumulator.flush();
+        } catch (Exception e) {
+            log.error("Failed to write accumulated counter values", e);
+        }
+    }
+
     /**
      * Process a single item
      * 
@@ -550,6 +605,38 @@ public abstract class IteratorBasedJobBean<T> extends BaseJobBean {
         }
     }
 
+    /**
+     * Get a codec to encode data items published to a job queue when job processing is spread over cluster nodes. Items that codec does not support are encoded with Java serialization.
+     * Not used while 'jobs.mq.legacyPayloadFormat' setting is on (default), as nodes of a previous version can decode Java serialized payloads only.
+     * 
+     * @return A codec as configured in 'jobs.mq.payloadCodec' setting. Defaults to a compact identifier list codec.
+     */
+    protected JobPayloadCodec getPayloadCodec() {
+        String codecName = ParamBean.getInstance().getProperty("jobs.mq.payloadCodec", IdListPayloadCodec.NAME);
+        JobPayloadCodec payloadCodec = JobPayloadCodecs.getCodec(codecName);
+        return payloadCodec != null ? payloadCodec : JobPayloadCodecs.getCodec(JavaSerializationPayloadCodec.NAME);
+    }
+
+    /**
+     * Get a codec to decode data items received from a job queue
+     * 
+     * @param codecName Codec name as passed along with a message
+     * @return A codec or null if no codec is registered under that name
+     */
+    protected JobPayloadCodec getPayloadCodec(String codecName) {
+        return JobPayloadCodecs.getCodec(codecName);
+    }
+
+    /**
+     * Determine a partition key of an item when data processing is partitioned. Items with the same key are processed in the same chunk by the same thread.
+     * 
+     * @param item Item to process
+     * @return A partition key (e.g. subscription or billing account id) or null if item can be processed in any chunk
+     */
+    protected Object getPartitionKey(T item) {
+        return null;
+    }
+
     /**
      * Shall each item be processed in its own transaction
      * 
@@ -680,6 +767,15 @@ public abstract class IteratorBasedJobBean<T> extends BaseJobBean {
 
         Long jobInstanceId = jobExecutionResult.getJobInstance().getId();
 
+        // Nodes of a previous version decode only Java serialized payloads without codec and compression properties, so that format is kept until all cluster nodes are
+        // upgraded and 'jobs.mq.legacyPayloadFormat' is turned off
+        boolean legacyPayloadFormat = ParamBean.getInstance().getPropertyAsBoolean("jobs.mq.legacyPayloadFormat", true);
+
+        JobPayloadCodec preferredPayloadCodec = legacyPayloadFormat ? JobPayloadCodecs.getCodec(JavaSerializationPayloadCodec.NAME) : getPayloadCodec();
+
+        // Encoded payloads larger than that are compressed. A value of 0 or less disables compression.
+        int compressThreshold = legacyPayloadFormat ? 0 : ParamBean.getInstance().getPropertyAsInteger("jobs.mq.compressThresholdBytes", 65536);
+
         Runnable task = () -> {
             try (JMSContext context = jmsConnectionFactory.createContext(System.getenv(REMOTE_MQ_ADMIN_USER), System.getenv(REMOTE_MQ_ADMIN_PASSWORD), JMSContext.CLIENT_ACKNOWLEDGE)) {
 
@@ -727,13 +823,24 @@ public abstract class IteratorBasedJobBean<T> extends BaseJobBean {
                     jmsProducer.setDisableMessageID(true);
                     jmsProducer.setDisableMessageTimestamp(true);
 
-                    try (ByteArrayOutputStream baos = new ByteArrayOutputStream(); ObjectOutputStream oos = new ObjectOutputStream(baos);) {
-
-                        oos.writeObject(itemsToProcess);
+                    try {
 
-                        byte[] bytes = baos.toByteArray();
+                        // Items that a preferred codec does not support are serialized with Java serialization
+                        JobPayloadCodec payloadCodec = preferredPayloadCodec;
+                        if (!payloadCodec.canEncode(itemsToProcess)) {
+                            payloadCodec = JobPayloadCodecs.getCodec(JavaSerializationPayloadCodec.NAME);
+                        }
+                        byte[] bytes = payloadCodec.encode(itemsToProcess);
 
                         BytesMessage message = context.createBytesMessage();
+                        if (!legacyPayloadFormat) {
+                            message.setStringProperty(ItertatorJobMessageListener.PAYLOAD_CODEC, payloadCodec.getName());
+                        }
+
+                        if (compressThreshold > 0 && bytes.length > compressThreshold) {
+                            bytes = JobPayloadCodecs.compress(bytes);
+                            message.setBooleanProperty(ItertatorJobMessageListener.IS_COMPRESSED, true);
+                        }
 
                         // For a large message, data is send/received as an input stream
                         if (bytes.length > LARGE_MESSAGE_BYTE_SIZE) {
@@ -748,7 +855,7 @@ public abstract class IteratorBasedJobBean<T> extends BaseJobBean {
                                 log.error("Failed to serialize or publish large message to a queue", e);
                             }
 
-                            // Otherwise send as a serializable object
+                            // Otherwise send as a message body
                         } else {
 
                             message.writeBytes(bytes);
@@ -914,6 +1021,145 @@ public abstract class IteratorBasedJobBean<T> extends BaseJobBean {
         return task;
     }
 
+    /**
+     * Create a task to process data from a DB based iterator partitioned in chunks. Task reads chunks from an iterator and submits them to a work-stealing thread pool, so threads that finish their chunks earlier take
+     * over the remaining ones instead of waiting for the threads processing larger chunks. Items within a chunk are processed in batches, same as they would be by getDataProcessingTask().
+     * 
+     * @param jobInstanceCode Job instance code
+     * @param dataIterator Iterator from a DB based data source
+     * @param nbThreads Number of threads to process chunks
+     * @param chunkSize A minimum number of items in a chunk
+     * @param lastCurrentUser Current user
+     * @param batchSize Batch processing size
+     * @param jobExecutionResult Job execution tracking result
+     * @param isNewTx Should data processing run in a new TX
+     * @param useMultipleItemProcessing Process items in batch
+     * @param processSingleItemFunction A function to process single item
+     * @param processMultipleItemFunction A function to process multiple items
+     * @return A task definition
+     */
+    private Runnable getPartitionedDataProcessingTask(String jobInstanceCode, Iterator<T> dataIterator, int nbThreads, int chunkSize, MeveoUser lastCurrentUser, int batchSize, JobExecutionResultImpl jobExecutionResult,
+            boolean isNewTx, boolean useMultipleItemProcessing, BiConsumer<T, JobExecutionResultImpl> processSingleItemFunction, BiConsumer<List<T>, JobExecutionResultImpl> processMultipleItemFunction) {
+
+        String auditOriginName = jobExecutionResult.getJobInstance().getJobTemplate() + "/" + jobInstanceCode;
+        Long jobInstanceId = jobExecutionResult.getJobInstance().getId();
+
+        Runnable task = () -> {
+
+            currentUserProvider.reestablishAuthentication(lastCurrentUser);
+
+            Thread.currentThread().setName(jobInstanceCode + "-partitioner");
+
+            PartitionedChunkIterator<T> chunkIterator = new PartitionedChunkIterator<>(dataIterator, this::getPartitionKey, chunkSize);
+
+            // Limit the number of chunks read ahead, so data is not read from DB faster than it is processed
+            Semaphore pendingChunks = new Semaphore(nbThreads * 2);
+            List<Chunk<T>> chunks = new ArrayList<>();
+
+            ForkJoinPool pool = new ForkJoinPool(nbThreads, executorFactory, null, true);
+            try {
+                while (!isJobRequestedToStop(jobInstanceId)) {
+
+                    pendingChunks.acquire();
+                    Chunk<T> chunk = chunkIterator.nextChunk();
+                    if (chunk == null) {
+                        break;
+                    }
+                    chunks.add(chunk);
+
+                    final Chunk<T> chunkToProcess = chunk;
+                    pool.execute(() -> {
+                        try {
+                            currentUserProvider.reestablishAuthentication(lastCurrentUser);
+                            AuditOrigin.setAuditOriginAndName(ChangeOriginEnum.JOB, auditOriginName);
+
+                            processChunk(chunkToProcess, jobInstanceId, batchSize, isNewTx, useMultipleItemProcessing, processSingleItemFunction, processMultipleItemFunction, jobExecutionResult);
+
+                        } catch (Exception e) {
+                            log.error("An error occurred during data processing of chunk #{}", chunkToProcess.getIndex(), e);
+
+                        } finally {
+                            pendingChunks.release();
+                        }
+                    });
+                }
+
+                pool.shutdown();
+                pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+
+            } catch (InterruptedException e) {
+                log.error("Partitioned data processing was interrupted", e);
+                pool.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+
+            logChunkStatistics(chunks, pool.getStealCount());
+        };
+
+        return task;
+    }
+
+    /**
+     * Process items of a chunk in batches
+     * 
+     * @param chunk Chunk to process
+     * @param jobInstanceId Job instance identifier
+     * @param batchSize Batch processing size
+     * @param isNewTx Should functions be called in a new TX
+     * @param useMultipleItemProcessing Process items in batch
+     * @param processSingleItemFunction A function to process single item
+     * @param processMultipleItemFunction A function to process multiple items
+     * @param jobExecutionResult Job execution result
+     */
+    private void processChunk(Chunk<T> chunk, Long jobInstanceId, int batchSize, boolean isNewTx, boolean useMultipleItemProcessing, BiConsumer<T, JobExecutionResultImpl> processSingleItemFunction,
+            BiConsumer<List<T>, JobExecutionResultImpl> processMultipleItemFunction, JobExecutionResultImpl jobExecutionResult) {
+
+        chunk.markStarted();
+
+        List<T> items = chunk.getItems();
+        for (int from = 0; from < items.size(); from = from + batchSize) {
+            if (isJobRequestedToStop(jobInstanceId)) {
+                break;
+            }
+            List<T> itemsToProcess = items.subList(from, Math.min(from + batchSize, items.size()));
+            processItems(itemsToProcess, isNewTx, useMultipleItemProcessing, processSingleItemFunction, processMultipleItemFunction, jobExecutionResult);
+            chunk.addProcessed(itemsToProcess.size());
+        }
+
+        chunk.markFinished();
+
+        log.debug("Chunk #{} of {} items and {} partition keys processed in {} ms", chunk.getIndex(), chunk.getNbItems(), chunk.getNbKeys(), chunk.getDuration());
+    }
+
+    /**
+     * Log a summary of processed chunks, so the chunk size and partitioning can be tuned
+     * 
+     * @param chunks Chunks submitted for processing
+     * @param stealCount A number of tasks taken over by threads from other thread queues
+     */
+    private void logChunkStatistics(List<Chunk<T>> chunks, long stealCount) {
+
+        if (chunks.isEmpty()) {
+            return;
+        }
+
+        long nbItems = 0;
+        long nbProcessed = 0;
+        long totalDuration = 0;
+        Chunk<T> slowestChunk = chunks.get(0);
+        for (Chunk<T> chunk : chunks) {
+            nbItems = nbItems + chunk.getNbItems();
+            nbProcessed = nbProcessed + chunk.getNbProcessed();
+            totalDuration = totalDuration + chunk.getDuration();
+            if (chunk.getDuration() > slowestChunk.getDuration()) {
+                slowestChunk = chunk;
+            }
+        }
+
+        log.info("Thread {} partitioned {} items in {} chunks, {} items processed. Average chunk took {} ms, slowest chunk #{} of {} items took {} ms. Steal count {}", Thread.currentThread().getName(), nbItems,
+            chunks.size(), nbProcessed, totalDuration / chunks.size(), slowestChunk.getIndex(), slowestChunk.getNbItems(), slowestChunk.getDuration(), stealCount);
+    }
+
     /**
      * Process items
      * 
@@ -1249,6 +1495,16 @@ public abstract class IteratorBasedJobBean<T> extends BaseJobBean {
          */
         public static final String IS_LARGE_MESSAGE = "ilm";
 
+        /**
+         * A property of a message indicating a name of a codec that message payload was encoded with
+         */
+        public static final String PAYLOAD_CODEC = "pc";
+
+        /**
+         * A property of a message indicating that its payload is compressed
+         */
+        public static final String IS_COMPRESSED = "cmp";
+
         private int msgCount = 0;
         private int itemCount = 0;
         private boolean isNewTx;
@@ -1329,6 +1585,7 @@ public abstract class IteratorBasedJobBean<T> extends BaseJobBean {
                     // A regular data payload message
                 } else {
                     List<T> itemsToProcess = null;
+                    byte[] bytes = null;
 
                     // Large message is send/received as a stream
                     if (msg.getBooleanProperty(IS_LARGE_MESSAGE)) {
@@ -1337,25 +1594,31 @@ public abstract class IteratorBasedJobBean<T> extends BaseJobBean {
 
                             // Save the stream and wait until the entire message is written before continuing.
                             msg.setObjectProperty("JMS_AMQ_SaveStream", baos);
-
-                            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()))) {
-                                ois.setObjectInputFilter(OBJECT_INPUT_FILTER);
-                                itemsToProcess = (List<T>) ois.readObject();
-                            } catch (Exception e) {
-                                Logger log = LoggerFactory.getLogger(this.getClass());
-                                log.error("Failed to deserialize large message.", e);
-                            }
+                            bytes = baos.toByteArray();
 
                         } catch (Exception e) {
                             Logger log = LoggerFactory.getLogger(this.getClass());
-                            log.error("Failed to deserialize large message.", e);
+                            log.error("Failed to read large message.", e);
                         }
 
-                        // Smaller messages are send/received as serialized object
+                        // Smaller messages are send/received as a message body
                     } else {
-                        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(msg.getBody(byte[].class)))) {
-                            ois.setObjectInputFilter(OBJECT_INPUT_FILTER);
-                            itemsToProcess = (List<T>) ois.readObject();
+                        bytes = msg.getBody(byte[].class);
+                    }
+
+                    if (bytes != null) {
+                        // Messages without a codec property were serialized with Java serialization
+                        String codecName = msg.getStringProperty(PAYLOAD_CODEC);
+                        try {
+                            if (msg.getBooleanProperty(IS_COMPRESSED)) {
+                                bytes = JobPayloadCodecs.decompress(bytes);
+                            }
+                            JobPayloadCodec payloadCodec = getPayloadCodec(codecName);
+                            if (payloadCodec == null) {
+                                throw new IOException("No job payload codec " + codecName + " is registered");
+                            }
+                            itemsToProcess = (List<T>) payloadCodec.decode(bytes);
+
                         } catch (Exception e) {
                             Logger log = LoggerFactory.getLogger(this.getClass());
                             log.error("Failed to deserialize message.", e);
@@ -52,6 +52,8 @@ import org.meveo.service.medina.impl.CDRParsingService;
 import org.meveo.service.medina.impl.CDRService;
 import org.meveo.service.medina.impl.ICdrParser;
 import org.meveo.service.medina.impl.ICdrReader;
+import org.meveo.service.metrics.BillingMetrics;
+import org.meveo.service.metrics.BillingMetrics.Stage;
 
 import java.io.File;
 import java.io.IOException;
@@ -238,7 +240,9 @@ public class MediationJobBean extends BaseJobBean {
                         while (nrOfItemsInBatch < batchSize) {
 
                             try {
+                                long parseStart = BillingMetrics.start();
                                 CDR cdr = cdrReaderFinal.getNextRecord(cdrParserFinal, originRecordEL);
+                                BillingMetrics.record(Stage.CDR_PARSE, parseStart);
                                 if (cdr == null) {
                                     break;
                                 }
@@ -427,14 +431,20 @@ public class MediationJobBean extends BaseJobBean {
                     failedCDR(jobExecutionResult, fileName, cdr, CDRStatusEnum.ERROR, rejectFileWriter, errorsMap);
                 } else {
 
+                    long conversionStart = BillingMetrics.start();
                     List<Access> accessPoints = cdrParserFinal.accessPointLookup(cdr);
                     List<EDR> edrs = cdrParserFinal.convertCdrToEdr(cdr, accessPoints);
+                    BillingMetrics.record(Stage.CDR_CONVERSION, conversionStart);
 
                     if (isDuplicateCheckOn) {
+                        long deduplicationStart = BillingMetrics.start();
                         cdrParserFinal.deduplicate(cdr);
+                        BillingMetrics.record(Stage.CDR_DEDUPLICATION, deduplicationStart);
                     }
                     
+                    long persistStart = BillingMetrics.start();
                     cdrParsingService.createEdrs(edrs, cdr);
+                    BillingMetrics.record(Stage.CDR_PERSIST, persistStart);
                     
                     mediationsettingService.applyEdrVersioningRule(edrs, cdr, false);
                     if (!StringUtils.isBlank(cdr.getRejectReason())) {
@@ -38,6 +38,8 @@ import org.meveo.service.medina.impl.CDRParsingException;
 import org.meveo.service.medina.impl.CDRParsingService;
 import org.meveo.service.medina.impl.CDRService;
 import org.meveo.service.medina.impl.DuplicateException;
+import org.meveo.service.metrics.BillingMetrics;
+import org.meveo.service.metrics.BillingMetrics.Stage;
 
 import jakarta.ejb.EJBTransactionRolledbackException;
 import jakarta.ejb.Stateless;
@@ -123,19 +125,28 @@ public class MediationJobBeanV2 extends IteratorBasedScopedJobBean<Long> {
                 failedCDR(jobExecutionResult, cdr, CDRStatusEnum.ERROR);
             } else {
 
+                long conversionStart = BillingMetrics.start();
                 List<Access> accessPoints = cdrParsingService.accessPointLookup(cdr);
                 List<EDR> edrs = cdrParsingService.convertCdrToEdr(cdr, accessPoints);
-
-                if (EdrService.isDuplicateCheckOn() && edrService.isDuplicateFound(cdr.getOriginRecord())) {
-                     throw new DuplicateException(cdr);
+                BillingMetrics.record(Stage.CDR_CONVERSION, conversionStart);
+
+                if (EdrService.isDuplicateCheckOn()) {
+                    long deduplicationStart = BillingMetrics.start();
+                    boolean isDuplicate = edrService.isDuplicateFound(cdr.getOriginRecord());
+                    BillingMetrics.record(Stage.CDR_DEDUPLICATION, deduplicationStart);
+                    if (isDuplicate) {
+                        throw new DuplicateException(cdr);
+                    }
                 }
                 
+                long persistStart = BillingMetrics.start();
                 for(EDR edr : edrs) {
                     edrService.create(edr);
                     cdr.setHeaderEDR(edr);
                     cdr.setStatus(CDRStatusEnum.PROCESSED);
                     cdrService.update(cdr);
                 }
+                BillingMetrics.record(Stage.CDR_PERSIST, persistStart);
                 
                 mediationsettingService.applyEdrVersioningRule(edrs, cdr, false);
                 if (!StringUtils.isBlank(cdr.getRejectReason())) {
@@ -46,6 +46,11 @@ import jakarta.inject.Inject;
 @Stateless
 public class PDFInvoiceGenerationJob extends Job {
 
+    /**
+     * Job custom field to render PDF files in a pipeline: XML files are parsed and PDF files are exported by dedicated threads, while job threads fill reports
+     */
+    public static final String CF_USE_PDF_PIPELINE = "usePdfPipeline";
+
     /** The pdf invoice generation job bean. */
     @Inject
     private PDFInvoiceGenerationJobBean pdfInvoiceGenerationJobBean;
@@ -118,6 +123,9 @@ public class PDFInvoiceGenerationJob extends Job {
         customFieldInvToProcess.setListValues(invoicesToProcessValues);
         customFieldInvToProcess.setGuiPosition("tab:Configuration:0;field:4");
         result.put(cfInvToProcessCode, customFieldInvToProcess);
+
+        result.put(CF_USE_PDF_PIPELINE, CustomFieldTemplateUtils.buildCF(CF_USE_PDF_PIPELINE, resourceMessages.getString("jobExecution.usePdfPipeline"), CustomFieldTypeEnum.BOOLEAN,
+            "tab:Configuration:0;field:5", "false", APPLIES_TO));
         
         return result;
     }
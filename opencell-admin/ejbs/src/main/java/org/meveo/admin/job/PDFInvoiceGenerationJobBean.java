@@ -20,6 +20,7 @@ package org.meveo.admin.job;
 
 import static java.util.Optional.of;
 
+import java.io.File;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
@@ -28,12 +29,16 @@ import java.util.Optional;
 
 import org.meveo.admin.async.SynchronizedIterator;
 import org.meveo.admin.job.utils.BillinRunApplicationElFilterUtils;
+import org.meveo.cache.JasperReportCache;
+import org.meveo.commons.utils.ParamBean;
+import org.meveo.commons.utils.ParamBeanFactory;
 import org.meveo.model.billing.BillingRun;
 import org.meveo.model.billing.Invoice;
 import org.meveo.model.jobs.JobExecutionResultImpl;
 import org.meveo.model.jobs.JobInstance;
 import org.meveo.service.billing.impl.BillingRunExtensionService;
 import org.meveo.service.billing.impl.BillingRunService;
+import org.meveo.service.billing.impl.InvoicePdfPipeline;
 import org.meveo.service.billing.impl.InvoiceService;
 
 import jakarta.ejb.Stateless;
@@ -60,9 +65,20 @@ public class PDFInvoiceGenerationJobBean extends IteratorBasedJobBean<Long> {
     @Inject
     private BillingRunExtensionService billingRunExtensionService;
 
+    @Inject
+    private JasperReportCache jasperReportCache;
+
+    @Inject
+    private ParamBeanFactory paramBeanFactory;
+
+    /**
+     * Invoice PDF rendering pipeline. Used when PDFInvoiceGenerationJob.CF_USE_PDF_PIPELINE is enabled.
+     */
+    private InvoicePdfPipeline pdfPipeline;
+
     @TransactionAttribute(TransactionAttributeType.NEVER)
     public void execute(JobExecutionResultImpl jobExecutionResult, JobInstance jobInstance) {
-        super.execute(jobExecutionResult, jobInstance, this::initJobAndGetDataToProcess, null, this::convertToPdf, this::convertToPdfBatch, null, null, this::clearJasperReportCache);
+        super.execute(jobExecutionResult, jobInstance, this::initJobAndGetDataToProcess, null, this::convertToPdf, this::convertToPdfBatch, null, this::closePdfPipeline, null);
     }
 
     /**
@@ -104,6 +120,19 @@ public class PDFInvoiceGenerationJobBean extends IteratorBasedJobBean<Long> {
 
         List<Long> ids = this.fetchInvoiceIdsToProcess(invoicesToProcessEnum, billingRunId);
 
+        // Load invoice templates before processing in parallel. Templates remain cached between job runs and are reloaded only when modified.
+        if (ids != null && !ids.isEmpty()) {
+            jasperReportCache.preloadInvoiceTemplates(new File(paramBeanFactory.getChrootDir() + File.separator + "jasper"));
+
+            // Reports are filled by job threads, while XML files are parsed and PDF files are exported by pipeline threads
+            if ((Boolean) this.getParamOrCFValue(jobInstance, PDFInvoiceGenerationJob.CF_USE_PDF_PIPELINE, Boolean.FALSE)) {
+                ParamBean paramBean = paramBeanFactory.getInstance();
+                int nbProcessors = Runtime.getRuntime().availableProcessors();
+                pdfPipeline = new InvoicePdfPipeline(paramBean.getPropertyAsInteger("invoice.pdf.pipeline.parseThreads", Math.max(1, nbProcessors / 4)),
+                    paramBean.getPropertyAsInteger("invoice.pdf.pipeline.exportThreads", Math.max(1, nbProcessors / 2)), paramBean.getPropertyAsInteger("invoice.pdf.pipeline.queueSize", 100), executorFactory);
+            }
+        }
+
         return Optional.of(new SynchronizedIterator<>(ids));
     }
 
@@ -128,11 +157,29 @@ public class PDFInvoiceGenerationJobBean extends IteratorBasedJobBean<Long> {
     private void convertToPdfBatch(List<Long> invoiceIds, JobExecutionResultImpl jobExecutionResult) {
 
         List<Invoice> invoices = invoiceService.findByIds(invoiceIds, Arrays.asList("billingAccount"));
+        if (pdfPipeline != null) {
+            invoiceService.produceInvoicePdfs(invoices, pdfPipeline);
+            return;
+        }
         for (Invoice invoice : invoices) {
             invoiceService.produceInvoicePdf(invoice, null);
         }
     }
 
+    /**
+     * Stop PDF rendering pipeline threads and report a rendering rate
+     * 
+     * @param jobExecutionResult Job execution result
+     */
+    private void closePdfPipeline(JobExecutionResultImpl jobExecutionResult) {
+        if (pdfPipeline == null) {
+            return;
+        }
+        pdfPipeline.close();
+        log.info("PDF pipeline produced {} invoices with {} pages, {} pages/s", pdfPipeline.getNbInvoices(), pdfPipeline.getNbPages(), String.format("%.1f", pdfPipeline.getPagesPerSecond()));
+        pdfPipeline = null;
+    }
+
     private List<Long> fetchInvoiceIdsToProcess(InvoicesToProcessEnum invoicesToProcessEnum, Long billingRunId) {
 
         log.debug(" fetchInvoiceIdsToProcess for invoicesToProcessEnum = {} and billingRunId = {} ", invoicesToProcessEnum, billingRunId);
@@ -154,13 +201,4 @@ public class PDFInvoiceGenerationJobBean extends IteratorBasedJobBean<Long> {
         return invoiceIds;
 
     }
-
-    /**
-     * Clear cached Jasper reports
-     * 
-     * @param jobExecutionResult Job execution result
-     */
-    private void clearJasperReportCache(JobExecutionResultImpl jobExecutionResult) {
-        InvoiceService.clearJasperReportCache();
-    }
-}
\ No newline at end of file
+}
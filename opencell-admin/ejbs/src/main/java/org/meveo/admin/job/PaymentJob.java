@@ -228,6 +228,8 @@ public class PaymentJob extends Job {
         dueDateRangeScript.setGuiPosition("tab:Configuration:0;field:11");
         result.put(cfDueDateRangeScriptCode, dueDateRangeScript);
 
+        addVirtualThreadsCustomFields(result, APPLIES_TO_NAME, 12);
+
         return result;
     }
 }
\ No newline at end of file
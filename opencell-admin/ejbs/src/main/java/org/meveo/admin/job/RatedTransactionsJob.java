@@ -56,6 +56,7 @@ public class RatedTransactionsJob extends ScopedJob {
     public static final String BILLING_ACCOUNTS_MAP_KEY = "BILLING_ACCOUNTS_MAP_KEY";
     public static final String CF_USE_JOB_CONTEXT = "CF_USE_JOB_CONTEXT";
     public static final String CF_RUN_DISCOUNT_STEP = "CF_RUN_DISCOUNT_STEP";
+    public static final String CF_USE_BULK_LOAD = "CF_USE_BULK_LOAD";
 
     /** The rated transactions job bean. */
     @Inject
@@ -119,6 +120,8 @@ public class RatedTransactionsJob extends ScopedJob {
                 CustomFieldTypeEnum.LONG, "tab:Configuration:0;fieldGroup:Configuration:0;field:7", "JobInstance_RatedTransactionsJob"));
         result.put(CF_JOB_TIME_LIMIT, CustomFieldTemplateUtils.buildCF(CF_JOB_TIME_LIMIT, resourceMessages.getString("jobExecution.jobTimeLimit"),
                 CustomFieldTypeEnum.STRING, "tab:Configuration:0;fieldGroup:Configuration:0;field:8", "JobInstance_RatedTransactionsJob", 5L));
+        result.put(CF_USE_BULK_LOAD, CustomFieldTemplateUtils.buildCF(CF_USE_BULK_LOAD, resourceMessages.getString("jobExecution.useBulkLoad"), CustomFieldTypeEnum.BOOLEAN,
+                "tab:Configuration:0;fieldGroup:Configuration:0;field:9", "false", "JobInstance_RatedTransactionsJob"));
 
         return result;
     }
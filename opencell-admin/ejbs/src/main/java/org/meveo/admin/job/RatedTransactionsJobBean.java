@@ -145,7 +145,11 @@ public class RatedTransactionsJobBean extends IteratorBasedScopedJobBean<WalletO
      * @param jobExecutionResult Job execution result
      */
     private void convertWoToRTBatch(List<WalletOperationNative> walletOperations, JobExecutionResultImpl jobExecutionResult) {
-        ratedTransactionService.createRatedTransactionsInBatch(walletOperations);
+        if ((boolean) getParamOrCFValue(jobExecutionResult.getJobInstance(), RatedTransactionsJob.CF_USE_BULK_LOAD, false)) {
+            ratedTransactionService.createRatedTransactionsInBulk(walletOperations);
+        } else {
+            ratedTransactionService.createRatedTransactionsInBatch(walletOperations);
+        }
     }
 
     private boolean hasMore(JobInstance jobInstance) {
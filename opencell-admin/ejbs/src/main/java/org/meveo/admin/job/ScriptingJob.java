@@ -116,6 +116,8 @@ public class ScriptingJob extends Job {
         result.put("mapping", CustomFieldTemplateUtils.buildCF("mapping", "Mapping", CustomFieldTypeEnum.STRING,
                 "tab:Configuration:0;field:4", null, false, CustomFieldStorageTypeEnum.MAP, null, "JobInstance_ScriptingJob", null));
 
+        addVirtualThreadsCustomFields(result, "JobInstance_ScriptingJob", 5);
+
         return result;
     }
 }
\ No newline at end of file
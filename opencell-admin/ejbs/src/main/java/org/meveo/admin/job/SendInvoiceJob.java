@@ -130,6 +130,8 @@ public class SendInvoiceJob extends Job {
         invoiceDateRangeTo.setGuiPosition("tab:Configuration:0;field:4");
         result.put("invoiceDateRangeTo", invoiceDateRangeTo);
 
+        addVirtualThreadsCustomFields(result, "JobInstance_SendInvoiceJob", 5);
+
         return result;
     }
 }
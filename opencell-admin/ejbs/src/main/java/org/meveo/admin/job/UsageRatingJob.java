@@ -187,6 +187,8 @@ public class UsageRatingJob extends ScopedJob {
         result.put(CF_JOB_TIME_LIMIT, CustomFieldTemplateUtils.buildCF(CF_JOB_TIME_LIMIT, resourceMessages.getString("jobExecution.jobTimeLimit"),
                 CustomFieldTypeEnum.STRING, "tab:Configuration:0;field:10", "JobInstance_UsageRatingJob", 5L));
 
+        addPartitionedExecutionCustomFields(result, USAGE_RATING_JOB, 11);
+
         return result;
     }
 
@@ -18,9 +18,12 @@
 
 package org.meveo.admin.job;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import org.meveo.admin.async.SynchronizedIterator;
@@ -29,6 +32,7 @@ import org.meveo.model.jobs.JobExecutionResultImpl;
 import org.meveo.model.jobs.JobInstance;
 import org.meveo.service.billing.impl.EdrService;
 import org.meveo.service.billing.impl.UsageRatingService;
+import org.meveo.service.job.Job;
 
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
@@ -53,6 +57,11 @@ public class UsageRatingJobBean extends IteratorBasedScopedJobBean<Long> {
     private String parameter2 = null;
     boolean multiProcessOnlyMode = false;
 
+    /**
+     * Subscription ids of EDRs to rate. Populated only when data processing is partitioned.
+     */
+    private Map<Long, Long> subscriptionIdsByEdrId = new HashMap<>();
+
     @Override
     @TransactionAttribute(TransactionAttributeType.NEVER)
     public void execute(JobExecutionResultImpl jobExecutionResult, JobInstance jobInstance) {
@@ -61,6 +70,7 @@ public class UsageRatingJobBean extends IteratorBasedScopedJobBean<Long> {
 
         rateUntilDate = null;
         ratingGroup = null;
+        subscriptionIdsByEdrId = new HashMap<>();
     }
 
     /**
@@ -100,6 +110,35 @@ public class UsageRatingJobBean extends IteratorBasedScopedJobBean<Long> {
         return hasMore;
     }
 
+    /**
+     * Remember subscriptions of EDRs to rate, so EDRs of the same subscription are rated in the same chunk when data processing is partitioned
+     * 
+     * @param edrs EDR and subscription ids
+     * @return EDR ids
+     */
+    List<Long> setEdrSubscriptions(List<Object[]> edrs) {
+
+        Map<Long, Long> subscriptionIds = new HashMap<>(edrs.size() * 4 / 3 + 1);
+        List<Long> ids = new ArrayList<>(edrs.size());
+        for (Object[] edr : edrs) {
+            Long edrId = ((Number) edr[0]).longValue();
+            ids.add(edrId);
+            if (edr[1] != null) {
+                subscriptionIds.put(edrId, ((Number) edr[1]).longValue());
+            }
+        }
+        subscriptionIdsByEdrId = subscriptionIds;
+        return ids;
+    }
+
+    /**
+     * EDRs of the same subscription are rated in the same chunk when data processing is partitioned
+     */
+    @Override
+    protected Object getPartitionKey(Long edrId) {
+        return subscriptionIdsByEdrId.get(edrId);
+    }
+
     @Override
     protected boolean isProcessItemInNewTx() {
         return false;
@@ -124,7 +163,12 @@ public class UsageRatingJobBean extends IteratorBasedScopedJobBean<Long> {
         // Number of EDRs to process in a single job run
         int processNrInJobRun = ParamBean.getInstance().getPropertyAsInteger("jobs.usageRatingJob.processNrInJobRun", 2000000);
 
-        List<Long> ids = edrService.getEDRsToRate(rateUntilDate, ratingGroup,parameter1,parameter2, jobItemsLimit);
+        List<Long> ids = null;
+        if (Boolean.parseBoolean(String.valueOf(getParamOrCFValue(jobInstance, Job.CF_PARTITIONED_EXECUTION, ParamBean.getInstance().getPropertyAsBoolean("jobs.partitionedExecution", false))))) {
+            ids = setEdrSubscriptions(edrService.getEDRsAndSubscriptionsToRate(rateUntilDate, ratingGroup, parameter1, parameter2, jobItemsLimit));
+        } else {
+            ids = edrService.getEDRsToRate(rateUntilDate, ratingGroup,parameter1,parameter2, jobItemsLimit);
+        }
         hasMore = ids.size() == processNrInJobRun;
 
         return Optional.of(new SynchronizedIterator<Long>(ids));
@@ -167,6 +167,14 @@ public class UsageRatingNoRollbackJobBean extends IteratorBasedJobBean<EDR> {
         return hasMore;
     }
 
+    /**
+     * EDRs of the same subscription are rated in the same chunk when data processing is partitioned
+     */
+    @Override
+    protected Object getPartitionKey(EDR edr) {
+        return edr.getSubscription() != null ? edr.getSubscription().getId() : null;
+    }
+
     @Override
     protected boolean isProcessItemInNewTx() {
         return true;
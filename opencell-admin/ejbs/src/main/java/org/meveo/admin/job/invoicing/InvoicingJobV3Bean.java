@@ -14,9 +14,14 @@ import static org.meveo.model.billing.BillingRunStatusEnum.PREVALIDATED;
 import static org.meveo.model.billing.BillingRunStatusEnum.REJECTED;
 import static org.meveo.model.billing.BillingRunStatusEnum.VALIDATED;
 
+import java.util.AbstractMap.SimpleEntry;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
@@ -46,6 +51,10 @@ import org.meveo.model.jobs.JobExecutionResultImpl;
 import org.meveo.model.jobs.JobInstance;
 import org.meveo.model.scripts.ScriptInstance;
 import org.meveo.security.MeveoUser;
+import org.meveo.service.billing.impl.BillingRunCheckpoint;
+import org.meveo.service.billing.impl.BillingRunCheckpoint.BillingRunStepEnum;
+import org.meveo.service.billing.impl.BillingRunCheckpointService;
+import org.meveo.service.billing.impl.BillingRunCheckpointTracker;
 import org.meveo.service.billing.impl.BillingRunExtensionService;
 import org.meveo.service.billing.impl.BillingRunService;
 import org.meveo.service.billing.impl.InvoiceService;
@@ -84,6 +93,9 @@ public class InvoicingJobV3Bean extends BaseJobBean {
 	@Inject
 	private JobInstanceService jobInstanceService;
 	
+	@Inject
+	private BillingRunCheckpointService billingRunCheckpointService;
+	
 	@Inject
 	@MeveoJpa
 	private EntityManagerWrapper emWrapper;
@@ -143,8 +155,33 @@ public class InvoicingJobV3Bean extends BaseJobBean {
 		paginationConfiguration.setFetchFields(Arrays.asList("billingCycle", "billingCycle.billingRunValidationScript"));
 		paginationConfiguration.setLimit(jobInstanceService.getJobItemsLimit(jobInstance));
 		List<BillingRun> billingRuns = billingRunService.list(paginationConfiguration);
+		if (billingRunIds.isEmpty() && billingRunCheckpointService.isCheckpointEnabled()) {
+			billingRuns.addAll(readInterruptedBillingRuns(jobInstance));
+		}
 		return billingRuns;
 	}
+
+	/**
+	 * Read billing runs whose invoicing was interrupted by a failure, i.e. remaining in PREVALIDATED status with billing account partitions not completed yet. Billing runs still
+	 * being invoiced by another running job instance are not considered as interrupted.
+	 *
+	 * @param jobInstance Job instance
+	 * @return A list of billing runs to resume
+	 */
+	private List<BillingRun> readInterruptedBillingRuns(JobInstance jobInstance) {
+		List<Long> billingRunIds = billingRunCheckpointService.claimBillingRunsWithPendingPartitions(BillingRunStepEnum.INVOICES, jobInstance.getId());
+		if (billingRunIds.isEmpty()) {
+			return emptyList();
+		}
+		Map<String, Object> filters = new HashMap<>();
+		filters.put("inList id", billingRunIds);
+		filters.put("status", PREVALIDATED);
+		filters.put("disabled", false);
+		PaginationConfiguration paginationConfiguration = new PaginationConfiguration(filters);
+		paginationConfiguration.setFetchFields(Arrays.asList("billingCycle", "billingCycle.billingRunValidationScript"));
+		paginationConfiguration.setLimit(jobInstanceService.getJobItemsLimit(jobInstance));
+		return billingRunService.list(paginationConfiguration);
+	}
 	private List<Long> extractBRIds(List<EntityReferenceWrapper> billingRunWrappers) {
 		return billingRunWrappers.stream().map(br -> Long.valueOf(br.getCode().split("/")[0])).collect(toList());
 	}
@@ -231,8 +268,12 @@ public class InvoicingJobV3Bean extends BaseJobBean {
 			Long jobInstanceId, boolean isFullAutomatic, BillingCycle billingCycle, JobExecutionResultImpl result)
 			throws BusinessException {
 		List<Long> bAIds = billingRunService.getBAsHavingOpenILs(billingRun);
+		boolean checkpointEnabled = billingRunCheckpointService.isCheckpointEnabled();
 		if (bAIds.isEmpty()) {
 			log.info("=======NO INVOICE LINES TO PROCESS for BR {}=========", billingRun.getId());
+			if (checkpointEnabled) {
+				billingRunCheckpointService.delete(billingRun.getId(), BillingRunStepEnum.INVOICES);
+			}
 			return;
 		}
 		log.info("=======INVOICING JOB HAVE TO PROCESS {} BAs for BR {}=========", bAIds.size(), billingRun.getId());
@@ -243,14 +284,62 @@ public class InvoicingJobV3Bean extends BaseJobBean {
 				: (int) (bAIds.size() / nbRuns);
 		itemsPerSplit = itemsPerSplit > 0 ? itemsPerSplit : 1;
 		MeveoUser lastCurrentUser = currentUser.unProxy();
-		BiConsumer<List<Long>, JobExecutionResultImpl> task = (item, jobResult) -> {
-			invoicingService.createAgregatesAndInvoiceForJob(item, billingRun, billingCycle, jobInstanceId,
+		if (!checkpointEnabled) {
+			BiConsumer<List<Long>, JobExecutionResultImpl> task = (item, jobResult) -> {
+				invoicingService.createAgregatesAndInvoiceForJob(item, billingRun, billingCycle, jobInstanceId,
+						lastCurrentUser, isFullAutomatic, result);
+			};
+
+			iteratorBasedJobProcessing.processItems(result,
+					new SynchronizedIterator<>(ListUtils.partition(bAIds, itemsPerSplit)), task, null, null, nbRuns,
+					waitingMillis, false, false);
+			return;
+		}
+
+		// Billing accounts are processed in partitions, each recorded as completed once its invoices are created, so a billing run interrupted by a failure resumes with
+		// partitions not completed yet. Partitions are recorded on a first run, sized the same as a group of billing accounts processed in a single transaction.
+		if (!billingRunCheckpointService.claim(billingRun.getId(), BillingRunStepEnum.INVOICES, jobInstanceId)) {
+			result.registerWarning(format("Billing run #%d is skipped as its invoicing is still in progress by another job", billingRun.getId()));
+			return;
+		}
+		List<BillingRunCheckpoint> checkpoints = billingRunCheckpointService.list(billingRun.getId(), BillingRunStepEnum.INVOICES);
+		if (checkpoints.isEmpty()) {
+			Collections.sort(bAIds);
+			checkpoints = billingRunCheckpointService.create(billingRun.getId(), BillingRunStepEnum.INVOICES, bAIds, itemsPerSplit, jobInstanceId);
+		}
+		BillingRunCheckpointTracker tracker = new BillingRunCheckpointTracker(checkpoints);
+		List<Long> untrackedBAIds = new ArrayList<>();
+		Map<BillingRunCheckpoint, List<Long>> bAIdsByPartition = tracker.groupByPendingPartition(bAIds, untrackedBAIds);
+		if (tracker.getNbPartitionsCompleted() > 0) {
+			result.addReport(format("Billing run #%d: resuming invoicing, %d of %d partitions completed, %d accounts remaining", billingRun.getId(),
+					tracker.getNbPartitionsCompleted(), tracker.getNbPartitions(), tracker.getNbAccountsRemaining() + untrackedBAIds.size()));
+		}
+
+		List<Entry<BillingRunCheckpoint, List<Long>>> items = new ArrayList<>();
+		for (Entry<BillingRunCheckpoint, List<Long>> partition : bAIdsByPartition.entrySet()) {
+			if (partition.getValue().isEmpty()) {
+				// Invoices of a partition were created before an interruption, but it was not recorded as completed yet
+				billingRunCheckpointService.markCompleted(billingRun.getId(), BillingRunStepEnum.INVOICES, List.of(partition.getKey()));
+			} else {
+				items.add(partition);
+			}
+		}
+		for (List<Long> untracked : ListUtils.partition(untrackedBAIds, itemsPerSplit)) {
+			items.add(new SimpleEntry<>(null, untracked));
+		}
+
+		BiConsumer<Entry<BillingRunCheckpoint, List<Long>>, JobExecutionResultImpl> task = (item, jobResult) -> {
+			invoicingService.createAgregatesAndInvoiceForJob(item.getValue(), billingRun, billingCycle, jobInstanceId,
 					lastCurrentUser, isFullAutomatic, result);
+			if (item.getKey() != null) {
+				billingRunCheckpointService.markCompleted(billingRun.getId(), BillingRunStepEnum.INVOICES, List.of(item.getKey()));
+			}
 		};
 
-		iteratorBasedJobProcessing.processItems(result,
-				new SynchronizedIterator<>(ListUtils.partition(bAIds, itemsPerSplit)), task, null, null, nbRuns,
+		iteratorBasedJobProcessing.processItems(result, new SynchronizedIterator<>(items), task, null, null, nbRuns,
 				waitingMillis, false, false);
+
+		billingRunCheckpointService.delete(billingRun.getId(), BillingRunStepEnum.INVOICES);
 	}
 	/**
 	 * Assign invoice number and increment BA invoice dates.
@@ -0,0 +1,148 @@
+package org.meveo.admin.job.payload;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encodes a batch of identifiers compactly. Supports a batch of Long values or a batch of lists of Long values, as produced by SynchronizedIterator and SynchronizedMultiItemIterator over identifiers.<br/>
+ * <br/>
+ * Each value is stored as a difference to a previous value, zigzag and varint encoded, so mostly ascending identifiers take one or two bytes each instead of ~10 bytes with Java serialization.<br/>
+ * <br/>
+ * Format: a type byte (1 - Long values, 2 - lists of Long values), a number of items and then either the values, or for each list its size followed by its values.
+ */
+public class IdListPayloadCodec implements JobPayloadCodec {
+
+    public static final String NAME = "idList";
+
+    private static final byte TYPE_IDS = 1;
+
+    private static final byte TYPE_ID_LISTS = 2;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean canEncode(List<?> items) {
+        if (items.isEmpty()) {
+            return false;
+        }
+        if (items.get(0) instanceof Long) {
+            for (Object item : items) {
+                if (!(item instanceof Long)) {
+                    return false;
+                }
+            }
+            return true;
+
+        } else if (items.get(0) instanceof List) {
+            for (Object item : items) {
+                if (!(item instanceof List)) {
+                    return false;
+                }
+                for (Object value : (List<?>) item) {
+                    if (!(value instanceof Long)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public byte[] encode(List<?> items) throws IOException {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(items.size() * 2 + 8);
+        long[] previous = { 0 };
+
+        if (items.get(0) instanceof Long) {
+            out.write(TYPE_IDS);
+            writeVarLong(out, items.size());
+            for (Object item : items) {
+                writeDelta(out, (Long) item, previous);
+            }
+
+        } else {
+            out.write(TYPE_ID_LISTS);
+            writeVarLong(out, items.size());
+            for (Object item : items) {
+                List<?> values = (List<?>) item;
+                writeVarLong(out, values.size());
+                for (Object value : values) {
+                    writeDelta(out, (Long) value, previous);
+                }
+            }
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public List<?> decode(byte[] bytes) throws IOException {
+
+        int[] position = { 1 };
+        long[] previous = { 0 };
+        int nbItems = (int) readVarLong(bytes, position);
+
+        if (bytes[0] == TYPE_IDS) {
+            List<Long> ids = new ArrayList<>(nbItems);
+            for (int i = 0; i < nbItems; i++) {
+                ids.add(readDelta(bytes, position, previous));
+            }
+            return ids;
+
+        } else if (bytes[0] == TYPE_ID_LISTS) {
+            List<List<Long>> idLists = new ArrayList<>(nbItems);
+            for (int i = 0; i < nbItems; i++) {
+                int nbValues = (int) readVarLong(bytes, position);
+                List<Long> ids = new ArrayList<>(nbValues);
+                for (int k = 0; k < nbValues; k++) {
+                    ids.add(readDelta(bytes, position, previous));
+                }
+                idLists.add(ids);
+            }
+            return idLists;
+        }
+        throw new IOException("Unknown id list payload type " + bytes[0]);
+    }
+
+    private static void writeDelta(ByteArrayOutputStream out, long value, long[] previous) {
+        long delta = value - previous[0];
+        previous[0] = value;
+        // Zigzag encoding, so small negative differences are also short
+        writeVarLong(out, (delta << 1) ^ (delta >> 63));
+    }
+
+    private static long readDelta(byte[] bytes, int[] position, long[] previous) throws IOException {
+        long zigzag = readVarLong(bytes, position);
+        previous[0] = previous[0] + ((zigzag >>> 1) ^ -(zigzag & 1));
+        return previous[0];
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(byte[] bytes, int[] position) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift = shift + 7) {
+            if (position[0] >= bytes.length) {
+                throw new IOException("Id list payload is truncated");
+            }
+            byte b = bytes[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Id list payload contains a malformed value");
+    }
+}
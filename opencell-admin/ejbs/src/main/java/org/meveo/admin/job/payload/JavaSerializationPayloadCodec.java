@@ -0,0 +1,52 @@
+package org.meveo.admin.job.payload;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.List;
+
+/**
+ * Encodes a batch of job data items with Java serialization. Supports any serializable items.
+ */
+public class JavaSerializationPayloadCodec implements JobPayloadCodec {
+
+    public static final String NAME = "java";
+
+    /**
+     * On WF 34 JVM 21 docker installation for some reason large objects can not be deserialized because of default filter.
+     */
+    private static final ObjectInputFilter OBJECT_INPUT_FILTER = ObjectInputFilter.Config.createFilter("maxdepth=1000;maxarray=10000000;maxbytes=1000000000");
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public boolean canEncode(List<?> items) {
+        return true;
+    }
+
+    @Override
+    public byte[] encode(List<?> items) throws IOException {
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream(); ObjectOutputStream oos = new ObjectOutputStream(baos);) {
+            oos.writeObject(items);
+            oos.flush();
+            return baos.toByteArray();
+        }
+    }
+
+    @Override
+    public List<?> decode(byte[] bytes) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            ois.setObjectInputFilter(OBJECT_INPUT_FILTER);
+            return (List<?>) ois.readObject();
+
+        } catch (ClassNotFoundException e) {
+            throw new IOException("Failed to deserialize job data items", e);
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package org.meveo.admin.job.payload;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Encodes and decodes a batch of job data items, published to a job queue when job processing is spread over cluster nodes
+ */
+public interface JobPayloadCodec {
+
+    /**
+     * @return Codec name, passed along with a message, so a receiving node can decode it
+     */
+    String getName();
+
+    /**
+     * Can a batch of items be encoded by this codec
+     *
+     * @param items Items to encode
+     * @return True if all items are of a type supported by a codec
+     */
+    boolean canEncode(List<?> items);
+
+    /**
+     * Encode a batch of items
+     *
+     * @param items Items to encode
+     * @return Encoded items
+     * @throws IOException Failed to encode items
+     */
+    byte[] encode(List<?> items) throws IOException;
+
+    /**
+     * Decode a batch of items
+     *
+     * @param bytes Encoded items
+     * @return Decoded items
+     * @throws IOException Failed to decode items
+     */
+    List<?> decode(byte[] bytes) throws IOException;
+}
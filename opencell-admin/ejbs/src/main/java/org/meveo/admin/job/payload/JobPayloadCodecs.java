@@ -0,0 +1,72 @@
+package org.meveo.admin.job.payload;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A registry of job data item codecs and compression of encoded items
+ */
+public class JobPayloadCodecs {
+
+    private static final Map<String, JobPayloadCodec> codecs = new ConcurrentHashMap<>();
+
+    static {
+        register(new JavaSerializationPayloadCodec());
+        register(new IdListPayloadCodec());
+    }
+
+    private JobPayloadCodecs() {
+    }
+
+    /**
+     * Register a codec, so messages encoded with it can be decoded
+     *
+     * @param codec Codec to register
+     */
+    public static void register(JobPayloadCodec codec) {
+        codecs.put(codec.getName(), codec);
+    }
+
+    /**
+     * Get a codec by its name
+     *
+     * @param name Codec name. If null, Java serialization codec is returned, as used by messages published before codecs were introduced.
+     * @return A codec or null if no codec is registered under that name
+     */
+    public static JobPayloadCodec getCodec(String name) {
+        return codecs.get(name != null ? name : JavaSerializationPayloadCodec.NAME);
+    }
+
+    /**
+     * Compress encoded items
+     *
+     * @param bytes Encoded items
+     * @return Compressed bytes
+     * @throws IOException Failed to compress
+     */
+    public static byte[] compress(byte[] bytes) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(bytes.length / 2);
+        try (DeflaterOutputStream out = new DeflaterOutputStream(baos)) {
+            out.write(bytes);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Decompress encoded items
+     *
+     * @param bytes Compressed bytes
+     * @return Encoded items
+     * @throws IOException Failed to decompress
+     */
+    public static byte[] decompress(byte[] bytes) throws IOException {
+        try (InflaterInputStream in = new InflaterInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.admin.sepa;
+
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.meveo.admin.exception.BusinessException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a pain.002 (customer payment status report) file with StAX, so a report of any size is processed without unmarshalling it completely in memory. Transaction statuses are
+ * processed one by one as they are read.
+ */
+public class Pain002StreamReader {
+
+	private static Logger log = LoggerFactory.getLogger(Pain002StreamReader.class);
+
+	private static final String REJECT_STS_CODE = "RJCT";
+
+	private static final String DASH_STRING = "-";
+
+	private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory.newInstance();
+
+	static {
+		INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		INPUT_FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	private Pain002StreamReader() {
+	}
+
+	/**
+	 * Read a payment status report
+	 *
+	 * @param inputStream Input stream to read from
+	 * @param fileName    File name
+	 * @return Rejected transactions, or a reject reason if a whole file was rejected
+	 * @throws XMLStreamException Failed to parse a file
+	 * @throws BusinessException  Original group information is missing or is not valid
+	 */
+	public static DDRejectFileInfos read(InputStream inputStream, String fileName) throws XMLStreamException {
+
+		DDRejectFileInfos ddRejectFileInfos = new DDRejectFileInfos();
+		ddRejectFileInfos.setFileName(fileName);
+
+		XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+		try {
+			Deque<String> path = new ArrayDeque<>();
+			boolean groupInfoRead = false;
+			String originalMessageId = null;
+			String groupStatus = null;
+			String groupReasonCode = null;
+			String originalInstructionId = null;
+			String originalEndToEndId = null;
+			String transactionStatus = null;
+
+			while (reader.hasNext()) {
+				int event = reader.next();
+
+				if (event == XMLStreamConstants.START_ELEMENT) {
+					String name = reader.getLocalName();
+					String parent = path.peek();
+
+					if ("OrgnlGrpInfAndSts".equals(parent) && "OrgnlMsgId".equals(name)) {
+						originalMessageId = reader.getElementText();
+					} else if ("OrgnlGrpInfAndSts".equals(parent) && "GrpSts".equals(name)) {
+						groupStatus = reader.getElementText();
+					} else if ("Rsn".equals(parent) && "Cd".equals(name) && path.contains("OrgnlGrpInfAndSts")) {
+						groupReasonCode = reader.getElementText();
+					} else if ("TxInfAndSts".equals(parent) && "OrgnlInstrId".equals(name)) {
+						originalInstructionId = reader.getElementText();
+					} else if ("TxInfAndSts".equals(parent) && "OrgnlEndToEndId".equals(name)) {
+						originalEndToEndId = reader.getElementText();
+					} else if ("TxInfAndSts".equals(parent) && "TxSts".equals(name)) {
+						transactionStatus = reader.getElementText();
+					} else {
+						if ("OrgnlPmtInfAndSts".equals(name) && !groupInfoRead) {
+							throw new BusinessException("OriginalGroupInformationAndStatus tag doesn't exist");
+						} else if ("TxInfAndSts".equals(name)) {
+							originalInstructionId = null;
+							originalEndToEndId = null;
+							transactionStatus = null;
+						}
+						path.push(name);
+					}
+
+				} else if (event == XMLStreamConstants.END_ELEMENT) {
+					String name = path.pop();
+
+					if ("OrgnlGrpInfAndSts".equals(name)) {
+						groupInfoRead = true;
+						if (originalMessageId == null || !originalMessageId.contains(DASH_STRING)) {
+							throw new BusinessException("Unknown dDRequestLOTref:" + originalMessageId);
+						}
+						ddRejectFileInfos.setDdRequestLotId(Long.valueOf(originalMessageId.split(DASH_STRING)[1]));
+
+						if (REJECT_STS_CODE.equals(groupStatus)) {
+							ddRejectFileInfos.setTheDDRequestFileWasRejected(true);
+							ddRejectFileInfos.setReturnStatusCode(groupReasonCode);
+							return ddRejectFileInfos;
+						}
+
+					} else if ("TxInfAndSts".equals(name)) {
+						try {
+							if (REJECT_STS_CODE.equals(transactionStatus)) {
+								ddRejectFileInfos.getListInvoiceRefsRejected().put(Long.valueOf(originalEndToEndId), REJECT_STS_CODE);
+								ddRejectFileInfos.addItemOk();
+							}
+						} catch (Exception e) {
+							ddRejectFileInfos.addItemKo();
+							log.error("Error on processSDDRejectedFile txInfAndSts.getOrgnlInstrId:{}", originalInstructionId, e);
+							ddRejectFileInfos.getListErrors().add("Error on processSDDRejectedFile txInfAndSts.getOrgnlInstrId:" + originalInstructionId);
+						}
+					}
+				}
+			}
+
+			if (!groupInfoRead) {
+				throw new BusinessException("OriginalGroupInformationAndStatus tag doesn't exist");
+			}
+			return ddRejectFileInfos;
+
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -18,9 +18,14 @@
 
 package org.meveo.admin.sepa;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
@@ -29,15 +34,12 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
 import org.meveo.admin.exception.BusinessException;
-import org.meveo.admin.sepa.jaxb.Pain002;
-import org.meveo.admin.sepa.jaxb.Pain002.CstmrPmtStsRpt;
-import org.meveo.admin.sepa.jaxb.Pain002.CstmrPmtStsRpt.OrgnlGrpInfAndSts;
-import org.meveo.admin.sepa.jaxb.Pain002.CstmrPmtStsRpt.OrgnlPmtInfAndSts;
-import org.meveo.admin.sepa.jaxb.Pain002.CstmrPmtStsRpt.OrgnlPmtInfAndSts.TxInfAndSts;
 import org.meveo.admin.sepa.jaxb.pain001.AmountType3Choice;
 import org.meveo.admin.sepa.jaxb.pain001.CreditTransferTransactionInformation10;
-import org.meveo.admin.sepa.jaxb.pain001.CustomerCreditTransferInitiationV03;
 import org.meveo.admin.sepa.jaxb.pain001.GroupHeader32;
 import org.meveo.admin.sepa.jaxb.pain001.PaymentInstructionInformation3;
 import org.meveo.admin.sepa.jaxb.pain001.PaymentMethod3Code;
@@ -48,7 +50,6 @@ import org.meveo.admin.sepa.jaxb.pain008.ActiveOrHistoricCurrencyAndAmount;
 import org.meveo.admin.sepa.jaxb.pain008.AmendmentInformationDetails6;
 import org.meveo.admin.sepa.jaxb.pain008.BranchAndFinancialInstitutionIdentification4;
 import org.meveo.admin.sepa.jaxb.pain008.CashAccount16;
-import org.meveo.admin.sepa.jaxb.pain008.CustomerDirectDebitInitiationV02;
 import org.meveo.admin.sepa.jaxb.pain008.DirectDebitTransaction6;
 import org.meveo.admin.sepa.jaxb.pain008.DirectDebitTransactionInformation9;
 import org.meveo.admin.sepa.jaxb.pain008.Document;
@@ -71,7 +72,6 @@ import org.meveo.admin.sepa.jaxb.pain008.ServiceLevel8Choice;
 import org.meveo.admin.util.ArConfig;
 import org.meveo.commons.utils.EjbUtils;
 import org.meveo.commons.utils.FileUtils;
-import org.meveo.commons.utils.JAXBUtils;
 import org.meveo.commons.utils.ParamBean;
 import org.meveo.model.admin.Seller;
 import org.meveo.model.billing.BankCoordinates;
@@ -115,6 +115,15 @@ public class SepaFile extends AbstractDDRequestBuilder {
 	/** The location of SDD schema. */
 	private static final String SDD_SCHEMA_LOCATION = "https://github.com/w2c/sepa-sdd-xml-generator/blob/master/validation_schemes/pain.008.001.02.xsd";
 
+	/** The namespace of SDD document. */
+	private static final String SDD_NAMESPACE = "urn:iso:std:iso:20022:tech:xsd:pain.008.001.02";
+
+	/** The namespace of SCT document. */
+	private static final String SCT_NAMESPACE = "urn:iso:std:iso:20022:tech:xsd:pain.001.001.03";
+
+	/** The number of DD request items fetched from DB at once. */
+	private static final int FETCH_SIZE = 500;
+
 	/** The location of SCT schema. */
 	private static final String SCT_SCHEMA_LOCATION = "https://github.com/digitick/php-sepa-xml/blob/master/tests/pain.001.001.03.xsd";
 
@@ -136,6 +145,9 @@ public class SepaFile extends AbstractDDRequestBuilder {
 	/** The underscore separator used at sepa file name. */
 	private static final String UNDERSCORE_SEPARATOR = "_";
 
+	/** A suffix of a sepa file name while the file is being written. */
+	private static final String TEMPORARY_FILE_SUFFIX = ".tmp";
+
 	/** The Constant EURO_CCY. */
 	private static final String EURO_CCY = "EUR";
 
@@ -178,7 +190,7 @@ public class SepaFile extends AbstractDDRequestBuilder {
 
 	@Override
 	public void generateDDRequestLotFile(DDRequestLOT ddRequestLot, Provider appProvider, JobExecutionResultImpl result) throws BusinessException {
-		ddRequestLot = ddRequestLOTService.findById(ddRequestLot.getId(), Arrays.asList("ddrequestItems","ddRequestBuilder","seller"));
+		ddRequestLot = ddRequestLOTService.findById(ddRequestLot.getId(), Arrays.asList("ddRequestBuilder","seller"));
 		if (ddRequestLot.getPaymentOrRefundEnum().getOperationCategoryToProcess() == OperationCategoryEnum.DEBIT) {
 			generateDDRequestLotFileForSSD(ddRequestLot, appProvider);
 		} else {
@@ -188,50 +200,15 @@ public class SepaFile extends AbstractDDRequestBuilder {
 
 	@Override
 	public DDRejectFileInfos processSDDRejectedFile(File file) throws BusinessException {
-		DDRejectFileInfos ddRejectFileInfos = new DDRejectFileInfos();
-		try {
-			ddRejectFileInfos.setFileName(file.getName());
-			Pain002 pain002 = (Pain002) JAXBUtils.unmarshaller(Pain002.class, file);
-
-			CstmrPmtStsRpt cstmrPmtStsRpt = pain002.getCstmrPmtStsRpt();
-
-			OrgnlGrpInfAndSts orgnlGrpInfAndSts = cstmrPmtStsRpt.getOrgnlGrpInfAndSts();
-
-			if (orgnlGrpInfAndSts == null) {
-				throw new BusinessException("OriginalGroupInformationAndStatus tag doesn't exist");
-			}
-
-			String dDRequestLOTref = orgnlGrpInfAndSts.getOrgnlMsgId();
-			if (dDRequestLOTref == null || !dDRequestLOTref.contains(DASH_STRING)) {
-				throw new BusinessException("Unknown dDRequestLOTref:" + dDRequestLOTref);
-			}
-			String[] dDRequestLOTrefSplited = dDRequestLOTref.split(DASH_STRING);
-
-			ddRejectFileInfos.setDdRequestLotId(Long.valueOf(dDRequestLOTrefSplited[1]));
-
-			if (orgnlGrpInfAndSts.getGrpSts() != null && REJECT_STS_CODE.equals(orgnlGrpInfAndSts.getGrpSts())) {
-				ddRejectFileInfos.setTheDDRequestFileWasRejected(true);
-				ddRejectFileInfos.setReturnStatusCode(orgnlGrpInfAndSts.getStsRsnInf().getRsn().getCd());
-				return ddRejectFileInfos;
-			}
-			OrgnlPmtInfAndSts orgnlPmtInfAndSts = cstmrPmtStsRpt.getOrgnlPmtInfAndSts();
-			for (TxInfAndSts txInfAndSts : orgnlPmtInfAndSts.getTxInfAndSts()) {
-				try {
-					if (REJECT_STS_CODE.equals(txInfAndSts.getTxSts())) {
-						ddRejectFileInfos.getListInvoiceRefsRejected().put(Long.valueOf(txInfAndSts.getOrgnlEndToEndId()), REJECT_STS_CODE);
-						ddRejectFileInfos.addItemOk();
-					}
-				} catch (Exception e) {
-					ddRejectFileInfos.addItemKo();
-					log.error("Error on processSDDRejectedFile txInfAndSts.getOrgnlInstrId:{}",txInfAndSts.getOrgnlInstrId(), e);
-					ddRejectFileInfos.getListErrors().add("Error on processSDDRejectedFile txInfAndSts.getOrgnlInstrId:" + txInfAndSts.getOrgnlInstrId());
-				}
+		try (InputStream inputStream = FileUtils.getInputStream(file)) {
+			if (inputStream == null) {
+				throw new BusinessException("Can not read file " + file.getName());
 			}
+			return Pain002StreamReader.read(inputStream, file.getName());
 
 		} catch (Exception e) {
 			throw new BusinessException(e.getMessage());
 		}
-		return ddRejectFileInfos;
 	}
 
 	@Override
@@ -286,21 +263,34 @@ public class SepaFile extends AbstractDDRequestBuilder {
 	 * @throws BusinessException the business exception
 	 */
 	private void generateDDRequestLotFileForSSD(DDRequestLOT ddRequestLot, Provider appProvider) throws BusinessException {
-		try {
-			ParamBean paramBean = ParamBean.getInstanceByProvider(appProvider.getCode());
-			Document document = new Document();
-			CustomerDirectDebitInitiationV02 message = new CustomerDirectDebitInitiationV02();
-			document.setCstmrDrctDbtInitn(message);
-			addHeader(message, ddRequestLot, appProvider);
-			for (DDRequestItem ddrequestItem : ddRequestLot.getDdrequestItems()) {
+		ParamBean paramBean = ParamBean.getInstanceByProvider(appProvider.getCode());
+		Session session = ddRequestLOTService.getEntityManager().unwrap(Session.class);
+
+		// Group header totals are known from DD request lot, so items are written as they are read.
+		// A file is written under a temporary name and renamed once complete, so a failing item does not leave a truncated file behind
+		String fileName = ddRequestLot.getFileName();
+		SepaXmlStreamWriter writer = null;
+		try (ScrollableResults<DDRequestItem> ddrequestItems = scrollDDRequestItems(session, ddRequestLot)) {
+			writer = new SepaXmlStreamWriter(getOutputStream(getTemporaryFileName(fileName)), Document.class, SDD_NAMESPACE,
+				paramBean.getProperty("sepa.schemaLocation.pain008", SDD_SCHEMA_LOCATION));
+
+			writer.startElement("CstmrDrctDbtInitn");
+			writer.writeElement("GrpHdr", createHeader(ddRequestLot, appProvider));
+			while (ddrequestItems.next()) {
+				DDRequestItem ddrequestItem = ddrequestItems.get();
 				if (!ddrequestItem.hasError()) {
-					addPaymentInformation(message, ddrequestItem, appProvider);
+					writer.writeElement("PmtInf", createPaymentInformation(ddrequestItem, appProvider));
 				}
+				session.detach(ddrequestItem);
 			}
-			JAXBUtils.marshaller(document, new File(ddRequestLot.getFileName()),
-					paramBean.getProperty("sepa.schemaLocation.pain008", SDD_SCHEMA_LOCATION));
+			writer.endElement();
+			writer.close();
+			writer = null;
+			moveTemporaryFile(fileName);
+
 		} catch (Exception e) {
 			log.error("Error on generateDDRequestLotFileForSSD {}", e);
+			discardFile(writer, fileName);
 			throw new BusinessException(e.getMessage());
 		}
 
@@ -315,75 +305,164 @@ public class SepaFile extends AbstractDDRequestBuilder {
 	 */
 	private void generateDDRequestLotFileForSCT(DDRequestLOT ddRequestLot, Provider appProvider) throws BusinessException {
 		ParamBean paramBean = ParamBean.getInstanceByProvider(appProvider.getCode());
+		Session session = ddRequestLOTService.getEntityManager().unwrap(Session.class);
 
-		org.meveo.admin.sepa.jaxb.pain001.Document document;
-		CustomerCreditTransferInitiationV03 message;
-		List<DDRequestItem> ddrequestItems = ddRequestLot.getDdrequestItems();
-		DDRequestItem ddrequestItem;
-		Long operationsByFile = ddRequestLot.getDdRequestBuilder().getNbOperationPerFile();
-		long ddRequestItemSize = ddrequestItems.size();
-		if (operationsByFile == null || operationsByFile <= 0) {
-			operationsByFile = ddRequestItemSize;
-		}
-		int filesToGenerate = ddrequestItems.isEmpty() ? 0 : (int) Math.ceil(ddRequestItemSize / (double) operationsByFile);
-		int opToGenerateByFile;
-		int generatedOps = 0;
-		int opWithErrorsByFile;
-		BigDecimal totalAmount;
+		// First pass: a group header of each file holds a number of operations and a total amount of a file, so they are calculated before writing any file
+		List<SctFileTotals> filesTotals = getSctFilesTotals(session, ddRequestLot);
+
+		// Second pass: write files, skipping the ones without any operation without errors
 		List<String> generatedFilesNames = new ArrayList<>();
-		String fileName;
-		for (int fileNumber = 1; fileNumber <= filesToGenerate; fileNumber++) {
-			try {
-				fileName = getDDFileName(ddRequestLot, appProvider);
-				document = new org.meveo.admin.sepa.jaxb.pain001.Document();
-				message = new CustomerCreditTransferInitiationV03();
-				document.setCstmrCdtTrfInitn(message);
-				addSctHeader(message, ddRequestLot, appProvider, fileNumber);
-				totalAmount = BigDecimal.ZERO;
-				opToGenerateByFile = 0;
-				opWithErrorsByFile = 0;
-				while (generatedOps < ddRequestItemSize && opToGenerateByFile < operationsByFile) {
-					ddrequestItem = ddrequestItems.get(generatedOps);
-					totalAmount = totalAmount.add(ddrequestItem.getAmount());
-					if (!ddrequestItem.hasError()) {
-						addSctPaymentInformation(message, ddrequestItem, appProvider);
-					} else {
-						log.error("ddrequestItem with id ={} has Errors :{} . The file {} will not contain all payment informations.", ddrequestItem.getId(), ddrequestItem.getErrorMsg(), fileName);
-						opWithErrorsByFile++;
+		try (ScrollableResults<DDRequestItem> ddrequestItems = scrollDDRequestItems(session, ddRequestLot)) {
+			for (int fileNumber = 1; fileNumber <= filesTotals.size(); fileNumber++) {
+				SctFileTotals fileTotals = filesTotals.get(fileNumber - 1);
+				String fileName = getDDFileName(ddRequestLot, appProvider);
+				boolean generateFile = fileTotals.nbOperations > fileTotals.nbOperationsWithErrors;
+
+				SepaXmlStreamWriter writer = null;
+				try {
+					if (generateFile) {
+						// the Pain001 jaxb classes are generated from the xsd located at:
+						// https://www.iso20022.org/documents/messages/1_0_version/pain/schemas/pain.001.001.03.zip
+						writer = new SepaXmlStreamWriter(getOutputStream(getTemporaryFileName(fileName)), org.meveo.admin.sepa.jaxb.pain001.Document.class, SCT_NAMESPACE,
+							paramBean.getProperty("sepa.schemaLocation.pain001", SCT_SCHEMA_LOCATION));
+						writer.startElement("CstmrCdtTrfInitn");
+						GroupHeader32 groupHeader = createSctHeader(ddRequestLot, appProvider, fileNumber);
+						groupHeader.setCtrlSum(fileTotals.totalAmount.setScale(2, RoundingMode.HALF_UP));
+						groupHeader.setNbOfTxs(String.valueOf(fileTotals.nbOperations));
+						writer.writeElement("GrpHdr", groupHeader);
+					}
+
+					for (int i = 0; i < fileTotals.nbOperations && ddrequestItems.next(); i++) {
+						DDRequestItem ddrequestItem = ddrequestItems.get();
+						if (!ddrequestItem.hasError()) {
+							if (writer != null) {
+								writer.writeElement("PmtInf", createSctPaymentInformation(ddrequestItem, appProvider));
+							}
+						} else {
+							log.error("ddrequestItem with id ={} has Errors :{} . The file {} will not contain all payment informations.", ddrequestItem.getId(), ddrequestItem.getErrorMsg(), fileName);
+						}
+						session.detach(ddrequestItem);
+					}
+
+					if (writer != null) {
+						writer.endElement();
+						writer.close();
+						writer = null;
+						moveTemporaryFile(fileName);
+						generatedFilesNames.add(fileName);
 					}
-					opToGenerateByFile++;
-					generatedOps++;
+				} catch (Exception e) {
+					log.error(e.getMessage(), e);
+					discardFile(writer, fileName);
+					throw new BusinessException(e.getMessage());
 				}
-				if (opToGenerateByFile > opWithErrorsByFile) { // The file is generated only if it contains at least one operation without
-																// errors
-					message.getGrpHdr().setCtrlSum(totalAmount.setScale(2, RoundingMode.HALF_UP));
-					message.getGrpHdr().setNbOfTxs(String.valueOf(opToGenerateByFile));
-					// the Pain001 jaxb classes are generated from the xsd located at:
-					// https://www.iso20022.org/documents/messages/1_0_version/pain/schemas/pain.001.001.03.zip
-					JAXBUtils.marshaller(document, new File(fileName),
-							paramBean.getProperty("sepa.schemaLocation.pain001", SCT_SCHEMA_LOCATION));
-					generatedFilesNames.add(fileName);
+			}
+		}
+		ddRequestLot.setFileName(String.join(COMMA_STRING, generatedFilesNames));
+	}
+
+	/**
+	 * Calculate a number of operations and a total amount of each SCT file to generate, reading only amounts of DD request items.
+	 *
+	 * @param session      Hibernate session
+	 * @param ddRequestLot the dd request lot
+	 * @return Totals of each file to generate
+	 */
+	private List<SctFileTotals> getSctFilesTotals(Session session, DDRequestLOT ddRequestLot) {
+		Long operationsByFile = ddRequestLot.getDdRequestBuilder().getNbOperationPerFile();
+
+		List<SctFileTotals> filesTotals = new ArrayList<>();
+		SctFileTotals fileTotals = null;
+		try (ScrollableResults<Object[]> amounts = session.createNamedQuery("DDRequestItem.listAmountsByDDRequestLot", Object[].class).setParameter("ddRequestLotId", ddRequestLot.getId())
+			.setReadOnly(true).setFetchSize(FETCH_SIZE).scroll(ScrollMode.FORWARD_ONLY)) {
+			while (amounts.next()) {
+				if (fileTotals == null || (operationsByFile != null && operationsByFile > 0 && fileTotals.nbOperations >= operationsByFile)) {
+					fileTotals = new SctFileTotals();
+					filesTotals.add(fileTotals);
+				}
+				Object[] amountAndError = amounts.get();
+				fileTotals.nbOperations++;
+				fileTotals.totalAmount = fileTotals.totalAmount.add((BigDecimal) amountAndError[0]);
+				if (StringUtils.isNotBlank((String) amountAndError[1])) {
+					fileTotals.nbOperationsWithErrors++;
 				}
-			} catch (Exception e) {
-				log.error(e.getMessage(), e);
-				throw new BusinessException(e.getMessage());
 			}
+		}
+		return filesTotals;
+	}
+
+	/**
+	 * Open a forward only cursor over DD request items of a lot, ordered by id
+	 *
+	 * @param session      Hibernate session
+	 * @param ddRequestLot the dd request lot
+	 * @return DD request items cursor
+	 */
+	private ScrollableResults<DDRequestItem> scrollDDRequestItems(Session session, DDRequestLOT ddRequestLot) {
+		return session.createNamedQuery("DDRequestItem.listByDDRequestLot", DDRequestItem.class).setParameter("ddRequestLotId", ddRequestLot.getId()).setReadOnly(true)
+			.setFetchSize(FETCH_SIZE).scroll(ScrollMode.FORWARD_ONLY);
+	}
 
+	private OutputStream getOutputStream(String fileName) {
+		OutputStream outputStream = FileUtils.getOutputStream(fileName, false);
+		if (outputStream == null) {
+			throw new BusinessException("Can not write file " + fileName);
 		}
-		ddRequestLot.setFileName(String.join(COMMA_STRING, generatedFilesNames));
+		return new BufferedOutputStream(outputStream);
+	}
+
+	private String getTemporaryFileName(String fileName) {
+		return fileName + TEMPORARY_FILE_SUFFIX;
 	}
 
 	/**
-	 * Adds the header of SDD file.
+	 * Give a completely written file its final name
+	 *
+	 * @param fileName Final file name
+	 */
+	private void moveTemporaryFile(String fileName) {
+		FileUtils.moveFile(getTemporaryFileName(fileName), fileName, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Discard a file that could not be written completely, without closing its document
+	 *
+	 * @param writer   Writer of a file if it is still open
+	 * @param fileName Final file name
+	 */
+	private void discardFile(SepaXmlStreamWriter writer, String fileName) {
+		if (writer != null) {
+			writer.abort();
+		}
+		try {
+			FileUtils.delete(getTemporaryFileName(fileName));
+		} catch (IOException e) {
+			log.warn("Failed to delete incomplete SEPA file {}", getTemporaryFileName(fileName), e);
+		}
+	}
+
+	/**
+	 * A number of operations and a total amount of a SCT file
+	 */
+	private static class SctFileTotals {
+
+		private int nbOperations;
+
+		private int nbOperationsWithErrors;
+
+		private BigDecimal totalAmount = BigDecimal.ZERO;
+	}
+
+	/**
+	 * Creates the header of SDD file.
 	 *
-	 * @param message      the SDD message
 	 * @param ddRequestLOT the dd request LOT
 	 * @param appProvider  the provider
+	 * @return the group header
 	 */
-	private void addHeader(CustomerDirectDebitInitiationV02 message, DDRequestLOT ddRequestLOT, Provider appProvider){
+	private GroupHeader39 createHeader(DDRequestLOT ddRequestLOT, Provider appProvider){
 
 		GroupHeader39 groupHeader = new GroupHeader39();
-		message.setGrpHdr(groupHeader);
 		groupHeader.setMsgId(ArConfig.getDDRequestHeaderReference() + DASH_STRING + ddRequestLOT.getId());
 		try {
 			groupHeader.setCreDtTm(DateUtils.dateToXMLGregorianCalendar(new Date()));
@@ -400,22 +479,22 @@ public class SepaFile extends AbstractDDRequestBuilder {
 			initgPty.setNm(appProvider.getDescription());
 		}
 		groupHeader.setInitgPty(initgPty);
+		return groupHeader;
 	}
 
 	/**
-	 * Adds the payment information of SDD file.
+	 * Creates the payment information of SDD file.
 	 *
-	 * @param message       the SDD message
 	 * @param dDRequestItem the dd request item
 	 * @param appProvider   the provider
+	 * @return the payment information
 	 * @throws Exception the exception
 	 */
-	private void addPaymentInformation(CustomerDirectDebitInitiationV02 message, DDRequestItem dDRequestItem, Provider appProvider) throws Exception {
+	private PaymentInstructionInformation4 createPaymentInformation(DDRequestItem dDRequestItem, Provider appProvider) throws Exception {
 
 		log.info("addPaymentInformation dDRequestItem id={}", dDRequestItem.getId());
 		ParamBean paramBean = ParamBean.getInstanceByProvider(appProvider.getCode());
 		PaymentInstructionInformation4 paymentInformation = new PaymentInstructionInformation4();
-		message.getPmtInf().add(paymentInformation);
 		paymentInformation.setPmtInfId(ArConfig.getDDRequestHeaderReference() + DASH_STRING + dDRequestItem.getId());
 		paymentInformation.setPmtMtd(PaymentMethod2Code.DD);
 		paymentInformation.setNbOfTxs(NUMBER_OF_TRANSACTIONS_1);
@@ -470,6 +549,7 @@ public class SepaFile extends AbstractDDRequestBuilder {
 		other.setSchmeNm(schemeName);
 		schemeName.setPrtry(SEPA_SERVICE_LEVEL_CD);
 		addTransaction(dDRequestItem, paymentInformation);
+		return paymentInformation;
 	}
 
 	/**
@@ -569,19 +649,17 @@ public class SepaFile extends AbstractDDRequestBuilder {
 	}
 
 	/**
-	 * Adds the payment information for SCT file.
+	 * Creates the payment information for SCT file.
 	 *
-	 * @param message       the SCT message
 	 * @param ddrequestItem the ddrequest item
 	 * @param appProvider   the provider
-	 * @throws Exception the exception
+	 * @return the payment information
 	 */
-	private void addSctPaymentInformation(CustomerCreditTransferInitiationV03 message, DDRequestItem ddrequestItem, Provider appProvider) {
+	private PaymentInstructionInformation3 createSctPaymentInformation(DDRequestItem ddrequestItem, Provider appProvider) {
 
 		log.info("addPaymentInformation dDRequestItem id={} ", ddrequestItem.getId());
 
 		PaymentInstructionInformation3 paymentInformation = new PaymentInstructionInformation3();
-		message.getPmtInf().add(paymentInformation);
 		paymentInformation.setPmtInfId(ArConfig.getDDRequestHeaderReference() + DASH_STRING + ddrequestItem.getId());
 		paymentInformation.setPmtMtd(PaymentMethod3Code.TRF);
 		paymentInformation.setBtchBookg(true);
@@ -642,21 +720,20 @@ public class SepaFile extends AbstractDDRequestBuilder {
 		financialInstitutionIdentification.setBIC(bankCoordinates.getBic());
 		paymentInformation.setChrgBr(org.meveo.admin.sepa.jaxb.pain001.ChargeBearerType1Code.SLEV);
 		addSctTransaction(ddrequestItem, paymentInformation);
+		return paymentInformation;
 	}
 
 	/**
-	 * Adds the header for SCT file.
+	 * Creates the header for SCT file.
 	 *
-	 * @param message      the SCT message
 	 * @param ddRequestLot the dd request lot
 	 * @param appProvider  the provider
 	 * @param fileNumber   the file number: used when generatin severals files for
 	 *                     one ddRequest lot
-	 * @throws Exception the exception
+	 * @return the group header
 	 */
-	private void addSctHeader(CustomerCreditTransferInitiationV03 message, DDRequestLOT ddRequestLot, Provider appProvider, int fileNumber) {
+	private GroupHeader32 createSctHeader(DDRequestLOT ddRequestLot, Provider appProvider, int fileNumber) {
 		GroupHeader32 groupHeader = new GroupHeader32();
-		message.setGrpHdr(groupHeader);
 		groupHeader.setMsgId(ArConfig.getSCTRequestHeaderRefrence() + DASH_STRING + ddRequestLot.getId() + DASH_STRING + fileNumber);
 		try{
 			groupHeader.setCreDtTm(DateUtils.dateToXMLGregorianCalendar(new Date()));
@@ -672,7 +749,7 @@ public class SepaFile extends AbstractDDRequestBuilder {
 		}
 		
 		groupHeader.setInitgPty(initgPty);
-
+		return groupHeader;
 	}
 
 	/**
@@ -0,0 +1,154 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.admin.sepa;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.xml.XMLConstants;
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import jakarta.xml.bind.JAXBContext;
+import jakarta.xml.bind.JAXBElement;
+import jakarta.xml.bind.JAXBException;
+import jakarta.xml.bind.Marshaller;
+
+/**
+ * Writes a SEPA document to an output stream element by element, so a file of any size is written without building a complete JAXB document in memory. Element envelopes are
+ * written with StAX and repeated blocks (e.g. a group header or payment information) are marshalled one by one as JAXB fragments.
+ */
+public class SepaXmlStreamWriter implements AutoCloseable {
+
+	private static final String ENCODING = "UTF-8";
+
+	private static final String DOCUMENT_ELEMENT = "Document";
+
+	/** JAXB contexts are expensive to create and are thread safe */
+	private static final Map<Class<?>, JAXBContext> CONTEXTS = new ConcurrentHashMap<>();
+
+	private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+	private final OutputStream outputStream;
+
+	private final String namespace;
+
+	private final XMLStreamWriter writer;
+
+	private final Marshaller marshaller;
+
+	/**
+	 * Open a document and write a Document element
+	 *
+	 * @param outputStream   Output stream to write to. Is closed when the writer is closed.
+	 * @param documentClass  JAXB class of a Document element
+	 * @param namespace      Namespace of a document
+	 * @param schemaLocation Schema location to add to a Document element. Optional.
+	 * @throws JAXBException      Failed to initialize a JAXB marshaller
+	 * @throws XMLStreamException Failed to write to an output stream
+	 */
+	public SepaXmlStreamWriter(OutputStream outputStream, Class<?> documentClass, String namespace, String schemaLocation) throws JAXBException, XMLStreamException {
+		this.outputStream = outputStream;
+		this.namespace = namespace;
+
+		JAXBContext jaxbContext = CONTEXTS.get(documentClass);
+		if (jaxbContext == null) {
+			jaxbContext = JAXBContext.newInstance(documentClass);
+			CONTEXTS.put(documentClass, jaxbContext);
+		}
+		marshaller = jaxbContext.createMarshaller();
+		marshaller.setProperty(Marshaller.JAXB_FRAGMENT, Boolean.TRUE);
+
+		writer = OUTPUT_FACTORY.createXMLStreamWriter(outputStream, ENCODING);
+		writer.writeStartDocument(ENCODING, "1.0");
+		writer.setDefaultNamespace(namespace);
+		writer.writeStartElement(namespace, DOCUMENT_ELEMENT);
+		writer.writeDefaultNamespace(namespace);
+		if (schemaLocation != null) {
+			writer.writeNamespace("xsi", XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI);
+			writer.writeAttribute(XMLConstants.W3C_XML_SCHEMA_INSTANCE_NS_URI, "schemaLocation", schemaLocation);
+		}
+	}
+
+	/**
+	 * Open an element. It is closed by {@link #endElement()}.
+	 *
+	 * @param localName Element name
+	 * @throws XMLStreamException Failed to write to an output stream
+	 */
+	public void startElement(String localName) throws XMLStreamException {
+		writer.writeStartElement(namespace, localName);
+	}
+
+	/**
+	 * Close a last opened element
+	 *
+	 * @throws XMLStreamException Failed to write to an output stream
+	 */
+	public void endElement() throws XMLStreamException {
+		writer.writeEndElement();
+	}
+
+	/**
+	 * Marshal a JAXB object as an element
+	 *
+	 * @param localName Element name
+	 * @param value     JAXB object
+	 * @throws JAXBException Failed to marshal an object
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public void writeElement(String localName, Object value) throws JAXBException {
+		marshaller.marshal(new JAXBElement(new QName(namespace, localName), value.getClass(), value), writer);
+	}
+
+	/**
+	 * Close an output stream without closing open elements and a document. Used when a document could not be written completely, so it is not mistaken for a complete one.
+	 */
+	public void abort() {
+		try {
+			writer.close();
+		} catch (XMLStreamException e) {
+			// Output stream is closed anyway
+		} finally {
+			try {
+				outputStream.close();
+			} catch (IOException e) {
+				// Nothing to do, a document is discarded
+			}
+		}
+	}
+
+	/**
+	 * Close all open elements, a document and an output stream
+	 */
+	@Override
+	public void close() throws XMLStreamException, IOException {
+		try {
+			writer.writeEndDocument();
+			writer.flush();
+			writer.close();
+		} finally {
+			outputStream.close();
+		}
+	}
+}
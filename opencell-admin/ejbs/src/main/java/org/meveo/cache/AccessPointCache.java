@@ -0,0 +1,188 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.cache;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.meveo.admin.exception.BusinessException;
+import org.meveo.commons.utils.ParamBean;
+import org.meveo.commons.utils.ParamBeanFactory;
+import org.meveo.jpa.EntityManagerWrapper;
+import org.meveo.jpa.MeveoJpa;
+import org.meveo.security.CurrentUser;
+import org.meveo.security.MeveoUser;
+import org.slf4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+
+/**
+ * A local (per cluster node) cache of active access points by access user identifier. Allows to resolve an access point of each mediated event in memory instead of running a
+ * query for each event.<br/>
+ * <br/>
+ * When "mediation.accessPointPrefixMatch" setting is enabled, access code is matched to the access point with the longest access user identifier that is a prefix of the access
+ * code (e.g. an access point "3361" matches an access code "33612345678"). All active access points are then loaded into a single prefix tree.<br/>
+ * <br/>
+ * Cache is invalidated when Access point is modified via AccessService - locally and on other cluster nodes via ClusterEventMonitor. As access points might also be modified by
+ * other means (e.g. bulk updates), cached values expire after a configurable period.
+ */
+@Singleton
+@Lock(LockType.READ)
+public class AccessPointCache {
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    @MeveoJpa
+    private EntityManagerWrapper emWrapper;
+
+    @Inject
+    @CurrentUser
+    private MeveoUser currentUser;
+
+    private static boolean useAccessPointCache = true;
+
+    private static boolean prefixMatch = false;
+
+    /**
+     * Active access points ordered by a validity start date. Key format: &lt;Access.accessUserId&gt;, value: a list of access points, empty if none were found
+     */
+    private static Cache<CacheKeyStr, List<AccessPointInterval>> accessPoints;
+
+    /**
+     * A prefix tree of all active access points. Key format: &lt;provider code&gt;, value: a prefix tree
+     */
+    private static Cache<CacheKeyStr, AccessPointTrie> accessPointTries;
+
+    static {
+        ParamBean tmpParamBean = ParamBeanFactory.getAppScopeInstance();
+        useAccessPointCache = Boolean.parseBoolean(tmpParamBean.getProperty("cache.cacheAccessPoints", "true"));
+        prefixMatch = Boolean.parseBoolean(tmpParamBean.getProperty("mediation.accessPointPrefixMatch", "false"));
+        int expireAfter = tmpParamBean.getPropertyAsInteger("cache.cacheAccessPoints.expireAfterSeconds", 300);
+        accessPoints = CacheBuilder.newBuilder().maximumSize(tmpParamBean.getPropertyAsInteger("cache.cacheAccessPoints.size", 100000)).expireAfterWrite(expireAfter, TimeUnit.SECONDS).build();
+        accessPointTries = CacheBuilder.newBuilder().expireAfterWrite(expireAfter, TimeUnit.SECONDS).build();
+    }
+
+    /**
+     * @return True if access point cache is enabled
+     */
+    public static boolean isEnabled() {
+        return useAccessPointCache;
+    }
+
+    /**
+     * @return True if access code is matched to access points by the longest prefix
+     */
+    public static boolean isPrefixMatch() {
+        return prefixMatch;
+    }
+
+    /**
+     * Get active access points matching a given access code, either by an exact access user identifier or, when prefix matching is enabled, by the longest access user identifier
+     * that is a prefix of the access code. Access points are read from DB on a first request.
+     *
+     * @param accessCode Access code
+     * @param eventDate Event date. Used to choose between prefix matches of a different length. Optional.
+     * @return A list of access points ordered by a validity start date, or an empty list if none were found
+     */
+    public List<AccessPointInterval> getAccessPoints(String accessCode, Date eventDate) {
+
+        if (accessCode == null) {
+            return List.of();
+        }
+
+        if (prefixMatch) {
+            return getAccessPointTrie().getLongestPrefixMatch(accessCode, eventDate);
+        }
+
+        try {
+            return accessPoints.get(new CacheKeyStr(currentUser.getProviderCode(), accessCode), () -> {
+
+                List<Object[]> results = emWrapper.getEntityManager().createNamedQuery("Access.getAccessPointIntervalsByUserId", Object[].class).setParameter("accessUserId", accessCode)
+                    .getResultList();
+
+                return AccessPointInterval.sortByStartDate(toIntervals(results));
+            });
+
+        } catch (ExecutionException e) {
+            throw new BusinessException("Failed to load access points " + accessCode, e.getCause());
+        }
+    }
+
+    /**
+     * Get a prefix tree of all active access points. Access points are read from DB on a first request.
+     *
+     * @return A prefix tree of access points
+     */
+    private AccessPointTrie getAccessPointTrie() {
+
+        try {
+            return accessPointTries.get(new CacheKeyStr(currentUser.getProviderCode(), null), () -> {
+
+                List<Object[]> results = emWrapper.getEntityManager().createNamedQuery("Access.getActiveAccessPointIntervals", Object[].class).getResultList();
+
+                AccessPointTrie trie = new AccessPointTrie(toIntervals(results));
+                log.debug("Loaded {} active access points for prefix matching", trie.size());
+                return trie;
+            });
+
+        } catch (ExecutionException e) {
+            throw new BusinessException("Failed to load access points for prefix matching", e.getCause());
+        }
+    }
+
+    /**
+     * Convert query results of "Access.getAccessPointIntervalsByUserId" or "Access.getActiveAccessPointIntervals" queries to access point intervals
+     */
+    private static List<AccessPointInterval> toIntervals(List<Object[]> results) {
+        List<AccessPointInterval> intervals = new ArrayList<>(results.size());
+        for (Object[] result : results) {
+            intervals.add(new AccessPointInterval((Long) result[0], (String) result[1], (Long) result[2], (Date) result[3], (Date) result[4]));
+        }
+        return intervals;
+    }
+
+    /**
+     * Remove access points with a given access user identifier from cache. A prefix tree, if any, is rebuilt on a next request.
+     *
+     * @param accessUserId Access user identifier
+     */
+    public void evict(String accessUserId) {
+        accessPoints.invalidate(new CacheKeyStr(currentUser.getProviderCode(), accessUserId));
+        accessPointTries.invalidate(new CacheKeyStr(currentUser.getProviderCode(), null));
+    }
+
+    /**
+     * Remove all access points from cache
+     */
+    public void clear() {
+        accessPoints.invalidateAll();
+        accessPointTries.invalidateAll();
+    }
+}
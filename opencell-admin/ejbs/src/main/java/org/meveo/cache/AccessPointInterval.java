@@ -0,0 +1,140 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * A cached access point - its identifier, parent subscription and validity period
+ */
+public class AccessPointInterval {
+
+    /**
+     * Orders intervals by a validity start date, intervals without a start date first
+     */
+    private static final Comparator<AccessPointInterval> START_DATE_ORDER = Comparator.comparing(AccessPointInterval::getStartDate, Comparator.nullsFirst(Comparator.naturalOrder()));
+
+    private Long accessId;
+
+    private String accessUserId;
+
+    private Long subscriptionId;
+
+    private Date startDate;
+
+    private Date endDate;
+
+    /**
+     * Constructor
+     *
+     * @param accessId Access point identifier
+     * @param accessUserId Access user identifier
+     * @param subscriptionId Parent subscription identifier
+     * @param startDate Validity start date. Optional.
+     * @param endDate Validity end date, exclusive. Optional.
+     */
+    public AccessPointInterval(Long accessId, String accessUserId, Long subscriptionId, Date startDate, Date endDate) {
+        this.accessId = accessId;
+        this.accessUserId = accessUserId;
+        this.subscriptionId = subscriptionId;
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    /**
+     * @return Access point identifier
+     */
+    public Long getAccessId() {
+        return accessId;
+    }
+
+    /**
+     * @return Access user identifier
+     */
+    public String getAccessUserId() {
+        return accessUserId;
+    }
+
+    /**
+     * @return Parent subscription identifier
+     */
+    public Long getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    /**
+     * @return Validity start date
+     */
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    /**
+     * @return Validity end date, exclusive
+     */
+    public Date getEndDate() {
+        return endDate;
+    }
+
+    /**
+     * Check if access point is valid on a given date, same as MEVEOCdrParser.convertCdrToEdr() does
+     *
+     * @param date Date to check
+     * @return True if date falls within a validity period
+     */
+    public boolean isValidOn(Date date) {
+        return (startDate == null || startDate.getTime() <= date.getTime()) && (endDate == null || endDate.getTime() > date.getTime());
+    }
+
+    /**
+     * Sort intervals by a validity start date
+     *
+     * @param intervals Intervals to sort
+     * @return An immutable list of intervals ordered by a validity start date
+     */
+    public static List<AccessPointInterval> sortByStartDate(List<AccessPointInterval> intervals) {
+        List<AccessPointInterval> sorted = new ArrayList<>(intervals);
+        sorted.sort(START_DATE_ORDER);
+        return Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * Check if any of date sorted intervals is valid on a given date
+     *
+     * @param intervals Intervals ordered by a validity start date
+     * @param date Date to check
+     * @return True if any interval is valid on a given date
+     */
+    public static boolean isAnyValidOn(List<AccessPointInterval> intervals, Date date) {
+        for (AccessPointInterval interval : intervals) {
+            // Intervals further on start later than a given date
+            if (interval.startDate != null && interval.startDate.getTime() > date.getTime()) {
+                return false;
+            }
+            if (interval.isValidOn(date)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An immutable prefix tree of access points by access user identifier. Allows to match an access code to an access point covering a range of numbers, e.g. an access point
+ * "3361" matches access codes "33612345678" and "3361", while a more specific access point "336123" takes precedence for "33612345678".
+ */
+public class AccessPointTrie {
+
+    private final Node root;
+
+    private final int size;
+
+    /**
+     * Constructor
+     *
+     * @param intervals Access points to index
+     */
+    public AccessPointTrie(List<AccessPointInterval> intervals) {
+
+        Map<String, List<AccessPointInterval>> intervalsByUserId = new TreeMap<>();
+        for (AccessPointInterval interval : intervals) {
+            if (interval.getAccessUserId() != null) {
+                intervalsByUserId.computeIfAbsent(interval.getAccessUserId(), k -> new ArrayList<>()).add(interval);
+            }
+        }
+
+        // Access user ids are sorted, so all ids sharing a prefix are consecutive
+        List<String> accessUserIds = new ArrayList<>(intervalsByUserId.keySet());
+        root = buildNode(accessUserIds, 0, accessUserIds.size(), 0, intervalsByUserId);
+        size = intervals.size();
+    }
+
+    /**
+     * Build a node for a range of sorted access user ids sharing the same prefix of a given length
+     */
+    private static Node buildNode(List<String> accessUserIds, int from, int to, int depth, Map<String, List<AccessPointInterval>> intervalsByUserId) {
+
+        List<AccessPointInterval> intervals = null;
+        if (from < to && accessUserIds.get(from).length() == depth) {
+            intervals = AccessPointInterval.sortByStartDate(intervalsByUserId.get(accessUserIds.get(from)));
+            from++;
+        }
+
+        List<Character> keys = new ArrayList<>();
+        List<Node> children = new ArrayList<>();
+        int start = from;
+        while (start < to) {
+            char c = accessUserIds.get(start).charAt(depth);
+            int end = start + 1;
+            while (end < to && accessUserIds.get(end).charAt(depth) == c) {
+                end++;
+            }
+            keys.add(c);
+            children.add(buildNode(accessUserIds, start, end, depth + 1, intervalsByUserId));
+            start = end;
+        }
+
+        char[] keyArray = new char[keys.size()];
+        for (int i = 0; i < keyArray.length; i++) {
+            keyArray[i] = keys.get(i);
+        }
+        return new Node(keyArray, children.toArray(new Node[0]), intervals);
+    }
+
+    /**
+     * @return A number of access points in a tree
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Find access points with the longest access user identifier that is a prefix of a given access code. Access points valid on a given date take precedence over a longer
+     * match that is not valid on that date.
+     *
+     * @param accessCode Access code to match
+     * @param date Date to check access point validity on. Optional.
+     * @return Access points ordered by a validity start date or an empty list if no access point matches
+     */
+    public List<AccessPointInterval> getLongestPrefixMatch(String accessCode, Date date) {
+
+        List<AccessPointInterval> longestMatch = null;
+        List<AccessPointInterval> longestValidMatch = null;
+
+        Node node = root;
+        int depth = 0;
+        while (node != null) {
+            if (node.intervals != null) {
+                longestMatch = node.intervals;
+                if (date != null && AccessPointInterval.isAnyValidOn(node.intervals, date)) {
+                    longestValidMatch = node.intervals;
+                }
+            }
+            if (depth == accessCode.length()) {
+                break;
+            }
+            node = node.getChild(accessCode.charAt(depth));
+            depth++;
+        }
+
+        if (longestValidMatch != null) {
+            return longestValidMatch;
+        }
+        return longestMatch != null ? longestMatch : Collections.emptyList();
+    }
+
+    /**
+     * A tree node with child nodes sorted by a character
+     */
+    private static class Node {
+
+        private final char[] keys;
+
+        private final Node[] children;
+
+        /**
+         * Access points with an access user identifier ending at this node. Null if none.
+         */
+        private final List<AccessPointInterval> intervals;
+
+        private Node(char[] keys, Node[] children, List<AccessPointInterval> intervals) {
+            this.keys = keys;
+            this.children = children;
+            this.intervals = intervals;
+        }
+
+        private Node getChild(char c) {
+            int position = Arrays.binarySearch(keys, c);
+            return position >= 0 ? children[position] : null;
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.cache;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.meveo.admin.exception.BusinessException;
+import org.meveo.commons.utils.ParamBean;
+import org.meveo.commons.utils.ParamBeanFactory;
+import org.meveo.jpa.EntityManagerWrapper;
+import org.meveo.jpa.MeveoJpa;
+import org.meveo.model.article.ArticleMappingLine;
+import org.meveo.security.CurrentUser;
+import org.meveo.security.MeveoUser;
+import org.meveo.service.billing.impl.article.ArticleMappingDecisionTable;
+import org.meveo.service.metrics.BillingMetrics;
+import org.slf4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+
+/**
+ * A local (per cluster node) cache of article mapping lines compiled to a decision table. Allows to resolve an accounting article in memory instead of running up to nine queries
+ * for each charge. Mapping key and expression language attribute values are still evaluated for each resolution.<br/>
+ * <br/>
+ * Cache is invalidated when Article mapping line is modified - locally and on other cluster nodes via ClusterEventMonitor. As mapping lines might also be modified by other means
+ * (e.g. bulk updates or attribute changes), cached values expire after a configurable period.
+ */
+@Singleton
+@Lock(LockType.READ)
+public class ArticleMappingCache {
+
+    private static final String DECISION_TABLE_KEY = "articleMappings";
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    @MeveoJpa
+    private EntityManagerWrapper emWrapper;
+
+    @Inject
+    @CurrentUser
+    private MeveoUser currentUser;
+
+    private static boolean useArticleMappingCache = true;
+
+    /**
+     * Article mapping decision table per provider
+     */
+    private static Cache<CacheKeyStr, ArticleMappingDecisionTable> decisionTables;
+
+    static {
+        ParamBean tmpParamBean = ParamBeanFactory.getAppScopeInstance();
+        useArticleMappingCache = Boolean.parseBoolean(tmpParamBean.getProperty("cache.cacheArticleMappings", "true"));
+        decisionTables = CacheBuilder.newBuilder().maximumSize(tmpParamBean.getPropertyAsInteger("cache.cacheArticleMappings.size", 100))
+            .expireAfterWrite(tmpParamBean.getPropertyAsInteger("cache.cacheArticleMappings.expireAfterSeconds", 300), TimeUnit.SECONDS).recordStats().build();
+        BillingMetrics.monitorCache("articleMappings", decisionTables);
+    }
+
+    /**
+     * @return True if article mapping cache is enabled
+     */
+    public static boolean isEnabled() {
+        return useArticleMappingCache;
+    }
+
+    /**
+     * Get article mapping decision table of a current provider. Article mapping lines are read from DB on a first request.
+     *
+     * @param multiValuesAttributeSeparator A separator of multiple attribute values
+     * @return Article mapping decision table
+     */
+    public ArticleMappingDecisionTable getDecisionTable(String multiValuesAttributeSeparator) {
+
+        try {
+            return decisionTables.get(new CacheKeyStr(currentUser.getProviderCode(), DECISION_TABLE_KEY), () -> {
+
+                List<ArticleMappingLine> lines = emWrapper.getEntityManager().createNamedQuery("ArticleMappingLine.findAllWithAttributeMappings", ArticleMappingLine.class).getResultList();
+
+                ArticleMappingDecisionTable loaded = new ArticleMappingDecisionTable(lines, multiValuesAttributeSeparator);
+                log.debug("Loaded {} article mapping lines to a decision table", loaded.getNbLines());
+                return loaded;
+            });
+
+        } catch (ExecutionException e) {
+            throw new BusinessException("Failed to load article mapping lines", e.getCause());
+        }
+    }
+
+    /**
+     * Remove all article mapping decision tables from cache
+     */
+    public void clear() {
+        decisionTables.invalidateAll();
+    }
+}
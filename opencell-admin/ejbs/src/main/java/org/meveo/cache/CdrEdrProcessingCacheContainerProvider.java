@@ -20,6 +20,7 @@ package org.meveo.cache;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -71,6 +72,9 @@ public class CdrEdrProcessingCacheContainerProvider implements CacheContainerPro
     @Inject
     private ProviderService providerService;
 
+    @Inject
+    private EdrDeduplicationFilter edrDeduplicationFilter;
+
     @Inject
     @CurrentUser
     protected MeveoUser currentUser;
@@ -80,7 +84,13 @@ public class CdrEdrProcessingCacheContainerProvider implements CacheContainerPro
      */
     private void populateEdrCache() {
 
-        boolean useInMemoryDeduplication = EdrService.DeduplicateEDRTypeEnum.MEMORY.name().equalsIgnoreCase(paramBean.getProperty("mediation.deduplicate", EdrService.DeduplicateEDRTypeEnum.MEMORY.name()));
+        String deduplicateType = paramBean.getProperty("mediation.deduplicate", EdrService.DeduplicateEDRTypeEnum.MEMORY.name());
+        if (EdrService.DeduplicateEDRTypeEnum.BLOOM.name().equalsIgnoreCase(deduplicateType)) {
+            populateEdrBloomFilter();
+            return;
+        }
+
+        boolean useInMemoryDeduplication = EdrService.DeduplicateEDRTypeEnum.MEMORY.name().equalsIgnoreCase(deduplicateType);
         if (!useInMemoryDeduplication) {
             log.info("EDR cache population will be skipped as cache will not be used");
             return;
@@ -125,6 +135,39 @@ public class CdrEdrProcessingCacheContainerProvider implements CacheContainerPro
         log.info("Finished to pre-populate EDR cache with {} for provider {}", totalEdrs[0], currentProvider);
     }
 
+    /**
+     * Populate EDR Bloom filters from db with EDRs created within filter retention period. Skipped if filters were reopened from files.
+     */
+    private void populateEdrBloomFilter() {
+
+        String currentProvider = currentUser.getProviderCode();
+
+        if (edrDeduplicationFilter.isPopulated()) {
+            log.info("EDR Bloom filter pre-population will be skipped for provider {} as filters were restored from files", currentProvider);
+            return;
+        }
+
+        log.debug("Start to pre-populate EDR Bloom filter for provider {}", currentProvider);
+
+        int pageSize = Integer.parseInt(paramBean.getProperty("mediation.deduplicateInMemory.pageSize", "1000"));
+        Date createdFrom = edrDeduplicationFilter.getRetentionStartDate();
+
+        long lastId = 0;
+        int totalEdrs = 0;
+        while (true) {
+            List<Object[]> originRecords = edrService.getOriginRecordsCreatedSince(createdFrom, lastId, pageSize);
+            edrDeduplicationFilter.populate(originRecords);
+
+            totalEdrs = totalEdrs + originRecords.size();
+            if (originRecords.size() < pageSize) {
+                break;
+            }
+            lastId = (Long) originRecords.get(originRecords.size() - 1)[2];
+        }
+
+        log.info("Finished to pre-populate EDR Bloom filter with {} EDRs for provider {}", totalEdrs, currentProvider);
+    }
+
     /**
      * Check if EDR exists already for a given originRecord.
      * 
@@ -172,6 +215,7 @@ public class CdrEdrProcessingCacheContainerProvider implements CacheContainerPro
 
         if (cacheName == null || cacheName.equals(edrCache.getName()) || cacheName.contains(edrCache.getName())) {
             clear();
+            edrDeduplicationFilter.clear();
             populateEdrCache();
         }
     }
@@ -0,0 +1,289 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.cache;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import org.meveo.model.shared.DateUtils;
+
+/**
+ * An immutable in-memory copy of a custom table, used to resolve CustomTableService.getValue() and getValues() lookups without querying a database.<br/>
+ * <br/>
+ * Supports the same matching rules as a database query for a subset of search criteria: a plain field name as a key and a String (without wildcards) or a Number as a value,
+ * optionally combined with a record validity date expressed by 'valid_from' and 'valid_to' fields. String values are matched ignoring case. Use isApplicable() to check if search
+ * criteria can be resolved by a snapshot.<br/>
+ * <br/>
+ * A hash index is built on a first lookup by a given combination of fields and is reused by subsequent lookups.
+ */
+public class CustomTableSnapshot {
+
+    /**
+     * Marks that a custom table is not served from a snapshot, so a lookup of a table to snapshot is done only once
+     */
+    public static final CustomTableSnapshot NONE = new CustomTableSnapshot(Collections.emptyList());
+
+    private static final String FIELD_ID = "id";
+
+    private static final String FIELD_VALID_FROM = "valid_from";
+
+    private static final String FIELD_VALID_TO = "valid_to";
+
+    private static final String FIELD_VALID_PRIORITY = "valid_priority";
+
+    private static final Pattern FIELD_NAME_PATTERN = Pattern.compile("[a-zA-Z0-9_]+");
+
+    private static final int[] NO_RECORDS = new int[0];
+
+    /**
+     * Records ordered by id in descending order, same as a database query orders them
+     */
+    private final List<Map<String, Object>> records;
+
+    /**
+     * Record positions indexed by normalized field values. Key: a sorted list of field names, value: record positions by a list of normalized field values
+     */
+    private final Map<List<String>, Map<List<Object>, int[]>> indexes = new ConcurrentHashMap<>();
+
+    private final int[] allRecords;
+
+    /**
+     * Constructor
+     *
+     * @param records Custom table records, each one as a map of values with field name as a key
+     */
+    public CustomTableSnapshot(List<Map<String, Object>> records) {
+
+        List<Map<String, Object>> sortedRecords = new ArrayList<>(records.size());
+        for (Map<String, Object> record : records) {
+            sortedRecords.add(Collections.unmodifiableMap(new HashMap<>(record)));
+        }
+        sortedRecords.sort((r1, r2) -> Long.compare(toLong(r2.get(FIELD_ID)), toLong(r1.get(FIELD_ID))));
+
+        this.records = Collections.unmodifiableList(sortedRecords);
+
+        allRecords = new int[sortedRecords.size()];
+        for (int i = 0; i < allRecords.length; i++) {
+            allRecords[i] = i;
+        }
+    }
+
+    /**
+     * @return A number of records in a snapshot
+     */
+    public int size() {
+        return records.size();
+    }
+
+    /**
+     * Check if search criteria can be resolved by a snapshot
+     *
+     * @param queryValues Search criteria with field name as a key and field value as a value
+     * @param fieldsToReturn Field values to return. Optional.
+     * @return True if all criteria are plain field names with a String or Number value, and fields to return are plain field names
+     */
+    public static boolean isApplicable(Map<String, Object> queryValues, String... fieldsToReturn) {
+
+        for (Entry<String, Object> criteria : queryValues.entrySet()) {
+            if (!FIELD_NAME_PATTERN.matcher(criteria.getKey()).matches()) {
+                return false;
+            }
+            Object value = criteria.getValue();
+            if (value instanceof String) {
+                if (((String) value).indexOf('*') >= 0 || "IS_NULL".equals(value) || "IS_NOT_NULL".equals(value)) {
+                    return false;
+                }
+            } else if (value != null && !(value instanceof Number)) {
+                return false;
+            }
+        }
+
+        if (fieldsToReturn != null) {
+            for (String fieldToReturn : fieldsToReturn) {
+                if (fieldToReturn == null || !FIELD_NAME_PATTERN.matcher(fieldToReturn).matches()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the first record matching search criteria, with records ordered by id in descending order
+     *
+     * @param queryValues Search criteria with field name as a key and field value as a value. Must pass isApplicable() check.
+     * @return A matched record or null if no record matches
+     */
+    public Map<String, Object> getRecord(Map<String, Object> queryValues) {
+        int[] positions = getMatchingPositions(queryValues);
+        return positions.length > 0 ? records.get(positions[0]) : null;
+    }
+
+    /**
+     * Get the first record matching search criteria and valid on a given date, with records ordered by 'valid_priority', 'valid_from' and id fields in descending order
+     *
+     * @param queryValues Search criteria with field name as a key and field value as a value. Must pass isApplicable() check.
+     * @param date Record validity date, as expressed by 'valid_from' and 'valid_to' fields, to match. The 'valid_to' date is exclusive. Date is truncated to the start of the day.
+     * @return A matched record or null if no record matches
+     */
+    public Map<String, Object> getRecord(Map<String, Object> queryValues, Date date) {
+
+        Long time = date != null ? DateUtils.setTimeToZero(date).getTime() : null;
+
+        Map<String, Object> bestRecord = null;
+        for (int position : getMatchingPositions(queryValues)) {
+            Map<String, Object> record = records.get(position);
+
+            if (time != null) {
+                Long validFrom = toTime(record.get(FIELD_VALID_FROM));
+                Long validTo = toTime(record.get(FIELD_VALID_TO));
+                if (validFrom == null || validTo == null || validFrom > time || validTo <= time) {
+                    continue;
+                }
+            }
+
+            // Records are ordered by id in descending order, so an earlier record wins a tie
+            if (bestRecord == null || compareValidity(record, bestRecord) > 0) {
+                bestRecord = record;
+            }
+        }
+        return bestRecord;
+    }
+
+    /**
+     * Compare records by 'valid_priority' and 'valid_from' fields. Null values take precedence, same as in a descending database sort order.
+     */
+    private static int compareValidity(Map<String, Object> record1, Map<String, Object> record2) {
+        int result = compareNullFirst(toDecimal(record1.get(FIELD_VALID_PRIORITY)), toDecimal(record2.get(FIELD_VALID_PRIORITY)));
+        if (result == 0) {
+            result = compareNullFirst(toTime(record1.get(FIELD_VALID_FROM)), toTime(record2.get(FIELD_VALID_FROM)));
+        }
+        return result;
+    }
+
+    private static <C extends Comparable<C>> int compareNullFirst(C value1, C value2) {
+        if (value1 == null || value2 == null) {
+            return value1 == value2 ? 0 : value1 == null ? 1 : -1;
+        }
+        return value1.compareTo(value2);
+    }
+
+    /**
+     * Get positions of records matching search criteria, in records order
+     */
+    private int[] getMatchingPositions(Map<String, Object> queryValues) {
+
+        // Same as in a database query - null and blank values are not considered
+        Map<String, Object> criteria = new TreeMap<>();
+        for (Entry<String, Object> queryValue : queryValues.entrySet()) {
+            Object value = queryValue.getValue();
+            if (value != null && !(value instanceof String && ((String) value).isBlank())) {
+                criteria.put(queryValue.getKey().toLowerCase(), normalize(value));
+            }
+        }
+        if (criteria.isEmpty()) {
+            return allRecords;
+        }
+
+        List<String> fields = List.copyOf(criteria.keySet());
+        Map<List<Object>, int[]> index = indexes.computeIfAbsent(fields, this::buildIndex);
+
+        int[] positions = index.get(new ArrayList<>(criteria.values()));
+        return positions != null ? positions : NO_RECORDS;
+    }
+
+    /**
+     * Build an index of record positions by normalized values of given fields. Records with a null value in any of the fields are not indexed, as they never match.
+     */
+    private Map<List<Object>, int[]> buildIndex(List<String> fields) {
+
+        Map<List<Object>, List<Integer>> positionsByValues = new HashMap<>();
+
+        for (int i = 0; i < records.size(); i++) {
+            Map<String, Object> record = records.get(i);
+            List<Object> values = new ArrayList<>(fields.size());
+            for (String field : fields) {
+                Object value = record.get(field);
+                if (value == null) {
+                    break;
+                }
+                values.add(normalize(value));
+            }
+            if (values.size() == fields.size()) {
+                positionsByValues.computeIfAbsent(values, k -> new ArrayList<>()).add(i);
+            }
+        }
+
+        Map<List<Object>, int[]> index = new HashMap<>(positionsByValues.size() * 4 / 3 + 1);
+        for (Entry<List<Object>, List<Integer>> entry : positionsByValues.entrySet()) {
+            index.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        return Collections.unmodifiableMap(index);
+    }
+
+    /**
+     * Normalize a value for matching - Strings are matched ignoring case and Numbers are matched by their numeric value
+     */
+    private static Object normalize(Object value) {
+        if (value instanceof String) {
+            return ((String) value).toLowerCase();
+        } else if (value instanceof Number) {
+            return toDecimal(value);
+        }
+        return value;
+    }
+
+    private static BigDecimal toDecimal(Object value) {
+        if (value == null) {
+            return null;
+        } else if (value instanceof BigDecimal) {
+            return ((BigDecimal) value).stripTrailingZeros();
+        } else if (value instanceof Double || value instanceof Float) {
+            return BigDecimal.valueOf(((Number) value).doubleValue()).stripTrailingZeros();
+        }
+        return new BigDecimal(value.toString()).stripTrailingZeros();
+    }
+
+    private static long toLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    private static Long toTime(Object value) {
+        if (value instanceof Date) {
+            return ((Date) value).getTime();
+        } else if (value instanceof LocalDateTime) {
+            return ((LocalDateTime) value).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } else if (value instanceof LocalDate) {
+            return ((LocalDate) value).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        }
+        return null;
+    }
+}
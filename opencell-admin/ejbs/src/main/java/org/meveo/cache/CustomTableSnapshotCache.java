@@ -0,0 +1,108 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.cache;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.meveo.admin.exception.BusinessException;
+import org.meveo.commons.utils.ParamBean;
+import org.meveo.commons.utils.ParamBeanFactory;
+import org.meveo.model.customEntities.CustomEntityTemplate;
+import org.meveo.security.CurrentUser;
+import org.meveo.security.MeveoUser;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+
+/**
+ * A local (per cluster node) cache of custom table snapshots for custom entity templates that have snapshot lookups enabled. Allows to resolve custom table lookups from EL
+ * expressions (e.g. mv:getCTValue()) in memory instead of running a query for each lookup.<br/>
+ * <br/>
+ * A snapshot is loaded on a first lookup and is replaced as a whole, so a lookup sees either a previous or a new version of the data. Snapshot is evicted when custom table
+ * data or its custom entity template is modified via CustomTableService/CustomEntityTemplateService - locally and on other cluster nodes via ClusterEventMonitor. As data might
+ * also be modified by other means (e.g. SQL scripts), or be read by a concurrent lookup before modification is committed, cached snapshots expire after a configurable period.
+ */
+@Singleton
+@Lock(LockType.READ)
+public class CustomTableSnapshotCache {
+
+    @Inject
+    @CurrentUser
+    private MeveoUser currentUser;
+
+    /**
+     * Custom table snapshots. Key format: &lt;custom table name&gt;, value: a snapshot or CustomTableSnapshot.NONE if custom table is not served from a snapshot
+     */
+    private static Cache<CacheKeyStr, CustomTableSnapshot> snapshots;
+
+    private static int maxRecords;
+
+    static {
+        ParamBean tmpParamBean = ParamBeanFactory.getAppScopeInstance();
+        maxRecords = tmpParamBean.getPropertyAsInteger("cache.customTableSnapshot.maxRecords", 100000);
+        snapshots = CacheBuilder.newBuilder().expireAfterWrite(tmpParamBean.getPropertyAsInteger("cache.customTableSnapshot.expireAfterSeconds", 600), TimeUnit.SECONDS).build();
+    }
+
+    /**
+     * @return A maximum number of records a custom table can have to be served from a snapshot
+     */
+    public static int getMaxRecords() {
+        return maxRecords;
+    }
+
+    /**
+     * Get a snapshot of a custom table. A snapshot is loaded on a first request.
+     *
+     * @param cetCodeOrTablename Custom entity template code, or custom table name
+     * @param loader Snapshot loader. Shall return CustomTableSnapshot.NONE if custom table is not served from a snapshot.
+     * @return A snapshot or CustomTableSnapshot.NONE if custom table is not served from a snapshot
+     */
+    public CustomTableSnapshot getSnapshot(String cetCodeOrTablename, Callable<CustomTableSnapshot> loader) {
+
+        try {
+            return snapshots.get(new CacheKeyStr(currentUser.getProviderCode(), CustomEntityTemplate.getDbTablename(cetCodeOrTablename)), loader);
+
+        } catch (ExecutionException e) {
+            throw new BusinessException("Failed to load a snapshot of custom table " + cetCodeOrTablename, e.getCause());
+        }
+    }
+
+    /**
+     * Remove a snapshot of a custom table from cache
+     *
+     * @param cetCodeOrTablename Custom entity template code, or custom table name
+     */
+    public void evict(String cetCodeOrTablename) {
+        snapshots.invalidate(new CacheKeyStr(currentUser.getProviderCode(), CustomEntityTemplate.getDbTablename(cetCodeOrTablename)));
+    }
+
+    /**
+     * Remove all custom table snapshots from cache
+     */
+    public void clear() {
+        snapshots.invalidateAll();
+    }
+}
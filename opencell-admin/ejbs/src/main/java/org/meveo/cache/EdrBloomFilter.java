@@ -0,0 +1,218 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+/**
+ * A Bloom filter of strings, with bits stored outside of the heap in a memory mapped file, so a filter does not add to garbage collection and is preserved across restarts.<br/>
+ * <br/>
+ * Bits are set with atomic operations, so a filter can be used by multiple threads without locking. File starts with a header, holding the number of bits and hash functions, followed by the bits.
+ */
+public class EdrBloomFilter implements Closeable {
+
+    private static final int MAGIC = 0x4F434246;
+
+    private static final int VERSION = 1;
+
+    /**
+     * Header size is a multiple of 8, so bits can be accessed as aligned longs
+     */
+    private static final int HEADER_SIZE = 64;
+
+    /**
+     * Maximum number of bits, limited by a maximum size of a single mapped region
+     */
+    private static final long MAX_BITS = (Integer.MAX_VALUE - HEADER_SIZE) / Long.BYTES * (long) Long.SIZE;
+
+    private static final VarHandle LONG_VIEW = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private final long numBits;
+
+    private final int numHashes;
+
+    private EdrBloomFilter(FileChannel channel, MappedByteBuffer buffer, long numBits, int numHashes) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+    }
+
+    /**
+     * Open a filter stored in a file or create a new one if file does not exist. An existing filter keeps the size it was created with.
+     *
+     * @param file File to store filter in
+     * @param expectedInsertions Number of values expected to be added to a new filter
+     * @param fpp Desired false positive probability of a new filter when expected number of values is added
+     * @return A filter
+     * @throws IOException Failed to open or create a file, or file is not a filter
+     */
+    public static EdrBloomFilter open(Path file, long expectedInsertions, double fpp) throws IOException {
+
+        boolean exists = Files.exists(file);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            long numBits;
+            int numHashes;
+            MappedByteBuffer buffer;
+
+            if (exists && channel.size() >= HEADER_SIZE) {
+                MappedByteBuffer header = channel.map(MapMode.READ_ONLY, 0, HEADER_SIZE);
+                header.order(ByteOrder.LITTLE_ENDIAN);
+                if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                    throw new IOException("File " + file + " is not an EDR Bloom filter");
+                }
+                numBits = header.getLong(8);
+                numHashes = header.getInt(16);
+                if (channel.size() != HEADER_SIZE + numBits / Byte.SIZE) {
+                    throw new IOException("EDR Bloom filter file " + file + " is truncated");
+                }
+                buffer = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE + numBits / Byte.SIZE);
+
+            } else {
+                numBits = optimalNumOfBits(expectedInsertions, fpp);
+                numHashes = optimalNumOfHashFunctions(expectedInsertions, numBits);
+                // Mapping beyond the end of file extends it with zeros
+                buffer = channel.map(MapMode.READ_WRITE, 0, HEADER_SIZE + numBits / Byte.SIZE);
+                buffer.order(ByteOrder.LITTLE_ENDIAN);
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putLong(8, numBits);
+                buffer.putInt(16, numHashes);
+                buffer.force();
+            }
+            return new EdrBloomFilter(channel, buffer, numBits, numHashes);
+
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Add a value to a filter
+     *
+     * @param value Value to add
+     * @return True if filter has changed, meaning that value was definitely not added before. False if value might have been added before.
+     */
+    public boolean put(String value) {
+        long[] hashes = hash(value);
+        long combinedHash = hashes[0];
+        boolean changed = false;
+        for (int i = 0; i < numHashes; i++) {
+            long bitIndex = (combinedHash & Long.MAX_VALUE) % numBits;
+            long mask = 1L << bitIndex;
+            int byteIndex = HEADER_SIZE + (int) (bitIndex >>> 6) * Long.BYTES;
+            long previous = (long) LONG_VIEW.getAndBitwiseOr(buffer, byteIndex, mask);
+            changed |= (previous & mask) == 0;
+            combinedHash += hashes[1];
+        }
+        return changed;
+    }
+
+    /**
+     * Check if a value might have been added to a filter
+     *
+     * @param value Value to check
+     * @return True if value might have been added. False if value was definitely not added.
+     */
+    public boolean mightContain(String value) {
+        long[] hashes = hash(value);
+        long combinedHash = hashes[0];
+        for (int i = 0; i < numHashes; i++) {
+            long bitIndex = (combinedHash & Long.MAX_VALUE) % numBits;
+            int byteIndex = HEADER_SIZE + (int) (bitIndex >>> 6) * Long.BYTES;
+            if (((long) LONG_VIEW.getAcquire(buffer, byteIndex) & (1L << bitIndex)) == 0) {
+                return false;
+            }
+            combinedHash += hashes[1];
+        }
+        return true;
+    }
+
+    /**
+     * Write changed bits to a file
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    /**
+     * @return Size of a filter in bits
+     */
+    public long getNumBits() {
+        return numBits;
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    /**
+     * Calculate two 64 bit hashes to use for double hashing, same as Guava's BloomFilter does
+     */
+    private static long[] hash(String value) {
+        byte[] bytes = HASH_FUNCTION.hashString(value == null ? "" : value, StandardCharsets.UTF_8).asBytes();
+        long hash1 = 0;
+        long hash2 = 0;
+        for (int i = 7; i >= 0; i--) {
+            hash1 = (hash1 << 8) | (bytes[i] & 0xFF);
+            hash2 = (hash2 << 8) | (bytes[i + 8] & 0xFF);
+        }
+        return new long[] { hash1, hash2 };
+    }
+
+    /**
+     * @return Number of bits for a given number of values and false positive probability, rounded up to a multiple of 64
+     */
+    static long optimalNumOfBits(long expectedInsertions, double fpp) {
+        long numBits = (long) (-Math.max(1, expectedInsertions) * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        numBits = (Math.max(numBits, Long.SIZE) + Long.SIZE - 1) / Long.SIZE * Long.SIZE;
+        return Math.min(numBits, MAX_BITS);
+    }
+
+    /**
+     * @return Number of hash functions minimizing false positive probability for a given number of values and bits
+     */
+    static int optimalNumOfHashFunctions(long expectedInsertions, long numBits) {
+        return Math.max(1, (int) Math.round((double) numBits / Math.max(1, expectedInsertions) * Math.log(2)));
+    }
+}
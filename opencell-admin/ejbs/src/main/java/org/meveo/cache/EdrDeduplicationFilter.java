@@ -0,0 +1,300 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.meveo.admin.exception.BusinessException;
+import org.meveo.commons.utils.ParamBean;
+import org.meveo.commons.utils.ParamBeanFactory;
+import org.meveo.security.CurrentUser;
+import org.meveo.security.MeveoUser;
+import org.slf4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jakarta.annotation.PreDestroy;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+
+/**
+ * A local (per cluster node) probabilistic store of processed EDR origin records, used for EDR deduplication when 'mediation.deduplicate' is set to BLOOM.<br/>
+ * <br/>
+ * Origin records are added to Bloom filters partitioned by time ('mediation.deduplicateBloom.partitionHours'), separate for each tenant. Only the last
+ * 'mediation.deduplicateBloom.partitions' partitions are kept, so duplicates of EDRs older than that are not detected. Filters are stored in memory mapped files in
+ * 'mediation.deduplicateBloom.dir' directory and are reopened on restart.<br/>
+ * <br/>
+ * A filter answers either "definitely not processed" or "might have been processed", the latter has to be confirmed with a database lookup. Recently added origin records
+ * are also kept in an exact in-memory set, so concurrently processed duplicates, which might be missed by a filter, are always confirmed with a database lookup too. As
+ * a transaction that processed an origin record first might still be rolled back, such duplicates are not rejected without a database lookup.<br/>
+ * <br/>
+ * Filters are not shared between cluster nodes, so only origin records processed on the same node or loaded from database on startup are detected as duplicates. Use DB
+ * deduplication if the same records can be received by different cluster nodes.
+ */
+@Singleton
+@Lock(LockType.READ)
+public class EdrDeduplicationFilter {
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    @CurrentUser
+    private MeveoUser currentUser;
+
+    private static long partitionMillis;
+
+    private static int nbPartitions;
+
+    private static long expectedInsertions;
+
+    private static double fpp;
+
+    private static Path filterDir;
+
+    /**
+     * Bloom filters by tenant. Key format: &lt;provider code&gt;, value: filters by partition number (time in millis divided by partition duration)
+     */
+    private static Map<String, ConcurrentSkipListMap<Long, EdrBloomFilter>> filters = new ConcurrentHashMap<>();
+
+    /**
+     * Recently added origin records. Key format: &lt;provider code&gt; and origin record, value: True (no meaning, only keys are used)
+     */
+    private static Cache<CacheKeyStr, Boolean> recentRecords;
+
+    static {
+        ParamBean tmpParamBean = ParamBeanFactory.getAppScopeInstance();
+        partitionMillis = TimeUnit.HOURS.toMillis(tmpParamBean.getPropertyAsInteger("mediation.deduplicateBloom.partitionHours", 24));
+        nbPartitions = tmpParamBean.getPropertyAsInteger("mediation.deduplicateBloom.partitions", 7);
+        expectedInsertions = Long.parseLong(tmpParamBean.getProperty("mediation.deduplicateBloom.expectedInsertions", "10000000"));
+        fpp = Double.parseDouble(tmpParamBean.getProperty("mediation.deduplicateBloom.fpp", "0.001"));
+        filterDir = Paths.get(tmpParamBean.getProperty("mediation.deduplicateBloom.dir",
+            System.getProperty("jboss.server.data.dir", System.getProperty("java.io.tmpdir")) + File.separator + "opencell" + File.separator + "edrBloom"));
+        recentRecords = CacheBuilder.newBuilder().maximumSize(tmpParamBean.getPropertyAsInteger("mediation.deduplicateBloom.recentSize", 100000)).build();
+    }
+
+    /**
+     * Result of marking an origin record as processed
+     */
+    public enum DeduplicationStatusEnum {
+        /**
+         * Origin record was definitely not processed before
+         */
+        NEW,
+
+        /**
+         * Origin record might have been processed before. Has to be confirmed in database.
+         */
+        POSSIBLE_DUPLICATE;
+    }
+
+    /**
+     * Mark an origin record as processed
+     *
+     * @param originRecord Origin record
+     * @return Whether origin record was processed before
+     */
+    public DeduplicationStatusEnum add(String originRecord) {
+
+        String providerCode = getProviderCode();
+        if (recentRecords.asMap().putIfAbsent(new CacheKeyStr(providerCode, originRecord), Boolean.TRUE) != null) {
+            return DeduplicationStatusEnum.POSSIBLE_DUPLICATE;
+        }
+
+        ConcurrentSkipListMap<Long, EdrBloomFilter> tenantFilters = getTenantFilters(providerCode);
+        long currentPartition = System.currentTimeMillis() / partitionMillis;
+
+        boolean mightContain = false;
+        for (Map.Entry<Long, EdrBloomFilter> partition : tenantFilters.entrySet()) {
+            if (partition.getKey() < currentPartition && partition.getValue().mightContain(originRecord)) {
+                mightContain = true;
+                break;
+            }
+        }
+        boolean changed = getPartition(providerCode, tenantFilters, currentPartition).put(originRecord);
+        return changed && !mightContain ? DeduplicationStatusEnum.NEW : DeduplicationStatusEnum.POSSIBLE_DUPLICATE;
+    }
+
+    /**
+     * Is a filter of a current tenant populated already
+     *
+     * @return True if any filter partition exists for a current tenant
+     */
+    public boolean isPopulated() {
+        return !getTenantFilters(getProviderCode()).isEmpty();
+    }
+
+    /**
+     * @return A date from which origin records are kept in filters
+     */
+    public Date getRetentionStartDate() {
+        return new Date((System.currentTimeMillis() / partitionMillis - nbPartitions + 1) * partitionMillis);
+    }
+
+    /**
+     * Add origin records of EDRs created before to filters of a current tenant. Each record is added to a partition corresponding to its creation date.
+     *
+     * @param originRecords Origin records and their creation dates
+     */
+    public void populate(List<Object[]> originRecords) {
+
+        String providerCode = getProviderCode();
+        ConcurrentSkipListMap<Long, EdrBloomFilter> tenantFilters = getTenantFilters(providerCode);
+        long currentPartition = System.currentTimeMillis() / partitionMillis;
+
+        for (Object[] originRecord : originRecords) {
+            Date created = (Date) originRecord[1];
+            long partition = created == null ? currentPartition : Math.min(created.getTime() / partitionMillis, currentPartition);
+            if (partition > currentPartition - nbPartitions) {
+                getPartition(providerCode, tenantFilters, partition).put((String) originRecord[0]);
+            }
+        }
+    }
+
+    /**
+     * Remove filters of a current tenant, including their files
+     */
+    public void clear() {
+        String providerCode = getProviderCode();
+        ConcurrentSkipListMap<Long, EdrBloomFilter> tenantFilters = getTenantFilters(providerCode);
+        synchronized (tenantFilters) {
+            for (Long partition : tenantFilters.keySet()) {
+                closeAndDelete(providerCode, tenantFilters, partition);
+            }
+        }
+        recentRecords.asMap().keySet().removeIf(key -> providerCode.equals(key.getProvider()));
+    }
+
+    /**
+     * Write filters to files and release them
+     */
+    @PreDestroy
+    public void close() {
+        for (ConcurrentSkipListMap<Long, EdrBloomFilter> tenantFilters : filters.values()) {
+            synchronized (tenantFilters) {
+                for (EdrBloomFilter filter : tenantFilters.values()) {
+                    try {
+                        filter.close();
+                    } catch (IOException e) {
+                        log.error("Failed to close EDR Bloom filter", e);
+                    }
+                }
+                tenantFilters.clear();
+            }
+        }
+        filters.clear();
+    }
+
+    private String getProviderCode() {
+        return currentUser.getProviderCode() != null ? currentUser.getProviderCode() : "";
+    }
+
+    /**
+     * Get filters of a tenant, reopening filters stored in files if tenant is accessed for the first time
+     */
+    private ConcurrentSkipListMap<Long, EdrBloomFilter> getTenantFilters(String providerCode) {
+        ConcurrentSkipListMap<Long, EdrBloomFilter> tenantFilters = filters.get(providerCode);
+        if (tenantFilters != null) {
+            return tenantFilters;
+        }
+
+        synchronized (filters) {
+            tenantFilters = filters.get(providerCode);
+            if (tenantFilters == null) {
+                tenantFilters = new ConcurrentSkipListMap<>();
+                Path tenantDir = getTenantDir(providerCode);
+                if (Files.isDirectory(tenantDir)) {
+                    try (Stream<Path> files = Files.list(tenantDir)) {
+                        for (Path file : (Iterable<Path>) files::iterator) {
+                            String fileName = file.getFileName().toString();
+                            if (fileName.endsWith(".bloom")) {
+                                tenantFilters.put(Long.parseLong(fileName.substring(0, fileName.length() - 6)), EdrBloomFilter.open(file, expectedInsertions, fpp));
+                            }
+                        }
+                    } catch (IOException | NumberFormatException e) {
+                        log.error("Failed to reopen EDR Bloom filters from {}. Filters will be recreated.", tenantDir, e);
+                    }
+                    log.info("Reopened {} EDR Bloom filter partitions for provider {}", tenantFilters.size(), providerCode);
+                }
+                filters.put(providerCode, tenantFilters);
+            }
+        }
+        return tenantFilters;
+    }
+
+    /**
+     * Get a filter of a given partition, creating it if needed. Creating a new partition removes partitions that fall out of retention.
+     */
+    private EdrBloomFilter getPartition(String providerCode, ConcurrentSkipListMap<Long, EdrBloomFilter> tenantFilters, long partition) {
+
+        EdrBloomFilter filter = tenantFilters.get(partition);
+        if (filter != null) {
+            return filter;
+        }
+
+        synchronized (tenantFilters) {
+            filter = tenantFilters.get(partition);
+            if (filter == null) {
+                try {
+                    Path tenantDir = getTenantDir(providerCode);
+                    Files.createDirectories(tenantDir);
+                    filter = EdrBloomFilter.open(tenantDir.resolve(partition + ".bloom"), expectedInsertions, fpp);
+                } catch (IOException e) {
+                    throw new BusinessException("Failed to create EDR Bloom filter for provider " + providerCode, e);
+                }
+                tenantFilters.put(partition, filter);
+                log.debug("Created EDR Bloom filter partition {} of {} bits for provider {}", partition, filter.getNumBits(), providerCode);
+
+                long lastExpiredPartition = System.currentTimeMillis() / partitionMillis - nbPartitions;
+                for (Long expiredPartition : tenantFilters.headMap(lastExpiredPartition, true).keySet()) {
+                    closeAndDelete(providerCode, tenantFilters, expiredPartition);
+                }
+            }
+        }
+        return filter;
+    }
+
+    private void closeAndDelete(String providerCode, ConcurrentSkipListMap<Long, EdrBloomFilter> tenantFilters, Long partition) {
+        EdrBloomFilter filter = tenantFilters.remove(partition);
+        try {
+            filter.close();
+            Files.deleteIfExists(getTenantDir(providerCode).resolve(partition + ".bloom"));
+        } catch (IOException e) {
+            log.error("Failed to remove EDR Bloom filter partition {} for provider {}", partition, providerCode, e);
+        }
+    }
+
+    private static Path getTenantDir(String providerCode) {
+        return filterDir.resolve(providerCode.isEmpty() ? "default" : providerCode.replaceAll("[^A-Za-z0-9_\\-]", "_"));
+    }
+}
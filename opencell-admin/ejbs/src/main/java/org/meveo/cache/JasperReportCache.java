@@ -0,0 +1,197 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+
+package org.meveo.cache;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.IOUtils;
+import org.meveo.admin.exception.BusinessException;
+import org.meveo.commons.utils.FileUtils;
+import org.meveo.commons.utils.ParamBean;
+import org.meveo.commons.utils.ParamBeanFactory;
+import org.meveo.model.payments.PaymentMethodEnum;
+import org.meveo.security.CurrentUser;
+import org.meveo.security.MeveoUser;
+import org.slf4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.util.JRLoader;
+
+/**
+ * A local (per cluster node) cache of loaded Jasper report templates, separate for each tenant and bounded by a total size of template files.<br/>
+ * <br/>
+ * A template is reloaded when its file modification date changes, so templates can be modified without clearing the cache.
+ */
+@Singleton
+@Lock(LockType.READ)
+public class JasperReportCache {
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    @CurrentUser
+    private MeveoUser currentUser;
+
+    /**
+     * Maximum total size of template files in kilobytes to cache for a single tenant
+     */
+    private static int maxSizePerTenant;
+
+    /**
+     * Loaded templates, by tenant. Key format: &lt;template file path&gt;, value: loaded template and its file modification date
+     */
+    private static Map<String, Cache<String, CachedJasperReport>> jasperReports = new ConcurrentHashMap<>();
+
+    static {
+        ParamBean tmpParamBean = ParamBeanFactory.getAppScopeInstance();
+        maxSizePerTenant = tmpParamBean.getPropertyAsInteger("cache.jasperReports.maxSizePerTenantKb", 65536);
+    }
+
+    /**
+     * Get a loaded Jasper report template. Template is loaded from a file if it was not loaded yet or file was modified since.
+     *
+     * @param jasperFile Compiled Jasper report template file
+     * @return Jasper report template
+     * @throws JRException Failed to load a template
+     */
+    public JasperReport getJasperReport(File jasperFile) throws JRException {
+
+        Cache<String, CachedJasperReport> tenantReports = getTenantCache();
+        String key = jasperFile.getPath();
+        long lastModified = FileUtils.getLastModified(jasperFile);
+
+        CachedJasperReport cachedReport = tenantReports.getIfPresent(key);
+        if (cachedReport == null || cachedReport.lastModified != lastModified) {
+            cachedReport = new CachedJasperReport(loadJasperReport(jasperFile), lastModified, FileUtils.length(jasperFile));
+            tenantReports.put(key, cachedReport);
+        }
+        return cachedReport.jasperReport;
+    }
+
+    /**
+     * Load main invoice templates of all billing templates, so the first invoices do not have to wait for templates to load
+     *
+     * @param jasperDir Directory containing billing template directories
+     */
+    public void preloadInvoiceTemplates(File jasperDir) {
+
+        if (!FileUtils.existsDirectory(jasperDir)) {
+            return;
+        }
+
+        List<File> jasperFiles = FileUtils.listFiles(jasperDir, new String[] { "jasper" }, true);
+        int nbLoaded = 0;
+        for (File jasperFile : jasperFiles) {
+            if (!isInvoiceTemplate(jasperFile.getName())) {
+                continue;
+            }
+            try {
+                getJasperReport(jasperFile);
+                nbLoaded++;
+            } catch (Exception e) {
+                log.warn("Failed to preload Jasper report template {}: {}", jasperFile.getPath(), e.getMessage());
+            }
+        }
+        log.info("Preloaded {} Jasper report templates from {}", nbLoaded, jasperDir.getPath());
+    }
+
+    /**
+     * Remove all loaded templates of a current tenant from cache
+     */
+    public void clear() {
+        getTenantCache().invalidateAll();
+    }
+
+    /**
+     * Remove all loaded templates of all tenants from cache
+     */
+    public static void clearAll() {
+        jasperReports.values().forEach(Cache::invalidateAll);
+    }
+
+    private Cache<String, CachedJasperReport> getTenantCache() {
+        String providerCode = currentUser.getProviderCode() != null ? currentUser.getProviderCode() : "";
+        return jasperReports.computeIfAbsent(providerCode,
+            k -> CacheBuilder.newBuilder().maximumWeight(maxSizePerTenant).weigher((String key, CachedJasperReport value) -> value.sizeKb).build());
+    }
+
+    private JasperReport loadJasperReport(File jasperFile) throws JRException {
+        InputStream reportTemplate = FileUtils.getInputStream(jasperFile);
+        if (reportTemplate == null) {
+            throw new BusinessException("Jasper report template " + jasperFile.getPath() + " can not be read");
+        }
+        try {
+            log.debug("Loading Jasper report template {}", jasperFile.getPath());
+            return (JasperReport) JRLoader.loadObject(reportTemplate);
+        } finally {
+            IOUtils.closeQuietly(reportTemplate);
+        }
+    }
+
+    /**
+     * @param fileName Template file name
+     * @return True if file is one of the main invoice templates: main.jasper, invoice.jasper or invoice_&lt;payment method&gt;.jasper
+     */
+    private static boolean isInvoiceTemplate(String fileName) {
+        if (fileName.equals("main.jasper") || fileName.equals("invoice.jasper")) {
+            return true;
+        }
+        for (PaymentMethodEnum paymentMethod : PaymentMethodEnum.values()) {
+            if (fileName.equals("invoice_" + paymentMethod + ".jasper")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A loaded Jasper report template
+     */
+    private static class CachedJasperReport {
+
+        private final JasperReport jasperReport;
+
+        private final long lastModified;
+
+        /**
+         * Template file size in kilobytes, at least 1
+         */
+        private final int sizeKb;
+
+        private CachedJasperReport(JasperReport jasperReport, long lastModified, long fileSize) {
+            this.jasperReport = jasperReport;
+            this.lastModified = lastModified;
+            this.sizeKb = (int) Math.max(1, fileSize / 1024);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+
+package org.meveo.cache;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.meveo.admin.exception.BusinessException;
+import org.meveo.commons.utils.ParamBean;
+import org.meveo.commons.utils.ParamBeanFactory;
+import org.meveo.jpa.EntityManagerWrapper;
+import org.meveo.jpa.MeveoJpa;
+import org.meveo.model.catalog.PricePlanMatrixForRating;
+import org.meveo.security.CurrentUser;
+import org.meveo.security.MeveoUser;
+import org.meveo.service.billing.impl.PricePlanFilters;
+import org.meveo.service.metrics.BillingMetrics;
+import org.meveo.service.settings.impl.AdvancedSettingsService;
+import org.slf4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+
+/**
+ * A local (per cluster node) cache of active price plans applicable to a charge and of price plan filtering rules. Allows to select price plans for rating in memory instead of building and running a query for
+ * each wallet operation.<br/>
+ * <br/>
+ * Cache is invalidated when Price plan or "pricePlanFilters" advanced settings are modified - locally and on other cluster nodes via ClusterEventMonitor. As price plans might also be modified by other means (e.g.
+ * bulk updates), cached values expire after a configurable period.
+ */
+@Singleton
+@Lock(LockType.READ)
+public class PricePlanCandidatesCache {
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    @MeveoJpa
+    private EntityManagerWrapper emWrapper;
+
+    @Inject
+    @CurrentUser
+    private MeveoUser currentUser;
+
+    @Inject
+    private AdvancedSettingsService advancedSettingsService;
+
+    private static boolean usePricePlanCandidatesCache = true;
+
+    /**
+     * Active price plans applicable to a charge, ordered by priority. Key format: &lt;ChargeTemplate.code&gt;, value: a list of price plans
+     */
+    private static Cache<CacheKeyStr, List<PricePlanMatrixForRating>> pricePlanCandidates;
+
+    /**
+     * Price plan filtering rules. Key format: &lt;provider code&gt;, value: price plan filtering rules
+     */
+    private static Cache<CacheKeyStr, PricePlanFilters> pricePlanFilters;
+
+    static {
+        ParamBean tmpParamBean = ParamBeanFactory.getAppScopeInstance();
+        usePricePlanCandidatesCache = Boolean.parseBoolean(tmpParamBean.getProperty("cache.cachePricePlanCandidates", "true"));
+        int expireAfter = tmpParamBean.getPropertyAsInteger("cache.cachePricePlanCandidates.expireAfterSeconds", 300);
+        pricePlanCandidates = CacheBuilder.newBuilder().maximumSize(tmpParamBean.getPropertyAsInteger("cache.cachePricePlanCandidates.size", 10000)).expireAfterWrite(expireAfter, TimeUnit.SECONDS).recordStats().build();
+        pricePlanFilters = CacheBuilder.newBuilder().expireAfterWrite(expireAfter, TimeUnit.SECONDS).build();
+        BillingMetrics.monitorCache("pricePlanCandidates", pricePlanCandidates);
+    }
+
+    /**
+     * @return True if price plan candidates cache is enabled
+     */
+    public static boolean isEnabled() {
+        return usePricePlanCandidatesCache;
+    }
+
+    /**
+     * Get price plan filtering rules as configured in "pricePlanFilters" advanced settings group. Rules are read from DB on a first request.
+     *
+     * @return Price plan filtering rules
+     */
+    public PricePlanFilters getPricePlanFilters() {
+
+        if (!usePricePlanCandidatesCache) {
+            return PricePlanFilters.of(advancedSettingsService.getAdvancedSettingsMapByGroup(PricePlanFilters.ADVANCED_SETTINGS_GROUP, Object.class));
+        }
+
+        try {
+            return pricePlanFilters.get(new CacheKeyStr(currentUser.getProviderCode(), PricePlanFilters.ADVANCED_SETTINGS_GROUP), () -> {
+                Map<String, Object> advancedSettingsValues = advancedSettingsService.getAdvancedSettingsMapByGroup(PricePlanFilters.ADVANCED_SETTINGS_GROUP, Object.class);
+                return PricePlanFilters.of(advancedSettingsValues);
+            });
+
+        } catch (ExecutionException e) {
+            throw new BusinessException("Failed to load price plan filtering rules", e.getCause());
+        }
+    }
+
+    /**
+     * Get active price plans applicable to a given charge, ordered by priority. Price plans are read from DB on a first request.
+     *
+     * @param chargeCode Charge code
+     * @return A list of price plans
+     */
+    public List<PricePlanMatrixForRating> getPricePlanCandidates(String chargeCode) {
+
+        try {
+            return pricePlanCandidates.get(new CacheKeyStr(currentUser.getProviderCode(), chargeCode), () -> {
+
+                List<PricePlanMatrixForRating> pricePlans = emWrapper.getEntityManager().createNamedQuery("PricePlanMatrix.getActivePricePlansByChargeCodeForRating", PricePlanMatrixForRating.class)
+                    .setParameter("chargeCode", chargeCode).getResultList();
+
+                log.debug("Loaded {} active price plans for charge {}", pricePlans.size(), chargeCode);
+                return List.copyOf(pricePlans);
+            });
+
+        } catch (ExecutionException e) {
+            throw new BusinessException("Failed to load price plans for charge " + chargeCode, e.getCause());
+        }
+    }
+
+    /**
+     * Remove all price plans from cache
+     */
+    public void clearPricePlanCandidates() {
+        pricePlanCandidates.invalidateAll();
+    }
+
+    /**
+     * Remove price plan filtering rules from cache
+     */
+    public void clearPricePlanFilters() {
+        pricePlanFilters.invalidateAll();
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.cache;
+
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import org.meveo.admin.exception.BusinessException;
+import org.meveo.commons.utils.ParamBean;
+import org.meveo.commons.utils.ParamBeanFactory;
+import org.meveo.jpa.EntityManagerWrapper;
+import org.meveo.jpa.MeveoJpa;
+import org.meveo.model.catalog.PricePlanMatrixLineMatcher;
+import org.meveo.model.catalog.PricePlanMatrixValueForRating;
+import org.meveo.model.catalog.PricePlanMatrixVersion;
+import org.meveo.model.cpq.enums.VersionStatusEnum;
+import org.meveo.security.CurrentUser;
+import org.meveo.security.MeveoUser;
+import org.meveo.service.metrics.BillingMetrics;
+import org.slf4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+
+/**
+ * A local (per cluster node) cache of compiled Price plan matrix version line matchers. Only published versions are cached as their lines can not be modified.<br/>
+ * <br/>
+ * Cache is invalidated when Price plan matrix version is updated or removed - locally and on other cluster nodes via ClusterEventMonitor.
+ */
+@Singleton
+@Lock(LockType.READ)
+public class PricePlanMatrixLineMatcherCache {
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    @MeveoJpa
+    private EntityManagerWrapper emWrapper;
+
+    @Inject
+    @CurrentUser
+    private MeveoUser currentUser;
+
+    private static boolean useLineMatcherCache = true;
+
+    /**
+     * Compiled line matchers. Key format: &lt;PricePlanMatrixVersion.id&gt;, value: compiled line matcher
+     */
+    private static Cache<CacheKeyLong, PricePlanMatrixLineMatcher> lineMatchers;
+
+    static {
+        ParamBean tmpParamBean = ParamBeanFactory.getAppScopeInstance();
+        useLineMatcherCache = Boolean.parseBoolean(tmpParamBean.getProperty("cache.cachePricePlanLineMatcher", "true"));
+        lineMatchers = CacheBuilder.newBuilder().maximumSize(tmpParamBean.getPropertyAsInteger("cache.cachePricePlanLineMatcher.size", 5000)).recordStats().build();
+        BillingMetrics.monitorCache("pricePlanLineMatchers", lineMatchers);
+    }
+
+    /**
+     * Is Price plan matrix version line matching eligible for caching
+     *
+     * @param pricePlanMatrixVersion Price plan matrix version
+     * @return True if cache is enabled and version is published and persisted
+     */
+    public static boolean isCacheable(PricePlanMatrixVersion pricePlanMatrixVersion) {
+        return useLineMatcherCache && pricePlanMatrixVersion.getId() != null && pricePlanMatrixVersion.getStatus() == VersionStatusEnum.PUBLISHED;
+    }
+
+    /**
+     * Get a compiled line matcher for a given Price plan matrix version. Matcher is compiled from DB on a first request.
+     *
+     * @param pricePlanMatrixVersion Price plan matrix version
+     * @return A compiled line matcher
+     */
+    public PricePlanMatrixLineMatcher getLineMatcher(PricePlanMatrixVersion pricePlanMatrixVersion) {
+
+        Long versionId = pricePlanMatrixVersion.getId();
+        try {
+            return lineMatchers.get(new CacheKeyLong(currentUser.getProviderCode(), versionId), () -> {
+
+                List<PricePlanMatrixValueForRating> ppValues = emWrapper.getEntityManager().createNamedQuery("PricePlanMatrixValue.findByPPVersionForRating", PricePlanMatrixValueForRating.class)
+                    .setParameter("pricePlanMatrixVersionId", versionId).getResultList();
+
+                PricePlanMatrixLineMatcher lineMatcher = PricePlanMatrixLineMatcher.compile(ppValues);
+                log.debug("Compiled price plan matrix version {} line matcher with {} lines", versionId, lineMatcher.getNbLines());
+                return lineMatcher;
+            });
+
+        } catch (ExecutionException e) {
+            throw new BusinessException("Failed to compile price plan matrix version " + versionId + " lines", e.getCause());
+        }
+    }
+
+    /**
+     * Remove a compiled line matcher of a given Price plan matrix version from cache
+     *
+     * @param pricePlanMatrixVersionId Price plan matrix version ID
+     */
+    public void evict(Long pricePlanMatrixVersionId) {
+        lineMatchers.invalidate(new CacheKeyLong(currentUser.getProviderCode(), pricePlanMatrixVersionId));
+    }
+
+    /**
+     * Remove all compiled line matchers from cache
+     */
+    public void clear() {
+        lineMatchers.invalidateAll();
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.cache;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.meveo.admin.exception.BusinessException;
+import org.meveo.commons.utils.ParamBean;
+import org.meveo.commons.utils.ParamBeanFactory;
+import org.meveo.jpa.EntityManagerWrapper;
+import org.meveo.jpa.MeveoJpa;
+import org.meveo.model.billing.TradingCountry;
+import org.meveo.model.tax.TaxCategory;
+import org.meveo.model.tax.TaxClass;
+import org.meveo.security.CurrentUser;
+import org.meveo.security.MeveoUser;
+import org.meveo.service.metrics.BillingMetrics;
+import org.slf4j.Logger;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.inject.Inject;
+
+/**
+ * A local (per cluster node) cache of tax mappings applicable to a tax category, tax class, seller's country and buyer's country combination, indexed by validity period. Allows to
+ * match a tax mapping in memory instead of running a query for each wallet operation. Tax mappings with a filter EL are still evaluated for each match.<br/>
+ * <br/>
+ * Cache is invalidated when Tax mapping or Tax is modified - locally and on other cluster nodes via ClusterEventMonitor. As tax mappings might also be modified by other means (e.g.
+ * bulk updates), cached values expire after a configurable period.
+ */
+@Singleton
+@Lock(LockType.READ)
+public class TaxMappingCache {
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    @MeveoJpa
+    private EntityManagerWrapper emWrapper;
+
+    @Inject
+    @CurrentUser
+    private MeveoUser currentUser;
+
+    private static boolean useTaxMappingCache = true;
+
+    /**
+     * Applicable tax mappings. Key format: &lt;TaxCategory.id&gt;/&lt;TaxClass.id&gt;/&lt;seller's TradingCountry.id&gt;/&lt;buyer's TradingCountry.id&gt;, value: tax mappings indexed by
+     * validity period
+     */
+    private static Cache<CacheKeyStr, TaxMappingIntervalIndex> taxMappings;
+
+    static {
+        ParamBean tmpParamBean = ParamBeanFactory.getAppScopeInstance();
+        useTaxMappingCache = Boolean.parseBoolean(tmpParamBean.getProperty("cache.cacheTaxMappings", "true"));
+        taxMappings = CacheBuilder.newBuilder().maximumSize(tmpParamBean.getPropertyAsInteger("cache.cacheTaxMappings.size", 10000))
+            .expireAfterWrite(tmpParamBean.getPropertyAsInteger("cache.cacheTaxMappings.expireAfterSeconds", 300), TimeUnit.SECONDS).recordStats().build();
+        BillingMetrics.monitorCache("taxMappings", taxMappings);
+    }
+
+    /**
+     * @return True if tax mapping cache is enabled
+     */
+    public static boolean isEnabled() {
+        return useTaxMappingCache;
+    }
+
+    /**
+     * Get tax mappings applicable on a given date, in a matching precedence order. Tax mappings are read from DB on a first request for a given tax category, tax class and country
+     * combination.
+     *
+     * @param taxCategory Tax category
+     * @param taxClass Tax class
+     * @param sellersCountry Seller's country
+     * @param buyersCountry Buyer's country
+     * @param date Date to consider for match
+     * @return A list of tax mappings
+     */
+    public List<TaxMappingCandidate> getCandidates(TaxCategory taxCategory, TaxClass taxClass, TradingCountry sellersCountry, TradingCountry buyersCountry, Date date) {
+
+        Long taxCategoryId = taxCategory != null ? taxCategory.getId() : null;
+        Long taxClassId = taxClass != null ? taxClass.getId() : null;
+        Long sellersCountryId = sellersCountry != null ? sellersCountry.getId() : null;
+        Long buyersCountryId = buyersCountry != null ? buyersCountry.getId() : null;
+
+        try {
+            TaxMappingIntervalIndex index = taxMappings.get(new CacheKeyStr(currentUser.getProviderCode(), taxCategoryId + "/" + taxClassId + "/" + sellersCountryId + "/" + buyersCountryId), () -> {
+
+                List<Object[]> rows = emWrapper.getEntityManager().createNamedQuery("TaxMapping.findCandidatesByIds", Object[].class).setParameter("taxCategoryId", taxCategoryId)
+                    .setParameter("taxClassId", taxClassId).setParameter("sellerCountryId", sellersCountryId).setParameter("buyerCountryId", buyersCountryId).getResultList();
+
+                List<TaxMappingCandidate> candidates = new ArrayList<>(rows.size());
+                for (Object[] row : rows) {
+                    candidates.add(new TaxMappingCandidate((Long) row[0], (Long) row[1], (String) row[2], (String) row[3], (String) row[4], (Date) row[5], (Date) row[6]));
+                }
+
+                TaxMappingIntervalIndex loaded = new TaxMappingIntervalIndex(candidates);
+                log.debug("Loaded {} tax mappings in {} validity buckets for tax category {}, tax class {}, seller's country {}, buyer's country {}", candidates.size(), loaded.getNbBuckets(),
+                    taxCategoryId, taxClassId, sellersCountryId, buyersCountryId);
+                return loaded;
+            });
+
+            return index.getCandidates(date);
+
+        } catch (ExecutionException e) {
+            throw new BusinessException("Failed to load tax mappings for tax category " + taxCategoryId + ", tax class " + taxClassId, e.getCause());
+        }
+    }
+
+    /**
+     * Remove all tax mappings from cache
+     */
+    public void clear() {
+        taxMappings.invalidateAll();
+    }
+}
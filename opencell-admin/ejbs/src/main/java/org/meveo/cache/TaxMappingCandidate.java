@@ -0,0 +1,140 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.cache;
+
+import java.util.Date;
+
+import org.meveo.model.tax.TaxMapping;
+
+/**
+ * A cached tax mapping - what is needed to match it and to determine a tax from it
+ */
+public class TaxMappingCandidate {
+
+    private final Long taxMappingId;
+
+    private final Long taxId;
+
+    private final String filterEL;
+
+    private final String taxEL;
+
+    private final String taxScriptCode;
+
+    private final Date validFrom;
+
+    private final Date validTo;
+
+    /**
+     * Constructor
+     *
+     * @param taxMappingId Tax mapping identifier
+     * @param taxId Tax identifier. Optional.
+     * @param filterEL Filter expression. Optional.
+     * @param taxEL Tax expression. Optional.
+     * @param taxScriptCode Tax script code. Optional.
+     * @param validFrom Validity start date. Optional.
+     * @param validTo Validity end date, exclusive. Optional.
+     */
+    public TaxMappingCandidate(Long taxMappingId, Long taxId, String filterEL, String taxEL, String taxScriptCode, Date validFrom, Date validTo) {
+        this.taxMappingId = taxMappingId;
+        this.taxId = taxId;
+        this.filterEL = filterEL;
+        this.taxEL = taxEL;
+        this.taxScriptCode = taxScriptCode;
+        this.validFrom = validFrom;
+        this.validTo = validTo;
+    }
+
+    /**
+     * Create a candidate from a tax mapping entity
+     *
+     * @param taxMapping Tax mapping
+     * @return A tax mapping candidate
+     */
+    public static TaxMappingCandidate of(TaxMapping taxMapping) {
+        return new TaxMappingCandidate(taxMapping.getId(), taxMapping.getTax() != null ? taxMapping.getTax().getId() : null, taxMapping.getFilterEL(), taxMapping.getTaxEL(),
+            taxMapping.getTaxScript() != null ? taxMapping.getTaxScript().getCode() : null, taxMapping.getValid() != null ? taxMapping.getValid().getFrom() : null,
+            taxMapping.getValid() != null ? taxMapping.getValid().getTo() : null);
+    }
+
+    /**
+     * @return Tax mapping identifier
+     */
+    public Long getTaxMappingId() {
+        return taxMappingId;
+    }
+
+    /**
+     * @return Tax identifier
+     */
+    public Long getTaxId() {
+        return taxId;
+    }
+
+    /**
+     * @return Filter expression
+     */
+    public String getFilterEL() {
+        return filterEL;
+    }
+
+    /**
+     * @return Tax expression
+     */
+    public String getTaxEL() {
+        return taxEL;
+    }
+
+    /**
+     * @return Tax script code
+     */
+    public String getTaxScriptCode() {
+        return taxScriptCode;
+    }
+
+    /**
+     * @return Validity start date
+     */
+    public Date getValidFrom() {
+        return validFrom;
+    }
+
+    /**
+     * @return Validity end date, exclusive
+     */
+    public Date getValidTo() {
+        return validTo;
+    }
+
+    /**
+     * Is tax mapping valid on a given time
+     *
+     * @param time Time in milliseconds
+     * @return True if validity period includes a given time
+     */
+    public boolean isValid(long time) {
+        return (validFrom == null || validFrom.getTime() <= time) && (validTo == null || time < validTo.getTime());
+    }
+
+    @Override
+    public String toString() {
+        return "TaxMappingCandidate [taxMappingId=" + taxMappingId + ", taxId=" + taxId + ", validFrom=" + validFrom + ", validTo=" + validTo + "]";
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Tax mappings applicable to a tax category, tax class, seller's and buyer's country combination, indexed by validity period. Validity start and end dates of all tax mappings split
+ * a time line into buckets, and each bucket holds tax mappings valid during the whole bucket, in a matching precedence order. A lookup by date is a binary search over bucket
+ * boundaries.
+ */
+public class TaxMappingIntervalIndex {
+
+    /**
+     * Distinct validity start and end dates, sorted in ascending order. Bucket i starts at boundaries[i-1], inclusive, and ends at boundaries[i], exclusive. The first bucket has no
+     * start and the last bucket has no end.
+     */
+    private final long[] boundaries;
+
+    /**
+     * Tax mappings valid in each bucket, in a matching precedence order
+     */
+    private final List<List<TaxMappingCandidate>> buckets;
+
+    /**
+     * Constructor
+     *
+     * @param candidates Tax mappings, in a matching precedence order
+     */
+    public TaxMappingIntervalIndex(List<TaxMappingCandidate> candidates) {
+
+        boundaries = candidates.stream().flatMap(candidate -> Arrays.asList(candidate.getValidFrom(), candidate.getValidTo()).stream()).filter(date -> date != null).mapToLong(Date::getTime)
+            .distinct().sorted().toArray();
+
+        buckets = new ArrayList<>(boundaries.length + 1);
+        for (int i = 0; i <= boundaries.length; i++) {
+            // Validity of a tax mapping does not change within a bucket, so it is enough to check it at a bucket start
+            long bucketStart = i == 0 ? Long.MIN_VALUE : boundaries[i - 1];
+            List<TaxMappingCandidate> bucket = new ArrayList<>();
+            for (TaxMappingCandidate candidate : candidates) {
+                if (candidate.isValid(bucketStart)) {
+                    bucket.add(candidate);
+                }
+            }
+            buckets.add(List.copyOf(bucket));
+        }
+    }
+
+    /**
+     * Get tax mappings valid on a given date
+     *
+     * @param date Date
+     * @return Tax mappings in a matching precedence order
+     */
+    public List<TaxMappingCandidate> getCandidates(Date date) {
+        return buckets.get(getBucket(date.getTime()));
+    }
+
+    /**
+     * @param time Time in milliseconds
+     * @return Index of a bucket a given time falls in, i.e. a number of boundaries that are not after a given time
+     */
+    private int getBucket(long time) {
+        int position = Arrays.binarySearch(boundaries, time);
+        return position >= 0 ? position + 1 : -(position + 1);
+    }
+
+    /**
+     * @return Number of buckets
+     */
+    public int getNbBuckets() {
+        return buckets.size();
+    }
+}
@@ -1,12 +1,20 @@
 package org.meveo.commons.utils;
 
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeUnit;
 
+import org.meveo.commons.utils.lock.LocalLockProvider;
+import org.meveo.commons.utils.lock.LockProvider;
+import org.meveo.commons.utils.lock.LockProvider.AcquiredLock;
 import org.meveo.jpa.JpaAmpNewTx;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
 import jakarta.ejb.Asynchronous;
 import jakarta.ejb.Stateless;
 import jakarta.ejb.TransactionAttribute;
@@ -15,8 +23,21 @@ import jakarta.ejb.TransactionAttributeType;
 @Stateless
 public class MethodCallingUtils {
 
-    private final static AtomicIntegerWithEquals zero = new AtomicIntegerWithEquals(0);
-    private final static ConcurrentMap<Long, AtomicIntegerWithEquals> identifierToLockCounter = new ConcurrentHashMap<>();
+    private static final String DEFAULT_LOCK_CLASS = "default";
+
+    /**
+     * Lock provider. Local locks are used until a lock provider is configured by LockProviderInitializer.
+     */
+    private static volatile LockProvider lockProvider = new LocalLockProvider();
+
+    private static volatile MeterRegistry meterRegistry;
+
+    private static final Map<String, LockMeters> lockMeters = new ConcurrentHashMap<>();
+
+    /**
+     * Lock values held by a current thread and a number of times each was locked
+     */
+    private static final ThreadLocal<Map<Long, Integer>> locksHeld = ThreadLocal.withInitial(HashMap::new);
 
     /**
      * Execute runnable method in a NEW transaction
@@ -104,21 +125,26 @@ public class MethodCallingUtils {
      * @param runnable A runnable method to execute once lock is obtained
      */
     public static void executeMethodLocked(Long lockId, Runnable runnable) {
-        AtomicIntegerWithEquals counterAndLock = identifierToLockCounter.compute(lockId, (key, existing) -> {
-            if (existing == null) {
-                return new AtomicIntegerWithEquals(1);
-            }
-            existing.atomicValue.incrementAndGet();
-            return existing;
-        });
+        executeMethodLocked(DEFAULT_LOCK_CLASS, lockId, runnable);
+    }
 
-        synchronized (counterAndLock) {
-            try {
+    /**
+     * Execute a method with a lock for a given value
+     * 
+     * @param lockClass A class of locked values, used to report lock wait time and contention by
+     * @param lockId Value to lock for
+     * @param runnable A runnable method to execute once lock is obtained
+     */
+    public static void executeMethodLocked(String lockClass, Long lockId, Runnable runnable) {
+        try {
+            executeFunctionLocked(lockClass, lockId, () -> {
                 runnable.run();
-            } finally {
-                counterAndLock.atomicValue.decrementAndGet();
-                identifierToLockCounter.remove(lockId, zero);
-            }
+                return null;
+            });
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
         }
     }
 
@@ -126,52 +152,93 @@ public class MethodCallingUtils {
      * Execute a method with a lock for a given value
      * 
      * @param lockId Value to lock for
-     * @param runnable A runnable method to execute once lock is obtained
+     * @param function A callable method to execute once lock is obtained
      */
     public static <T> T executeFunctionLocked(Long lockId, Callable<T> function) throws Exception {
-        AtomicIntegerWithEquals counterAndLock = identifierToLockCounter.compute(lockId, (key, existing) -> {
-            if (existing == null) {
-                return new AtomicIntegerWithEquals(1);
-            }
-            existing.atomicValue.incrementAndGet();
-            return existing;
-        });
+        return executeFunctionLocked(DEFAULT_LOCK_CLASS, lockId, function);
+    }
+
+    /**
+     * Execute a method with a lock for a given value. A lock is reentrant - a method can be executed with a lock already held by a current thread.
+     * 
+     * @param lockClass A class of locked values, used to report lock wait time and contention by
+     * @param lockId Value to lock for
+     * @param function A callable method to execute once lock is obtained
+     */
+    public static <T> T executeFunctionLocked(String lockClass, Long lockId, Callable<T> function) throws Exception {
 
-        synchronized (counterAndLock) {
+        Map<Long, Integer> heldLocks = locksHeld.get();
+        if (heldLocks.containsKey(lockId)) {
+            heldLocks.merge(lockId, 1, Integer::sum);
             try {
                 return function.call();
             } finally {
-                counterAndLock.atomicValue.decrementAndGet();
-                identifierToLockCounter.remove(lockId, zero);
+                heldLocks.merge(lockId, -1, Integer::sum);
             }
         }
-    }
 
-    // AtomicInteger does not implement equals() properly so there is a need for such wrapper
-    private static class AtomicIntegerWithEquals {
+        LockProvider provider = lockProvider;
+        LockMeters meters = getLockMeters(lockClass);
 
-        private final AtomicInteger atomicValue;
+        AcquiredLock lock = provider.tryLock(lockId);
+        if (lock == null) {
+            long start = System.nanoTime();
+            lock = provider.lock(lockId);
+            if (meters != null) {
+                meters.contention.increment();
+                meters.waitTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        } else if (meters != null) {
+            meters.waitTime.record(0, TimeUnit.NANOSECONDS);
+        }
 
-        AtomicIntegerWithEquals(int value) {
-            this.atomicValue = new AtomicInteger(value);
+        heldLocks.put(lockId, 1);
+        try {
+            return function.call();
+        } finally {
+            heldLocks.remove(lockId);
+            lock.unlock();
         }
+    }
 
-        // Used internally by remove()
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) {
-                return true;
-            }
-            if (!(o instanceof AtomicIntegerWithEquals)) {
-                return false;
-            }
-            return atomicValue.get() == ((AtomicIntegerWithEquals) o).atomicValue.get();
+    /**
+     * Change a lock provider used by executeMethodLocked() and executeFunctionLocked()
+     * 
+     * @param provider Lock provider
+     * @param registry Meter registry to report lock wait time and contention to. Optional.
+     */
+    public static void setLockProvider(LockProvider provider, MeterRegistry registry) {
+        lockProvider = provider;
+        meterRegistry = registry;
+        lockMeters.clear();
+    }
+
+    private static LockMeters getLockMeters(String lockClass) {
+        MeterRegistry registry = meterRegistry;
+        if (registry == null) {
+            return null;
         }
+        return lockMeters.computeIfAbsent(lockClass, key -> {
+            Tags tags = Tags.of("lockClass", key, "provider", lockProvider.getName(), "node", String.valueOf(EjbUtils.getCurrentClusterNode()));
+            return new LockMeters(registry.timer("lock.wait", tags), registry.counter("lock.contention", tags));
+        });
+    }
+
+    private static class LockMeters {
+
+        /**
+         * Time spent waiting to acquire a lock
+         */
+        private final Timer waitTime;
+
+        /**
+         * A number of times a lock was held by someone else
+         */
+        private final Counter contention;
 
-        // Not really used, but when implementing custom equals() it is a good practice to implement also hashCode()
-        @Override
-        public int hashCode() {
-            return atomicValue.get();
+        private LockMeters(Timer waitTime, Counter contention) {
+            this.waitTime = waitTime;
+            this.contention = contention;
         }
     }
-}
\ No newline at end of file
+}
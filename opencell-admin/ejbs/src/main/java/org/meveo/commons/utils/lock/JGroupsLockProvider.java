@@ -0,0 +1,64 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+package org.meveo.commons.utils.lock;
+
+import java.util.concurrent.locks.Lock;
+
+import org.jgroups.JChannel;
+import org.jgroups.blocks.locking.LockService;
+
+/**
+ * Cluster wide locks using a JGroups lock service on top of an existing cluster channel. Requires a locking protocol (e.g. CENTRAL_LOCK2) to be configured in a channel's
+ * protocol stack on all cluster nodes.
+ */
+public class JGroupsLockProvider implements LockProvider {
+
+    public static final String NAME = "jgroups";
+
+    private static final String LOCK_NAME_PREFIX = "opencell.lock.";
+
+    private final LockService lockService;
+
+    /**
+     * Constructor
+     * 
+     * @param channel Cluster channel
+     * @throws IllegalStateException Channel has no locking protocol configured
+     */
+    public JGroupsLockProvider(JChannel channel) {
+        lockService = new LockService(channel);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public AcquiredLock tryLock(long lockId) {
+        Lock lock = lockService.getLock(LOCK_NAME_PREFIX + lockId);
+        return lock.tryLock() ? lock::unlock : null;
+    }
+
+    @Override
+    public AcquiredLock lock(long lockId) {
+        Lock lock = lockService.getLock(LOCK_NAME_PREFIX + lockId);
+        lock.lock();
+        return lock::unlock;
+    }
+}
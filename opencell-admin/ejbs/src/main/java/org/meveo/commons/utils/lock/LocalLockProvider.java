@@ -0,0 +1,106 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+package org.meveo.commons.utils.lock;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * JVM local locks. Each lock identifier gets its own ReentrantLock, so locks of different identifiers never block each other. A lock is kept only while it is held or waited for:
+ * it is reference counted and removed once the last thread holding or waiting for it is done. Unlike synchronized, a ReentrantLock does not pin a carrier thread when a virtual
+ * thread waits for a lock.
+ */
+public class LocalLockProvider implements LockProvider {
+
+    public static final String NAME = "local";
+
+    /**
+     * Locks held or waited for. Key: lock identifier.
+     */
+    private final ConcurrentMap<Long, CountedLock> locks = new ConcurrentHashMap<>();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public AcquiredLock tryLock(long lockId) {
+        CountedLock lock = reference(lockId);
+        if (lock.tryLock()) {
+            return () -> unlock(lockId, lock);
+        }
+        dereference(lockId);
+        return null;
+    }
+
+    @Override
+    public AcquiredLock lock(long lockId) {
+        CountedLock lock = reference(lockId);
+        try {
+            lock.lock();
+        } catch (RuntimeException | Error e) {
+            dereference(lockId);
+            throw e;
+        }
+        return () -> unlock(lockId, lock);
+    }
+
+    /**
+     * @return A number of locks currently held or waited for
+     */
+    int getLockCount() {
+        return locks.size();
+    }
+
+    private void unlock(long lockId, CountedLock lock) {
+        lock.unlock();
+        dereference(lockId);
+    }
+
+    /**
+     * Get a lock of an identifier, creating it if needed, and count a new reference to it. A lock and its reference count are changed atomically by a map.
+     */
+    private CountedLock reference(long lockId) {
+        return locks.compute(lockId, (id, lock) -> {
+            CountedLock referencedLock = lock != null ? lock : new CountedLock();
+            referencedLock.references++;
+            return referencedLock;
+        });
+    }
+
+    /**
+     * Release a reference to a lock, removing a lock once it is no longer referenced
+     */
+    private void dereference(long lockId) {
+        locks.computeIfPresent(lockId, (id, lock) -> --lock.references == 0 ? null : lock);
+    }
+
+    /**
+     * A lock with a number of threads holding or waiting for it
+     */
+    @SuppressWarnings("serial")
+    private static class CountedLock extends ReentrantLock {
+
+        /**
+         * Accessed only within a map's atomic compute functions
+         */
+        private int references;
+    }
+}
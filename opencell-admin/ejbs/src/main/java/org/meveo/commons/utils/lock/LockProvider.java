@@ -0,0 +1,60 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+package org.meveo.commons.utils.lock;
+
+/**
+ * Provides locks by a numeric lock identifier. Used by MethodCallingUtils.executeMethodLocked() and MethodCallingUtils.executeFunctionLocked(), and thus by @ConcurrencyLock.<br/>
+ * <br/>
+ * A lock is released by the same thread that has acquired it. Reentrancy of the same lock identifier is handled by a caller.
+ */
+public interface LockProvider {
+
+    /**
+     * @return Lock provider name, as used in "concurrency.lockProvider" setting
+     */
+    String getName();
+
+    /**
+     * Acquire a lock if it is not held by anyone else
+     * 
+     * @param lockId Lock identifier
+     * @return An acquired lock or NULL if lock is held by someone else
+     * @throws Exception Failed to communicate with a lock holder
+     */
+    AcquiredLock tryLock(long lockId) throws Exception;
+
+    /**
+     * Acquire a lock, waiting for it to be released if it is held by someone else
+     * 
+     * @param lockId Lock identifier
+     * @return An acquired lock
+     * @throws Exception Failed to communicate with a lock holder
+     */
+    AcquiredLock lock(long lockId) throws Exception;
+
+    /**
+     * A lock acquired
+     */
+    interface AcquiredLock {
+
+        /**
+         * Release a lock
+         */
+        void unlock();
+    }
+}
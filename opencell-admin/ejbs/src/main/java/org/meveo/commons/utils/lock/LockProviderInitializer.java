@@ -0,0 +1,87 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+package org.meveo.commons.utils.lock;
+
+import javax.naming.InitialContext;
+import javax.sql.DataSource;
+
+import org.jgroups.JChannel;
+import org.meveo.commons.utils.MethodCallingUtils;
+import org.meveo.commons.utils.ParamBean;
+import org.meveo.commons.utils.ParamBeanFactory;
+import org.slf4j.Logger;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.inject.Inject;
+
+/**
+ * Selects a lock provider used by MethodCallingUtils.executeMethodLocked() and MethodCallingUtils.executeFunctionLocked() according to "concurrency.lockProvider" setting:
+ * <ul>
+ * <li>local - JVM local locks (default). See LocalLockProvider.</li>
+ * <li>postgresql - cluster wide PostgreSQL advisory locks, polled every "concurrency.lockProvider.maxPollMillis" ms at most (defaults to 50). See PostgresAdvisoryLockProvider.</li>
+ * <li>jgroups - cluster wide locks over a JGroups cluster channel. See JGroupsLockProvider.</li>
+ * </ul>
+ * Local locks are used until application is started or if a cluster wide lock provider fails to initialize.
+ */
+@Singleton
+@Startup
+public class LockProviderInitializer {
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    @Resource(lookup = "java:jboss/jgroups/channel/default")
+    private JChannel channel;
+
+    @PostConstruct
+    private void init() {
+
+        ParamBean paramBean = ParamBeanFactory.getAppScopeInstance();
+        String providerName = paramBean.getProperty("concurrency.lockProvider", LocalLockProvider.NAME);
+
+        LockProvider lockProvider = null;
+        try {
+            if (PostgresAdvisoryLockProvider.NAME.equalsIgnoreCase(providerName)) {
+                DataSource dataSource = (DataSource) new InitialContext().lookup(paramBean.getProperty("concurrency.lockProvider.dataSource", "java:jboss/datasources/MeveoAdminDatasource"));
+                lockProvider = new PostgresAdvisoryLockProvider(dataSource, paramBean.getPropertyAsInteger("concurrency.lockProvider.maxPollMillis", 50));
+
+            } else if (JGroupsLockProvider.NAME.equalsIgnoreCase(providerName)) {
+                lockProvider = new JGroupsLockProvider(channel);
+
+            } else if (!LocalLockProvider.NAME.equalsIgnoreCase(providerName)) {
+                log.error("Unknown lock provider {}. Will use local locks instead.", providerName);
+            }
+        } catch (Exception e) {
+            log.error("Failed to initialize {} lock provider. Will use local locks instead.", providerName, e);
+        }
+
+        if (lockProvider == null) {
+            lockProvider = new LocalLockProvider();
+        }
+
+        MethodCallingUtils.setLockProvider(lockProvider, meterRegistry);
+        log.info("Will use {} locks for concurrency locking", lockProvider.getName());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+package org.meveo.commons.utils.lock;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cluster wide locks using PostgreSQL session level advisory locks. A connection is held for as long as a lock is held, and a lock is released by PostgreSQL if a connection is
+ * lost, so a crashed node does not leave locks behind.<br/>
+ * <br/>
+ * Session level locks are used instead of transaction level ones, as a locked method usually runs in its own new transaction that is committed before a lock is released.<br/>
+ * <br/>
+ * A thread waiting for a lock does not hold a connection: a lock is polled with pg_try_advisory_lock, with a connection returned to a pool between attempts, so waiting threads
+ * can not exhaust a connection pool. As lock holders keep their connections, a dedicated non-JTA data source ("concurrency.lockProvider.dataSource" setting) should be used, so
+ * lock connections neither compete with nor are enlisted in application transactions.
+ */
+public class PostgresAdvisoryLockProvider implements LockProvider {
+
+    public static final String NAME = "postgresql";
+
+    private static final Logger log = LoggerFactory.getLogger(PostgresAdvisoryLockProvider.class);
+
+    private static final long MIN_POLL_MILLIS = 1;
+
+    private final DataSource dataSource;
+
+    private final long maxPollMillis;
+
+    /**
+     * Constructor
+     * 
+     * @param dataSource Data source to obtain connections from
+     * @param maxPollMillis A maximum delay between attempts to acquire a lock held by someone else. A delay starts at 1 ms and is doubled on each attempt up to this value.
+     */
+    public PostgresAdvisoryLockProvider(DataSource dataSource, long maxPollMillis) {
+        this.dataSource = dataSource;
+        this.maxPollMillis = Math.max(maxPollMillis, MIN_POLL_MILLIS);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public AcquiredLock tryLock(long lockId) throws SQLException {
+
+        Connection connection = dataSource.getConnection();
+        try (PreparedStatement statement = connection.prepareStatement("select pg_try_advisory_lock(?)")) {
+            statement.setLong(1, lockId);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                if (resultSet.next() && resultSet.getBoolean(1)) {
+                    return () -> unlock(connection, lockId);
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            close(connection);
+            throw e;
+        }
+        close(connection);
+        return null;
+    }
+
+    @Override
+    public AcquiredLock lock(long lockId) throws SQLException, InterruptedException {
+
+        long pollMillis = MIN_POLL_MILLIS;
+        while (true) {
+            AcquiredLock lock = tryLock(lockId);
+            if (lock != null) {
+                return lock;
+            }
+            Thread.sleep(pollMillis);
+            pollMillis = Math.min(pollMillis * 2, maxPollMillis);
+        }
+    }
+
+    private void unlock(Connection connection, long lockId) {
+        try (PreparedStatement statement = connection.prepareStatement("select pg_advisory_unlock(?)")) {
+            statement.setLong(1, lockId);
+            statement.execute();
+        } catch (SQLException e) {
+            log.error("Failed to release an advisory lock {}", lockId, e);
+        } finally {
+            close(connection);
+        }
+    }
+
+    private void close(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.warn("Failed to close a connection", e);
+        }
+    }
+}
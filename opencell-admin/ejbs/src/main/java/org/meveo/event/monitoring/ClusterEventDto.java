@@ -90,7 +90,12 @@ public class ClusterEventDto implements Serializable {
         /**
          * Job execution has completed
          */
-        jobExecutionCompleted
+        jobExecutionCompleted,
+
+        /**
+         * Custom table data was modified
+         */
+        dataModified
     };
 
     /**
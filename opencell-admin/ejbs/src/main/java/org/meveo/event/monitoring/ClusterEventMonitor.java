@@ -21,15 +21,28 @@ import java.util.Optional;
 import java.util.concurrent.TimeUnit;
 
 import org.meveo.admin.job.IteratorBasedJobBean;
+import org.meveo.cache.AccessPointCache;
+import org.meveo.cache.ArticleMappingCache;
+import org.meveo.cache.CustomTableSnapshotCache;
+import org.meveo.cache.PricePlanCandidatesCache;
+import org.meveo.cache.PricePlanMatrixLineMatcherCache;
+import org.meveo.cache.TaxMappingCache;
 import org.meveo.commons.utils.EjbUtils;
 import org.meveo.commons.utils.ReflectionUtils;
 import org.meveo.event.monitoring.ClusterEventDto.ClusterEventActionEnum;
+import org.meveo.model.article.ArticleMappingLine;
+import org.meveo.model.billing.Tax;
+import org.meveo.model.catalog.PricePlanMatrix;
+import org.meveo.model.catalog.PricePlanMatrixVersion;
 import org.meveo.model.crm.CustomFieldTemplate;
 import org.meveo.model.customEntities.CustomEntityTemplate;
 import org.meveo.model.jobs.JobExecutionResultStatusEnum;
 import org.meveo.model.jobs.JobInstance;
+import org.meveo.model.mediation.Access;
 import org.meveo.model.jobs.JobLauncherEnum;
 import org.meveo.model.scripts.ScriptInstance;
+import org.meveo.model.settings.AdvancedSettings;
+import org.meveo.model.tax.TaxMapping;
 import org.meveo.security.keycloak.CurrentUserProvider;
 import org.meveo.service.base.NativePersistenceService;
 import org.meveo.service.base.PersistenceService;
@@ -38,6 +51,7 @@ import org.meveo.service.custom.CustomEntityTemplateService;
 import org.meveo.service.job.Job;
 import org.meveo.service.job.JobExecutionService;
 import org.meveo.service.job.JobInstanceService;
+import org.meveo.service.medina.impl.AccessService;
 import org.meveo.service.script.ScriptCompilerService;
 import org.meveo.service.script.ScriptInstanceService;
 import org.slf4j.Logger;
@@ -97,6 +111,24 @@ public class ClusterEventMonitor implements MessageListener {
     @Named
     private NativePersistenceService nativePersistenceService;
 
+    @Inject
+    private PricePlanMatrixLineMatcherCache pricePlanMatrixLineMatcherCache;
+
+    @Inject
+    private PricePlanCandidatesCache pricePlanCandidatesCache;
+
+    @Inject
+    private CustomTableSnapshotCache customTableSnapshotCache;
+
+    @Inject
+    private AccessPointCache accessPointCache;
+
+    @Inject
+    private TaxMappingCache taxMappingCache;
+
+    @Inject
+    private ArticleMappingCache articleMappingCache;
+
     /**
      * @see MessageListener#onMessage(Message)
      */
@@ -190,6 +222,9 @@ public class ClusterEventMonitor implements MessageListener {
             // Refresh custom entity template cache
         } else if (eventDto.getClazz().equals(CustomEntityTemplate.class.getSimpleName())) {
 
+            // Custom table snapshot is no longer valid
+            customTableSnapshotCache.evict(eventDto.getCode());
+
             if (eventDto.getAction() == ClusterEventActionEnum.create || eventDto.getAction() == ClusterEventActionEnum.enable) {
                 CustomEntityTemplate cet = customEntityTemplateService.findByCode(eventDto.getCode()); // Find by code instead of ID, so it would be added to a cache
 
@@ -197,6 +232,35 @@ public class ClusterEventMonitor implements MessageListener {
                 CustomEntityTemplate cet = customEntityTemplateService.findByCode(eventDto.getCode()); // Find by code instead of ID, so it would be added to a cache
             }
 
+            // Compiled price plan lines are no longer valid
+        } else if (eventDto.getClazz().equals(PricePlanMatrixVersion.class.getSimpleName())) {
+            pricePlanMatrixLineMatcherCache.evict(eventDto.getId());
+
+            // Price plans applicable to a charge are no longer valid
+        } else if (eventDto.getClazz().equals(PricePlanMatrix.class.getSimpleName())) {
+            pricePlanCandidatesCache.clearPricePlanCandidates();
+
+            // Only "pricePlanFilters" group settings are published
+        } else if (eventDto.getClazz().equals(AdvancedSettings.class.getSimpleName())) {
+            pricePlanCandidatesCache.clearPricePlanFilters();
+
+            // Access points are no longer valid
+        } else if (eventDto.getClazz().equals(Access.class.getSimpleName())) {
+            String accessUserId = eventDto.getAdditionalInfo() != null ? (String) eventDto.getAdditionalInfo().get(AccessService.CLUSTER_EVENT_ACCESS_USER_ID) : null;
+            if (accessUserId != null) {
+                accessPointCache.evict(accessUserId);
+            } else {
+                accessPointCache.clear();
+            }
+
+            // Tax mappings are no longer valid
+        } else if (eventDto.getClazz().equals(TaxMapping.class.getSimpleName()) || eventDto.getClazz().equals(Tax.class.getSimpleName())) {
+            taxMappingCache.clear();
+
+            // Article mapping decision table is no longer valid
+        } else if (eventDto.getClazz().equals(ArticleMappingLine.class.getSimpleName())) {
+            articleMappingCache.clear();
+
             // Get or wait for endpoint execution result
         } else if (eventDto.getAction() == ClusterEventActionEnum.getEndpointExecutionResult) {
 
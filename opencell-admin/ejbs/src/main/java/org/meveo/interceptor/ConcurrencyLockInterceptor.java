@@ -3,6 +3,7 @@ package org.meveo.interceptor;
 import java.io.Serializable;
 
 import org.meveo.commons.utils.MethodCallingUtils;
+import org.meveo.commons.utils.ReflectionUtils;
 import org.meveo.model.IEntity;
 
 import jakarta.interceptor.AroundInvoke;
@@ -24,6 +25,8 @@ public class ConcurrencyLockInterceptor implements Serializable {
         ConcurrencyLock lockConfig = ctx.getMethod().getAnnotation(ConcurrencyLock.class);
 
         Long lockBy = null;
+        // Lock wait time and contention are reported by an entity class or by a class of a method locked
+        String lockClass = ctx.getMethod().getDeclaringClass().getSimpleName();
         if (ctx.getParameters().length > lockConfig.lockParameter()) {
 
             Object parameterValue = ctx.getParameters()[lockConfig.lockParameter()];
@@ -35,6 +38,7 @@ public class ConcurrencyLockInterceptor implements Serializable {
                 lockBy = (Long) parameterValue;
             } else if (parameterValue instanceof IEntity) {
                 lockBy = (Long) ((IEntity) parameterValue).getId();
+                lockClass = ReflectionUtils.getCleanClassName(parameterValue.getClass().getSimpleName());
             }
         }
 
@@ -42,7 +46,7 @@ public class ConcurrencyLockInterceptor implements Serializable {
             return ctx.proceed();
         }
 
-        return MethodCallingUtils.executeFunctionLocked(lockBy, () -> ctx.proceed());
+        return MethodCallingUtils.executeFunctionLocked(lockClass, lockBy, () -> ctx.proceed());
 
     }
 
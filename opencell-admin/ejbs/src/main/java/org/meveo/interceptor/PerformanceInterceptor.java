@@ -18,9 +18,13 @@
 
 package org.meveo.interceptor;
 
+import java.util.concurrent.TimeUnit;
+
+import org.meveo.service.metrics.BillingMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.interceptor.AroundInvoke;
 import jakarta.interceptor.InvocationContext;
 
@@ -41,6 +45,11 @@ public class PerformanceInterceptor {
 		} finally {
 			long time = System.nanoTime() - beforeTime;
 			log.debug("{}.{} total runTime={}", new Object[] { ctx.getClass(), ctx.getMethod(), time });
+
+			MeterRegistry meterRegistry = BillingMetrics.getMeterRegistry();
+			if (meterRegistry != null) {
+				meterRegistry.timer("method.execution", "class", ctx.getMethod().getDeclaringClass().getSimpleName(), "method", ctx.getMethod().getName()).record(time, TimeUnit.NANOSECONDS);
+			}
 		}
 	}
 
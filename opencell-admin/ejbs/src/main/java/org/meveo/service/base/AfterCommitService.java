@@ -0,0 +1,84 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+package org.meveo.service.base;
+
+import org.slf4j.Logger;
+
+import jakarta.annotation.Resource;
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.inject.Inject;
+import jakarta.transaction.Status;
+import jakarta.transaction.Synchronization;
+import jakarta.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Defers actions until a current transaction commits, e.g. cache eviction and cluster event publishing, so other threads and cluster nodes do not reload data that is not
+ * committed yet, and nothing is evicted when a transaction is rolled back.
+ */
+@Stateless
+public class AfterCommitService {
+
+    @Inject
+    private Logger log;
+
+    @Resource(lookup = "java:comp/TransactionSynchronizationRegistry")
+    private TransactionSynchronizationRegistry transactionSynchronizationRegistry;
+
+    /**
+     * Run an action once a current transaction commits, or right away if no transaction is active. An action registered with the same key more than once in the same
+     * transaction is run only once.
+     *
+     * @param key A key identifying an action within a transaction
+     * @param action Action to run
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public void runAfterCommit(String key, Runnable action) {
+
+        if (transactionSynchronizationRegistry.getTransactionKey() == null || transactionSynchronizationRegistry.getTransactionStatus() != Status.STATUS_ACTIVE) {
+            action.run();
+            return;
+        }
+
+        String resourceKey = AfterCommitService.class.getName() + "_" + key;
+        if (transactionSynchronizationRegistry.getResource(resourceKey) != null) {
+            return;
+        }
+        transactionSynchronizationRegistry.putResource(resourceKey, Boolean.TRUE);
+
+        transactionSynchronizationRegistry.registerInterposedSynchronization(new Synchronization() {
+
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (status != Status.STATUS_COMMITTED) {
+                    return;
+                }
+                try {
+                    action.run();
+                } catch (Exception e) {
+                    log.error("Failed to run an action {} after transaction commit", key, e);
+                }
+            }
+        });
+    }
+}
@@ -22,13 +22,21 @@ import java.math.BigDecimal;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.StringUtils;
 import org.hibernate.proxy.HibernateProxy;
 import org.meveo.admin.exception.InvalidELException;
 import org.meveo.commons.utils.EjbUtils;
+import org.meveo.commons.utils.ParamBean;
+import org.meveo.commons.utils.ParamBeanFactory;
 import org.meveo.commons.utils.ReflectionUtils;
 import org.meveo.model.admin.Seller;
 import org.meveo.model.billing.AttributeInstance;
@@ -72,9 +80,14 @@ import org.meveo.model.shared.DateUtils;
 import org.meveo.model.tax.TaxCategory;
 import org.meveo.model.tax.TaxClass;
 import org.meveo.service.crm.impl.ProviderService;
+import org.meveo.service.metrics.BillingMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
 import jakarta.el.ArrayELResolver;
 import jakarta.el.BeanELResolver;
 import jakarta.el.CompositeELResolver;
@@ -102,11 +115,45 @@ public class ValueExpressionWrapper {
 
     private ELContext context;
 
-    private ValueExpression ve;
-
     static protected Logger log = LoggerFactory.getLogger(ValueExpressionWrapper.class);
 
-    static HashMap<String, ValueExpressionWrapper> valueExpressionWrapperMap = new HashMap<String, ValueExpressionWrapper>();
+    /**
+     * Functions available in EL expressions. Function map is not modified once constructed, so can be shared.
+     */
+    private static final MeveoFunctionMapper functionMapper = new MeveoFunctionMapper();
+
+    /**
+     * Stateless EL resolvers, shared among all EL contexts, so their introspection data is not lost between evaluations
+     */
+    private static final ELResolver[] sharedELResolvers = new ELResolver[] { new ArrayELResolver(), new ListELResolver(), new BeanELResolver(), new MapELResolver() };
+
+    /**
+     * An expression consisting only of a variable and, optionally, a chain of its properties, e.g. #{op.parameter1}
+     */
+    private static final Pattern PROPERTY_CHAIN_PATTERN = Pattern.compile("^#\\{\\s*([A-Za-z_$][\\w$]*(?:\\.[A-Za-z_$][\\w$]*)*)\\s*\\}$");
+
+    /**
+     * EL reserved words, that can not be resolved as variables or properties
+     */
+    private static final Set<String> EL_RESERVED_WORDS = Set.of("and", "or", "not", "eq", "ne", "lt", "gt", "le", "ge", "true", "false", "null", "instanceof", "empty", "div", "mod");
+
+    /**
+     * Compiled EL expressions. Key format: &lt;expected result class&gt;:&lt;expression&gt;, value: compiled expression. Weighted by expression length.
+     */
+    private static Cache<String, CompiledExpression> compiledExpressions;
+
+    private static final LongAdder nbEvaluations = new LongAdder();
+
+    private static final LongAdder nbFastPathEvaluations = new LongAdder();
+
+    private static final LongAdder evaluationTimeNanos = new LongAdder();
+
+    static {
+        ParamBean tmpParamBean = ParamBeanFactory.getAppScopeInstance();
+        compiledExpressions = CacheBuilder.newBuilder().maximumWeight(tmpParamBean.getPropertyAsInteger("cache.cacheELExpressions.maxTotalLength", 5000000))
+            .weigher((String key, CompiledExpression value) -> key.length()).recordStats().build();
+        BillingMetrics.monitorCache("elExpressions", compiledExpressions);
+    }
 
     /**
      * EL variable class (class name) to parameter name mapping.
@@ -566,31 +613,59 @@ public class ValueExpressionWrapper {
         }
     }
 
-    private static Object getValue(String expression, Map<Object, Object> userMap, Class resultClass) {
-        ValueExpressionWrapper result = null;
-        if (valueExpressionWrapperMap.containsKey(expression)) {
-            result = valueExpressionWrapperMap.get(expression);
-        }
-        if (result == null) {
-            result = new ValueExpressionWrapper(expression, userMap, resultClass);
-        }
-        return result.getValue(userMap);
-    }
+    private static Object getValue(String expression, Map<Object, Object> userMap, Class resultClass) throws ExecutionException {
+
+        long start = System.nanoTime();
 
-    private ValueExpressionWrapper(String expression, Map<Object, Object> userMap, Class resultClass) {
         if (userMap != null && expression.contains("appProvider")) {
             Provider appProvider = ((ProviderService) EjbUtils.getServiceInterface("ProviderService")).getProvider();
             userMap.put("appProvider", appProvider);
         }
+
+        ValueExpressionWrapper wrapper = new ValueExpressionWrapper(userMap);
+        CompiledExpression compiledExpression = compiledExpressions.get((resultClass != null ? resultClass.getName() : "") + ":" + expression, () -> compile(wrapper.context, expression, resultClass));
+
+        try {
+            return wrapper.getValue(compiledExpression, userMap, resultClass);
+        } finally {
+            nbEvaluations.increment();
+            evaluationTimeNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Compile EL expression
+     *
+     * @param context EL context to parse expression with
+     * @param expression Expression to compile
+     * @param resultClass An expected result class
+     * @return A compiled expression
+     */
+    private static CompiledExpression compile(ELContext context, String expression, Class resultClass) {
+
+        String[] propertyChain = null;
+        Matcher matcher = PROPERTY_CHAIN_PATTERN.matcher(expression);
+        if (matcher.matches()) {
+            propertyChain = matcher.group(1).split("\\.");
+            for (String property : propertyChain) {
+                if (EL_RESERVED_WORDS.contains(property)) {
+                    propertyChain = null;
+                    break;
+                }
+            }
+        }
+
+        return new CompiledExpression(expressionFactory.createValueExpression(context, expression, resultClass), propertyChain);
+    }
+
+    private ValueExpressionWrapper(Map<Object, Object> userMap) {
         simpleELResolver = new SimpleELResolver(userMap);
         final VariableMapper variableMapper = new SimpleVariableMapper();
-        final MeveoFunctionMapper functionMapper = new MeveoFunctionMapper();
         final CompositeELResolver compositeELResolver = new CompositeELResolver();
         compositeELResolver.add(simpleELResolver);
-        compositeELResolver.add(new ArrayELResolver());
-        compositeELResolver.add(new ListELResolver());
-        compositeELResolver.add(new BeanELResolver());
-        compositeELResolver.add(new MapELResolver());
+        for (ELResolver elResolver : sharedELResolvers) {
+            compositeELResolver.add(elResolver);
+        }
         context = new ELContext() {
             @Override
             public ELResolver getELResolver() {
@@ -607,12 +682,101 @@ public class ValueExpressionWrapper {
                 return variableMapper;
             }
         };
-        ve = expressionFactory.createValueExpression(context, expression, resultClass);
     }
 
-    private Object getValue(Map<Object, Object> userMap) {
-        simpleELResolver.setUserMap(userMap);
-        return ve.getValue(context);
+    /**
+     * Evaluate a compiled expression. A variable with a chain of its properties is resolved directly with EL resolvers, falling back to a full EL evaluation if any of the chain elements can not be resolved.
+     *
+     * @param compiledExpression Compiled expression
+     * @param userMap Context of values
+     * @param resultClass An expected result class
+     * @return A value that expression evaluated to
+     */
+    private Object getValue(CompiledExpression compiledExpression, Map<Object, Object> userMap, Class resultClass) {
+
+        if (compiledExpression.propertyChain != null && userMap != null) {
+            Object value = null;
+            boolean resolved = true;
+            ELResolver elResolver = context.getELResolver();
+            for (int i = 0; i < compiledExpression.propertyChain.length; i++) {
+                // Leave null property handling to EL
+                if (i > 0 && value == null) {
+                    resolved = false;
+                    break;
+                }
+                context.setPropertyResolved(false);
+                value = elResolver.getValue(context, value, compiledExpression.propertyChain[i]);
+                if (!context.isPropertyResolved()) {
+                    resolved = false;
+                    break;
+                }
+            }
+            if (resolved) {
+                nbFastPathEvaluations.increment();
+                return resultClass != null ? context.convertToType(value, resultClass) : value;
+            }
+        }
+
+        context.setPropertyResolved(false);
+        return compiledExpression.valueExpression.getValue(context);
+    }
+
+    /**
+     * Get EL expression cache and evaluation statistics
+     *
+     * @return A map of statistics with statistics name as a key
+     */
+    public static Map<String, Number> getStatistics() {
+        CacheStats cacheStats = compiledExpressions.stats();
+        Map<String, Number> statistics = new LinkedHashMap<>();
+        statistics.put("cacheSize", compiledExpressions.size());
+        statistics.put("cacheHitCount", cacheStats.hitCount());
+        statistics.put("cacheMissCount", cacheStats.missCount());
+        statistics.put("cacheEvictionCount", cacheStats.evictionCount());
+        statistics.put("compilationTimeNanos", cacheStats.totalLoadTime());
+        statistics.put("evaluationCount", nbEvaluations.sum());
+        statistics.put("fastPathEvaluationCount", nbFastPathEvaluations.sum());
+        statistics.put("evaluationTimeNanos", evaluationTimeNanos.sum());
+        return statistics;
+    }
+
+    /**
+     * @return A number of EL expressions evaluated
+     */
+    public static long getEvaluationCount() {
+        return nbEvaluations.sum();
+    }
+
+    /**
+     * @return Total time spent evaluating EL expressions, in nanoseconds
+     */
+    public static long getEvaluationTimeNanos() {
+        return evaluationTimeNanos.sum();
+    }
+
+    /**
+     * Remove all compiled EL expressions from cache
+     */
+    public static void clearCache() {
+        compiledExpressions.invalidateAll();
+    }
+
+    /**
+     * A parsed EL expression. Parsed expression holds no evaluation state, so can be evaluated concurrently with different EL contexts.
+     */
+    private static class CompiledExpression {
+
+        private final ValueExpression valueExpression;
+
+        /**
+         * Variable name followed by property names, if expression consists of a variable and its properties only
+         */
+        private final String[] propertyChain;
+
+        private CompiledExpression(ValueExpression valueExpression, String[] propertyChain) {
+            this.valueExpression = valueExpression;
+            this.propertyChain = propertyChain;
+        }
     }
 
     public static boolean collectionContains(String[] collection, String key) {
@@ -0,0 +1,125 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+package org.meveo.service.billing.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Progress of a billing run step over a partition of billing accounts. A partition covers a range of billing account identifiers and is marked as completed once all its billing
+ * accounts were processed by a step, so a step restarted after a failure can skip it.
+ */
+public class BillingRunCheckpoint {
+
+    /**
+     * Billing run steps that record their progress per billing account partition
+     */
+    public enum BillingRunStepEnum {
+        /**
+         * Invoice line creation from rated transactions
+         */
+        INVOICE_LINES,
+
+        /**
+         * Invoice and aggregate creation from invoice lines
+         */
+        INVOICES
+    }
+
+    private final int partitionNumber;
+
+    private final Long fromBillingAccountId;
+
+    private final Long toBillingAccountId;
+
+    private final int nbAccounts;
+
+    private volatile boolean completed;
+
+    /**
+     * Constructor
+     *
+     * @param partitionNumber Partition number, starting with 0
+     * @param fromBillingAccountId The lowest billing account identifier of a partition, inclusive
+     * @param toBillingAccountId The highest billing account identifier of a partition, inclusive
+     * @param nbAccounts Number of billing accounts in a partition
+     * @param completed Were all billing accounts of a partition processed
+     */
+    public BillingRunCheckpoint(int partitionNumber, Long fromBillingAccountId, Long toBillingAccountId, int nbAccounts, boolean completed) {
+        this.partitionNumber = partitionNumber;
+        this.fromBillingAccountId = fromBillingAccountId;
+        this.toBillingAccountId = toBillingAccountId;
+        this.nbAccounts = nbAccounts;
+        this.completed = completed;
+    }
+
+    /**
+     * Split billing accounts into partitions of consecutive billing account identifiers
+     *
+     * @param billingAccountIds Billing account identifiers, sorted in ascending order
+     * @param partitionSize Maximum number of billing accounts in a partition
+     * @return Partitions, none of them completed
+     */
+    public static List<BillingRunCheckpoint> split(List<Long> billingAccountIds, int partitionSize) {
+
+        List<BillingRunCheckpoint> partitions = new ArrayList<>();
+        for (int from = 0; from < billingAccountIds.size(); from = from + partitionSize) {
+            int to = Math.min(from + partitionSize, billingAccountIds.size());
+            partitions.add(new BillingRunCheckpoint(partitions.size(), billingAccountIds.get(from), billingAccountIds.get(to - 1), to - from, false));
+        }
+        return partitions;
+    }
+
+    public int getPartitionNumber() {
+        return partitionNumber;
+    }
+
+    public Long getFromBillingAccountId() {
+        return fromBillingAccountId;
+    }
+
+    public Long getToBillingAccountId() {
+        return toBillingAccountId;
+    }
+
+    public int getNbAccounts() {
+        return nbAccounts;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(boolean completed) {
+        this.completed = completed;
+    }
+
+    /**
+     * @param billingAccountId Billing account identifier
+     * @return True if a billing account identifier falls within a partition range
+     */
+    public boolean contains(Long billingAccountId) {
+        return billingAccountId >= fromBillingAccountId && billingAccountId <= toBillingAccountId;
+    }
+
+    @Override
+    public String toString() {
+        return "BillingRunCheckpoint [partitionNumber=" + partitionNumber + ", fromBillingAccountId=" + fromBillingAccountId + ", toBillingAccountId=" + toBillingAccountId + ", nbAccounts="
+                + nbAccounts + ", completed=" + completed + "]";
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+package org.meveo.service.billing.impl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.meveo.cache.JobCacheContainerProvider;
+import org.meveo.cache.JobRunningStatusEnum;
+import org.meveo.commons.utils.ParamBean;
+import org.meveo.jpa.EntityManagerWrapper;
+import org.meveo.jpa.JpaAmpNewTx;
+import org.meveo.jpa.MeveoJpa;
+import org.meveo.service.billing.impl.BillingRunCheckpoint.BillingRunStepEnum;
+import org.slf4j.Logger;
+
+import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+
+/**
+ * Records progress of billing run steps per billing account partition in a "billing_run_checkpoint" table, so a step interrupted by a failure or a node restart can resume with the
+ * partitions that were not completed yet.<br/>
+ * <br/>
+ * Partitions of a step are owned by a job instance that recorded them. An interrupted step is resumed by another job instance only once its owner is no longer running.<br/>
+ * <br/>
+ * Checkpointing can be disabled with "billingRun.checkpoint.enabled" setting (defaults to true).
+ */
+@Stateless
+public class BillingRunCheckpointService {
+
+    @Inject
+    @MeveoJpa
+    private EntityManagerWrapper emWrapper;
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    private JobCacheContainerProvider jobCacheContainerProvider;
+
+    /**
+     * @return Is progress of billing run steps recorded
+     */
+    public boolean isCheckpointEnabled() {
+        return ParamBean.getInstance().getPropertyAsBoolean("billingRun.checkpoint.enabled", true);
+    }
+
+    /**
+     * Get billing account partitions of a billing run step
+     *
+     * @param billingRunId Billing run identifier
+     * @param step Billing run step
+     * @return Partitions in partition number order. An empty list if step has not recorded any partitions.
+     */
+    @SuppressWarnings("unchecked")
+    public List<BillingRunCheckpoint> list(Long billingRunId, BillingRunStepEnum step) {
+
+        List<Object[]> rows = emWrapper.getEntityManager()
+            .createNativeQuery("select partition_number, from_ba_id, to_ba_id, nb_accounts, completed from billing_run_checkpoint where billing_run_id=:billingRunId and step=:step order by partition_number")
+            .setParameter("billingRunId", billingRunId).setParameter("step", step.name()).getResultList();
+
+        List<BillingRunCheckpoint> checkpoints = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            checkpoints.add(new BillingRunCheckpoint(((Number) row[0]).intValue(), ((Number) row[1]).longValue(), ((Number) row[2]).longValue(), ((Number) row[3]).intValue(),
+                ((Number) row[4]).intValue() == 1));
+        }
+        return checkpoints;
+    }
+
+    /**
+     * Get billing runs that have pending partitions in a given step and take over their ownership. Billing runs owned by another job instance that is still running are skipped, as
+     * their step is not interrupted but still in progress.
+     *
+     * @param step Billing run step
+     * @param jobInstanceId Identifier of a job instance that will resume the step
+     * @return Billing run identifiers
+     */
+    @SuppressWarnings("unchecked")
+    @JpaAmpNewTx
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<Long> claimBillingRunsWithPendingPartitions(BillingRunStepEnum step, Long jobInstanceId) {
+
+        EntityManager em = emWrapper.getEntityManager();
+        List<Object[]> rows = em.createNativeQuery("select distinct billing_run_id, job_instance_id from billing_run_checkpoint where step=:step and completed=0")
+            .setParameter("step", step.name()).getResultList();
+
+        List<Long> ids = new ArrayList<>(rows.size());
+        for (Object[] row : rows) {
+            Long billingRunId = ((Number) row[0]).longValue();
+            if (claim(em, billingRunId, step, row[1] != null ? ((Number) row[1]).longValue() : null, jobInstanceId)) {
+                ids.add(billingRunId);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Take over ownership of billing run step partitions, unless another job instance that owns them is still running
+     *
+     * @param billingRunId Billing run identifier
+     * @param step Billing run step
+     * @param jobInstanceId Identifier of a job instance that will resume the step
+     * @return True if partitions are owned by a given job instance now or if step has not recorded any partitions
+     */
+    @SuppressWarnings("unchecked")
+    @JpaAmpNewTx
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public boolean claim(Long billingRunId, BillingRunStepEnum step, Long jobInstanceId) {
+
+        EntityManager em = emWrapper.getEntityManager();
+        List<Number> owners = em.createNativeQuery("select distinct job_instance_id from billing_run_checkpoint where billing_run_id=:billingRunId and step=:step")
+            .setParameter("billingRunId", billingRunId).setParameter("step", step.name()).getResultList();
+        if (owners.isEmpty()) {
+            return true;
+        }
+        return claim(em, billingRunId, step, owners.get(0) != null ? owners.get(0).longValue() : null, jobInstanceId);
+    }
+
+    private boolean claim(EntityManager em, Long billingRunId, BillingRunStepEnum step, Long ownerId, Long jobInstanceId) {
+
+        // A job instance runs only once at a time, so a billing run owned by a current job instance was left by its previous execution
+        if (ownerId != null && !ownerId.equals(jobInstanceId)) {
+            JobRunningStatusEnum ownerStatus = jobCacheContainerProvider.isJobRunning(ownerId);
+            if (ownerStatus != JobRunningStatusEnum.NOT_RUNNING) {
+                log.info("Billing run {} step {} will not be resumed as job instance {} processing it is still running ({})", billingRunId, step, ownerId, ownerStatus);
+                return false;
+            }
+        }
+
+        // Ownership is taken over only if it did not change in the meantime, so concurrent job instances do not resume the same billing run
+        Query query = em
+            .createNativeQuery("update billing_run_checkpoint set job_instance_id=:jobInstanceId where billing_run_id=:billingRunId and step=:step and "
+                    + (ownerId == null ? "job_instance_id is null" : "job_instance_id=:ownerId"))
+            .setParameter("jobInstanceId", jobInstanceId).setParameter("billingRunId", billingRunId).setParameter("step", step.name());
+        if (ownerId != null) {
+            query.setParameter("ownerId", ownerId);
+        }
+        if (query.executeUpdate() == 0) {
+            log.info("Billing run {} step {} will not be resumed as it was taken over by another job instance", billingRunId, step);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Split billing accounts into partitions and record them as pending, replacing any partitions previously recorded for a step
+     *
+     * @param billingRunId Billing run identifier
+     * @param step Billing run step
+     * @param billingAccountIds Billing account identifiers, sorted in ascending order
+     * @param partitionSize Maximum number of billing accounts in a partition
+     * @param jobInstanceId Identifier of a job instance processing the step
+     * @return Partitions recorded
+     */
+    @JpaAmpNewTx
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<BillingRunCheckpoint> create(Long billingRunId, BillingRunStepEnum step, List<Long> billingAccountIds, int partitionSize, Long jobInstanceId) {
+
+        EntityManager em = emWrapper.getEntityManager();
+        em.createNativeQuery("delete from billing_run_checkpoint where billing_run_id=:billingRunId and step=:step").setParameter("billingRunId", billingRunId).setParameter("step", step.name())
+            .executeUpdate();
+
+        List<BillingRunCheckpoint> checkpoints = BillingRunCheckpoint.split(billingAccountIds, partitionSize);
+        Date now = new Date();
+        for (BillingRunCheckpoint checkpoint : checkpoints) {
+            em.createNativeQuery(
+                "insert into billing_run_checkpoint (billing_run_id, step, partition_number, from_ba_id, to_ba_id, nb_accounts, completed, updated, job_instance_id) values (:billingRunId, :step, :partitionNumber, :fromBaId, :toBaId, :nbAccounts, 0, :updated, :jobInstanceId)")
+                .setParameter("billingRunId", billingRunId).setParameter("step", step.name()).setParameter("partitionNumber", checkpoint.getPartitionNumber())
+                .setParameter("fromBaId", checkpoint.getFromBillingAccountId()).setParameter("toBaId", checkpoint.getToBillingAccountId()).setParameter("nbAccounts", checkpoint.getNbAccounts())
+                .setParameter("updated", now).setParameter("jobInstanceId", jobInstanceId).executeUpdate();
+        }
+
+        log.info("Billing run {} step {}: recorded {} partitions of {} billing accounts", billingRunId, step, checkpoints.size(), billingAccountIds.size());
+        return checkpoints;
+    }
+
+    /**
+     * Mark partitions as completed
+     *
+     * @param billingRunId Billing run identifier
+     * @param step Billing run step
+     * @param checkpoints Partitions that were completed
+     */
+    @JpaAmpNewTx
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void markCompleted(Long billingRunId, BillingRunStepEnum step, List<BillingRunCheckpoint> checkpoints) {
+
+        if (checkpoints.isEmpty()) {
+            return;
+        }
+        emWrapper.getEntityManager()
+            .createNativeQuery("update billing_run_checkpoint set completed=1, updated=:updated where billing_run_id=:billingRunId and step=:step and partition_number in (:partitionNumbers)")
+            .setParameter("updated", new Date()).setParameter("billingRunId", billingRunId).setParameter("step", step.name())
+            .setParameter("partitionNumbers", checkpoints.stream().map(BillingRunCheckpoint::getPartitionNumber).collect(Collectors.toList())).executeUpdate();
+    }
+
+    /**
+     * Remove partitions of a step, once a step is finished
+     *
+     * @param billingRunId Billing run identifier
+     * @param step Billing run step
+     */
+    @JpaAmpNewTx
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void delete(Long billingRunId, BillingRunStepEnum step) {
+        emWrapper.getEntityManager().createNativeQuery("delete from billing_run_checkpoint where billing_run_id=:billingRunId and step=:step").setParameter("billingRunId", billingRunId)
+            .setParameter("step", step.name()).executeUpdate();
+    }
+}
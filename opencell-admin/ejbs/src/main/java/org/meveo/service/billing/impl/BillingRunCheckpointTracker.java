@@ -0,0 +1,174 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+package org.meveo.service.billing.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * Tracks a number of items remaining to process in each billing account partition of a billing run step, to tell when a partition is completed.<br/>
+ * <br/>
+ * Items of billing accounts that do not fall within any pending partition, e.g. billing accounts that got data to process after partitions were determined, are not tracked.
+ */
+public class BillingRunCheckpointTracker {
+
+    /**
+     * Partitions by the lowest billing account identifier of a partition
+     */
+    private final TreeMap<Long, BillingRunCheckpoint> partitions = new TreeMap<>();
+
+    /**
+     * Number of items remaining to process by a partition number
+     */
+    private final Map<Integer, Long> remainingItems = new HashMap<>();
+
+    /**
+     * Constructor
+     *
+     * @param checkpoints Billing account partitions of a billing run step
+     */
+    public BillingRunCheckpointTracker(List<BillingRunCheckpoint> checkpoints) {
+        for (BillingRunCheckpoint checkpoint : checkpoints) {
+            partitions.put(checkpoint.getFromBillingAccountId(), checkpoint);
+        }
+    }
+
+    /**
+     * Get a partition that a billing account falls within
+     *
+     * @param billingAccountId Billing account identifier
+     * @return A partition or NULL if billing account does not fall within any partition
+     */
+    public BillingRunCheckpoint getPartition(Long billingAccountId) {
+        Entry<Long, BillingRunCheckpoint> partition = partitions.floorEntry(billingAccountId);
+        return partition != null && partition.getValue().contains(billingAccountId) ? partition.getValue() : null;
+    }
+
+    /**
+     * Group billing accounts by a pending partition they fall within. Billing accounts of completed partitions are omitted.
+     *
+     * @param billingAccountIds Billing account identifiers
+     * @param untracked A list to add billing accounts that do not fall within any partition to
+     * @return Billing account identifiers by a pending partition, in partition order
+     */
+    public Map<BillingRunCheckpoint, List<Long>> groupByPendingPartition(List<Long> billingAccountIds, List<Long> untracked) {
+
+        Map<BillingRunCheckpoint, List<Long>> billingAccountsByPartition = new LinkedHashMap<>();
+        for (BillingRunCheckpoint partition : partitions.values()) {
+            if (!partition.isCompleted()) {
+                billingAccountsByPartition.put(partition, new ArrayList<>());
+            }
+        }
+        for (Long billingAccountId : billingAccountIds) {
+            BillingRunCheckpoint partition = getPartition(billingAccountId);
+            if (partition == null) {
+                untracked.add(billingAccountId);
+            } else if (!partition.isCompleted()) {
+                billingAccountsByPartition.get(partition).add(billingAccountId);
+            }
+        }
+        return billingAccountsByPartition;
+    }
+
+    /**
+     * Register items to process
+     *
+     * @param billingAccountId Billing account identifier
+     * @param nbItems Number of items of a billing account to process
+     */
+    public synchronized void addItems(Long billingAccountId, long nbItems) {
+        BillingRunCheckpoint partition = getPartition(billingAccountId);
+        if (partition != null && !partition.isCompleted()) {
+            remainingItems.merge(partition.getPartitionNumber(), nbItems, Long::sum);
+        }
+    }
+
+    /**
+     * Register processed items
+     *
+     * @param billingAccountIds Billing account identifiers, one per item processed
+     * @return Partitions that became completed, i.e. have no more items to process
+     */
+    public synchronized List<BillingRunCheckpoint> itemsProcessed(List<Long> billingAccountIds) {
+
+        List<BillingRunCheckpoint> completed = new ArrayList<>();
+        for (Long billingAccountId : billingAccountIds) {
+            BillingRunCheckpoint partition = getPartition(billingAccountId);
+            if (partition == null || partition.isCompleted()) {
+                continue;
+            }
+            Long remaining = remainingItems.computeIfPresent(partition.getPartitionNumber(), (number, nbItems) -> nbItems - 1);
+            if (remaining != null && remaining <= 0) {
+                remainingItems.remove(partition.getPartitionNumber());
+                partition.setCompleted(true);
+                completed.add(partition);
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * Mark pending partitions that have no items to process as completed, e.g. partitions processed before a failure, but not yet marked as completed
+     *
+     * @return Partitions that became completed
+     */
+    public synchronized List<BillingRunCheckpoint> completeEmptyPartitions() {
+
+        List<BillingRunCheckpoint> completed = new ArrayList<>();
+        for (BillingRunCheckpoint partition : partitions.values()) {
+            if (!partition.isCompleted() && !remainingItems.containsKey(partition.getPartitionNumber())) {
+                partition.setCompleted(true);
+                completed.add(partition);
+            }
+        }
+        return completed;
+    }
+
+    /**
+     * @return Number of partitions
+     */
+    public int getNbPartitions() {
+        return partitions.size();
+    }
+
+    /**
+     * @return Number of completed partitions
+     */
+    public int getNbPartitionsCompleted() {
+        return (int) partitions.values().stream().filter(BillingRunCheckpoint::isCompleted).count();
+    }
+
+    /**
+     * @return Number of billing accounts in all partitions
+     */
+    public int getNbAccounts() {
+        return partitions.values().stream().mapToInt(BillingRunCheckpoint::getNbAccounts).sum();
+    }
+
+    /**
+     * @return Number of billing accounts in pending partitions
+     */
+    public int getNbAccountsRemaining() {
+        return partitions.values().stream().filter(partition -> !partition.isCompleted()).mapToInt(BillingRunCheckpoint::getNbAccounts).sum();
+    }
+}
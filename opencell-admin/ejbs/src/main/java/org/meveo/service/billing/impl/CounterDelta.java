@@ -0,0 +1,125 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.service.billing.impl;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.meveo.model.billing.CounterPeriod;
+
+/**
+ * Counter value changes of a counter period, accumulated in memory and not yet written to DB
+ */
+public class CounterDelta {
+
+    private final String providerCode;
+
+    private final Long counterPeriodId;
+
+    private BigDecimal value = BigDecimal.ZERO;
+
+    /**
+     * Changes of multi value accumulator counter values. Key: accumulated value key, value: value to add
+     */
+    private Map<String, BigDecimal> accumulatedValues;
+
+    /**
+     * Constructor
+     *
+     * @param providerCode Provider code. Optional.
+     * @param counterPeriodId Counter period identifier
+     */
+    public CounterDelta(String providerCode, Long counterPeriodId) {
+        this.providerCode = providerCode;
+        this.counterPeriodId = counterPeriodId;
+    }
+
+    /**
+     * @return Provider code
+     */
+    public String getProviderCode() {
+        return providerCode;
+    }
+
+    /**
+     * @return Counter period identifier
+     */
+    public Long getCounterPeriodId() {
+        return counterPeriodId;
+    }
+
+    /**
+     * @return Value to add to a counter period value
+     */
+    public synchronized BigDecimal getValue() {
+        return value;
+    }
+
+    /**
+     * Add changes of multi value accumulator counter values to a given map
+     *
+     * @param values Multi value accumulator counter values to add to. Key: accumulated value key, value: value
+     */
+    public synchronized void addAccumulatedValuesTo(Map<String, BigDecimal> values) {
+        if (accumulatedValues != null) {
+            accumulatedValues.forEach((key, valueToAdd) -> values.merge(key, valueToAdd, BigDecimal::add));
+        }
+    }
+
+    /**
+     * Add a value change
+     *
+     * @param valueToAdd Value to add to a counter period value
+     * @param accumulatedValueKey A key of a multi value accumulator counter value to add to. Optional.
+     */
+    public synchronized void add(BigDecimal valueToAdd, String accumulatedValueKey) {
+        value = value.add(valueToAdd);
+        if (accumulatedValueKey != null) {
+            if (accumulatedValues == null) {
+                accumulatedValues = new HashMap<>();
+            }
+            accumulatedValues.merge(accumulatedValueKey, valueToAdd, BigDecimal::add);
+        }
+    }
+
+    /**
+     * Add value changes to a counter period
+     *
+     * @param counterPeriod Counter period to update
+     */
+    public synchronized void applyTo(CounterPeriod counterPeriod) {
+
+        counterPeriod.setValue(counterPeriod.getValue() != null ? counterPeriod.getValue().add(value) : value);
+
+        if (accumulatedValues != null) {
+            Map<String, BigDecimal> periodAccumulatedValues = counterPeriod.getAccumulatedValues() != null ? new HashMap<>(counterPeriod.getAccumulatedValues()) : new HashMap<>();
+            for (Entry<String, BigDecimal> accumulatedValue : accumulatedValues.entrySet()) {
+                periodAccumulatedValues.merge(accumulatedValue.getKey(), accumulatedValue.getValue(), BigDecimal::add);
+            }
+            counterPeriod.setAccumulatedValues(periodAccumulatedValues);
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "CounterDelta [counterPeriodId=" + counterPeriodId + ", value=" + value + ", accumulatedValues=" + accumulatedValues + "]";
+    }
+}
@@ -0,0 +1,467 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.service.billing.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.meveo.admin.exception.BusinessException;
+import org.meveo.cache.CacheKeyLong;
+import org.meveo.commons.utils.EjbUtils;
+import org.meveo.commons.utils.MethodCallingUtils;
+import org.meveo.commons.utils.ParamBean;
+import org.meveo.commons.utils.ParamBeanFactory;
+import org.meveo.jpa.EntityManagerWrapper;
+import org.meveo.jpa.MeveoJpa;
+import org.meveo.model.billing.CounterPeriod;
+import org.meveo.security.CurrentUser;
+import org.meveo.security.MeveoUser;
+import org.meveo.security.keycloak.CurrentUserProvider;
+import org.slf4j.Logger;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import jakarta.ejb.Lock;
+import jakarta.ejb.LockType;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.ejb.Timeout;
+import jakarta.ejb.Timer;
+import jakarta.ejb.TimerConfig;
+import jakarta.ejb.TimerService;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+
+/**
+ * Write-behind accumulation of accumulator counter values. Enabled with "counters.writeBehind" setting.<br/>
+ * <br/>
+ * Instead of locking a counter and updating a counter period in a new transaction for each rated charge, counter value changes are coalesced in memory by a counter period and
+ * written to DB in a single transaction for all counter periods changed. Changes are written every "counters.writeBehind.flushIntervalSeconds" seconds and once a job is
+ * finished.<br/>
+ * <br/>
+ * Only accumulator counters without notification levels are accumulated this way - counters that limit consumption (e.g. prepaid) or trigger notifications on a threshold crossing
+ * are still updated right away.<br/>
+ * <br/>
+ * Each change is also appended to a node local journal (see CounterDeltaJournal), and a last journal segment written to DB is recorded in a "billing_counter_journal" table in the
+ * same transaction as counter periods are updated. Journal segments left over by a crash are written to DB on the next start, unless they were already written.<br/>
+ * <br/>
+ * Journal is synced to a storage device every "counters.writeBehind.journalSyncMillis" milliseconds (defaults to 200) and on every flush, so changes of at most that interval are
+ * lost on a crash of an operating system or a power loss. A value of 0 syncs every change before it is accumulated, at a cost of rating waiting for a storage device.
+ */
+@Singleton
+@Startup
+@Lock(LockType.READ)
+public class CounterDeltaAccumulator {
+
+    private static final String TIMER_FLUSH = "flush";
+
+    private static final String TIMER_SYNC = "sync";
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    @MeveoJpa
+    private EntityManagerWrapper emWrapper;
+
+    @Inject
+    @CurrentUser
+    private MeveoUser currentUser;
+
+    @Inject
+    private CurrentUserProvider currentUserProvider;
+
+    @Inject
+    private MethodCallingUtils methodCallingUtils;
+
+    @Resource
+    private TimerService timerService;
+
+    private static boolean useWriteBehind = false;
+
+    private static long flushIntervalMillis;
+
+    private static long journalSyncMillis;
+
+    private static Path journalDir;
+
+    /**
+     * Counter value changes not yet written to DB. Key: provider code and counter period identifier, value: counter value changes
+     */
+    private volatile Map<CacheKeyLong, CounterDelta> pendingDeltas = new ConcurrentHashMap<>();
+
+    /**
+     * Journal segments closed and awaiting to be written to DB, in a segment order
+     */
+    private final ConcurrentLinkedDeque<JournalSegment> segmentsToWrite = new ConcurrentLinkedDeque<>();
+
+    /**
+     * Changes are accumulated under a read lock, while a journal segment is rotated under a write lock
+     */
+    private final ReadWriteLock rotationLock = new ReentrantReadWriteLock();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private CounterDeltaJournal journal;
+
+    static {
+        ParamBean tmpParamBean = ParamBeanFactory.getAppScopeInstance();
+        useWriteBehind = tmpParamBean.getPropertyAsBoolean("counters.writeBehind", false);
+        flushIntervalMillis = TimeUnit.SECONDS.toMillis(tmpParamBean.getPropertyAsInteger("counters.writeBehind.flushIntervalSeconds", 5));
+        journalSyncMillis = tmpParamBean.getPropertyAsInteger("counters.writeBehind.journalSyncMillis", 200);
+        journalDir = Paths.get(tmpParamBean.getProperty("counters.writeBehind.journalDir",
+            System.getProperty("jboss.server.data.dir", System.getProperty("java.io.tmpdir")) + File.separator + "opencell" + File.separator + "counterJournal"));
+    }
+
+    /**
+     * @return True if accumulator counter values are written to DB in a write-behind mode
+     */
+    public static boolean isEnabled() {
+        return useWriteBehind;
+    }
+
+    @PostConstruct
+    private void init() {
+
+        if (!useWriteBehind) {
+            return;
+        }
+
+        try {
+            journal = new CounterDeltaJournal(journalDir);
+
+            // Segments left over by a previous run are written to DB first
+            for (Long segment : journal.listSegments()) {
+                if (segment < journal.getSegment()) {
+                    segmentsToWrite.add(new JournalSegment(segment, journal.read(segment)));
+                }
+            }
+            if (!segmentsToWrite.isEmpty()) {
+                log.warn("Found {} counter journal segments in {} to recover", segmentsToWrite.size(), journalDir);
+            }
+
+        } catch (IOException e) {
+            log.error("Failed to open a counter journal in {}. Counters will be updated right away.", journalDir, e);
+            useWriteBehind = false;
+            return;
+        }
+
+        timerService.createIntervalTimer(flushIntervalMillis, flushIntervalMillis, new TimerConfig(TIMER_FLUSH, false));
+        if (journalSyncMillis > 0) {
+            timerService.createIntervalTimer(journalSyncMillis, journalSyncMillis, new TimerConfig(TIMER_SYNC, false));
+        }
+    }
+
+    @PreDestroy
+    private void shutdown() {
+        if (journal == null) {
+            return;
+        }
+        flush();
+        try {
+            journal.close();
+        } catch (IOException e) {
+            log.error("Failed to close a counter journal", e);
+        }
+    }
+
+    @Timeout
+    private void onTimer(Timer timer) {
+        if (TIMER_SYNC.equals(timer.getInfo())) {
+            syncJournal();
+            return;
+        }
+        try {
+            flush();
+        } catch (Exception e) {
+            log.error("Failed to write accumulated counter values", e);
+        }
+    }
+
+    /**
+     * Sync changes journaled since a last sync to a storage device. Appends continue while syncing, only a segment rotation waits for it.
+     */
+    private void syncJournal() {
+
+        rotationLock.readLock().lock();
+        try {
+            journal.sync();
+
+        } catch (IOException e) {
+            log.error("Failed to sync a counter journal. Will retry on a next sync.", e);
+
+        } finally {
+            rotationLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Accumulate a counter period value change. A change is journaled before it is accumulated.
+     *
+     * @param counterPeriodId Counter period identifier
+     * @param value Value to add to a counter period value
+     * @param accumulatedValueKey A key of a multi value accumulator counter value to add to. Optional.
+     */
+    public void accumulate(Long counterPeriodId, BigDecimal value, String accumulatedValueKey) {
+
+        String providerCode = currentUser.getProviderCode();
+
+        rotationLock.readLock().lock();
+        try {
+            journal.append(providerCode, counterPeriodId, value, accumulatedValueKey);
+            if (journalSyncMillis <= 0) {
+                journal.sync();
+            }
+            pendingDeltas.computeIfAbsent(new CacheKeyLong(providerCode, counterPeriodId), k -> new CounterDelta(providerCode, counterPeriodId)).add(value, accumulatedValueKey);
+
+        } catch (IOException e) {
+            throw new BusinessException("Failed to journal a change of counter period " + counterPeriodId, e);
+
+        } finally {
+            rotationLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Get a counter period value change accumulated but not yet written to DB
+     *
+     * @param counterPeriodId Counter period identifier
+     * @return A value to add to a counter period value as stored in DB
+     */
+    public BigDecimal getPendingValue(Long counterPeriodId) {
+
+        BigDecimal value = BigDecimal.ZERO;
+        for (CounterDelta delta : getPendingDeltas(counterPeriodId)) {
+            value = value.add(delta.getValue());
+        }
+        return value;
+    }
+
+    /**
+     * Get multi value accumulator counter value changes accumulated but not yet written to DB
+     *
+     * @param counterPeriodId Counter period identifier
+     * @return Values to add to counter period accumulated values as stored in DB. Key: accumulated value key, value: value to add.
+     */
+    public Map<String, BigDecimal> getPendingAccumulatedValues(Long counterPeriodId) {
+
+        Map<String, BigDecimal> values = new HashMap<>();
+        for (CounterDelta delta : getPendingDeltas(counterPeriodId)) {
+            delta.addAccumulatedValuesTo(values);
+        }
+        return values;
+    }
+
+    /**
+     * Get changes of a counter period of a current provider, that are accumulated or in journal segments awaiting to be written to DB
+     */
+    private List<CounterDelta> getPendingDeltas(Long counterPeriodId) {
+
+        CacheKeyLong key = new CacheKeyLong(currentUser.getProviderCode(), counterPeriodId);
+
+        List<CounterDelta> deltas = new ArrayList<>();
+        CounterDelta delta = pendingDeltas.get(key);
+        if (delta != null) {
+            deltas.add(delta);
+        }
+        for (JournalSegment segment : segmentsToWrite) {
+            delta = segment.deltas.get(key);
+            if (delta != null) {
+                deltas.add(delta);
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * Write accumulated counter value changes to DB. Changes that failed to be written remain accumulated and will be written on a next flush.
+     */
+    public void flush() {
+
+        if (!useWriteBehind) {
+            return;
+        }
+
+        flushLock.lock();
+        try {
+            rotate();
+            writeSegments();
+
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Close a current journal segment and move changes accumulated so far to a list of changes awaiting to be written to DB
+     */
+    private void rotate() {
+
+        rotationLock.writeLock().lock();
+        try {
+            if (pendingDeltas.isEmpty()) {
+                return;
+            }
+            long segment = journal.rotate();
+            segmentsToWrite.add(new JournalSegment(segment, pendingDeltas));
+            pendingDeltas = new ConcurrentHashMap<>();
+
+        } catch (IOException e) {
+            log.error("Failed to rotate a counter journal. Will retry on a next flush.", e);
+
+        } finally {
+            rotationLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Write journal segments to DB in a segment order, stopping at the first failure, as a last segment written is tracked in DB
+     */
+    private void writeSegments() {
+
+        MeveoUser lastCurrentUser = currentUser.unProxy();
+        try {
+            JournalSegment segment = null;
+            while ((segment = segmentsToWrite.peek()) != null) {
+                if (!writeSegment(segment)) {
+                    return;
+                }
+                segmentsToWrite.poll();
+                try {
+                    journal.delete(segment.segment);
+                } catch (IOException e) {
+                    log.error("Failed to delete counter journal segment {}", segment.segment, e);
+                }
+            }
+
+        } finally {
+            if (lastCurrentUser != null) {
+                currentUserProvider.reestablishAuthentication(lastCurrentUser);
+            }
+        }
+    }
+
+    /**
+     * Write journal segment changes to DB, in a separate transaction for each provider
+     *
+     * @param segment Journal segment
+     * @return True if changes of all providers were written
+     */
+    private boolean writeSegment(JournalSegment segment) {
+
+        Map<String, List<CounterDelta>> deltasByProvider = new LinkedHashMap<>();
+        for (CounterDelta delta : segment.deltas.values()) {
+            deltasByProvider.computeIfAbsent(delta.getProviderCode() != null ? delta.getProviderCode() : "", k -> new ArrayList<>()).add(delta);
+        }
+
+        for (Map.Entry<String, List<CounterDelta>> providerDeltas : deltasByProvider.entrySet()) {
+            try {
+                currentUserProvider.forceAuthentication(null, providerDeltas.getKey().isEmpty() ? null : providerDeltas.getKey());
+                methodCallingUtils.callMethodInNewTx(() -> writeDeltas(segment.segment, providerDeltas.getValue()));
+
+            } catch (Exception e) {
+                log.error("Failed to write counter journal segment {} changes to DB. Will retry on a next flush.", segment.segment, e);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add changes to counter periods, unless a journal segment was already written. To be called within a transaction.
+     *
+     * @param segment Journal segment number
+     * @param deltas Counter value changes
+     */
+    private void writeDeltas(long segment, List<CounterDelta> deltas) {
+
+        EntityManager em = emWrapper.getEntityManager();
+        String nodeName = getNodeName();
+
+        @SuppressWarnings("unchecked")
+        List<Number> lastSegments = em.createNativeQuery("select last_segment from billing_counter_journal where node_name=:nodeName for update").setParameter("nodeName", nodeName)
+            .getResultList();
+        Long lastSegment = lastSegments.isEmpty() ? null : lastSegments.get(0).longValue();
+
+        if (lastSegment != null && lastSegment >= segment) {
+            log.info("Counter journal segment {} was already written to DB", segment);
+            return;
+        }
+
+        // Counter periods are always locked in the same order to avoid deadlocks with other nodes
+        deltas.sort(Comparator.comparing(CounterDelta::getCounterPeriodId));
+
+        for (CounterDelta delta : deltas) {
+            CounterPeriod counterPeriod = em.find(CounterPeriod.class, delta.getCounterPeriodId(), LockModeType.PESSIMISTIC_WRITE);
+            if (counterPeriod == null) {
+                log.warn("Counter period {} was not found. Accumulated change {} will be discarded.", delta.getCounterPeriodId(), delta);
+                continue;
+            }
+            delta.applyTo(counterPeriod);
+            counterPeriod.updateAudit(currentUser);
+        }
+
+        if (lastSegment == null) {
+            em.createNativeQuery("insert into billing_counter_journal (node_name, last_segment) values (:nodeName, :segment)").setParameter("nodeName", nodeName)
+                .setParameter("segment", segment).executeUpdate();
+        } else {
+            em.createNativeQuery("update billing_counter_journal set last_segment=:segment where node_name=:nodeName").setParameter("nodeName", nodeName).setParameter("segment", segment)
+                .executeUpdate();
+        }
+
+        log.debug("Wrote counter journal segment {} changes of {} counter periods to DB", segment, deltas.size());
+    }
+
+    private static String getNodeName() {
+        String nodeName = EjbUtils.getCurrentClusterNode();
+        return nodeName != null ? nodeName : "default";
+    }
+
+    /**
+     * Counter value changes of a closed journal segment
+     */
+    private static class JournalSegment {
+
+        private final long segment;
+
+        private final Map<CacheKeyLong, CounterDelta> deltas;
+
+        private JournalSegment(long segment, Map<CacheKeyLong, CounterDelta> deltas) {
+            this.segment = segment;
+            this.deltas = deltas;
+        }
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.service.billing.impl;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.meveo.cache.CacheKeyLong;
+
+/**
+ * A node local append-only journal of counter value changes that were accumulated in memory but not yet written to DB. Changes are appended to a current segment file, that is
+ * closed and replaced by a new one when accumulated changes are written to DB. A segment file is removed once its changes are written to DB, so segment files remaining after a
+ * crash contain changes that might not have been written to DB yet.<br/>
+ * <br/>
+ * Segment files are named "counters-&lt;segment number&gt;.journal", with a segment number increasing over node restarts.<br/>
+ * <br/>
+ * Appended changes are synced to a storage device in groups - when a segment is rotated or closed and whenever {@link #sync()} is called - instead of on every append, so appending
+ * does not wait for a storage device. Changes appended since a last sync are lost on a crash of an operating system or a power loss, but not on a crash of a JVM alone.
+ */
+public class CounterDeltaJournal {
+
+    private static final String SEGMENT_PREFIX = "counters-";
+
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private final Path directory;
+
+    private FileChannel channel;
+
+    private long segment;
+
+    /**
+     * Were changes appended since a current segment was last synced to a storage device
+     */
+    private volatile boolean unsynced;
+
+    /**
+     * Constructor. Opens a new segment, numbered after any segment found in a directory.
+     *
+     * @param directory A directory to store journal segment files in
+     * @throws IOException Failed to create a directory or a segment file
+     */
+    public CounterDeltaJournal(Path directory) throws IOException {
+        this.directory = directory;
+        Files.createDirectories(directory);
+
+        // Segment numbers must keep increasing even if a directory is cleaned, as a last segment written to DB is tracked by a number. Segments are rotated less often than
+        // every millisecond, so a segment number started from a current time is greater than any segment number used before.
+        List<Long> segments = listSegments();
+        segment = Math.max(segments.isEmpty() ? 1 : segments.get(segments.size() - 1) + 1, System.currentTimeMillis());
+        channel = openSegment(segment);
+    }
+
+    /**
+     * @return A current segment number
+     */
+    public synchronized long getSegment() {
+        return segment;
+    }
+
+    /**
+     * Append a counter value change to a current segment. A change is not synced to a storage device until {@link #sync()} is called or a segment is rotated.
+     *
+     * @param providerCode Provider code. Optional.
+     * @param counterPeriodId Counter period identifier
+     * @param value Value to add to a counter period value
+     * @param accumulatedValueKey A key of a multi value accumulator counter value to add to. Optional.
+     * @throws IOException Failed to write to a segment file
+     */
+    public void append(String providerCode, Long counterPeriodId, BigDecimal value, String accumulatedValueKey) throws IOException {
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(providerCode != null ? providerCode : "");
+        out.writeLong(counterPeriodId);
+        out.writeUTF(value.toPlainString());
+        out.writeBoolean(accumulatedValueKey != null);
+        if (accumulatedValueKey != null) {
+            out.writeUTF(accumulatedValueKey);
+        }
+        out.flush();
+
+        // A single write to a channel is not interleaved with writes from other threads
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        FileChannel currentChannel = getChannel();
+        while (buffer.hasRemaining()) {
+            currentChannel.write(buffer);
+        }
+        unsynced = true;
+    }
+
+    /**
+     * Sync changes appended to a current segment to a storage device, if any were appended since a last sync. Caller must ensure that a segment is not rotated or closed while it is
+     * synced, but appends may continue meanwhile.
+     *
+     * @throws IOException Failed to sync a segment file
+     */
+    public void sync() throws IOException {
+        if (!unsynced) {
+            return;
+        }
+        // Changes appended while syncing are synced on a next call
+        unsynced = false;
+        try {
+            getChannel().force(false);
+        } catch (IOException e) {
+            unsynced = true;
+            throw e;
+        }
+    }
+
+    private synchronized FileChannel getChannel() {
+        return channel;
+    }
+
+    /**
+     * Close a current segment and open a new one. Caller must ensure that no appends are done while segment is rotated.
+     *
+     * @return A number of a closed segment
+     * @throws IOException Failed to sync or open a segment file
+     */
+    public synchronized long rotate() throws IOException {
+        channel.force(false);
+        channel.close();
+        unsynced = false;
+        long closedSegment = segment;
+        segment++;
+        channel = openSegment(segment);
+        return closedSegment;
+    }
+
+    /**
+     * Close a current segment, deleting it if it is empty
+     *
+     * @throws IOException Failed to close a segment file
+     */
+    public synchronized void close() throws IOException {
+        boolean isEmpty = channel.size() == 0;
+        channel.force(false);
+        channel.close();
+        if (isEmpty) {
+            delete(segment);
+        }
+    }
+
+    /**
+     * @return Numbers of segments present in a directory, in ascending order
+     * @throws IOException Failed to list a directory
+     */
+    public List<Long> listSegments() throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not a segment file
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Read counter value changes of a segment, coalesced by a provider and a counter period. A partially written last record, as left by a crash, is ignored.
+     *
+     * @param segmentToRead Segment number
+     * @return Counter value changes by a provider and a counter period identifier
+     * @throws IOException Failed to read a segment file
+     */
+    public Map<CacheKeyLong, CounterDelta> read(long segmentToRead) throws IOException {
+
+        Map<CacheKeyLong, CounterDelta> deltas = new HashMap<>();
+
+        try (InputStream fileIn = Files.newInputStream(getSegmentFile(segmentToRead)); DataInputStream in = new DataInputStream(new BufferedInputStream(fileIn))) {
+            while (true) {
+                String providerCode;
+                long counterPeriodId;
+                BigDecimal value;
+                String accumulatedValueKey = null;
+                try {
+                    providerCode = in.readUTF();
+                    counterPeriodId = in.readLong();
+                    value = new BigDecimal(in.readUTF());
+                    if (in.readBoolean()) {
+                        accumulatedValueKey = in.readUTF();
+                    }
+                } catch (EOFException e) {
+                    break;
+                }
+                CacheKeyLong key = new CacheKeyLong(providerCode.isEmpty() ? null : providerCode, counterPeriodId);
+                deltas.computeIfAbsent(key, k -> new CounterDelta(k.getProvider(), k.getKey())).add(value, accumulatedValueKey);
+            }
+        }
+        return deltas;
+    }
+
+    /**
+     * Delete a segment file
+     *
+     * @param segmentToDelete Segment number
+     * @throws IOException Failed to delete a segment file
+     */
+    public void delete(long segmentToDelete) throws IOException {
+        Files.deleteIfExists(getSegmentFile(segmentToDelete));
+    }
+
+    private FileChannel openSegment(long segmentToOpen) throws IOException {
+        return FileChannel.open(getSegmentFile(segmentToOpen), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private Path getSegmentFile(long segmentNumber) {
+        return directory.resolve(SEGMENT_PREFIX + segmentNumber + SEGMENT_SUFFIX);
+    }
+}
@@ -18,6 +18,7 @@
 package org.meveo.service.billing.impl;
 
 import java.math.BigDecimal;
+import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
@@ -133,6 +134,9 @@ public class CounterInstanceService extends PersistenceService<CounterInstance>
     @Inject
     private MethodCallingUtils methodCallingUtils;
 
+    @Inject
+    private CounterDeltaAccumulator counterDeltaAccumulator;
+
     public CounterInstance counterInstanciation(ServiceInstance serviceInstance, CounterTemplate counterTemplate, ChargeInstance chargeInstance, boolean isVirtual) {
 
       return counterInstanciation(serviceInstance, counterTemplate, chargeInstance, isVirtual, null);
@@ -960,10 +964,15 @@ public class CounterInstanceService extends PersistenceService<CounterInstance>
         		break;
         	}
             try {
-                counterValueChangeInfos.addAll(MethodCallingUtils.executeFunctionLocked(counterInstance.getId(), () -> {
-                    List<CounterValueChangeInfo> values = methodCallingUtils.callCallableInNewTx(() -> incrementAccumulatorCounterValue_noLock(counterInstance, chargeInstance, walletOperations, isVirtual));
-                    return values;
-                }));
+                if (!isVirtual && isWriteBehind(counterInstance)) {
+                    counterValueChangeInfos.addAll(incrementAccumulatorCounterValue_writeBehind(counterInstance, chargeInstance, walletOperations));
+
+                } else {
+                    counterValueChangeInfos.addAll(MethodCallingUtils.executeFunctionLocked(CounterInstance.class.getSimpleName(), counterInstance.getId(), () -> {
+                        List<CounterValueChangeInfo> values = methodCallingUtils.callCallableInNewTx(() -> incrementAccumulatorCounterValue_noLock(counterInstance, chargeInstance, walletOperations, isVirtual));
+                        return values;
+                    }));
+                }
             } catch (CounterInstantiationException e) {
                 throw e;
             } catch (Exception e) {
@@ -1044,6 +1053,109 @@ public class CounterInstanceService extends PersistenceService<CounterInstance>
         return counterValueChangeInfos;
     }
 
+    /**
+     * Check if accumulator counter values are accumulated in memory and written to DB later. Applies only to counters without notification levels, so threshold crossings are
+     * detected on an exact counter value.
+     *
+     * @param counterInstance Counter instance
+     * @return True if counter value changes are accumulated by CounterDeltaAccumulator
+     */
+    private boolean isWriteBehind(CounterInstance counterInstance) {
+        return CounterDeltaAccumulator.isEnabled() && StringUtils.isBlank(counterInstance.getCounterTemplate().getNotificationLevels());
+    }
+
+    /**
+     * Increment accumulator counter by a given value in a write-behind mode - counter value changes are accumulated by CounterDeltaAccumulator and written to DB later. Counter
+     * period is created right away if one was not created yet matching the given date.
+     *
+     * @param counterInstance Counter instance to increment
+     * @param chargeInstance Charge instance counter is associated to
+     * @param walletOperations Wallet operations to increment accumulate counter for.
+     * @return A list of Counter value change summary - the previous, deduced and new counter value
+     * @throws CounterInstantiationException Failure to create a new counter period
+     */
+    private List<CounterValueChangeInfo> incrementAccumulatorCounterValue_writeBehind(CounterInstance counterInstance, ChargeInstance chargeInstance, List<WalletOperation> walletOperations)
+            throws CounterInstantiationException {
+
+        List<CounterValueChangeInfo> counterValueChangeInfos = new ArrayList<CounterValueChangeInfo>();
+
+        Date initDate = chargeInstance.getServiceInstance().getSubscriptionDate();
+
+        for (WalletOperation wo : walletOperations) {
+
+            CounterPeriod counterPeriod = getCounterPeriodByDate(counterInstance, wo.getOperationDate());
+            if (counterPeriod == null) {
+                MethodCallingUtils.executeMethodLocked(CounterInstance.class.getSimpleName(), counterInstance.getId(),
+                    () -> methodCallingUtils.callMethodInNewTx(() -> createCounterPeriodIfMissing_noLock(counterInstance, wo.getOperationDate(), initDate, chargeInstance, null, null, true)));
+                counterPeriod = getCounterPeriodByDate(counterInstance, wo.getOperationDate());
+                if (counterPeriod == null) {
+                    continue;
+                }
+            }
+
+            // Counter period is not modified, as changes are written to DB by CounterDeltaAccumulator
+            Entry<String, BigDecimal> accumulatedValue = evaluateAccumulatedValue(counterPeriod, chargeInstance, wo);
+            BigDecimal value = accumulatedValue.getValue();
+
+            BigDecimal previousValue = counterDeltaAccumulator.getPendingValue(counterPeriod.getId());
+            if (counterPeriod.getValue() != null) {
+                previousValue = previousValue.add(counterPeriod.getValue());
+            }
+            counterDeltaAccumulator.accumulate(counterPeriod.getId(), value, accumulatedValue.getKey());
+
+            CounterValueChangeInfo counterValueChangeInfo = new CounterValueChangeInfo(counterPeriod.getId(), counterPeriod.isAccumulator(), previousValue, value, previousValue.add(value));
+            counterValueChangeInfos.add(counterValueChangeInfo);
+
+            log.trace("Accumulator counter period {} change by {} was accumulated {}", counterPeriod.getId(), value, counterValueChangeInfo);
+
+            if (counterValueChangeInfo.isChange()) {
+                try {
+                    CounterPeriod counterPeriodChanged = counterPeriod.clone();
+                    counterPeriodChanged.setId(counterPeriod.getId());
+                    counterPeriodChanged.setValue(counterValueChangeInfo.getNewValue());
+                    if (accumulatedValue.getKey() != null) {
+                        Map<String, BigDecimal> accumulatedValues = counterPeriodChanged.getAccumulatedValues() != null ? counterPeriodChanged.getAccumulatedValues() : new HashMap<>();
+                        accumulatedValues.merge(accumulatedValue.getKey(), value, BigDecimal::add);
+                        counterPeriodChanged.setAccumulatedValues(accumulatedValues);
+                    }
+                    counterUpdatesTracking.addCounterPeriodChange(counterPeriodChanged, counterValueChangeInfo);
+
+                } catch (CloneNotSupportedException e) {
+                    // There is no reason to get here
+                }
+            }
+        }
+
+        return counterValueChangeInfos;
+    }
+
+    /**
+     * Evaluate a value to increment accumulator counter by, without modifying a counter period
+     *
+     * @param counterPeriod Counter period
+     * @param chargeInstance Charge instance
+     * @param walletOperation Wallet operation to get amount to increment by
+     * @return A value to increment by, with a key of a multi value accumulator counter value as a key, or NULL key if it is not a multi value accumulator counter
+     */
+    private Entry<String, BigDecimal> evaluateAccumulatedValue(CounterPeriod counterPeriod, ChargeInstance chargeInstance, WalletOperation walletOperation) {
+
+        CounterTemplate counterTemplate = counterPeriod.getCounterInstance().getCounterTemplate();
+        boolean isMultiValuesAccumulator = counterPeriod.getAccumulatorType() != null && counterPeriod.getAccumulatorType().equals(AccumulatorCounterTypeEnum.MULTI_VALUE);
+
+        if (isMultiValuesAccumulator && evaluateFilterElExpression(counterTemplate.getFilterEl(), walletOperation)) {
+            Entry<String, BigDecimal> multiAccumulatedValue = evaluateMultiAccumulatedValue(counterPeriod, chargeInstance, walletOperation);
+            return multiAccumulatedValue != null ? multiAccumulatedValue : new SimpleEntry<>(null, BigDecimal.ZERO);
+        }
+
+        BigDecimal value = BigDecimal.ZERO;
+        if (CounterTypeEnum.USAGE_AMOUNT.equals(counterPeriod.getCounterType())) {
+            value = appProvider.isEntreprise() ? walletOperation.getAmountWithoutTax() : walletOperation.getAmountWithTax();
+        } else if (CounterTypeEnum.USAGE.equals(counterPeriod.getCounterType())) {
+            value = walletOperation.getQuantity();
+        }
+        return new SimpleEntry<>(null, value);
+    }
+
     /**
      * Increment accumulator counter value for a given counter period
      *
@@ -1101,13 +1213,12 @@ public class CounterInstanceService extends PersistenceService<CounterInstance>
      * @return A value applied
      */
     private BigDecimal applyMultiAccumulatedValue(CounterPeriod counterPeriod, ChargeInstance chargeInstance, WalletOperation walletOperation) {
-        CounterTemplate counterTemplate = counterPeriod.getCounterInstance().getCounterTemplate();
-        BigDecimal value = evaluateValueElExpression(counterTemplate.getValueEl(), walletOperation);
-        String key = evaluateKeyElExpression(counterTemplate.getKeyEl(), walletOperation);
-        if (value == null || key == null) {
+        Entry<String, BigDecimal> multiAccumulatedValue = evaluateMultiAccumulatedValue(counterPeriod, chargeInstance, walletOperation);
+        if (multiAccumulatedValue == null) {
             return BigDecimal.ZERO;
         }
-        value = value.setScale(chargeInstance.getChargeTemplate().getUnitNbDecimal(), chargeInstance.getChargeTemplate().getRoundingMode().getRoundingMode());
+        String key = multiAccumulatedValue.getKey();
+        BigDecimal value = multiAccumulatedValue.getValue();
 
         if (counterPeriod.getAccumulatedValues() == null) {
             Map<String, BigDecimal> accumulatedValues = new HashMap<>();
@@ -1127,6 +1238,25 @@ public class CounterInstanceService extends PersistenceService<CounterInstance>
         return value;
     }
 
+    /**
+     * Evaluate a key and a value of a multi value accumulator counter
+     *
+     * @param counterPeriod the counter period
+     * @param chargeInstance the charge instance
+     * @param walletOperation the wallet operation
+     * @return A value with its key, or NULL if value or key can not be resolved
+     */
+    private Entry<String, BigDecimal> evaluateMultiAccumulatedValue(CounterPeriod counterPeriod, ChargeInstance chargeInstance, WalletOperation walletOperation) {
+        CounterTemplate counterTemplate = counterPeriod.getCounterInstance().getCounterTemplate();
+        BigDecimal value = evaluateValueElExpression(counterTemplate.getValueEl(), walletOperation);
+        String key = evaluateKeyElExpression(counterTemplate.getKeyEl(), walletOperation);
+        if (value == null || key == null) {
+            return null;
+        }
+        value = value.setScale(chargeInstance.getChargeTemplate().getUnitNbDecimal(), chargeInstance.getChargeTemplate().getRoundingMode().getRoundingMode());
+        return new SimpleEntry<>(key, value);
+    }
+
     private String evaluateKeyElExpression(String keyEl, WalletOperation walletOperation) {
         if (keyEl == null) {
             throw new InvalidELException("The key EL for the counter should not be null");
@@ -17,7 +17,10 @@
  */
 package org.meveo.service.billing.impl;
 
+import java.math.BigDecimal;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.meveo.admin.exception.BusinessException;
 import org.meveo.model.ICounterEntity;
@@ -33,6 +36,7 @@ import org.meveo.model.payments.CustomerAccount;
 import org.meveo.service.base.PersistenceService;
 
 import jakarta.ejb.Stateless;
+import jakarta.inject.Inject;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
 import jakarta.persistence.TemporalType;
@@ -47,6 +51,9 @@ import jakarta.persistence.TemporalType;
 @Stateless
 public class CounterPeriodService extends PersistenceService<CounterPeriod> {
 
+    @Inject
+    private CounterDeltaAccumulator counterDeltaAccumulator;
+
     /**
      * Find an existing counter period matching a given date
      *
@@ -137,6 +144,20 @@ public class CounterPeriodService extends PersistenceService<CounterPeriod> {
         }
         try {
             CounterPeriod cp = (CounterPeriod) query.getSingleResult();
+
+            // In a write-behind mode, accumulator counter changes not yet written to DB are added to the values stored in DB
+            if (CounterDeltaAccumulator.isEnabled() && cp.isAccumulator()) {
+                if (AccumulatorCounterTypeEnum.MULTI_VALUE.equals(cp.getAccumulatorType())) {
+                    Map<String, BigDecimal> accumulatedValues = cp.getAccumulatedValues() != null ? new HashMap<>(cp.getAccumulatedValues()) : new HashMap<>();
+                    counterDeltaAccumulator.getPendingAccumulatedValues(cp.getId()).forEach((key, value) -> accumulatedValues.merge(key, value, BigDecimal::add));
+                    if (!accumulatedValues.isEmpty()) {
+                        return accumulatedValues;
+                    }
+                }
+                BigDecimal pendingValue = counterDeltaAccumulator.getPendingValue(cp.getId());
+                return cp.getValue() != null ? cp.getValue().add(pendingValue) : pendingValue;
+            }
+
             if (AccumulatorCounterTypeEnum.MULTI_VALUE.equals(cp.getAccumulatorType()) && cp.getAccumulatedValues() != null && !cp.getAccumulatedValues().isEmpty()) {
                 return cp.getAccumulatedValues();
             }
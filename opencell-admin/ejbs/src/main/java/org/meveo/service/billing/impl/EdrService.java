@@ -25,6 +25,8 @@ import java.util.List;
 import org.meveo.admin.exception.BusinessException;
 import org.meveo.api.dto.billing.EDRDto;
 import org.meveo.cache.CdrEdrProcessingCacheContainerProvider;
+import org.meveo.cache.EdrDeduplicationFilter;
+import org.meveo.cache.EdrDeduplicationFilter.DeduplicationStatusEnum;
 import org.meveo.commons.utils.ParamBean;
 import org.meveo.commons.utils.ParamBeanFactory;
 import org.meveo.model.BaseEntity;
@@ -53,6 +55,9 @@ public class EdrService extends PersistenceService<EDR> {
     @Inject
     private CdrEdrProcessingCacheContainerProvider cdrEdrProcessingCacheContainerProvider;
 
+    @Inject
+    private EdrDeduplicationFilter edrDeduplicationFilter;
+
     @Inject
     private SubscriptionService subscriptionService;
 
@@ -73,12 +78,18 @@ public class EdrService extends PersistenceService<EDR> {
         /**
          * Use database to deduplicate EDRS
          */
-        DB;
+        DB,
+
+        /**
+         * Use time partitioned Bloom filters, stored in memory mapped files, to deduplicate EDRs. Database is checked only when a filter reports a possible duplicate.
+         */
+        BLOOM;
     }
 
     static boolean deduplicateEdrs = false;
     static boolean useInMemoryDeduplication = false;
     static boolean inMemoryDeduplicationPrepopulated = false;
+    static boolean useBloomDeduplication = false;
 
     private static final int PURGE_MAX_RESULTS = 30000;
 
@@ -90,6 +101,7 @@ public class EdrService extends PersistenceService<EDR> {
         if (deduplicateEdrs) {
             useInMemoryDeduplication = EdrService.DeduplicateEDRTypeEnum.MEMORY.name().equalsIgnoreCase(deduplicateType);
             inMemoryDeduplicationPrepopulated = paramBean.getProperty("mediation.deduplicateInMemory.prepopulate", "true").equals("true");
+            useBloomDeduplication = EdrService.DeduplicateEDRTypeEnum.BLOOM.name().equalsIgnoreCase(deduplicateType);
         }
     }
 
@@ -102,10 +114,28 @@ public class EdrService extends PersistenceService<EDR> {
      * @return List of EDR's we can rate until a given date.
      */
     public List<Long> getEDRsToRate(Date rateUntilDate, String ratingGroup,String parameter1, String parameter2, int nbToRetrieve) {
+        return getEDRsToRate("e.id", Long.class, rateUntilDate, ratingGroup, parameter1, parameter2, nbToRetrieve);
+    }
+
+    /**
+     * Get a list of EDR ids along with their subscription ids that are to be rated
+     * 
+     * @param rateUntilDate Date until EDRs should be processed
+     * @param ratingGroup Rating group
+     * @param parameter1 EDR parameter1
+     * @param parameter2 EDR parameter2
+     * @param nbToRetrieve Number of items to retrieve for processing
+     * @return A list of EDR and subscription ids, ordered by subscription
+     */
+    public List<Object[]> getEDRsAndSubscriptionsToRate(Date rateUntilDate, String ratingGroup, String parameter1, String parameter2, int nbToRetrieve) {
+        return getEDRsToRate("e.id, e.subscription.id", Object[].class, rateUntilDate, ratingGroup, parameter1, parameter2, nbToRetrieve);
+    }
+
+    private <R> List<R> getEDRsToRate(String select, Class<R> resultClass, Date rateUntilDate, String ratingGroup, String parameter1, String parameter2, int nbToRetrieve) {
 
     	 StringBuilder strQuery = new StringBuilder();
          
-         strQuery.append("SELECT e.id from EDR e where e.status='OPEN'");
+         strQuery.append("SELECT ").append(select).append(" from EDR e where e.status='OPEN'");
          
  	        if(rateUntilDate != null) {
  	        	strQuery.append(" AND e.eventDate<:rateUntilDate");
@@ -121,7 +151,7 @@ public class EdrService extends PersistenceService<EDR> {
  	        }
  	        strQuery.append(" order by e.subscription.id, e.id");
  	        
- 	        TypedQuery<Long> query = getEntityManager().createQuery(strQuery.toString(),Long.class);
+ 	        TypedQuery<R> query = getEntityManager().createQuery(strQuery.toString(), resultClass);
  	        if(rateUntilDate != null) {
  	        	query.setParameter("rateUntilDate", rateUntilDate);
  	        }
@@ -188,6 +218,8 @@ public class EdrService extends PersistenceService<EDR> {
                 isDuplicate = isEDRExistsByRecordId(originRecord);
                 cdrEdrProcessingCacheContainerProvider.setEdrDuplicationStatus(originRecord);
             }
+        } else if (useBloomDeduplication) {
+            isDuplicate = edrDeduplicationFilter.add(originRecord) == DeduplicationStatusEnum.POSSIBLE_DUPLICATE && isEDRExistsByRecordId(originRecord);
         } else {
             isDuplicate = isEDRExistsByRecordId(originRecord);
         }
@@ -200,6 +232,9 @@ public class EdrService extends PersistenceService<EDR> {
 
         if (deduplicateEdrs && useInMemoryDeduplication) {
             cdrEdrProcessingCacheContainerProvider.setEdrDuplicationStatus(edr.getOriginRecord());
+
+        } else if (deduplicateEdrs && useBloomDeduplication) {
+            edrDeduplicationFilter.add(edr.getOriginRecord());
         }
     }
 
@@ -236,6 +271,19 @@ public class EdrService extends PersistenceService<EDR> {
         return edrCacheKeys;
     }
 
+    /**
+     * Get origin records of EDRs created since a given date, to populate EDR Bloom filters. Paginated by EDR identifier.
+     *
+     * @param createdFrom Creation date to retrieve EDRs from
+     * @param lastId Pagination - identifier of the last EDR retrieved
+     * @param pageSize Pagination - number of records to retrieve
+     * @return A list of EDR origin record, creation date and identifier
+     */
+    public List<Object[]> getOriginRecordsCreatedSince(Date createdFrom, long lastId, int pageSize) {
+        return getEntityManager().createNamedQuery("EDR.getOriginRecordsCreatedSince", Object[].class).setParameter("createdFrom", createdFrom).setParameter("lastId", lastId).setMaxResults(pageSize)
+            .getResultList();
+    }
+
     /**
      * Gets All not open EDR between two Date.
      *
@@ -33,8 +33,10 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.StringJoiner;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.BooleanUtils;
+import org.hibernate.Hibernate;
 import org.hibernate.Session;
 import org.hibernate.exception.DataException;
 import org.meveo.admin.exception.BusinessException;
@@ -427,6 +429,79 @@ public class InvoiceLineService extends PersistenceService<InvoiceLine> {
         }
     }
 
+    /**
+     * Count invoice lines associated to an invoice
+     *
+     * @param invoiceId Invoice identifier
+     * @return Number of invoice lines
+     */
+    public long countInvoiceLinesByInvoice(long invoiceId) {
+        return getEntityManager().createNamedQuery("InvoiceLine.countByInvoiceID", Long.class).setParameter("invoiceId", invoiceId).getSingleResult();
+    }
+
+    /**
+     * Retrieve a single invoice line for each offer, service instance and subscription combination among invoice lines of an invoice. Used to determine invoiced offers, services and subscriptions
+     * without loading all invoice lines.
+     *
+     * @param invoiceId Invoice identifier
+     * @return A list of invoice lines ordered by id
+     */
+    public List<InvoiceLine> listFirstInvoiceLinesByOfferServiceAndSubscription(long invoiceId) {
+        return getEntityManager().createNamedQuery("InvoiceLine.listFirstByInvoiceIDGroupedByOfferServiceAndSubscription", InvoiceLine.class).setParameter("invoiceId", invoiceId).getResultList();
+    }
+
+    /**
+     * Stream invoice lines associated to an invoice. See getInvoiceLinesStream(TypedQuery) for stream usage.
+     *
+     * @param invoiceId Invoice identifier
+     * @return A stream of invoice lines ordered by id
+     */
+    public Stream<InvoiceLine> getInvoiceLinesStream(long invoiceId) {
+        return getInvoiceLinesStream(getEntityManager().createNamedQuery("InvoiceLine.listByInvoiceIDOrderById", InvoiceLine.class).setParameter("invoiceId", invoiceId));
+    }
+
+    /**
+     * Stream invoice lines associated to an invoice, of a given invoice category, that are associated to a given subcategory aggregate or not associated to any aggregate. See
+     * getInvoiceLinesStream(TypedQuery) for stream usage.
+     *
+     * @param invoiceId Invoice identifier
+     * @param invoiceCategoryId Invoice category identifier
+     * @param subCategoryAggregateId Subcategory invoice aggregate identifier
+     * @return A stream of invoice lines ordered by id
+     */
+    public Stream<InvoiceLine> getInvoiceLinesStream(long invoiceId, long invoiceCategoryId, long subCategoryAggregateId) {
+        return getInvoiceLinesStream(getEntityManager().createNamedQuery("InvoiceLine.listByInvoiceIDAndCategoryAndSubCategoryAggregate", InvoiceLine.class).setParameter("invoiceId", invoiceId)
+            .setParameter("invoiceCategoryId", invoiceCategoryId).setParameter("subCategoryAggregateId", subCategoryAggregateId));
+    }
+
+    /**
+     * Stream invoice lines with a database cursor. Lines are read-only and each line, together with its loaded rated transactions, is detached from a persistence context once the next line is requested,
+     * so memory consumption does not depend on a number of lines.<br/>
+     * <br/>
+     * Stream must be consumed sequentially in a transaction, must not be collected and must be closed.
+     *
+     * @param query Invoice line query
+     * @return A stream of invoice lines
+     */
+    private Stream<InvoiceLine> getInvoiceLinesStream(TypedQuery<InvoiceLine> query) {
+        InvoiceLine[] previousInvoiceLine = new InvoiceLine[1];
+        return query.setHint("org.hibernate.readOnly", true).setHint("org.hibernate.fetchSize", getInstance().getPropertyAsInteger("invoice.xml.streamingWriter.fetchSize", 1000)).getResultStream()
+            .peek(invoiceLine -> {
+                detachInvoiceLine(previousInvoiceLine[0]);
+                previousInvoiceLine[0] = invoiceLine;
+            }).onClose(() -> detachInvoiceLine(previousInvoiceLine[0]));
+    }
+
+    private void detachInvoiceLine(InvoiceLine invoiceLine) {
+        if (invoiceLine == null) {
+            return;
+        }
+        if (invoiceLine.getRatedTransactions() != null && Hibernate.isInitialized(invoiceLine.getRatedTransactions())) {
+            invoiceLine.getRatedTransactions().forEach(getEntityManager()::detach);
+        }
+        getEntityManager().detach(invoiceLine);
+    }
+
     public InvoiceLine createInvoiceLine(IBillableEntity entityToInvoice, AccountingArticle accountingArticle, ProductVersion productVersion, OrderLot orderLot, OfferTemplate offerTemplate, OrderOffer orderOffer,
             BigDecimal amountWithoutTaxToBeInvoiced, BigDecimal amountWithTaxToBeInvoiced, BigDecimal taxAmountToBeInvoiced, BigDecimal totalTaxRate) {
         return createInvoiceLine(entityToInvoice, accountingArticle, productVersion, orderLot, offerTemplate, orderOffer, amountWithoutTaxToBeInvoiced, amountWithTaxToBeInvoiced, taxAmountToBeInvoiced, totalTaxRate,
@@ -0,0 +1,327 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.service.billing.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.meveo.admin.exception.BusinessException;
+import org.meveo.admin.util.PdfWaterMark;
+import org.meveo.commons.utils.FileUtils;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+
+import net.sf.jasperreports.engine.DefaultJasperReportsContext;
+import net.sf.jasperreports.engine.JRException;
+import net.sf.jasperreports.engine.JasperFillManager;
+import net.sf.jasperreports.engine.JasperPrint;
+import net.sf.jasperreports.engine.JasperReport;
+import net.sf.jasperreports.engine.JasperReportsContext;
+import net.sf.jasperreports.engine.SimpleJasperReportsContext;
+import net.sf.jasperreports.engine.data.JRXmlDataSource;
+import net.sf.jasperreports.engine.util.JRXmlUtils;
+import net.sf.jasperreports.engine.util.xml.JRXPathExecuter;
+import net.sf.jasperreports.engine.util.xml.JRXPathExecuterUtils;
+import net.sf.jasperreports.export.SimpleExporterInput;
+import net.sf.jasperreports.export.SimpleOutputStreamExporterOutput;
+import net.sf.jasperreports.pdf.JRPdfExporter;
+import net.sf.jasperreports.pdf.SimplePdfExporterConfiguration;
+
+/**
+ * Invoice PDF rendering split in three stages: parse an invoice XML file, fill a report and export it to a PDF file.<br/>
+ * <br/>
+ * Parse and export stages run on their own threads, each fed by a bounded queue. When a queue is full, a submitting thread runs a stage itself, slowing down submission. A fill
+ * stage is run by a submitting thread, as report parameters contain entities bound to a persistence context of that thread. A typical use is to submit XML parsing of a batch of
+ * invoices, fill them one by one while the following invoices are parsed and the previous ones are exported, and wait for exports to complete.<br/>
+ * <br/>
+ * Stage methods are static, so the same code renders a single invoice without a pipeline.
+ */
+public class InvoicePdfPipeline implements AutoCloseable {
+
+    /**
+     * XPath executer factory used to read invoice XML file
+     */
+    public static final String XPATH_EXECUTER_FACTORY = "net.sf.jasperreports.jaxen.util.xml.JaxenXPathExecuterFactory";
+
+    /**
+     * XPath executers, one per thread, reused among invoices filled by the same thread. Executer caches compiled XPath expressions and is not thread safe.
+     */
+    private static final ThreadLocal<JRXPathExecuter> xPathExecuters = ThreadLocal.withInitial(() -> {
+        SimpleJasperReportsContext context = new SimpleJasperReportsContext(DefaultJasperReportsContext.getInstance());
+        context.setProperty("net.sf.jasperreports.xpath.executer.factory", XPATH_EXECUTER_FACTORY);
+        try {
+            return JRXPathExecuterUtils.getXPathExecuter(context);
+        } catch (JRException e) {
+            throw new BusinessException("Failed to instantiate XPath executer", e);
+        }
+    });
+
+    /**
+     * XML parsers, one per thread, reused among invoices parsed by the same thread
+     */
+    private static final ThreadLocal<DocumentBuilder> documentBuilders = ThreadLocal.withInitial(() -> {
+        try {
+            return JRXmlUtils.createDocumentBuilder();
+        } catch (JRException e) {
+            throw new BusinessException("Failed to instantiate XML parser", e);
+        }
+    });
+
+    private final ExecutorService parseExecutor;
+
+    private final ExecutorService exportExecutor;
+
+    private final long startTime = System.currentTimeMillis();
+
+    private final LongAdder nbInvoices = new LongAdder();
+
+    private final LongAdder nbPages = new LongAdder();
+
+    /**
+     * Constructor
+     *
+     * @param nbParseThreads Number of threads to parse invoice XML files
+     * @param nbExportThreads Number of threads to export filled reports to PDF files
+     * @param queueSize Number of invoices that can wait to be parsed and, separately, to be exported
+     * @param threadFactory Factory to create stage threads with
+     */
+    public InvoicePdfPipeline(int nbParseThreads, int nbExportThreads, int queueSize, ThreadFactory threadFactory) {
+        parseExecutor = new ThreadPoolExecutor(nbParseThreads, nbParseThreads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+        exportExecutor = new ThreadPoolExecutor(nbExportThreads, nbExportThreads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize), threadFactory, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Submit an invoice XML file to parse
+     *
+     * @param rendering Invoice PDF rendering information
+     * @return Parsed invoice XML file
+     */
+    public Future<Document> submitParse(InvoicePdfRendering rendering) {
+        return parseExecutor.submit(() -> runParse(rendering));
+    }
+
+    /**
+     * Submit a filled report to export to a PDF file
+     *
+     * @param rendering Invoice PDF rendering information
+     * @param jasperPrint Filled report
+     * @return Export completion
+     */
+    public Future<?> submitExport(InvoicePdfRendering rendering, JasperPrint jasperPrint) {
+        return exportExecutor.submit(() -> {
+            runExport(rendering, jasperPrint);
+            nbInvoices.increment();
+            nbPages.add(jasperPrint.getPages().size());
+        });
+    }
+
+    /**
+     * Parse an invoice XML file on a parse stage thread
+     *
+     * @param rendering Invoice PDF rendering information
+     * @return Parsed invoice XML file
+     * @throws BusinessException Failed to read or parse a file
+     */
+    protected Document runParse(InvoicePdfRendering rendering) throws BusinessException {
+        return parse(rendering);
+    }
+
+    /**
+     * Export a filled report to a PDF file on an export stage thread
+     *
+     * @param rendering Invoice PDF rendering information
+     * @param jasperPrint Filled report
+     * @throws BusinessException Failed to export or write a PDF file
+     */
+    protected void runExport(InvoicePdfRendering rendering, JasperPrint jasperPrint) throws BusinessException {
+        export(rendering, jasperPrint);
+    }
+
+    /**
+     * @return Number of invoices exported to PDF files so far
+     */
+    public long getNbInvoices() {
+        return nbInvoices.sum();
+    }
+
+    /**
+     * @return Number of PDF pages exported so far
+     */
+    public long getNbPages() {
+        return nbPages.sum();
+    }
+
+    /**
+     * @return Number of PDF pages exported per second since pipeline creation
+     */
+    public double getPagesPerSecond() {
+        long elapsed = System.currentTimeMillis() - startTime;
+        return elapsed > 0 ? nbPages.sum() * 1000d / elapsed : 0;
+    }
+
+    /**
+     * Stop stage threads once submitted work is completed
+     */
+    @Override
+    public void close() {
+        parseExecutor.shutdown();
+        exportExecutor.shutdown();
+        try {
+            parseExecutor.awaitTermination(1, TimeUnit.MINUTES);
+            exportExecutor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Parse an invoice XML file. Main report and subreport data sources share a parsed document.
+     *
+     * @param rendering Invoice PDF rendering information
+     * @return Parsed invoice XML file
+     * @throws BusinessException Failed to read or parse a file
+     */
+    public static Document parse(InvoicePdfRendering rendering) throws BusinessException {
+        DocumentBuilder documentBuilder = documentBuilders.get();
+        documentBuilder.reset();
+        try (InputStream inputStream = FileUtils.getInputStream(rendering.getXmlFile())) {
+            return documentBuilder.parse(inputStream);
+        } catch (IOException | SAXException e) {
+            throw new BusinessException("Failed to parse an XML file " + rendering.getXmlFile().getPath(), e);
+        }
+    }
+
+    /**
+     * Fill a report with invoice data
+     *
+     * @param rendering Invoice PDF rendering information
+     * @param document Parsed invoice XML file
+     * @return Filled report
+     * @throws JRException Failed to fill a report
+     */
+    public static JasperPrint fill(InvoicePdfRendering rendering, Document document) throws JRException {
+        JRXmlDataSource dataSource = new JRXmlDataSource(rendering.getContext(), document);
+        // Subreport data sources inherit XPath executer
+        dataSource.setXPathExecuter(xPathExecuters.get());
+        return JasperFillManager.getInstance(rendering.getContext()).fill(rendering.getJasperReport(), rendering.getParameters(), dataSource);
+    }
+
+    /**
+     * Export a filled report to a PDF file in a configured storage and add a watermark if requested
+     *
+     * @param rendering Invoice PDF rendering information
+     * @param jasperPrint Filled report
+     * @throws BusinessException Failed to export or write a PDF file
+     */
+    public static void export(InvoicePdfRendering rendering, JasperPrint jasperPrint) throws BusinessException {
+
+        try (OutputStream outputStream = FileUtils.getOutputStream(rendering.getPdfFullFilename())) {
+            if (outputStream == null) {
+                throw new BusinessException("Failed to open a PDF file " + rendering.getPdfFullFilename() + " for writing");
+            }
+            JRPdfExporter exporter = new JRPdfExporter(rendering.getContext());
+            exporter.setExporterInput(new SimpleExporterInput(jasperPrint));
+            exporter.setExporterOutput(new SimpleOutputStreamExporterOutput(outputStream));
+            SimplePdfExporterConfiguration configuration = new SimplePdfExporterConfiguration();
+            configuration.setTagged(true);
+            exporter.setConfiguration(configuration);
+            exporter.exportReport();
+
+        } catch (IOException | JRException e) {
+            throw new BusinessException("Failed to generate a PDF file " + rendering.getPdfFullFilename(), e);
+        }
+
+        if (rendering.getWaterMark() != null) {
+            PdfWaterMark.add(rendering.getPdfFullFilename(), rendering.getWaterMark(), null);
+        }
+    }
+
+    /**
+     * Information needed to render an invoice PDF file, gathered from DB before rendering
+     */
+    public static class InvoicePdfRendering {
+
+        private final File xmlFile;
+
+        private final JasperReport jasperReport;
+
+        private final Map<String, Object> parameters;
+
+        private final JasperReportsContext context;
+
+        private final String pdfFullFilename;
+
+        private final String waterMark;
+
+        /**
+         * Constructor
+         *
+         * @param xmlFile Invoice XML file
+         * @param jasperReport Compiled invoice template
+         * @param parameters Report parameters
+         * @param context JasperReports context. Shared among invoices and must not be modified.
+         * @param pdfFullFilename Full path of a PDF file to create
+         * @param waterMark Watermark text to add to a PDF file. Optional.
+         */
+        public InvoicePdfRendering(File xmlFile, JasperReport jasperReport, Map<String, Object> parameters, JasperReportsContext context, String pdfFullFilename, String waterMark) {
+            this.xmlFile = xmlFile;
+            this.jasperReport = jasperReport;
+            this.parameters = parameters;
+            this.context = context;
+            this.pdfFullFilename = pdfFullFilename;
+            this.waterMark = waterMark;
+        }
+
+        public File getXmlFile() {
+            return xmlFile;
+        }
+
+        public JasperReport getJasperReport() {
+            return jasperReport;
+        }
+
+        public Map<String, Object> getParameters() {
+            return parameters;
+        }
+
+        public JasperReportsContext getContext() {
+            return context;
+        }
+
+        public String getPdfFullFilename() {
+            return pdfFullFilename;
+        }
+
+        public String getWaterMark() {
+            return waterMark;
+        }
+    }
+}
@@ -79,6 +79,9 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
@@ -93,7 +96,6 @@ import org.apache.commons.beanutils.BeanUtils;
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.collections4.ListUtils;
-import org.apache.commons.io.IOUtils;
 import org.hibernate.Hibernate;
 import org.hibernate.LockMode;
 import org.hibernate.ScrollMode;
@@ -116,7 +118,6 @@ import org.meveo.admin.job.invoicing.DiscountPlanSummary;
 import org.meveo.admin.job.invoicing.InvoicingItem;
 import org.meveo.admin.job.invoicing.InvoicingService;
 import org.meveo.admin.storage.StorageFactory;
-import org.meveo.admin.util.PdfWaterMark;
 import org.meveo.admin.util.ResourceBundle;
 import org.meveo.admin.util.pagination.PaginationConfiguration;
 import org.meveo.api.dto.CategoryInvoiceAgregateDto;
@@ -135,6 +136,7 @@ import org.meveo.apiv2.billing.BasicInvoice;
 import org.meveo.apiv2.billing.InvoiceLineRTs;
 import org.meveo.apiv2.billing.InvoiceLinesToReplicate;
 import org.meveo.apiv2.billing.RejectReasonInput;
+import org.meveo.cache.JasperReportCache;
 import org.meveo.commons.utils.MethodCallingUtils;
 import org.meveo.commons.utils.FileUtils;
 import org.meveo.commons.utils.NumberUtils;
@@ -251,6 +253,7 @@ import org.meveo.service.admin.impl.TradingCurrencyService;
 import org.meveo.service.base.NativePersistenceService;
 import org.meveo.service.base.PersistenceService;
 import org.meveo.service.billing.impl.InvoiceLineService.InvoiceLineCreationStatistics;
+import org.meveo.service.billing.impl.InvoicePdfPipeline.InvoicePdfRendering;
 import org.meveo.service.billing.impl.article.AccountingArticleService;
 import org.meveo.service.catalog.impl.CalendarService;
 import org.meveo.service.catalog.impl.DiscountPlanItemService;
@@ -272,6 +275,8 @@ import org.meveo.service.order.OrderService;
 import org.meveo.service.payments.impl.AccountOperationService;
 import org.meveo.service.payments.impl.CustomerAccountService;
 import org.meveo.service.payments.impl.MatchingCodeService;
+import org.meveo.service.metrics.BillingMetrics;
+import org.meveo.service.metrics.BillingMetrics.Stage;
 import org.meveo.service.payments.impl.OCCTemplateService;
 import org.meveo.service.payments.impl.OtherCreditAndChargeService;
 import org.meveo.service.payments.impl.RecordedInvoiceService;
@@ -283,6 +288,7 @@ import org.meveo.service.securityDeposit.impl.FinanceSettingsService;
 import org.meveo.service.settings.impl.AdvancedSettingsService;
 import org.meveo.service.tax.TaxClassService;
 import org.meveo.service.tax.TaxMappingService;
+import org.w3c.dom.Document;
 import org.w3c.dom.Node;
 
 import jakarta.annotation.PostConstruct;
@@ -300,16 +306,11 @@ import jakarta.persistence.Query;
 import jakarta.xml.bind.JAXBException;
 import net.sf.jasperreports.engine.DefaultJasperReportsContext;
 import net.sf.jasperreports.engine.JRException;
-import net.sf.jasperreports.engine.JasperFillManager;
 import net.sf.jasperreports.engine.JasperPrint;
 import net.sf.jasperreports.engine.JasperReport;
-import net.sf.jasperreports.engine.data.JRXmlDataSource;
-import net.sf.jasperreports.engine.util.JRLoader;
-import net.sf.jasperreports.pdf.JRPdfExporter;
-import net.sf.jasperreports.pdf.SimplePdfExporterConfiguration;
+import net.sf.jasperreports.engine.JasperReportsContext;
+import net.sf.jasperreports.engine.SimpleJasperReportsContext;
 import net.sf.jasperreports.pdf.type.PdfaConformanceEnum;
-import net.sf.jasperreports.export.SimpleExporterInput;
-import net.sf.jasperreports.export.SimpleOutputStreamExporterOutput;
 
 /**
  * The Class InvoiceService.
@@ -476,6 +477,9 @@ public class InvoiceService extends PersistenceService<Invoice> {
 	
 	@Inject
 	private MethodCallingUtils methodCallingUtils;
+
+    @Inject
+    private JasperReportCache jasperReportCache;
 	
 	
 	 /** folder for pdf .*/
@@ -505,9 +509,9 @@ public class InvoiceService extends PersistenceService<Invoice> {
     private String DATE_PATERN = "yyyy.MM.dd";
 
     /**
-     * map used to store temporary jasper report.
+     * JasperReports contexts to render PDF files, by icc profile path
      */
-    private static Map<String, JasperReport> jasperReportMap = new HashMap<>();
+    private static final Map<String, JasperReportsContext> pdfJasperReportsContexts = new ConcurrentHashMap<>();
 
     /**
      * Description translation map.
@@ -1796,6 +1800,71 @@ public class InvoiceService extends PersistenceService<Invoice> {
         return invoice;
     }
 
+    /**
+     * Produce invoice PDF files using a rendering pipeline and update invoice records in DB. XML files are parsed and PDF files are exported by pipeline threads, while reports
+     * are filled by a current thread.
+     *
+     * @param invoices Invoices
+     * @param pdfPipeline Invoice PDF rendering pipeline
+     * @throws BusinessException Failed to produce any of PDF files
+     */
+    public void produceInvoicePdfs(List<Invoice> invoices, InvoicePdfPipeline pdfPipeline) throws BusinessException {
+
+        List<InvoicePdfRendering> renderings = new ArrayList<>(invoices.size());
+        List<Future<Document>> documents = new ArrayList<>(invoices.size());
+        // An invoice PDF is timed from a submission of its XML file to a completion of its PDF file, as its stages overlap with other invoices' stages
+        long[] pdfStarts = new long[invoices.size()];
+        for (Invoice invoice : invoices) {
+            InvoicePdfRendering rendering = prepareInvoicePdfRendering(invoice);
+            pdfStarts[renderings.size()] = BillingMetrics.start();
+            renderings.add(rendering);
+            documents.add(pdfPipeline.submitParse(rendering));
+        }
+
+        List<Future<?>> exports = new ArrayList<>(invoices.size());
+        try {
+            for (int i = 0; i < renderings.size(); i++) {
+                InvoicePdfRendering rendering = renderings.get(i);
+                exports.add(pdfPipeline.submitExport(rendering, InvoicePdfPipeline.fill(rendering, documents.get(i).get())));
+            }
+            for (int i = 0; i < exports.size(); i++) {
+                exports.get(i).get();
+                BillingMetrics.record(Stage.INVOICE_PDF, pdfStarts[i]);
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException("Interrupted while generating PDF files", e);
+
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof BusinessException ? (BusinessException) e.getCause() : new BusinessException("Failed to generate a PDF file", e.getCause());
+
+        } catch (JRException e) {
+            throw new BusinessException("Failed to generate a PDF file", e);
+
+        } finally {
+            // On failure, wait for exports already submitted, so no PDF file is written once a failure is reported
+            for (Future<Document> document : documents) {
+                document.cancel(false);
+            }
+            for (Future<?> export : exports) {
+                try {
+                    export.get();
+                } catch (Exception e) {
+                    // A failure is reported already
+                }
+            }
+        }
+
+        for (Invoice invoice : invoices) {
+            log.info("PDF file '{}' produced for invoice {}", invoice.getPdfFilename(), invoice.getInvoiceNumberOrTemporaryNumber());
+            invoice.setPdfDate(new Date());
+            pdfGeneratedEventProducer.fire(invoice);
+            invoice = updateNoCheck(invoice);
+            entityUpdatedEventProducer.fire(invoice);
+        }
+    }
+
     /**
      * Produce invoice. v5.0 Refresh jasper template without restarting wildfly
      *
@@ -1805,6 +1874,30 @@ public class InvoiceService extends PersistenceService<Invoice> {
      * @lastModifiedVersion 5.0
      */
     public void produceInvoicePdfNoUpdate(Invoice invoice) throws BusinessException {
+
+        InvoicePdfRendering rendering = prepareInvoicePdfRendering(invoice);
+        try {
+            long pdfStart = BillingMetrics.start();
+            JasperPrint jasperPrint = InvoicePdfPipeline.fill(rendering, InvoicePdfPipeline.parse(rendering));
+            InvoicePdfPipeline.export(rendering, jasperPrint);
+            BillingMetrics.record(Stage.INVOICE_PDF, pdfStart);
+
+            log.info("PDF file '{}' produced for invoice {}", rendering.getPdfFullFilename(), invoice.getInvoiceNumberOrTemporaryNumber());
+
+        } catch (Throwable e) {
+            throw new BusinessException("Failed to generate a PDF file for " + invoice.getPdfFilename(), e);
+        }
+    }
+
+    /**
+     * Gather information needed to render invoice PDF file: make sure XML file and invoice template exist, construct report parameters and determine PDF file name. Invoice's PDF
+     * file name is updated.
+     *
+     * @param invoice Invoice to generate PDF for
+     * @return Invoice PDF rendering information
+     * @throws BusinessException Failed to prepare invoice template or XML file
+     */
+    private InvoicePdfRendering prepareInvoicePdfRendering(Invoice invoice) throws BusinessException {
         log.debug("Creating pdf for invoice id={} number={}", invoice.getId(), invoice.getInvoiceNumberOrTemporaryNumber());
 
         ParamBean paramBean = paramBeanFactory.getInstance();
@@ -1832,7 +1925,6 @@ public class InvoiceService extends PersistenceService<Invoice> {
         String pdfFilename = getOrGeneratePdfFilename(invoice);
         invoice.setPdfFilename(pdfFilename);
         String pdfFullFilename = getFullPdfFilePath(invoice, true);
-        InputStream reportTemplate = null;
 		try {
 			if (!isInvoiceAdjustment) {
 				generateInvoiceFile(billingTemplateName, resDir);
@@ -1854,51 +1946,42 @@ public class InvoiceService extends PersistenceService<Invoice> {
             }
             log.debug("Jasper template used: {}", jasperFile.getCanonicalPath());
 
-            reportTemplate = FileUtils.getInputStream(jasperFile);
-
-            JRXmlDataSource dataSource = FileUtils.getJRXmlDataSource(invoiceXmlFile);
+            JasperReport jasperReport = jasperReportCache.getJasperReport(jasperFile);
 
-            String fileKey = jasperFile.getPath() + jasperFile.lastModified();
-            JasperReport jasperReport = jasperReportMap.get(fileKey);
-            if (jasperReport == null) {
-                jasperReport = (JasperReport) JRLoader.loadObject(reportTemplate);
-                jasperReportMap.put(fileKey, jasperReport);
-            }
-
-            DefaultJasperReportsContext context = DefaultJasperReportsContext.getInstance();
-            context.setProperty("net.sf.jasperreports.default.pdf.font.name", "net/sf/jasperreports/fonts/dejavu/DejaVuSans.ttf");
-            context.setProperty("net.sf.jasperreports.default.pdf.embedded", "true");
-            context.setProperty("net.sf.jasperreports.export.pdfa.conformance", PdfaConformanceEnum.PDFA_1A.getName());
-            context.setProperty("net.sf.jasperreports.export.pdfa.icc.profile.path", resDir + File.separator + billingTemplateName + File.separator + "srgb.icc");
-            context.setProperty("net.sf.jasperreports.xpath.executer.factory", "net.sf.jasperreports.jaxen.util.xml.JaxenXPathExecuterFactory");
-            JasperPrint jasperPrint = JasperFillManager.fillReport(jasperReport, parameters, dataSource);
-            JRPdfExporter exporter = new JRPdfExporter();
-            exporter.setExporterInput(new SimpleExporterInput(jasperPrint));
-            exporter.setExporterOutput(new SimpleOutputStreamExporterOutput(pdfFullFilename));
-            SimplePdfExporterConfiguration configuration = new SimplePdfExporterConfiguration();
-            configuration.setTagged(true);
-            exporter.setConfiguration(configuration);
-            exporter.exportReport();
-
-            if ("true".equals(paramBeanFactory.getInstance().getProperty("invoice.pdf.addWaterMark", "true"))) {
-                if (invoice.getInvoiceType().getCode().equals(paramBeanFactory.getInstance().getProperty("invoiceType.draft.code", "DRAFT")) || (invoice.isDraft() != null && invoice.isDraft())) {
-                    PdfWaterMark.add(pdfFullFilename, paramBean.getProperty("invoice.pdf.waterMark", "PROFORMA"), null);
+            String waterMark = null;
+            if ("true".equals(paramBean.getProperty("invoice.pdf.addWaterMark", "true"))) {
+                if (invoice.getInvoiceType().getCode().equals(paramBean.getProperty("invoiceType.draft.code", "DRAFT")) || (invoice.isDraft() != null && invoice.isDraft())) {
+                    waterMark = paramBean.getProperty("invoice.pdf.waterMark", "PROFORMA");
                 }
             }
-            invoice.setPdfFilename(pdfFilename);
-            
-          
 
-            log.info("PDF file '{}' produced for invoice {}", pdfFullFilename, invoice.getInvoiceNumberOrTemporaryNumber());
+            return new InvoicePdfRendering(invoiceXmlFile, jasperReport, parameters, getPdfJasperReportsContext(resDir, billingTemplateName), pdfFullFilename, waterMark);
 
-        } catch (IOException | JRException e) {
-            throw new BusinessException("Failed to generate a PDF file for " + pdfFilename, e);
-        } catch(Throwable e) {
+        } catch (Throwable e) {
             throw new BusinessException("Failed to generate a PDF file for " + pdfFilename, e);
-        } finally {
-            IOUtils.closeQuietly(reportTemplate);
         }
     }
+
+    /**
+     * Get a JasperReports context to render PDF files with a given billing template. Context is created once per billing template, as icc profile path depends on a billing
+     * template, and is shared by all invoices rendered in parallel.
+     *
+     * @param resDir Jasper templates directory
+     * @param billingTemplateName Billing template name
+     * @return JasperReports context. Must not be modified.
+     */
+    private JasperReportsContext getPdfJasperReportsContext(String resDir, String billingTemplateName) {
+        String iccProfilePath = resDir + File.separator + billingTemplateName + File.separator + "srgb.icc";
+        return pdfJasperReportsContexts.computeIfAbsent(iccProfilePath, path -> {
+            SimpleJasperReportsContext context = new SimpleJasperReportsContext(DefaultJasperReportsContext.getInstance());
+            context.setProperty("net.sf.jasperreports.default.pdf.font.name", "net/sf/jasperreports/fonts/dejavu/DejaVuSans.ttf");
+            context.setProperty("net.sf.jasperreports.default.pdf.embedded", "true");
+            context.setProperty("net.sf.jasperreports.export.pdfa.conformance", PdfaConformanceEnum.PDFA_1A.getName());
+            context.setProperty("net.sf.jasperreports.export.pdfa.icc.profile.path", path);
+            context.setProperty("net.sf.jasperreports.xpath.executer.factory", InvoicePdfPipeline.XPATH_EXECUTER_FACTORY);
+            return context;
+        });
+    }
     
     /**
      * Generate Invoice File
@@ -2320,7 +2403,9 @@ public class InvoiceService extends PersistenceService<Invoice> {
      */
     public void produceInvoiceXmlNoUpdate(Invoice invoice, boolean rtBillingProcess) throws BusinessException {
 
+        long xmlStart = BillingMetrics.start();
         xmlInvoiceCreator.createXMLInvoice(invoice, false, rtBillingProcess);
+        BillingMetrics.record(Stage.INVOICE_XML, xmlStart);
         xmlGeneratedEventProducer.fire(invoice);
     }
 
@@ -7554,7 +7639,7 @@ public class InvoiceService extends PersistenceService<Invoice> {
      * Clear cached Jasper reports
      */
     public static void clearJasperReportCache() {
-        jasperReportMap.clear();
+        JasperReportCache.clearAll();
     }
     
     @SuppressWarnings("unchecked")
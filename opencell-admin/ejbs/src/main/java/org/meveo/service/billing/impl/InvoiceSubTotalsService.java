@@ -4,6 +4,7 @@ import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.stream.Stream;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -108,29 +109,39 @@ public class InvoiceSubTotalsService extends BusinessService<InvoiceSubTotals> {
 	
 
 	public List<InvoiceSubTotals> calculateSubTotals(InvoiceType invoiceType, List<InvoiceLine> invoiceLines) throws BusinessException{
+		return calculateSubTotals(invoiceType, invoiceLines.stream());
+	}
+
+	/**
+	 * Calculate invoice subtotals of invoice lines that are iterated only once, so lines do not have to be loaded all at once
+	 *
+	 * @param invoiceType Invoice type
+	 * @param invoiceLines Invoice lines
+	 * @return Invoice subtotals with calculated amounts
+	 * @throws BusinessException Failed to calculate subtotals
+	 */
+	public List<InvoiceSubTotals> calculateSubTotals(InvoiceType invoiceType, Stream<InvoiceLine> invoiceLines) throws BusinessException{
 		try {
 			
 			var invoiceSubtotals = findByInvoiceType(invoiceType);
 			if(CollectionUtils.isEmpty(invoiceSubtotals)) return Collections.emptyList();
 			invoiceSubtotals.forEach( ist -> {
-				BigDecimal amountWithTax = BigDecimal.ZERO;
-				BigDecimal amountWithoutTax = BigDecimal.ZERO;
-				BigDecimal transactionalAmountWithoutTax = BigDecimal.ZERO;
-				BigDecimal transactionalAmountWithTax = BigDecimal.ZERO;
-				for (InvoiceLine invl : invoiceLines) {
+				ist.setAmountWithTax(BigDecimal.ZERO);
+				ist.setAmountWithoutTax(BigDecimal.ZERO);
+				ist.setTransactionalAmountWithoutTax(BigDecimal.ZERO);
+				ist.setTransactionalAmountWithTax(BigDecimal.ZERO);
+			});
+			invoiceLines.forEach( invl -> {
+				for (InvoiceSubTotals ist : invoiceSubtotals) {
 				    Boolean evaluateExpr = ist.getSubTotalEl() != null ? ValueExpressionWrapper.evaluateExpression(ist.getSubTotalEl(), Boolean.class, invl) : null;
 					boolean isValid = StringUtils.isNotEmpty(ist.getSubTotalEl()) && evaluateExpr != null ? evaluateExpr : false;
 					if(isValid) {
-						amountWithTax = amountWithTax.add(invl.getAmountWithTax() != null ? invl.getAmountWithTax() : BigDecimal.ZERO);
-						amountWithoutTax = amountWithoutTax.add(invl.getAmountWithoutTax() != null ? invl.getAmountWithoutTax() : BigDecimal.ZERO);
-						transactionalAmountWithTax = transactionalAmountWithTax.add(invl.getTransactionalAmountWithTax() != null ? invl.getTransactionalAmountWithTax() : BigDecimal.ZERO);
-						transactionalAmountWithoutTax = transactionalAmountWithoutTax.add(invl.getTransactionalAmountWithoutTax() != null ? invl.getTransactionalAmountWithoutTax() : BigDecimal.ZERO);
+						ist.setAmountWithTax(ist.getAmountWithTax().add(invl.getAmountWithTax() != null ? invl.getAmountWithTax() : BigDecimal.ZERO));
+						ist.setAmountWithoutTax(ist.getAmountWithoutTax().add(invl.getAmountWithoutTax() != null ? invl.getAmountWithoutTax() : BigDecimal.ZERO));
+						ist.setTransactionalAmountWithTax(ist.getTransactionalAmountWithTax().add(invl.getTransactionalAmountWithTax() != null ? invl.getTransactionalAmountWithTax() : BigDecimal.ZERO));
+						ist.setTransactionalAmountWithoutTax(ist.getTransactionalAmountWithoutTax().add(invl.getTransactionalAmountWithoutTax() != null ? invl.getTransactionalAmountWithoutTax() : BigDecimal.ZERO));
 					}
 				}
-				ist.setAmountWithTax(amountWithTax);
-				ist.setAmountWithoutTax(amountWithoutTax);
-				ist.setTransactionalAmountWithoutTax(transactionalAmountWithoutTax);
-				ist.setTransactionalAmountWithTax(transactionalAmountWithTax);
 			});
 			return invoiceSubtotals;
 		}catch(Exception e) {
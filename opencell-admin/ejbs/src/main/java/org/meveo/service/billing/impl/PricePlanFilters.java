@@ -0,0 +1,409 @@
+package org.meveo.service.billing.impl;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Map;
+
+import org.meveo.model.catalog.PricePlanMatrixForRating;
+
+/**
+ * Price plan filtering rules as configured in "pricePlanFilters" advanced settings group.<br/>
+ * <br/>
+ * Rules can be applied either as a JPQL query or in memory to a list of price plans already retrieved for a charge. Both ways give the same result.
+ */
+public class PricePlanFilters implements Serializable {
+
+    private static final long serialVersionUID = -2611018318424700349L;
+
+    /**
+     * Advanced settings group that price plan filtering rules are read from
+     */
+    public static final String ADVANCED_SETTINGS_GROUP = "pricePlanFilters";
+
+    private boolean enablePPFilters;
+
+    private boolean filterBySeller;
+
+    private boolean filterByOfferTemplate;
+
+    private boolean filterByTradingCountry;
+
+    private boolean filterByTradingCurrency;
+
+    private boolean filterByCriteria1Value;
+
+    private boolean filterByCriteria2Value;
+
+    private boolean filterByCriteria3Value;
+
+    private boolean filterByCriteria1ValueInCode;
+
+    private boolean filterByCriteria2ValueInCode;
+
+    private boolean filterByCriteria3ValueInCode;
+
+    private boolean filterByValidityCalendarInCode;
+
+    private boolean filterByCriteriaELInCode;
+
+    private boolean filterByStartSubscriptionDate;
+
+    private boolean filterByEndSubscriptionDate;
+
+    private boolean filterByMinSubscriptionAge;
+
+    private boolean filterByMaxSubscriptionAge;
+
+    private boolean filterByStartRatingDate;
+
+    private boolean filterByEndRatingDate;
+
+    private boolean filterByValidityFrom;
+
+    private boolean filterByValidityDate;
+
+    private boolean filterByMaxQuantity;
+
+    private boolean filterByMinQuantity;
+
+    /**
+     * Parse price plan filtering rules from advanced settings
+     *
+     * @param advancedSettingsValues Advanced settings of "pricePlanFilters" group
+     * @return Price plan filtering rules
+     */
+    public static PricePlanFilters of(Map<String, Object> advancedSettingsValues) {
+
+        PricePlanFilters filters = new PricePlanFilters();
+
+        // Value of 2 will filter by criteriaXValue property in code, value of TRUE or 1 will filter in DB
+        filters.filterByCriteria1ValueInCode = isIntegerValue(advancedSettingsValues, "pricePlanFilters.enableCriteria1Value", 2);
+        filters.filterByCriteria2ValueInCode = isIntegerValue(advancedSettingsValues, "pricePlanFilters.enableCriteria2Value", 2);
+        filters.filterByCriteria3ValueInCode = isIntegerValue(advancedSettingsValues, "pricePlanFilters.enableCriteria3Value", 2);
+        filters.filterByCriteria1Value = isTrue(advancedSettingsValues, "pricePlanFilters.enableCriteria1Value") || isIntegerValue(advancedSettingsValues, "pricePlanFilters.enableCriteria1Value", 1);
+        filters.filterByCriteria2Value = isTrue(advancedSettingsValues, "pricePlanFilters.enableCriteria2Value") || isIntegerValue(advancedSettingsValues, "pricePlanFilters.enableCriteria2Value", 1);
+        filters.filterByCriteria3Value = isTrue(advancedSettingsValues, "pricePlanFilters.enableCriteria3Value") || isIntegerValue(advancedSettingsValues, "pricePlanFilters.enableCriteria3Value", 1);
+
+        filters.filterByValidityCalendarInCode = isTrue(advancedSettingsValues, "pricePlanFilters.enableValidityCalendar");
+        filters.filterByCriteriaELInCode = isTrue(advancedSettingsValues, "pricePlanFilters.enableCriteriaEL");
+        filters.enablePPFilters = isTrue(advancedSettingsValues, "pricePlanFilters.enablePricePlanFilters");
+
+        filters.filterBySeller = isTrue(advancedSettingsValues, "pricePlanFilters.enableSeller");
+        filters.filterByOfferTemplate = isTrue(advancedSettingsValues, "pricePlanFilters.enableOfferTemplate");
+        filters.filterByTradingCountry = isTrue(advancedSettingsValues, "pricePlanFilters.enableTradingCountry");
+        filters.filterByTradingCurrency = isTrue(advancedSettingsValues, "pricePlanFilters.enableTradingCurrency");
+        filters.filterByStartSubscriptionDate = isTrue(advancedSettingsValues, "pricePlanFilters.enableStartSubscriptionDate");
+        filters.filterByEndSubscriptionDate = isTrue(advancedSettingsValues, "pricePlanFilters.enableEndSubscriptionDate");
+        filters.filterByMinSubscriptionAge = isTrue(advancedSettingsValues, "pricePlanFilters.enableMinSubscriptionAgeInMonth");
+        filters.filterByMaxSubscriptionAge = isTrue(advancedSettingsValues, "pricePlanFilters.enableMaxSubscriptionAgeInMonth");
+        filters.filterByStartRatingDate = isTrue(advancedSettingsValues, "pricePlanFilters.enableStartRatingDate");
+        filters.filterByEndRatingDate = isTrue(advancedSettingsValues, "pricePlanFilters.enableEndRatingDate");
+        filters.filterByValidityFrom = isTrue(advancedSettingsValues, "pricePlanFilters.enableValidityFrom");
+        filters.filterByValidityDate = isTrue(advancedSettingsValues, "pricePlanFilters.enableValidityDate");
+        filters.filterByMaxQuantity = isTrue(advancedSettingsValues, "pricePlanFilters.enableMaxQuantity");
+        filters.filterByMinQuantity = isTrue(advancedSettingsValues, "pricePlanFilters.enableMinQuantity");
+
+        return filters;
+    }
+
+    private static boolean isTrue(Map<String, Object> advancedSettingsValues, String key) {
+        return advancedSettingsValues.get(key) instanceof Boolean && (Boolean) advancedSettingsValues.get(key);
+    }
+
+    private static boolean isIntegerValue(Map<String, Object> advancedSettingsValues, String key, int value) {
+        return advancedSettingsValues.get(key) instanceof Integer && value == (Integer) advancedSettingsValues.get(key);
+    }
+
+    /**
+     * A long match requires an additional record filtering in code once data is retrieved from DB, while a short match is data filtering in DB side only
+     *
+     * @return True if price plans require an additional filtering in code
+     */
+    public boolean isMatchLong() {
+        return enablePPFilters && (filterByCriteria1ValueInCode || filterByCriteria2ValueInCode || filterByCriteria3ValueInCode || filterByValidityCalendarInCode || filterByCriteriaELInCode);
+    }
+
+    /**
+     * Build a JPQL query to select price plans applicable to a charge
+     *
+     * @param criteria Selection criteria
+     * @param queryParams Query parameters to populate
+     * @return A JPQL query
+     */
+    public String buildQuery(Criteria criteria, Map<String, Object> queryParams) {
+
+        StringBuilder queryBuilder = null;
+        if (isMatchLong()) {
+            queryBuilder = new StringBuilder(
+                "SELECT new org.meveo.model.catalog.PricePlanMatrixForRating(ppm.id,  ppm.code, ppm.offerTemplate.id,  ppm.startSubscriptionDate,  ppm.endSubscriptionDate,  ppm.startRatingDate,  ppm.endRatingDate,  ppm.minQuantity, "
+                        + "ppm.maxQuantity, ppm.minSubscriptionAgeInMonth, ppm.maxSubscriptionAgeInMonth,  ppm.criteria1Value,  ppm.criteria2Value,  ppm.criteria3Value,  ppm.criteriaEL,  ppm.amountWithoutTax, "
+                        + "ppm.amountWithTax,  ppm.amountWithoutTaxEL,  ppm.amountWithTaxEL, ppm.tradingCurrency.id, ppm.tradingCountry.id,  ppm.priority, ppm.seller.id, ppm.validityCalendar.id, ppm.sequence, ppm.scriptInstance.id, "
+                        + "ppm.totalAmountEL,  ppm.minimumAmountEL,  ppm.invoiceSubCategoryEL,  ppm.validityFrom,  ppm.validityDate) from PricePlanMatrix ppm join ppm.chargeTemplates as ct WHERE ppm.disabled = false AND ct.code = :chargeCode");
+        } else {
+            queryBuilder = new StringBuilder("SELECT ppm FROM PricePlanMatrix ppm join ppm.chargeTemplates as ct WHERE ppm.disabled = false AND ct.code = :chargeCode");
+        }
+
+        queryParams.put("chargeCode", criteria.chargeCode);
+
+        if (enablePPFilters) {
+            if (filterBySeller) {
+                queryBuilder.append(" AND (ppm.seller.id = :sellerId OR ppm.seller.id IS NULL)");
+                queryParams.put("sellerId", criteria.sellerId);
+            }
+
+            if (filterByOfferTemplate) {
+                queryBuilder.append(" AND (ppm.offerTemplate.id = :offerId OR ppm.offerTemplate.id IS NULL)");
+                queryParams.put("offerId", criteria.offerId);
+            }
+
+            if (filterByTradingCountry) {
+                queryBuilder.append(" AND (ppm.tradingCountry.id = :tradingCountryId OR ppm.tradingCountry.id IS NULL)");
+                queryParams.put("tradingCountryId", criteria.tradingCountryId);
+            }
+
+            if (filterByTradingCurrency) {
+                queryBuilder.append(" AND (ppm.tradingCurrency.id = :tradingCurrencyId OR ppm.tradingCurrency.id IS NULL)");
+                queryParams.put("tradingCurrencyId", criteria.tradingCurrencyId);
+            }
+
+            if (filterByCriteria1Value) {
+                queryBuilder.append(" AND (ppm.criteria1Value = :param1 OR ppm.criteria1Value IS NULL)");
+                queryParams.put("param1", criteria.parameter1);
+            }
+
+            if (filterByCriteria2Value) {
+                queryBuilder.append(" AND (ppm.criteria2Value = :param2 OR ppm.criteria2Value IS NULL)");
+                queryParams.put("param2", criteria.parameter2);
+            }
+
+            if (filterByCriteria3Value) {
+                queryBuilder.append(" AND (ppm.criteria3Value = :param3 OR ppm.criteria3Value IS NULL)");
+                queryParams.put("param3", criteria.parameter3);
+            }
+
+            if (filterByStartSubscriptionDate) {
+                queryBuilder.append(" AND (ppm.startSubscriptionDate IS NULL OR ppm.startSubscriptionDate <= :subscriptionDate)");
+                queryParams.put("subscriptionDate", criteria.subscriptionDate);
+            }
+
+            if (filterByEndSubscriptionDate) {
+                queryBuilder.append(" AND (ppm.endSubscriptionDate IS NULL OR ppm.endSubscriptionDate > :subscriptionDate)");
+                queryParams.put("subscriptionDate", criteria.subscriptionDate);
+            }
+
+            if (filterByMinSubscriptionAge) {
+                queryBuilder.append(" AND (ppm.minSubscriptionAgeInMonth IS NULL OR ppm.minSubscriptionAgeInMonth <= :subscriptionAge)");
+                queryParams.put("subscriptionAge", criteria.subscriptionAge);
+            }
+
+            if (filterByMaxSubscriptionAge) {
+                queryBuilder.append(" AND (ppm.maxSubscriptionAgeInMonth IS NULL OR ppm.maxSubscriptionAgeInMonth > :subscriptionAge)");
+                queryParams.put("subscriptionAge", criteria.subscriptionAge);
+            }
+
+            if (filterByStartRatingDate) {
+                queryBuilder.append(" AND (ppm.startRatingDate IS NULL OR ppm.startRatingDate <= :operationDate)");
+                queryParams.put("operationDate", criteria.operationDate);
+            }
+
+            if (filterByEndRatingDate) {
+                queryBuilder.append(" AND (ppm.endRatingDate IS NULL OR ppm.endRatingDate > :operationDate)");
+                queryParams.put("operationDate", criteria.operationDate);
+            }
+
+            if (filterByValidityFrom) {
+                queryBuilder.append(" AND (ppm.validityFrom IS NULL OR ppm.validityFrom < :startDate)");
+                queryParams.put("startDate", criteria.startDate);
+            }
+
+            if (filterByValidityDate) {
+                queryBuilder.append(" AND (ppm.validityDate IS NULL OR ppm.validityDate >= :startDate OR ppm.validityDate >= :endDate)");
+                queryParams.put("startDate", criteria.startDate);
+                queryParams.put("endDate", criteria.endDate);
+            }
+
+            if (filterByMaxQuantity) {
+                queryBuilder.append(" AND (ppm.maxQuantity IS NULL OR ppm.maxQuantity > :quantity)");
+                queryParams.put("quantity", criteria.quantity);
+            }
+
+            if (filterByMinQuantity) {
+                queryBuilder.append(" AND (ppm.minQuantity IS NULL OR ppm.minQuantity <= :quantity)");
+                queryParams.put("quantity", criteria.quantity);
+            }
+        }
+
+        queryBuilder.append(" ORDER BY ppm.priority ASC, ppm.id");
+
+        return queryBuilder.toString();
+    }
+
+    /**
+     * Check if price plan satisfies the rules that are otherwise applied in DB query. Follows SQL semantics - a comparison to a NULL value is never satisfied.
+     *
+     * @param pricePlan Price plan
+     * @param criteria Selection criteria
+     * @return True if price plan satisfies the rules
+     */
+    public boolean isMatch(PricePlanMatrixForRating pricePlan, Criteria criteria) {
+
+        if (!enablePPFilters) {
+            return true;
+        }
+
+        if (filterBySeller && !isNullOrEqual(pricePlan.getSeller(), criteria.sellerId)) {
+            return false;
+        }
+        if (filterByOfferTemplate && !isNullOrEqual(pricePlan.getOfferTemplate(), criteria.offerId)) {
+            return false;
+        }
+        if (filterByTradingCountry && !isNullOrEqual(pricePlan.getTradingCountry(), criteria.tradingCountryId)) {
+            return false;
+        }
+        if (filterByTradingCurrency && !isNullOrEqual(pricePlan.getTradingCurrency(), criteria.tradingCurrencyId)) {
+            return false;
+        }
+        if ((filterByCriteria1Value || filterByCriteria1ValueInCode) && !isNullOrEqual(pricePlan.getCriteria1Value(), criteria.parameter1)) {
+            return false;
+        }
+        if ((filterByCriteria2Value || filterByCriteria2ValueInCode) && !isNullOrEqual(pricePlan.getCriteria2Value(), criteria.parameter2)) {
+            return false;
+        }
+        if ((filterByCriteria3Value || filterByCriteria3ValueInCode) && !isNullOrEqual(pricePlan.getCriteria3Value(), criteria.parameter3)) {
+            return false;
+        }
+        if (filterByStartSubscriptionDate && pricePlan.getStartSubscriptionDate() != null
+                && (criteria.subscriptionDate == null || pricePlan.getStartSubscriptionDate().getTime() > criteria.subscriptionDate.getTime())) {
+            return false;
+        }
+        if (filterByEndSubscriptionDate && pricePlan.getEndSubscriptionDate() != null
+                && (criteria.subscriptionDate == null || pricePlan.getEndSubscriptionDate().getTime() <= criteria.subscriptionDate.getTime())) {
+            return false;
+        }
+        if (filterByMinSubscriptionAge && pricePlan.getMinSubscriptionAgeInMonth() != null && pricePlan.getMinSubscriptionAgeInMonth() > criteria.subscriptionAge) {
+            return false;
+        }
+        if (filterByMaxSubscriptionAge && pricePlan.getMaxSubscriptionAgeInMonth() != null && pricePlan.getMaxSubscriptionAgeInMonth() <= criteria.subscriptionAge) {
+            return false;
+        }
+        if (filterByStartRatingDate && pricePlan.getStartRatingDate() != null
+                && (criteria.operationDate == null || pricePlan.getStartRatingDate().getTime() > criteria.operationDate.getTime())) {
+            return false;
+        }
+        if (filterByEndRatingDate && pricePlan.getEndRatingDate() != null && (criteria.operationDate == null || pricePlan.getEndRatingDate().getTime() <= criteria.operationDate.getTime())) {
+            return false;
+        }
+        if (filterByValidityFrom && pricePlan.getValidityFrom() != null && (criteria.startDate == null || pricePlan.getValidityFrom().getTime() >= criteria.startDate.getTime())) {
+            return false;
+        }
+        if (filterByValidityDate && pricePlan.getValidityDate() != null && (criteria.startDate == null || pricePlan.getValidityDate().getTime() < criteria.startDate.getTime())
+                && (criteria.endDate == null || pricePlan.getValidityDate().getTime() < criteria.endDate.getTime())) {
+            return false;
+        }
+        if (filterByMaxQuantity && pricePlan.getMaxQuantity() != null && (criteria.quantity == null || pricePlan.getMaxQuantity().compareTo(criteria.quantity) <= 0)) {
+            return false;
+        }
+        if (filterByMinQuantity && pricePlan.getMinQuantity() != null && (criteria.quantity == null || pricePlan.getMinQuantity().compareTo(criteria.quantity) > 0)) {
+            return false;
+        }
+        return true;
+    }
+
+    private static boolean isNullOrEqual(Object pricePlanValue, Object value) {
+        return pricePlanValue == null || pricePlanValue.equals(value);
+    }
+
+    public boolean isFilterByCriteria1ValueInCode() {
+        return filterByCriteria1ValueInCode;
+    }
+
+    public boolean isFilterByCriteria2ValueInCode() {
+        return filterByCriteria2ValueInCode;
+    }
+
+    public boolean isFilterByCriteria3ValueInCode() {
+        return filterByCriteria3ValueInCode;
+    }
+
+    /**
+     * Price plan selection criteria, as resolved from a wallet operation
+     */
+    public static class Criteria {
+
+        private String chargeCode;
+
+        private Long sellerId;
+
+        private Long offerId;
+
+        private Long tradingCountryId;
+
+        private Long tradingCurrencyId;
+
+        private String parameter1;
+
+        private String parameter2;
+
+        private String parameter3;
+
+        private Date subscriptionDate;
+
+        private long subscriptionAge;
+
+        private Date operationDate;
+
+        private Date startDate;
+
+        private Date endDate;
+
+        private BigDecimal quantity;
+
+        /**
+         * Constructor
+         *
+         * @param chargeCode Charge code
+         * @param sellerId Seller ID
+         * @param offerId Offer template ID
+         * @param tradingCountryId Buyer's country ID
+         * @param tradingCurrencyId Buyer's currency ID
+         * @param parameter1 Parameter 1 value
+         * @param parameter2 Parameter 2 value
+         * @param parameter3 Parameter 3 value
+         * @param subscriptionDate Subscription date (truncated)
+         * @param subscriptionAge Subscription age in months
+         * @param operationDate Operation date (truncated)
+         * @param startDate Period start date (truncated)
+         * @param endDate Period end date (truncated)
+         * @param quantity Quantity
+         */
+        public Criteria(String chargeCode, Long sellerId, Long offerId, Long tradingCountryId, Long tradingCurrencyId, String parameter1, String parameter2, String parameter3, Date subscriptionDate,
+                long subscriptionAge, Date operationDate, Date startDate, Date endDate, BigDecimal quantity) {
+            this.chargeCode = chargeCode;
+            this.sellerId = sellerId;
+            this.offerId = offerId;
+            this.tradingCountryId = tradingCountryId;
+            this.tradingCurrencyId = tradingCurrencyId;
+            this.parameter1 = parameter1;
+            this.parameter2 = parameter2;
+            this.parameter3 = parameter3;
+            this.subscriptionDate = subscriptionDate;
+            this.subscriptionAge = subscriptionAge;
+            this.operationDate = operationDate;
+            this.startDate = startDate;
+            this.endDate = endDate;
+            this.quantity = quantity;
+        }
+
+        public String getChargeCode() {
+            return chargeCode;
+        }
+
+        @Override
+        public String toString() {
+            return "chargeCode=" + chargeCode + ", sellerId=" + sellerId + ", offerId=" + offerId + ", tradingCountryId=" + tradingCountryId + ", tradingCurrencyId=" + tradingCurrencyId + ", param1="
+                    + parameter1 + ", param2=" + parameter2 + ", param3=" + parameter3 + ", subscriptionDate=" + subscriptionDate + ", subscriptionAge=" + subscriptionAge + ", operationDate=" + operationDate
+                    + ", startDate=" + startDate + ", endDate=" + endDate + ", quantity=" + quantity;
+        }
+    }
+}
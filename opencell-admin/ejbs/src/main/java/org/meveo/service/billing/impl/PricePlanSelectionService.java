@@ -15,6 +15,8 @@ import org.hibernate.annotations.QueryHints;
 import org.meveo.admin.exception.InvalidELException;
 import org.meveo.admin.exception.NoPricePlanException;
 import org.meveo.admin.exception.RatingException;
+import org.meveo.cache.PricePlanCandidatesCache;
+import org.meveo.cache.PricePlanMatrixLineMatcherCache;
 import org.meveo.commons.utils.ELUtils;
 import org.meveo.commons.utils.PersistenceUtils;
 import org.meveo.commons.utils.StringUtils;
@@ -30,6 +32,7 @@ import org.meveo.model.catalog.ChargeTemplate;
 import org.meveo.model.catalog.PricePlanMatrix;
 import org.meveo.model.catalog.PricePlanMatrixForRating;
 import org.meveo.model.catalog.PricePlanMatrixLine;
+import org.meveo.model.catalog.PricePlanMatrixLineMatcher;
 import org.meveo.model.catalog.PricePlanMatrixValueForRating;
 import org.meveo.model.catalog.PricePlanMatrixVersion;
 import org.meveo.model.catalog.RecurringChargeTemplate;
@@ -39,7 +42,6 @@ import org.meveo.model.cpq.AttributeValue;
 import org.meveo.model.cpq.enums.PriceVersionDateSettingEnum;
 import org.meveo.model.shared.DateUtils;
 import org.meveo.service.base.ValueExpressionWrapper;
-import org.meveo.service.settings.impl.AdvancedSettingsService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,10 +66,13 @@ public class PricePlanSelectionService implements Serializable {
     private AttributeInstanceService attributeInstanceService;
 
     @Inject
-    private AdvancedSettingsService advancedSettingsService;
+    private ELUtils elUtils;
 
     @Inject
-    private ELUtils elUtils;
+    private PricePlanMatrixLineMatcherCache pricePlanMatrixLineMatcherCache;
+
+    @Inject
+    private PricePlanCandidatesCache pricePlanCandidatesCache;
 
     public EntityManager getEntityManager() {
         return emWrapper.getEntityManager();
@@ -135,136 +140,52 @@ public class PricePlanSelectionService implements Serializable {
             endDate = DateUtils.truncateTime(bareWo.getEndDate());
         }
 
-        Map<String, Object> advancedSettingsValues = advancedSettingsService.getAdvancedSettingsMapByGroup("pricePlanFilters", Object.class);
+        PricePlanFilters pricePlanFilters = pricePlanCandidatesCache.getPricePlanFilters();
+        PricePlanFilters.Criteria criteria = new PricePlanFilters.Criteria(bareWo.getCode(), bareWo.getSeller() != null ? bareWo.getSeller().getId() : null,
+            bareWo.getOfferTemplate() != null ? bareWo.getOfferTemplate().getId() : null, buyerCountryId, buyerCurrency != null ? buyerCurrency.getId() : null, bareWo.getParameter1(), bareWo.getParameter2(),
+            bareWo.getParameter3(), subscriptionDate, subscriptionAge, operationDate, startDate, endDate, bareWo.getQuantity());
 
         // A short match is data filtering in DB side only
         // A long match requires an additional record filtering in code once data is retrieved from DB
+        boolean matchLong = pricePlanFilters.isMatchLong();
 
-        boolean filterByCriteria1ValueInCode = advancedSettingsValues.get("pricePlanFilters.enableCriteria1Value") instanceof Integer && 2 == (Integer) advancedSettingsValues.get("pricePlanFilters.enableCriteria1Value");
-        boolean filterByCriteria2ValueInCode = advancedSettingsValues.get("pricePlanFilters.enableCriteria2Value") instanceof Integer && 2 == (Integer) advancedSettingsValues.get("pricePlanFilters.enableCriteria2Value");
-        boolean filterByCriteria3ValueInCode = advancedSettingsValues.get("pricePlanFilters.enableCriteria3Value") instanceof Integer && 2 == (Integer) advancedSettingsValues.get("pricePlanFilters.enableCriteria3Value");
-        boolean filterByValidityCalendarInCode = (Boolean) advancedSettingsValues.get("pricePlanFilters.enableValidityCalendar");
-        boolean filterByCriteriaELInCode = (Boolean) advancedSettingsValues.get("pricePlanFilters.enableCriteriaEL");
-
-        boolean enablePPFilters = (Boolean) advancedSettingsValues.get("pricePlanFilters.enablePricePlanFilters");
-
-        boolean matchLong = enablePPFilters && (filterByCriteria1ValueInCode || filterByCriteria2ValueInCode || filterByCriteria3ValueInCode || filterByValidityCalendarInCode || filterByCriteriaELInCode);
-
-        StringBuilder queryBuilder = null;
-        if (matchLong) {
-            queryBuilder = new StringBuilder(
-                "SELECT new org.meveo.model.catalog.PricePlanMatrixForRating(ppm.id,  ppm.code, ppm.offerTemplate.id,  ppm.startSubscriptionDate,  ppm.endSubscriptionDate,  ppm.startRatingDate,  ppm.endRatingDate,  ppm.minQuantity, "
-                        + "ppm.maxQuantity, ppm.minSubscriptionAgeInMonth, ppm.maxSubscriptionAgeInMonth,  ppm.criteria1Value,  ppm.criteria2Value,  ppm.criteria3Value,  ppm.criteriaEL,  ppm.amountWithoutTax, "
-                        + "ppm.amountWithTax,  ppm.amountWithoutTaxEL,  ppm.amountWithTaxEL, ppm.tradingCurrency.id, ppm.tradingCountry.id,  ppm.priority, ppm.seller.id, ppm.validityCalendar.id, ppm.sequence, ppm.scriptInstance.id, "
-                        + "ppm.totalAmountEL,  ppm.minimumAmountEL,  ppm.invoiceSubCategoryEL,  ppm.validityFrom,  ppm.validityDate) from PricePlanMatrix ppm join ppm.chargeTemplates as ct WHERE ppm.disabled = false AND ct.code = :chargeCode");
-        } else {
-            queryBuilder = new StringBuilder("SELECT ppm FROM PricePlanMatrix ppm join ppm.chargeTemplates as ct WHERE ppm.disabled = false AND ct.code = :chargeCode");
-        }
-
-        Map<String, Object> queryParams = new HashMap<>();
-        queryParams.put("chargeCode", bareWo.getCode());
-
-        if (enablePPFilters) {
-            if ((Boolean) advancedSettingsValues.get("pricePlanFilters.enableSeller")) {
-                queryBuilder.append(" AND (ppm.seller.id = :sellerId OR ppm.seller.id IS NULL)");
-                queryParams.put("sellerId", bareWo.getSeller().getId());
-            }
-
-            if ((Boolean) advancedSettingsValues.get("pricePlanFilters.enableOfferTemplate")) {
-                queryBuilder.append(" AND (ppm.offerTemplate.id = :offerId OR ppm.offerTemplate.id IS NULL)");
-                queryParams.put("offerId", bareWo.getOfferTemplate() != null ? bareWo.getOfferTemplate().getId() : null);
-            }
-
-            if ((Boolean) advancedSettingsValues.get("pricePlanFilters.enableTradingCountry")) {
-                queryBuilder.append(" AND (ppm.tradingCountry.id = :tradingCountryId OR ppm.tradingCountry.id IS NULL)");
-                queryParams.put("tradingCountryId", buyerCountryId);
-            }
-
-            if ((Boolean) advancedSettingsValues.get("pricePlanFilters.enableTradingCurrency")) {
-                queryBuilder.append(" AND (ppm.tradingCurrency.id = :tradingCurrencyId OR ppm.tradingCurrency.id IS NULL)");
-                queryParams.put("tradingCurrencyId", buyerCurrency != null ? buyerCurrency.getId() : null);
-            }
-
-            // Value of FALSE or 1 will filter by criteria1Value property in DB
-            if ((advancedSettingsValues.get("pricePlanFilters.enableCriteria1Value") instanceof Boolean && (Boolean) advancedSettingsValues.get("pricePlanFilters.enableCriteria1Value"))
-                    || (advancedSettingsValues.get("pricePlanFilters.enableCriteria1Value") instanceof Integer && 1 == (Integer) advancedSettingsValues.get("pricePlanFilters.enableCriteria1Value"))) {
-                queryBuilder.append(" AND (ppm.criteria1Value = :param1 OR ppm.criteria1Value IS NULL)");
-                queryParams.put("param1", bareWo.getParameter1());
-            }
-
-            // Value of FALSE or 1 will filter by criteria2Value property in DB
-            if ((advancedSettingsValues.get("pricePlanFilters.enableCriteria2Value") instanceof Boolean && (Boolean) advancedSettingsValues.get("pricePlanFilters.enableCriteria2Value"))
-                    || (advancedSettingsValues.get("pricePlanFilters.enableCriteria2Value") instanceof Integer && 1 == (Integer) advancedSettingsValues.get("pricePlanFilters.enableCriteria2Value"))) {
-                queryBuilder.append(" AND (ppm.criteria2Value = :param2 OR ppm.criteria2Value IS NULL)");
-                queryParams.put("param2", bareWo.getParameter2());
-            }
-
-            // Value of FALSE or 1 will filter by criteria3Value property in DB
-            if ((advancedSettingsValues.get("pricePlanFilters.enableCriteria3Value") instanceof Boolean && (Boolean) advancedSettingsValues.get("pricePlanFilters.enableCriteria3Value"))
-                    || (advancedSettingsValues.get("pricePlanFilters.enableCriteria3Value") instanceof Integer && 1 == (Integer) advancedSettingsValues.get("pricePlanFilters.enableCriteria3Value"))) {
-                queryBuilder.append(" AND (ppm.criteria3Value = :param3 OR ppm.criteria3Value IS NULL)");
-                queryParams.put("param3", bareWo.getParameter3());
-            }
-
-            if ((Boolean) advancedSettingsValues.get("pricePlanFilters.enableStartSubscriptionDate")) {
-                queryBuilder.append(" AND (ppm.startSubscriptionDate IS NULL OR ppm.startSubscriptionDate <= :subscriptionDate)");
-                queryParams.put("subscriptionDate", subscriptionDate);
-            }
-
-            if ((Boolean) advancedSettingsValues.get("pricePlanFilters.enableEndSubscriptionDate")) {
-                queryBuilder.append(" AND (ppm.endSubscriptionDate IS NULL OR ppm.endSubscriptionDate > :subscriptionDate)");
-                queryParams.put("subscriptionDate", subscriptionDate);
-            }
-
-            if ((Boolean) advancedSettingsValues.get("pricePlanFilters.enableMinSubscriptionAgeInMonth")) {
-                queryBuilder.append(" AND (ppm.minSubscriptionAgeInMonth IS NULL OR ppm.minSubscriptionAgeInMonth <= :subscriptionAge)");
-                queryParams.put("subscriptionAge", subscriptionAge);
-            }
-
-            if ((Boolean) advancedSettingsValues.get("pricePlanFilters.enableMaxSubscriptionAgeInMonth")) {
-                queryBuilder.append(" AND (ppm.maxSubscriptionAgeInMonth IS NULL OR ppm.maxSubscriptionAgeInMonth > :subscriptionAge)");
-                queryParams.put("subscriptionAge", subscriptionAge);
-            }
-
-            if ((Boolean) advancedSettingsValues.get("pricePlanFilters.enableStartRatingDate")) {
-                queryBuilder.append(" AND (ppm.startRatingDate IS NULL OR ppm.startRatingDate <= :operationDate)");
-                queryParams.put("operationDate", operationDate);
-            }
+        EntityManager em = getEntityManager();
 
-            if ((Boolean) advancedSettingsValues.get("pricePlanFilters.enableEndRatingDate")) {
-                queryBuilder.append(" AND (ppm.endRatingDate IS NULL OR ppm.endRatingDate > :operationDate)");
-                queryParams.put("operationDate", operationDate);
-            }
+        // Price plans applicable to a charge are retrieved from cache and filtered in memory
+        if (PricePlanCandidatesCache.isEnabled()) {
 
-            if ((Boolean) advancedSettingsValues.get("pricePlanFilters.enableValidityFrom")) {
-                queryBuilder.append(" AND (ppm.validityFrom IS NULL OR ppm.validityFrom < :startDate)");
-                queryParams.put("startDate", startDate);
+            List<PricePlanMatrixForRating> pricePlansRating = new ArrayList<PricePlanMatrixForRating>();
+            for (PricePlanMatrixForRating pricePlan : pricePlanCandidatesCache.getPricePlanCandidates(bareWo.getCode())) {
+                if (pricePlanFilters.isMatch(pricePlan, criteria)) {
+                    pricePlansRating.add(pricePlan);
+                    if (returnFirst && !matchLong) {
+                        break;
+                    }
+                }
             }
 
-            if ((Boolean) advancedSettingsValues.get("pricePlanFilters.enableValidityDate")) {
-                queryBuilder.append(" AND (ppm.validityDate IS NULL OR ppm.validityDate >= :startDate OR ppm.validityDate >= :endDate)");
-                queryParams.put("startDate", startDate);
-                queryParams.put("endDate", endDate);
+            // Criteria values were already verified when filtering in memory
+            if (matchLong) {
+                pricePlansRating = matchPricePlan(pricePlansRating, bareWo, buyerCountryId, buyerCurrency, false, false, false, returnFirst);
             }
-
-            if ((Boolean) advancedSettingsValues.get("pricePlanFilters.enableMaxQuantity")) {
-                queryBuilder.append(" AND (ppm.maxQuantity IS NULL OR ppm.maxQuantity > :quantity)");
-                queryParams.put("quantity", bareWo.getQuantity());
+            if (pricePlansRating.isEmpty()) {
+                throw new NoPricePlanException("No active price plan matched for parameters: " + criteria);
             }
 
-            if ((Boolean) advancedSettingsValues.get("pricePlanFilters.enableMinQuantity")) {
-                queryBuilder.append(" AND (ppm.minQuantity IS NULL OR ppm.minQuantity <= :quantity)");
-                queryParams.put("quantity", bareWo.getQuantity());
+            List<PricePlanMatrix> pricePlans = new ArrayList<PricePlanMatrix>();
+            for (PricePlanMatrixForRating pricePlan : pricePlansRating) {
+                pricePlans.add(em.getReference(PricePlanMatrix.class, pricePlan.getId()));
             }
+            return pricePlans;
         }
 
-        queryBuilder.append(" ORDER BY ppm.priority ASC, ppm.id");
+        Map<String, Object> queryParams = new HashMap<>();
+        String sql = pricePlanFilters.buildQuery(criteria, queryParams);
 
-        EntityManager em = getEntityManager();
         // A long match will retrieve multiple PricePlanMatrixForRating entities and will require a further filtering in code
         if (matchLong) {
 
-            TypedQuery<PricePlanMatrixForRating> query = em.createQuery(queryBuilder.toString(), PricePlanMatrixForRating.class);
+            TypedQuery<PricePlanMatrixForRating> query = em.createQuery(sql, PricePlanMatrixForRating.class);
             query.setHint(QueryHints.CACHEABLE, true);
             query.setHint(QueryHints.CACHE_REGION, PricePlanMatrix.CACHE_REGION_PP);
 
@@ -273,7 +194,8 @@ public class PricePlanSelectionService implements Serializable {
             }
 
             List<PricePlanMatrixForRating> pricePlansRating = query.getResultList();
-            pricePlansRating = matchPricePlan(pricePlansRating, bareWo, buyerCountryId, buyerCurrency, filterByCriteria1ValueInCode, filterByCriteria2ValueInCode, filterByCriteria3ValueInCode, returnFirst);
+            pricePlansRating = matchPricePlan(pricePlansRating, bareWo, buyerCountryId, buyerCurrency, pricePlanFilters.isFilterByCriteria1ValueInCode(), pricePlanFilters.isFilterByCriteria2ValueInCode(),
+                pricePlanFilters.isFilterByCriteria3ValueInCode(), returnFirst);
             if (pricePlansRating.isEmpty()) {
                 throw new NoPricePlanException("No active price plan matched for parameters: " + StringUtils.concatenate(queryParams));
             }
@@ -288,7 +210,7 @@ public class PricePlanSelectionService implements Serializable {
             // A short match will retrieve a single PricePlanMatrix entity directly
         } else {
 
-            TypedQuery<PricePlanMatrix> query = em.createQuery(queryBuilder.toString(), PricePlanMatrix.class);
+            TypedQuery<PricePlanMatrix> query = em.createQuery(sql, PricePlanMatrix.class);
 
             query.setHint(QueryHints.CACHEABLE, true);
             query.setHint(QueryHints.CACHE_REGION, PricePlanMatrix.CACHE_REGION_PP);
@@ -522,7 +444,7 @@ public class PricePlanSelectionService implements Serializable {
     }
 
     /**
-     * Determine a price matrix line matching the attribute values passed
+     * Determine a price matrix line matching the attribute values passed. Lines of a published version are matched in memory with a cached compiled line matcher.
      * 
      * @param pricePlanMatrixVersion Price plan version
      * @param attributeValues Attributes to match
@@ -533,7 +455,14 @@ public class PricePlanSelectionService implements Serializable {
 
         EntityManager em = getEntityManager();
 
-        if (attributeValues == null || attributeValues.isEmpty()) {
+        if (PricePlanMatrixLineMatcherCache.isCacheable(pricePlanMatrixVersion)) {
+
+            PricePlanMatrixLineMatcher lineMatcher = pricePlanMatrixLineMatcherCache.getLineMatcher(pricePlanMatrixVersion);
+            Long matchedPlId = attributeValues == null || attributeValues.isEmpty() ? lineMatcher.getDefaultLineId() : lineMatcher.match(attributeValues);
+
+            return matchedPlId != null ? em.find(PricePlanMatrixLine.class, matchedPlId) : null;
+
+        } else if (attributeValues == null || attributeValues.isEmpty()) {
 
             try {
                 return em.createNamedQuery("PricePlanMatrixLine.findDefaultByPricePlanMatrixVersion", PricePlanMatrixLine.class).setParameter("pricePlanMatrixVersionId", pricePlanMatrixVersion.getId()).setMaxResults(1)
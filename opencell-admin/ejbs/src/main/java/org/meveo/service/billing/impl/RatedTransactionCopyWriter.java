@@ -0,0 +1,340 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.service.billing.impl;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.Parameter;
+import org.meveo.model.billing.RatedTransaction;
+import org.meveo.model.billing.RatedTransactionStatusEnum;
+import org.meveo.model.billing.WalletOperationNative;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * Creates Rated transactions from Wallet operations by streaming rows straight into a billing_rated_transaction table with a PostgreSQL COPY command, bypassing JPA. Rated
+ * transaction identifiers are taken from the same sequence and in the same blocks as Hibernate does, and Wallet operations are linked to Rated transactions with a single update
+ * statement.<br/>
+ * <br/>
+ * Rated transaction values are the same as in RatedTransactionService.createRatedTransactionsInBatch(), which should be used instead whenever Rated transaction entities are
+ * needed - to fire notifications, schedule custom field end period events or apply invoicing rules.
+ */
+public class RatedTransactionCopyWriter {
+
+    /**
+     * Rated transaction columns and how to get their value from a Wallet operation. Identifier, version, uuid, status and creation/update dates are written first and are not
+     * listed here.
+     */
+    private static final List<Column> COLUMNS = List.of(new Column("code", WalletOperationNative::getCode), new Column("description", WalletOperationNative::getDescription),
+        new Column("charge_instance_id", WalletOperationNative::getChargeInstanceId), new Column("usage_date", WalletOperationNative::getOperationDate),
+        new Column("unit_amount_without_tax", WalletOperationNative::getUnitAmountWithoutTax), new Column("unit_amount_with_tax", WalletOperationNative::getUnitAmountWithTax),
+        new Column("unit_amount_tax", WalletOperationNative::getUnitAmountTax), new Column("quantity", WalletOperationNative::getQuantity),
+        new Column("amount_without_tax", WalletOperationNative::getAmountWithoutTax), new Column("amount_with_tax", WalletOperationNative::getAmountWithTax),
+        new Column("amount_tax", WalletOperationNative::getAmountTax), new Column("transactional_unit_amount_without_tax", WalletOperationNative::getTransactionalUnitAmountWithoutTax),
+        new Column("transactional_unit_amount_with_tax", WalletOperationNative::getTransactionalUnitAmountWithTax),
+        new Column("transactional_unit_amount_tax", WalletOperationNative::getTransactionalUnitAmountTax),
+        new Column("transactional_amount_without_tax", WalletOperationNative::getTransactionalAmountWithoutTax),
+        new Column("transactional_amount_with_tax", WalletOperationNative::getTransactionalAmountWithTax),
+        new Column("transactional_amount_tax", WalletOperationNative::getTransactionalAmountTax), new Column("input_quantity", WalletOperationNative::getInputQuantity),
+        new Column("raw_amount_with_tax", WalletOperationNative::getRawAmountWithTax), new Column("raw_amount_without_tax", WalletOperationNative::getRawAmountWithoutTax),
+        new Column("wallet_id", WalletOperationNative::getWalletId), new Column("user_account_id", WalletOperationNative::getUserAccountId),
+        new Column("billing_account__id", WalletOperationNative::getBillingAccountId), new Column("seller_id", WalletOperationNative::getSellerId),
+        new Column("invoice_sub_category_id", WalletOperationNative::getInvoiceSubCategoryId), new Column("parameter_1", WalletOperationNative::getParameter1),
+        new Column("parameter_2", WalletOperationNative::getParameter2), new Column("parameter_3", WalletOperationNative::getParameter3),
+        new Column("parameter_extra", WalletOperationNative::getParameterExtra), new Column("order_number", WalletOperationNative::getOrderNumber),
+        new Column("subscription_id", WalletOperationNative::getSubscriptionId), new Column("priceplan_id", WalletOperationNative::getPriceplanId),
+        new Column("offer_id", WalletOperationNative::getOfferTemplateId), new Column("edr_id", WalletOperationNative::getEdrId),
+        new Column("start_date", WalletOperationNative::getStartDate), new Column("end_date", WalletOperationNative::getEndDate), new Column("tax_id", WalletOperationNative::getTaxId),
+        new Column("tax_percent", WalletOperationNative::getTaxPercent), new Column("service_instance_id", WalletOperationNative::getServiceInstanceId),
+        new Column("tax_class_id", WalletOperationNative::getTaxClassId), new Column("input_unitofmeasure", WalletOperationNative::getInputUnitOfMeasureId),
+        new Column("rating_unitofmeasure", WalletOperationNative::getRatingUnitOfMeasureId), new Column("accounting_code_id", WalletOperationNative::getAccountingCodeId),
+        new Column("accounting_article_id", WalletOperationNative::getAccountingArticleId), new Column("order_id", WalletOperationNative::getOrderId),
+        new Column("product_version_id", WalletOperationNative::getProductVersionId), new Column("order_lot_id", WalletOperationNative::getOrderLotId),
+        new Column("order_product_id", WalletOperationNative::getOrderProductId), new Column("invoicing_date", WalletOperationNative::getInvoicingDate),
+        new Column("unity_description", WalletOperationNative::getInputUnitDescription), new Column("rating_unit_description", WalletOperationNative::getRatingUnitDescription),
+        new Column("sort_index", WalletOperationNative::getSortIndex), new Column("cf_values", WalletOperationNative::getCfValuesAsJson),
+        new Column("discount_plan_id", WalletOperationNative::getDiscountPlanId), new Column("discount_plan_item_id", WalletOperationNative::getDiscountPlanItemId),
+        new Column("discount_plan_type", WalletOperationNative::getDiscountPlanType), new Column("discount_value", WalletOperationNative::getDiscountValue),
+        new Column("sequence", WalletOperationNative::getSequence), new Column("rules_contract_id", WalletOperationNative::getRulesContractId),
+        new Column("use_specific_price_conversion", WalletOperationNative::isUseSpecificPriceConversion), new Column("trading_currency_id", WalletOperationNative::getTradingCurrencyId),
+        new Column("contract_id", WalletOperationNative::getContractId), new Column("contract_line_id", WalletOperationNative::getContractLineId),
+        new Column("business_key", WalletOperationNative::getBusinessKey));
+
+    /**
+     * Rows are sent to DB once that many characters are buffered
+     */
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private static final String NULL_VALUE = "\\N";
+
+    private static final String SEQUENCE_NAME;
+
+    private static final int SEQUENCE_INCREMENT_SIZE;
+
+    static {
+        // Use the same sequence and identifier blocks as Hibernate does, so identifiers assigned here and by Hibernate never overlap
+        String sequenceName = "billing_rated_transaction_seq";
+        int incrementSize = 1;
+        for (Parameter parameter : RatedTransaction.class.getAnnotation(GenericGenerator.class).parameters()) {
+            if ("sequence_name".equals(parameter.name())) {
+                sequenceName = parameter.value();
+            } else if ("increment_size".equals(parameter.name())) {
+                incrementSize = Integer.parseInt(parameter.value());
+            }
+        }
+        SEQUENCE_NAME = sequenceName;
+        SEQUENCE_INCREMENT_SIZE = incrementSize;
+    }
+
+    private final Connection connection;
+
+    private final String schemaPrefix;
+
+    /**
+     * Constructor
+     * 
+     * @param connection DB connection to use
+     * @param schemaPrefix A tenant schema name followed by a ".", or an empty string
+     */
+    public RatedTransactionCopyWriter(Connection connection, String schemaPrefix) {
+        this.connection = connection;
+        this.schemaPrefix = schemaPrefix;
+    }
+
+    /**
+     * Can Rated transactions be written with a COPY command over a given connection
+     * 
+     * @param connection DB connection
+     * @return True if connection is a PostgreSQL connection
+     */
+    public static boolean isSupported(Connection connection) {
+        try {
+            return connection.isWrapperFor(PGConnection.class);
+        } catch (SQLException | LinkageError e) {
+            // PostgreSQL driver is not accessible
+            return false;
+        }
+    }
+
+    /**
+     * Create Rated transactions from Wallet operations and mark Wallet operations as treated
+     * 
+     * @param walletOperations Wallet operations to convert
+     * @return A list of Ids of created Rated transactions, in the same order as Wallet operations
+     * @throws SQLException Failed to write to DB
+     */
+    public List<Long> write(List<WalletOperationNative> walletOperations) throws SQLException {
+
+        Long[] rtIds = allocateIds(walletOperations.size());
+
+        copyRatedTransactions(walletOperations, rtIds);
+        linkWalletOperations(walletOperations, rtIds);
+
+        return List.of(rtIds);
+    }
+
+    /**
+     * Allocate Rated transaction identifiers from a sequence. A single sequence value reserves a block of identifiers the same way as Hibernate's pooled optimizer does.
+     * 
+     * @param count A number of identifiers to allocate
+     * @return Allocated identifiers
+     * @throws SQLException Failed to retrieve sequence values
+     */
+    private Long[] allocateIds(int count) throws SQLException {
+
+        Long[] ids = new Long[count];
+        int filled = 0;
+
+        try (PreparedStatement statement = connection.prepareStatement("select nextval('" + schemaPrefix + SEQUENCE_NAME + "') from generate_series(1, ?)")) {
+            while (filled < count) {
+                statement.setInt(1, (count - filled + SEQUENCE_INCREMENT_SIZE - 1) / SEQUENCE_INCREMENT_SIZE);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next() && filled < count) {
+                        filled = addIdBlock(ids, filled, resultSet.getLong(1), SEQUENCE_INCREMENT_SIZE);
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Add identifiers of a block reserved by a sequence value
+     * 
+     * @param ids Identifiers to fill
+     * @param filled A number of identifiers already filled
+     * @param sequenceValue Sequence value - the highest identifier of a block
+     * @param incrementSize Sequence increment size
+     * @return A number of identifiers filled
+     */
+    static int addIdBlock(Long[] ids, int filled, long sequenceValue, int incrementSize) {
+        for (long id = Math.max(sequenceValue - incrementSize + 1, 1); id <= sequenceValue && filled < ids.length; id++) {
+            ids[filled] = id;
+            filled++;
+        }
+        return filled;
+    }
+
+    private void copyRatedTransactions(List<WalletOperationNative> walletOperations, Long[] rtIds) throws SQLException {
+
+        StringBuilder sql = new StringBuilder("COPY ").append(schemaPrefix).append("billing_rated_transaction (id, version, uuid, status, created, updated, do_not_trigger_invoicing");
+        for (Column column : COLUMNS) {
+            sql.append(", ").append(column.name);
+        }
+        sql.append(") FROM STDIN");
+
+        CopyIn copyIn = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(sql.toString());
+        try {
+            Date now = new Date();
+            StringBuilder rows = new StringBuilder(COPY_BUFFER_SIZE + 4096);
+
+            for (int i = 0; i < walletOperations.size(); i++) {
+                WalletOperationNative walletOperation = walletOperations.get(i);
+
+                appendValue(rows, rtIds[i]).append('\t');
+                appendValue(rows, 0).append('\t');
+                appendValue(rows, UUID.randomUUID().toString()).append('\t');
+                appendValue(rows, RatedTransactionStatusEnum.OPEN).append('\t');
+                appendValue(rows, now).append('\t');
+                appendValue(rows, now).append('\t');
+                appendValue(rows, false);
+                for (Column column : COLUMNS) {
+                    appendValue(rows.append('\t'), column.value.apply(walletOperation));
+                }
+                rows.append('\n');
+
+                if (rows.length() >= COPY_BUFFER_SIZE) {
+                    writeToCopy(copyIn, rows);
+                }
+            }
+            writeToCopy(copyIn, rows);
+            copyIn.endCopy();
+
+        } finally {
+            if (copyIn.isActive()) {
+                copyIn.cancelCopy();
+            }
+        }
+    }
+
+    private void writeToCopy(CopyIn copyIn, StringBuilder rows) throws SQLException {
+        byte[] bytes = rows.toString().getBytes(StandardCharsets.UTF_8);
+        copyIn.writeToCopy(bytes, 0, bytes.length);
+        rows.setLength(0);
+    }
+
+    /**
+     * Mark Wallet operations as treated and link them to Rated transactions in a single statement
+     */
+    private void linkWalletOperations(List<WalletOperationNative> walletOperations, Long[] rtIds) throws SQLException {
+
+        Long[] woIds = new Long[walletOperations.size()];
+        for (int i = 0; i < woIds.length; i++) {
+            woIds[i] = walletOperations.get(i).getId();
+        }
+
+        try (PreparedStatement statement = connection.prepareStatement("update " + schemaPrefix
+                + "billing_wallet_operation wo set status='TREATED', updated=now(), rated_transaction_id=link.rt_id from unnest(?, ?) as link(wo_id, rt_id) where wo.status='OPEN' and wo.id=link.wo_id")) {
+            Array woIdArray = connection.createArrayOf("bigint", woIds);
+            Array rtIdArray = connection.createArrayOf("bigint", rtIds);
+            statement.setArray(1, woIdArray);
+            statement.setArray(2, rtIdArray);
+            statement.executeUpdate();
+            woIdArray.free();
+            rtIdArray.free();
+        }
+    }
+
+    /**
+     * Append a value in a COPY text format
+     * 
+     * @param row Row to append to
+     * @param value Value to append
+     * @return Row appended to
+     */
+    static StringBuilder appendValue(StringBuilder row, Object value) {
+
+        if (value == null) {
+            return row.append(NULL_VALUE);
+
+        } else if (value instanceof Date) {
+            return row.append(new Timestamp(((Date) value).getTime()));
+
+        } else if (value instanceof BigDecimal) {
+            return row.append(((BigDecimal) value).toPlainString());
+
+        } else if (value instanceof Boolean) {
+            // Boolean values are stored as numbers
+            return row.append((Boolean) value ? '1' : '0');
+
+        } else if (value instanceof Enum) {
+            return row.append(((Enum<?>) value).name());
+
+        } else if (value instanceof Number) {
+            return row.append(value);
+        }
+
+        String text = value.toString();
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '\\':
+                row.append("\\\\");
+                break;
+            case '\t':
+                row.append("\\t");
+                break;
+            case '\n':
+                row.append("\\n");
+                break;
+            case '\r':
+                row.append("\\r");
+                break;
+            default:
+                row.append(c);
+            }
+        }
+        return row;
+    }
+
+    private static class Column {
+
+        private final String name;
+
+        private final Function<WalletOperationNative, Object> value;
+
+        private Column(String name, Function<WalletOperationNative, Object> value) {
+            this.name = name;
+            this.value = value;
+        }
+    }
+}
@@ -579,6 +579,43 @@ public class RatedTransactionService extends PersistenceService<RatedTransaction
         return allRtIds;
     }
 
+    /**
+     * Create Rated transactions from wallet operations by streaming them to DB with a PostgreSQL COPY command instead of persisting them one by one. See
+     * RatedTransactionCopyWriter.<br/>
+     * <br/>
+     * Falls back to createRatedTransactionsInBatch() when Rated transaction entities are needed - creation notifications or custom field end period events are enabled, or
+     * billing redirection rules apply - or when DB is not PostgreSQL.
+     *
+     * @param walletOperations Wallet operations
+     * @return A list of Ids of created Rated transactions
+     * @throws BusinessException business exception
+     */
+    @JpaAmpNewTx
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public List<Long> createRatedTransactionsInBulk(List<WalletOperationNative> walletOperations) throws BusinessException {
+
+        if (areEventsEnabled(NotificationEventTypeEnum.CREATED) || customFieldTemplateService.areCFTEndPeriodEventsEnabled(new RatedTransaction())
+                || financeSettingsService.isBillingRedirectionRulesEnabled()) {
+            return createRatedTransactionsInBatch(walletOperations);
+        }
+
+        String providerCode = currentUser.getProviderCode();
+        final String schemaPrefix = providerCode != null ? EntityManagerProvider.convertToSchemaName(providerCode) + "." : "";
+
+        List<Long> rtIds = getEntityManager().unwrap(Session.class).doReturningWork(connection -> {
+            if (!RatedTransactionCopyWriter.isSupported(connection)) {
+                return null;
+            }
+            return new RatedTransactionCopyWriter(connection, schemaPrefix).write(walletOperations);
+        });
+
+        if (rtIds == null) {
+            log.warn("Bulk load of Rated transactions is supported on PostgreSQL only. Will create Rated transactions in batch instead.");
+            return createRatedTransactionsInBatch(walletOperations);
+        }
+        return rtIds;
+    }
+
     /**
      * Create a {@link RatedTransaction} from a group of wallet operations.
      *
@@ -1620,6 +1657,20 @@ public class RatedTransactionService extends PersistenceService<RatedTransaction
         return getEntityManager().createNamedQuery("RatedTransaction.listAllByInvoice", RatedTransaction.class).setParameter("invoice", invoice).getResultList();
     }
 
+    /**
+     * Retrieve a single rated transaction for each subscription and user account combination among rated transactions associated to an invoice. Used to determine invoiced subscriptions without loading all
+     * rated transactions.
+     *
+     * @param invoice Invoice
+     * @return A list of rated transactions
+     */
+    public List<RatedTransaction> listFirstRatedTransactionsBySubscriptionAndUserAccount(Invoice invoice) {
+        if (invoice.getId() == null) {
+            return new ArrayList<>();
+        }
+        return getEntityManager().createNamedQuery("RatedTransaction.listFirstByInvoiceGroupedBySubscriptionAndUserAccount", RatedTransaction.class).setParameter("invoice", invoice).getResultList();
+    }
+
     /**
      * Retrieve rated transactions associated to an invoice aggregate
      * 
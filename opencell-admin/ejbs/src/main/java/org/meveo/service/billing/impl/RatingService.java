@@ -137,6 +137,8 @@ import org.meveo.service.communication.impl.MeveoInstanceService;
 import org.meveo.service.cpq.ContractItemService;
 import org.meveo.service.cpq.ContractService;
 import org.meveo.service.mediation.MediationSettingService;
+import org.meveo.service.metrics.BillingMetrics;
+import org.meveo.service.metrics.BillingMetrics.Stage;
 import org.meveo.service.script.ScriptInstanceService;
 import org.meveo.service.script.catalog.TriggeredEdrScript;
 import org.meveo.service.script.catalog.TriggeredEdrScriptInterface;
@@ -756,7 +758,9 @@ public abstract class RatingService extends PersistenceService<WalletOperation>
                 // No associated contract found and price not specified in subscription price list or contract rate is not fixed - a price discount is applied by contract to a default price
                 if (contractItem != null && ContractRateTypeEnum.PERCENTAGE.equals(contractItem.getContractRateType()) ) {
                     	 // Find a default price plan
+                        long selectionStart = BillingMetrics.start();
                         pricePlan = pricePlanSelectionService.determineDefaultPricePlan(bareWalletOperation, buyerCountryId, buyerCurrency);
+                        BillingMetrics.record(Stage.PRICE_PLAN_SELECTION, selectionStart);
                         bareWalletOperation.setPriceplan(pricePlan);
 
                         log.debug("Will apply priceplan {} for {}", pricePlan.getId(), bareWalletOperation.getCode());
@@ -868,7 +872,9 @@ public abstract class RatingService extends PersistenceService<WalletOperation>
             		BigDecimal amount= BigDecimal.ZERO;
             		BigDecimal discountRate=null;
             		PricePlanMatrixLine pricePlanMatrixLine =null;
+                    long selectionStart = BillingMetrics.start();
                     List<PricePlanMatrix> availablePricePlansForRating = pricePlanSelectionService.determineAvailablePricePlansForRating(bareWalletOperation, buyerCountryId, buyerCurrency);
+                    BillingMetrics.record(Stage.PRICE_PLAN_SELECTION, selectionStart);
                     Amounts unitPrices = null;
                     for (PricePlanMatrix ppm : availablePricePlansForRating) {
                         log.debug("Check if price plan {} is applicable for {}", ppm.getId(), bareWalletOperation.getCode());
@@ -21,13 +21,17 @@ import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 
 import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.lang3.ArrayUtils;
 import org.meveo.admin.exception.BusinessException;
 import org.meveo.admin.exception.IncorrectServiceInstanceException;
@@ -1423,6 +1427,27 @@ public class ServiceInstanceService extends BusinessService<ServiceInstance> {
         return id == null ? null : (ServiceInstance)getEntityManager().createNamedQuery("ServiceInstance.findByIdAndFetchProduct").setParameter("id", id).getSingleResult();
     }
 
+    /**
+     * Find service instances with their attribute values, splitting identifiers in chunks of "database.number.of.inlist.limit" size
+     *
+     * @param ids Service instance identifiers
+     * @return Service instances mapped by identifier
+     */
+    public Map<Long, ServiceInstance> findAndFetchProductByIds(Collection<Long> ids) {
+        Map<Long, ServiceInstance> serviceInstances = new HashMap<>();
+        if (ids == null || ids.isEmpty()) {
+            return serviceInstances;
+        }
+        int maxValue = ParamBean.getInstance().getPropertyAsInteger("database.number.of.inlist.limit", SHORT_MAX_VALUE) - 1;
+        for (List<Long> subList : ListUtils.partition(new ArrayList<>(ids), maxValue)) {
+            List<ServiceInstance> found = getEntityManager().createNamedQuery("ServiceInstance.findByIdsAndFetchProduct", ServiceInstance.class).setParameter("ids", subList).getResultList();
+            for (ServiceInstance serviceInstance : found) {
+                serviceInstances.put(serviceInstance.getId(), serviceInstance);
+            }
+        }
+        return serviceInstances;
+    }
+
     public List<ServiceInstance> listActiveRecurrentServiceInstances() {
         return getEntityManager().createNamedQuery("ServiceInstance.listActiveRecurrentServiceInstances", ServiceInstance.class).getResultList();
     }
@@ -0,0 +1,103 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.service.billing.impl;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.meveo.model.billing.UsageChargeInstance;
+import org.meveo.model.catalog.UsageChargeTemplate;
+import org.meveo.model.rating.EDR;
+
+/**
+ * Data, related to a single subscription, that is reused when rating multiple EDRs of that subscription within the same transaction.<br/>
+ * <br/>
+ * Holds usage charge instances, ordered by priority, that are loaded once and are filtered in memory for each EDR by its date and parameters. As the same managed charge instances are used for every EDR, their
+ * counters, service instance and wallet are also loaded only once.
+ */
+public class SubscriptionRatingContext {
+
+    private Long subscriptionId;
+
+    private List<UsageChargeInstance> usageChargeInstances;
+
+    private boolean relatedEntitiesLoaded;
+
+    /**
+     * Constructor
+     *
+     * @param subscriptionId Subscription identifier
+     * @param usageChargeInstances Active, suspended or terminated usage charge instances of a subscription, ordered by priority
+     */
+    public SubscriptionRatingContext(Long subscriptionId, List<UsageChargeInstance> usageChargeInstances) {
+        this.subscriptionId = subscriptionId;
+        this.usageChargeInstances = usageChargeInstances;
+    }
+
+    /**
+     * @return Subscription identifier
+     */
+    public Long getSubscriptionId() {
+        return subscriptionId;
+    }
+
+    /**
+     * Get a list of usage charge instances valid for EDR date and matching EDR parameters (1 to 4). Same as UsageChargeInstanceService.getUsageChargeInstancesValidForDateBySubscriptionIdAndParams() but filtered in
+     * memory.
+     *
+     * @param edr EDR
+     * @return An ordered list by priority (ascended) of usage charge instances
+     */
+    public List<UsageChargeInstance> getUsageChargeInstancesValidForDateAndParams(EDR edr) {
+
+        Date eventDate = edr.getEventDate();
+        List<UsageChargeInstance> chargeInstances = new ArrayList<>();
+
+        for (UsageChargeInstance chargeInstance : usageChargeInstances) {
+            if (chargeInstance.getTerminationDate() != null && (eventDate == null || !chargeInstance.getTerminationDate().after(eventDate))) {
+                continue;
+            }
+            UsageChargeTemplate chargeTemplate = chargeInstance.getUsageChargeTemplate();
+            if (isFilterMatch(chargeTemplate.getFilterParam1(), edr.getParameter1()) && isFilterMatch(chargeTemplate.getFilterParam2(), edr.getParameter2())
+                    && isFilterMatch(chargeTemplate.getFilterParam3(), edr.getParameter3()) && isFilterMatch(chargeTemplate.getFilterParam4(), edr.getParameter4())) {
+                chargeInstances.add(chargeInstance);
+            }
+        }
+        return chargeInstances;
+    }
+
+    private static boolean isFilterMatch(String filter, String value) {
+        return filter == null || filter.equals(value);
+    }
+
+    /**
+     * @return Were subscription service instances, user account and wallet already loaded
+     */
+    public boolean isRelatedEntitiesLoaded() {
+        return relatedEntitiesLoaded;
+    }
+
+    /**
+     * @param relatedEntitiesLoaded Were subscription service instances, user account and wallet already loaded
+     */
+    public void setRelatedEntitiesLoaded(boolean relatedEntitiesLoaded) {
+        this.relatedEntitiesLoaded = relatedEntitiesLoaded;
+    }
+}
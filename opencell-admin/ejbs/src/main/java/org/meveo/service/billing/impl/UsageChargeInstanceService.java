@@ -202,4 +202,14 @@ public class UsageChargeInstanceService extends BusinessService<UsageChargeInsta
         		.setParameter("param1", edr.getParameter1()).setParameter("param2", edr.getParameter2()).setParameter("param3", edr.getParameter3()).setParameter("param4", edr.getParameter4())
         		.setParameter("date", edr.getEventDate()).setParameter("subscriptionId", edr.getSubscription().getId()).getResultList();
 	}
+
+    /**
+     * Get a list of usage charge instances of a given subscription that might be used in rating - active, suspended or terminated ones. Usage charge templates are fetched as well.
+     *
+     * @param subscriptionId Subscription identifier
+     * @return An ordered list by priority (ascended) of usage charge instances
+     */
+    public List<UsageChargeInstance> getUsageChargeInstancesForRatingBySubscriptionId(Long subscriptionId) {
+        return getEntityManager().createNamedQuery("UsageChargeInstance.getUsageChargesForRatingBySubscriptionId", UsageChargeInstance.class).setParameter("subscriptionId", subscriptionId).getResultList();
+    }
 }
\ No newline at end of file
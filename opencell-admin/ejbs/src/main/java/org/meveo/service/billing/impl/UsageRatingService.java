@@ -23,6 +23,7 @@ import static java.util.stream.Collectors.toList;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -61,6 +62,9 @@ import org.meveo.model.rating.EDRStatusEnum;
 import org.meveo.service.base.ValueExpressionWrapper;
 import org.meveo.service.catalog.impl.UsageChargeTemplateService;
 import org.meveo.service.medina.impl.CDRService;
+import org.meveo.service.metrics.BillingMetrics;
+import org.meveo.service.metrics.BillingMetrics.Outcome;
+import org.meveo.service.metrics.BillingMetrics.Stage;
 
 import jakarta.ejb.EJBTransactionRolledbackException;
 import jakarta.ejb.Stateless;
@@ -194,7 +198,9 @@ public class UsageRatingService extends RatingService implements Serializable {
         if (usageChargeInstance.getCounter() != null) {
             // if the charge is associated to a counter, we decrement it. If decremented by the full quantity, rating is finished.
             // If decremented partially or none - will proceed with another charge
+            long counterStart = BillingMetrics.start();
             deducedCounter = deduceCounter(edr, usageChargeInstance, null, isVirtual);
+            BillingMetrics.record(Stage.COUNTER_UPDATE, counterStart);
             BigDecimal deducedQuantity = deducedCounter.getDeducedQuantity();
 
             if (deducedQuantity != null && deducedQuantity.compareTo(BigDecimal.ZERO) == 0) {
@@ -276,9 +282,19 @@ public class UsageRatingService extends RatingService implements Serializable {
     	List<Long> successfullyRated= new ArrayList<Long>();
         List<EDR> edrs = findEdrsListByIds(edrIds);
 
+        // Rate EDRs grouped by subscription, so subscription related data is loaded only once
+        edrs.sort(Comparator.comparing((EDR edr) -> edr.getSubscription() != null ? edr.getSubscription().getId() : null, Comparator.nullsLast(Comparator.naturalOrder())).thenComparing(EDR::getId));
+        SubscriptionRatingContext ratingContext = null;
+
         for (EDR edr : edrs) {
         	try {
-        		rateUsage(edr, false, false, 0, 0, null, false);
+                Long subscriptionId = edr.getSubscription() != null ? edr.getSubscription().getId() : null;
+                if (subscriptionId == null) {
+                    ratingContext = null;
+                } else if (ratingContext == null || !subscriptionId.equals(ratingContext.getSubscriptionId())) {
+                    ratingContext = new SubscriptionRatingContext(subscriptionId, usageChargeInstanceService.getUsageChargeInstancesForRatingBySubscriptionId(subscriptionId));
+                }
+        		rateUsage(edr, false, false, 0, 0, null, false, ratingContext);
             } catch (Exception e) {
             	if(!multiProcessOnlyMode) {
             		edrIds.removeAll(successfullyRated);
@@ -381,6 +397,27 @@ public class UsageRatingService extends RatingService implements Serializable {
      */
     @TransactionAttribute(TransactionAttributeType.MANDATORY)
     public RatingResult rateUsage(EDR edr, boolean isVirtual, boolean rateTriggeredEdr, Integer maxDeep, Integer currentRatingDepth, Reservation reservation, boolean failSilently) {
+        return rateUsage(edr, isVirtual, rateTriggeredEdr, maxDeep, currentRatingDepth, reservation, failSilently, null);
+    }
+
+    /**
+     * Rate EDR. Change status to RATED if successfully rated or REJECTED with rejection reason specified.
+     * 
+     * @param edr EDR
+     * @param isVirtual Is this a virtual operation and no real counters or wallets should be affected (applies to quotes)
+     * @param rateTriggeredEdr check whether the rating for triggered EDR is enabled or not.
+     * @param maxDeep The max level of triggered EDR rating depth
+     * @param currentRatingDepth Tracks the current triggered EDR rating depth
+     * @param reservation - Reservation the rating is for
+     * @param failSilently If true, any error will be reported and returned in the rating result instead of throwing an exception
+     * @param ratingContext Data of EDR's subscription, reused among EDRs of the same subscription rated in the same transaction. Optional - charges will be retrieved from DB if not provided.
+     * @return Rating result containing rated wallet operations (persisted when currentRatingDepth is 0) and triggered EDRs (persisted when currentRatingDepth is 0)
+     * @throws BusinessException General exception.
+     * @throws RatingException EDR rejection due to lack of funds, data validation, inconsistency or other rating related failure
+     */
+    @TransactionAttribute(TransactionAttributeType.MANDATORY)
+    public RatingResult rateUsage(EDR edr, boolean isVirtual, boolean rateTriggeredEdr, Integer maxDeep, Integer currentRatingDepth, Reservation reservation, boolean failSilently,
+            SubscriptionRatingContext ratingContext) {
 
         log.trace("Rating EDR={}", edr);
 
@@ -404,8 +441,13 @@ public class UsageRatingService extends RatingService implements Serializable {
             if (subscriptionId != null) {
                 
                 boolean isSubscriptionInitialized = Hibernate.isInitialized(edr.getSubscription());
-                
-                usageChargeInstances = usageChargeInstanceService.getUsageChargeInstancesValidForDateBySubscriptionIdAndParams(edr);
+
+                if (ratingContext != null && subscriptionId.equals(ratingContext.getSubscriptionId())) {
+                    usageChargeInstances = ratingContext.getUsageChargeInstancesValidForDateAndParams(edr);
+                } else {
+                    ratingContext = null;
+                    usageChargeInstances = usageChargeInstanceService.getUsageChargeInstancesValidForDateBySubscriptionIdAndParams(edr);
+                }
                 paramsAlreadyFiltered=true;
                 if (usageChargeInstances == null || usageChargeInstances.isEmpty()) {
                     throw new NoChargeException("No active usage charges are associated with subscription " + subscriptionId);
@@ -413,7 +455,12 @@ public class UsageRatingService extends RatingService implements Serializable {
 
                 // Just to load all subscription service instances with their attributes to avoid querying service instances and their attributes one by one. 
                 // Done once per subscription (in same tx) - a fix when EDR batch to rate is based on same subscription, or when EDR triggers other EDRs 
-                loadEntitiesRelatedToSubscription(edr.getSubscription(), !isSubscriptionInitialized);
+                if (ratingContext == null || !ratingContext.isRelatedEntitiesLoaded()) {
+                    loadEntitiesRelatedToSubscription(edr.getSubscription(), !isSubscriptionInitialized);
+                    if (ratingContext != null) {
+                        ratingContext.setRelatedEntitiesLoaded(true);
+                    }
+                }
                     
                 // This covers a virtual rating case when estimating usage from a quote. Subscription in that case was not persisted.
             } else if (edr.getSubscription().getServiceInstances() != null) {
@@ -429,7 +476,10 @@ public class UsageRatingService extends RatingService implements Serializable {
             for (UsageChargeInstance usageChargeInstance : usageChargeInstances) {
           
                 log.trace("Try to rate EDR {} with charge {}", edr.getId(), usageChargeInstance.getCode());
-                if (!isChargeMatch(usageChargeInstance, edr, paramsAlreadyFiltered)) {
+                long matchingStart = BillingMetrics.start();
+                boolean isChargeMatch = isChargeMatch(usageChargeInstance, edr, paramsAlreadyFiltered);
+                BillingMetrics.record(Stage.CHARGE_MATCHING, matchingStart);
+                if (!isChargeMatch) {
                     continue;
                 }
 
@@ -467,7 +517,9 @@ public class UsageRatingService extends RatingService implements Serializable {
             }
 
             // Apply accumulator counters
+            long counterStart = BillingMetrics.start();
             incrementAccumulatorCounterValues(ratingResult.getWalletOperations(), ratingResult, isVirtual);
+            BillingMetrics.record(Stage.COUNTER_UPDATE, counterStart);
 
             edr.changeStatus(EDRStatusEnum.RATED);
             edr.setRejectReason(null);
@@ -479,6 +531,7 @@ public class UsageRatingService extends RatingService implements Serializable {
 
             // If not virtual, persist triggered EDRs and created Wallet operations
             if (!isVirtual && currentRatingDepth == 0) {
+                long persistStart = BillingMetrics.start();
                 if (ratingResult.getTriggeredEDRs() != null) {
                     for (EDR triggeredEdr : ratingResult.getTriggeredEDRs()) {
                         edrService.create(triggeredEdr);
@@ -489,8 +542,10 @@ public class UsageRatingService extends RatingService implements Serializable {
 	                checkDiscountedWalletOpertion(wo, ratingResult.getWalletOperations());
                     walletOperationService.chargeWalletOperation(wo);
                 }
-                
-                
+                BillingMetrics.record(Stage.WO_PERSIST, persistStart);
+            }
+            if (!isVirtual) {
+                BillingMetrics.increment(Outcome.EDR_RATED);
             }
 
         } catch (EJBTransactionRolledbackException e) {
@@ -500,6 +555,9 @@ public class UsageRatingService extends RatingService implements Serializable {
         } catch (Exception e) {
             rejectEDR(edr, e, currentRatingDepth > 0, currentRatingDepth > 0);
             revertCounterChanges(ratingResult.getCounterChanges());
+            if (!isVirtual) {
+                BillingMetrics.increment(Outcome.EDR_REJECTED);
+            }
 
             if (failSilently) {
                 return new RatingResult(e);
@@ -34,6 +34,8 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +44,7 @@ import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
@@ -134,6 +137,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.Text;
 import org.xml.sax.SAXException;
 
@@ -169,6 +173,21 @@ public class XmlInvoiceCreatorScript implements IXmlInvoiceCreatorScript {
     private static final String YES = "Yes";
     private static final String NO = "No";
 
+    /**
+     * Property to enable writing of invoice lines directly to XML file instead of building a whole XML document in memory
+     */
+    private static final String XML_STREAMING_WRITER = "invoice.xml.streamingWriter";
+
+    /**
+     * DOM document user data key for an invoice whose lines are streamed to XML file
+     */
+    private static final String USER_DATA_STREAMED_INVOICE = "streamedInvoice";
+
+    /**
+     * DOM element user data key for information needed to stream invoice lines of a subcategory
+     */
+    private static final String USER_DATA_STREAMED_LINES = "streamedLines";
+
     @Inject
     @CurrentUser
     protected MeveoUser currentUser;
@@ -269,6 +288,10 @@ public class XmlInvoiceCreatorScript implements IXmlInvoiceCreatorScript {
      */
     public File createDocumentAndFile(Invoice invoice, boolean isVirtual, String fullXmlFilePath,
                                       boolean rtBillingProcess) throws BusinessException, ParserConfigurationException {
+        if (!isVirtual && paramBeanFactory.getInstance().getPropertyAsBoolean(XML_STREAMING_WRITER, false)) {
+            Document doc = createDocument(invoice, false, rtBillingProcess, true);
+            return createFileStreamed(doc, invoice, fullXmlFilePath);
+        }
         Document doc = createDocument(invoice, isVirtual, rtBillingProcess);
         return createFile(doc, invoice, fullXmlFilePath);
     }
@@ -307,6 +330,104 @@ public class XmlInvoiceCreatorScript implements IXmlInvoiceCreatorScript {
         }
     }
 
+    /**
+     * Store XML DOM into a file, writing invoice lines of subcategories, that were not added to DOM, directly to a file one by one. See createDocument(Invoice, boolean, boolean, boolean).<br/>
+     * <br/>
+     * File content is the same as produced by createFile().
+     *
+     * @param doc             XML invoice DOM without invoice lines
+     * @param invoice         Invoice to convert invoice used to build xml
+     * @param fullXmlFilePath Full xml file path
+     * @return xml file
+     * @throws BusinessException business exception
+     */
+    public File createFileStreamed(Document doc, Invoice invoice, String fullXmlFilePath) throws BusinessException {
+
+        // Elements that contain subcategories with streamed invoice lines
+        Set<Element> streamedElements = Collections.newSetFromMap(new IdentityHashMap<>());
+        markStreamedElements(doc.getDocumentElement(), streamedElements);
+
+        File xmlFile = new File(fullXmlFilePath);
+        try (XmlInvoiceStreamWriter writer = new XmlInvoiceStreamWriter(FileUtils.getOutputStream(fullXmlFilePath))) {
+            writer.writeStartDocument();
+            writeElementStreamed(writer, doc, doc.getDocumentElement(), streamedElements);
+            writer.writeEndDocument();
+
+        } catch (IOException e) {
+            throw new BusinessException("Failed to create xml file for invoice id=" + invoice.getId() + " number=" + invoice.getInvoiceNumberOrTemporaryNumber(), e);
+        }
+        log.info("XML file '{}' produced for invoice {}", fullXmlFilePath, invoice.getInvoiceNumberOrTemporaryNumber());
+        return xmlFile;
+    }
+
+    /**
+     * Collect elements that contain, directly or via child elements, invoice lines to stream
+     *
+     * @param element Element to check
+     * @param streamedElements Elements containing invoice lines to stream
+     * @return True if element contains invoice lines to stream
+     */
+    private boolean markStreamedElements(Element element, Set<Element> streamedElements) {
+        boolean isStreamed = element.getUserData(USER_DATA_STREAMED_LINES) != null;
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE && markStreamedElements((Element) child, streamedElements)) {
+                isStreamed = true;
+            }
+        }
+        if (isStreamed) {
+            streamedElements.add(element);
+        }
+        return isStreamed;
+    }
+
+    /**
+     * Write an element to a file. Invoice lines of a subcategory are read from DB and written one by one, before other subcategory child elements, the same way as they would have been added to DOM.
+     *
+     * @param writer XML writer
+     * @param doc XML invoice DOM
+     * @param element Element to write
+     * @param streamedElements Elements containing invoice lines to stream. Such elements might contain only child elements and no text.
+     * @throws IOException Failed to write to a file
+     */
+    protected void writeElementStreamed(XmlInvoiceStreamWriter writer, Document doc, Element element, Set<Element> streamedElements) throws IOException {
+
+        if (!streamedElements.contains(element)) {
+            writer.writeElement(element);
+            return;
+        }
+
+        writer.writeStartElement(element);
+
+        StreamedInvoiceLines streamedLines = (StreamedInvoiceLines) element.getUserData(USER_DATA_STREAMED_LINES);
+        if (streamedLines != null) {
+            Invoice invoice = (Invoice) doc.getUserData(USER_DATA_STREAMED_INVOICE);
+            try (Stream<InvoiceLine> invoiceLines = invoiceLineService.getInvoiceLinesStream(invoice.getId(), streamedLines.invoiceCategoryId, streamedLines.subCategoryAggregateId)) {
+                Iterator<InvoiceLine> invoiceLinesIterator = invoiceLines.iterator();
+                while (invoiceLinesIterator.hasNext()) {
+                    Element ilTag = createILSection(doc, invoiceLinesIterator.next(), streamedLines.invoiceDateFormat, streamedLines.invoiceConfiguration, streamedLines.mapTaxesIndexes);
+                    if (ilTag != null) {
+                        writer.writeElement(ilTag);
+                    }
+                }
+            }
+        }
+
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE) {
+                writeElementStreamed(writer, doc, (Element) child, streamedElements);
+            }
+        }
+        writer.writeEndElement();
+    }
+
+    /**
+     * @param doc XML invoice DOM
+     * @return True if invoice lines are not added to DOM, but are written directly to a file
+     */
+    protected boolean isInvoiceLinesStreamed(Document doc) {
+        return doc.getUserData(USER_DATA_STREAMED_INVOICE) != null;
+    }
+
     /**
      * Create Invoice XML document as DOM
      *
@@ -318,6 +439,21 @@ public class XmlInvoiceCreatorScript implements IXmlInvoiceCreatorScript {
      * @throws ParserConfigurationException parsing exception
      */
     public Document createDocument(Invoice invoice, boolean isVirtual, boolean rtBillingProcess) throws BusinessException, ParserConfigurationException {
+        return createDocument(invoice, isVirtual, rtBillingProcess, false);
+    }
+
+    /**
+     * Create Invoice XML document as DOM
+     *
+     * @param invoice   Invoice to convert Invoice used to create xml
+     * @param isVirtual Is this a virtual invoice. If true, no invoice, invoice aggregate nor RT information is persisted in DB
+     * @param rtBillingProcess invoicing process : true old process using RT, false : new process using invoiceLines
+     * @param streamInvoiceLines Shall invoice lines be omitted from subcategories to be written directly to a file with createFileStreamed(). Applies to a non-virtual invoice with invoice lines only.
+     * @return DOM element XML DOM document
+     * @throws BusinessException            business exception
+     * @throws ParserConfigurationException parsing exception
+     */
+    protected Document createDocument(Invoice invoice, boolean isVirtual, boolean rtBillingProcess, boolean streamInvoiceLines) throws BusinessException, ParserConfigurationException {
 
         invoice = invoiceService.retrieveIfNotManaged(invoice);
         boolean isInvoiceAdjustment = invoiceTypeService.getListAdjustementCode().contains(invoice.getInvoiceType().getCode());
@@ -332,7 +468,15 @@ public class XmlInvoiceCreatorScript implements IXmlInvoiceCreatorScript {
         DocumentBuilderFactory dbfac = DocumentBuilderFactory.newInstance();
         DocumentBuilder docBuilder = dbfac.newDocumentBuilder();
         Document doc = docBuilder.newDocument();
-        rtBillingProcess = rtBillingProcess && !(invoice.getInvoiceLines()!=null && !invoice.getInvoiceLines().isEmpty());
+        if (streamInvoiceLines && !isVirtual) {
+            // Invoice lines are counted instead of being loaded
+            rtBillingProcess = rtBillingProcess && invoiceLineService.countInvoiceLinesByInvoice(invoice.getId()) == 0;
+            if (!rtBillingProcess) {
+                doc.setUserData(USER_DATA_STREAMED_INVOICE, invoice, null);
+            }
+        } else {
+            rtBillingProcess = rtBillingProcess && !(invoice.getInvoiceLines()!=null && !invoice.getInvoiceLines().isEmpty());
+        }
         Element invoiceTag = rtBillingProcess ? createInvoiceSection(doc, invoice, isVirtual, isInvoiceAdjustment, docBuilder, mapTaxesIndexes)
                 : createInvoiceSectionIL(doc, invoice, isVirtual, isInvoiceAdjustment, docBuilder, mapTaxesIndexes);
         doc.appendChild(invoiceTag);
@@ -2271,7 +2415,7 @@ public class XmlInvoiceCreatorScript implements IXmlInvoiceCreatorScript {
         }
 
         ofNullable(createSubTotals(doc, invoice.getInvoiceType(),
-                invoice.getInvoiceLines(), invoice.getBillingAccount().getTradingLanguage()))
+                isInvoiceLinesStreamed(doc) ? null : invoice.getInvoiceLines(), invoice.getBillingAccount().getTradingLanguage()))
                 .ifPresent(header::appendChild);
 		header.appendChild(createPaymentTerm(invoice, doc, invoice.getTradingLanguage() != null ? invoice.getTradingLanguage().getLanguageCode() : null));
         return header;
@@ -2346,8 +2490,15 @@ public class XmlInvoiceCreatorScript implements IXmlInvoiceCreatorScript {
     protected Element createSubTotals(Document doc, InvoiceType invoiceType,
                                     List<InvoiceLine> invoiceLines, TradingLanguage tradingLanguage) {
         Element subTotals = null;
-        List<InvoiceSubTotals> invoiceSubTotals =
-                invoiceSubTotalsService.calculateSubTotals(invoiceType, ofNullable(invoiceLines).orElse(emptyList()));
+        List<InvoiceSubTotals> invoiceSubTotals;
+        if (isInvoiceLinesStreamed(doc)) {
+            Invoice invoice = (Invoice) doc.getUserData(USER_DATA_STREAMED_INVOICE);
+            try (Stream<InvoiceLine> streamedInvoiceLines = invoiceLineService.getInvoiceLinesStream(invoice.getId())) {
+                invoiceSubTotals = invoiceSubTotalsService.calculateSubTotals(invoiceType, streamedInvoiceLines);
+            }
+        } else {
+            invoiceSubTotals = invoiceSubTotalsService.calculateSubTotals(invoiceType, ofNullable(invoiceLines).orElse(emptyList()));
+        }
         if(invoiceSubTotals != null && !invoiceSubTotals.isEmpty()) {
             subTotals = doc.createElement("subTotals");
             String languageCode;
@@ -2844,7 +2995,8 @@ public class XmlInvoiceCreatorScript implements IXmlInvoiceCreatorScript {
         List<InvoiceLine> invoiceLines = null;
         if (invoiceConfiguration.isDisplayOffers() || invoiceConfiguration.isDisplayServices()
                 || invoiceConfiguration.isDisplayPricePlans() || invoiceConfiguration.isDisplayDetail()) {
-            invoiceLines = invoice.getInvoiceLines();
+            // When invoice lines are streamed, only a first line of each offer, service and subscription is loaded, as needed to list them
+            invoiceLines = isInvoiceLinesStreamed(doc) ? invoiceLineService.listFirstInvoiceLinesByOfferServiceAndSubscription(invoice.getId()) : invoice.getInvoiceLines();
         }
         if (invoiceConfiguration.isDisplayOffers()) {
             Element offersTag = createOffersSection(doc, invoice, null, invoiceLines);
@@ -3231,7 +3383,9 @@ public class XmlInvoiceCreatorScript implements IXmlInvoiceCreatorScript {
             addCustomFields(userAccount, doc, userAccountTag);
         }
         if (invoiceConfiguration.isDisplaySubscriptions()) {
-        	List<RatedTransaction> ratedTransactions = ratedTransactionService.listRatedTransactionsByInvoice(invoice);
+            // When invoice lines are streamed, only a first rated transaction of each subscription and user account is loaded, as needed to list subscriptions
+            List<RatedTransaction> ratedTransactions = isInvoiceLinesStreamed(doc) ? ratedTransactionService.listFirstRatedTransactionsBySubscriptionAndUserAccount(invoice)
+                    : ratedTransactionService.listRatedTransactionsByInvoice(invoice);
             Element subscriptionsTag = createSubscriptionsSection(doc, userAccount, ratedTransactions, isVirtual, ignoreUA, invoiceLines);
             if (subscriptionsTag != null
                     && subscriptionsTag.getChildNodes() != null && subscriptionsTag.getChildNodes().getLength() != 0) {
@@ -3397,16 +3551,26 @@ public class XmlInvoiceCreatorScript implements IXmlInvoiceCreatorScript {
         subCategory.setAttribute("transactionalAmountTax", toPlainString(subCatInvoiceAggregate.getTransactionalAmountTax()));
         subCategory.setAttribute("sortIndex", (invoiceSubCat!= null && invoiceSubCat.getSortIndex() != null)
                 ? invoiceSubCat.getSortIndex() + "" : "");
-        for (InvoiceLine invoiceLine : invoiceLines) {
-            if ((invoiceLine.getInvoiceAggregateF() != null && invoiceLine.getInvoiceAggregateF().getId() != null
-                    && !invoiceLine.getInvoiceAggregateF().getId().equals(subCatInvoiceAggregate.getId()))
-                    || (invoiceLine.getInvoiceAggregateF() != null && invoiceLine.getInvoiceAggregateF().getId() == null
-                    && invoiceLine.getAccountingArticle() != null && !invoiceLine.getAccountingArticle().getInvoiceSubCategory().getId().equals(invoiceSubCat.getId()))) {
-                continue;
+        if (isInvoiceLinesStreamed(doc)) {
+            // Invoice lines will be written directly to a file when subcategory is written
+            CategoryInvoiceAgregate categoryInvoiceAggregate = subCatInvoiceAggregate.getCategoryInvoiceAgregate();
+            if (categoryInvoiceAggregate != null && categoryInvoiceAggregate.getInvoiceCategory() != null) {
+                subCategory.setUserData(USER_DATA_STREAMED_LINES, new StreamedInvoiceLines(categoryInvoiceAggregate.getInvoiceCategory().getId(), subCatInvoiceAggregate.getId(), invoiceDateFormat,
+                    invoiceConfiguration, mapTaxesIndexes), null);
             }
-            Element ilTag = createILSection(doc, invoiceLine, invoiceDateFormat, invoiceConfiguration, mapTaxesIndexes);
-            if (ilTag != null) {
-                subCategory.appendChild(ilTag);
+
+        } else {
+            for (InvoiceLine invoiceLine : invoiceLines) {
+                if ((invoiceLine.getInvoiceAggregateF() != null && invoiceLine.getInvoiceAggregateF().getId() != null
+                        && !invoiceLine.getInvoiceAggregateF().getId().equals(subCatInvoiceAggregate.getId()))
+                        || (invoiceLine.getInvoiceAggregateF() != null && invoiceLine.getInvoiceAggregateF().getId() == null
+                        && invoiceLine.getAccountingArticle() != null && !invoiceLine.getAccountingArticle().getInvoiceSubCategory().getId().equals(invoiceSubCat.getId()))) {
+                    continue;
+                }
+                Element ilTag = createILSection(doc, invoiceLine, invoiceDateFormat, invoiceConfiguration, mapTaxesIndexes);
+                if (ilTag != null) {
+                    subCategory.appendChild(ilTag);
+                }
             }
         }
         addCustomFields(invoiceSubCat, doc, subCategory);
@@ -3454,4 +3618,28 @@ public class XmlInvoiceCreatorScript implements IXmlInvoiceCreatorScript {
 		}
 		return paymentTermNode;
 	}
-}
\ No newline at end of file
+
+    /**
+     * Information needed to stream invoice lines of a subcategory
+     */
+    protected static class StreamedInvoiceLines {
+
+        private final Long invoiceCategoryId;
+
+        private final Long subCategoryAggregateId;
+
+        private final String invoiceDateFormat;
+
+        private final InvoiceConfiguration invoiceConfiguration;
+
+        private final Map<String, String> mapTaxesIndexes;
+
+        protected StreamedInvoiceLines(Long invoiceCategoryId, Long subCategoryAggregateId, String invoiceDateFormat, InvoiceConfiguration invoiceConfiguration, Map<String, String> mapTaxesIndexes) {
+            this.invoiceCategoryId = invoiceCategoryId;
+            this.subCategoryAggregateId = subCategoryAggregateId;
+            this.invoiceDateFormat = invoiceDateFormat;
+            this.invoiceConfiguration = invoiceConfiguration;
+            this.mapTaxesIndexes = mapTaxesIndexes;
+        }
+    }
+}
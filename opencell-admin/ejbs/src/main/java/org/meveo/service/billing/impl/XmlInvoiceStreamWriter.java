@@ -0,0 +1,386 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+
+package org.meveo.service.billing.impl;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Writes an XML document to a stream element by element, so the whole document does not have to be held in memory as DOM. Elements can be written either as a whole DOM subtree or opened and closed
+ * explicitly, with their children written in between.<br/>
+ * <br/>
+ * Output is formatted exactly as the one produced by a JDK Transformer with indentation of 2 spaces, as used by XmlInvoiceCreatorScript.createFile(), so files do not differ whichever way they were written.
+ * StAX XMLStreamWriter is not used, as its character escaping differs from the one of a Transformer.
+ */
+public class XmlInvoiceStreamWriter implements Closeable {
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private static final int INDENT_AMOUNT = 2;
+
+    private final Writer writer;
+
+    /**
+     * Elements opened with writeStartElement() and not closed yet
+     */
+    private final Deque<OpenElement> openElements = new ArrayDeque<>();
+
+    /**
+     * Constructor
+     *
+     * @param outputStream Output stream to write to. Will be closed when writer is closed.
+     */
+    public XmlInvoiceStreamWriter(OutputStream outputStream) {
+        this.writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write an XML declaration
+     *
+     * @throws IOException Failed to write
+     */
+    public void writeStartDocument() throws IOException {
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+    }
+
+    /**
+     * Write a start tag with attributes of an element. Child nodes of the element are not written. Element must be closed with writeEndElement().
+     *
+     * @param element Element to open
+     * @throws IOException Failed to write
+     */
+    public void writeStartElement(Element element) throws IOException {
+        beforeChild();
+        writeStartTag(element, openElements.size());
+        openElements.push(new OpenElement(element.getTagName()));
+    }
+
+    /**
+     * Close an element opened with writeStartElement()
+     *
+     * @throws IOException Failed to write
+     */
+    public void writeEndElement() throws IOException {
+        OpenElement openElement = openElements.pop();
+        if (openElement.hasChildren) {
+            writeIndent(openElements.size());
+            writer.write("</");
+            writer.write(openElement.tagName);
+            writer.write('>');
+        } else {
+            writer.write("/>");
+        }
+    }
+
+    /**
+     * Write an element with all its child nodes
+     *
+     * @param element Element to write
+     * @throws IOException Failed to write
+     */
+    public void writeElement(Element element) throws IOException {
+        beforeChild();
+        writeElement(element, openElements.size());
+    }
+
+    /**
+     * Finish a document. All opened elements are closed.
+     *
+     * @throws IOException Failed to write
+     */
+    public void writeEndDocument() throws IOException {
+        while (!openElements.isEmpty()) {
+            writeEndElement();
+        }
+        writer.write(LINE_SEPARATOR);
+        writer.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Close a start tag of a parent element when its first child is written
+     */
+    private void beforeChild() throws IOException {
+        OpenElement parent = openElements.peek();
+        if (parent != null && !parent.hasChildren) {
+            writer.write('>');
+            parent.hasChildren = true;
+        }
+    }
+
+    private void writeElement(Element element, int depth) throws IOException {
+
+        writeStartTag(element, depth);
+
+        boolean hasChildElements = false;
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (child.getNodeType() == Node.ELEMENT_NODE || child.getNodeType() == Node.COMMENT_NODE) {
+                hasChildElements = true;
+                break;
+            }
+        }
+
+        // Text only element is written on a single line
+        if (!hasChildElements) {
+            if (element.getTextContent().isEmpty()) {
+                writer.write("/>");
+            } else {
+                writer.write('>');
+                for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    if (child.getNodeType() == Node.TEXT_NODE) {
+                        writeText(child.getNodeValue(), false);
+                    } else if (child.getNodeType() == Node.CDATA_SECTION_NODE) {
+                        writeCData(child.getNodeValue());
+                    }
+                }
+                writer.write("</");
+                writer.write(element.getTagName());
+                writer.write('>');
+            }
+            return;
+        }
+
+        // Each child of an element containing other elements starts on a new line. Adjacent text nodes are written together.
+        // As in a Transformer, a text followed by a CDATA section is not counted as a child, and text and CDATA sections are indented only once there are two children or more
+        writer.write('>');
+        int nbChildren = 0;
+        boolean endsWithText = false;
+        StringBuilder text = null;
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            short nodeType = child.getNodeType();
+            if (nodeType == Node.TEXT_NODE) {
+                text = text == null ? new StringBuilder(child.getNodeValue()) : text.append(child.getNodeValue());
+
+            } else if (nodeType == Node.CDATA_SECTION_NODE) {
+                endsWithText |= writeTextInElementContent(text, nbChildren > 1, depth + 1);
+                text = null;
+                if (!child.getNodeValue().isEmpty()) {
+                    if (nbChildren > 1) {
+                        writeIndent(depth + 1);
+                    }
+                    writeCData(child.getNodeValue());
+                    endsWithText = true;
+                }
+
+            } else if (nodeType == Node.ELEMENT_NODE || nodeType == Node.COMMENT_NODE) {
+                nbChildren += text != null && text.length() > 0 ? 2 : 1;
+                writeTextInElementContent(text, true, depth + 1);
+                text = null;
+                if (nodeType == Node.ELEMENT_NODE) {
+                    writeElement((Element) child, depth + 1);
+                    endsWithText = false;
+                } else {
+                    writeIndent(depth + 1);
+                    writer.write("<!--");
+                    writer.write(child.getNodeValue());
+                    writer.write("-->");
+                }
+            }
+        }
+        if (text != null && text.length() > 0) {
+            nbChildren++;
+            endsWithText = writeTextInElementContent(text, true, depth + 1);
+        }
+
+        if (nbChildren > 1 || !endsWithText) {
+            writeIndent(depth);
+        }
+        writer.write("</");
+        writer.write(element.getTagName());
+        writer.write('>');
+    }
+
+    private void writeStartTag(Element element, int depth) throws IOException {
+        writeIndent(depth);
+        writer.write('<');
+        writer.write(element.getTagName());
+
+        // DOM implementation keeps attributes ordered by name, same as they are written by a Transformer
+        NamedNodeMap attributes = element.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attribute = (Attr) attributes.item(i);
+            writer.write(' ');
+            writer.write(attribute.getName());
+            writer.write("=\"");
+            writeText(attribute.getValue(), true);
+            writer.write('"');
+        }
+    }
+
+    /**
+     * Text mixed with elements starts on a new line, ignoring its leading new lines
+     *
+     * @return Was any text written
+     */
+    private boolean writeTextInElementContent(CharSequence text, boolean onNewLine, int depth) throws IOException {
+        if (text == null || text.length() == 0) {
+            return false;
+        }
+        int start = 0;
+        if (onNewLine) {
+            while (start < text.length() && text.charAt(start) == '\n') {
+                start++;
+            }
+            writeIndent(depth);
+        }
+        writeText(text.subSequence(start, text.length()).toString(), false);
+        return true;
+    }
+
+    private void writeIndent(int depth) throws IOException {
+        writer.write(LINE_SEPARATOR);
+        for (int i = 0; i < depth * INDENT_AMOUNT; i++) {
+            writer.write(' ');
+        }
+    }
+
+    /**
+     * Write an escaped text or attribute value
+     *
+     * @param text Text to write
+     * @param isAttribute Is it an attribute value
+     * @throws IOException Failed to write or text contains characters not allowed in XML
+     */
+    private void writeText(String text, boolean isAttribute) throws IOException {
+
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            switch (c) {
+            case '&':
+                writer.write("&amp;");
+                break;
+            case '<':
+                writer.write("&lt;");
+                break;
+            case '>':
+                writer.write("&gt;");
+                break;
+            case '"':
+                writer.write(isAttribute ? "&quot;" : "\"");
+                break;
+            case '\r':
+                writer.write("&#13;");
+                break;
+            case '\n':
+                writer.write(isAttribute ? "&#10;" : LINE_SEPARATOR);
+                break;
+            case '\t':
+                writer.write(isAttribute ? "&#9;" : "\t");
+                break;
+            default:
+                if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    writeCharacterReference(Character.toCodePoint(c, text.charAt(i + 1)));
+                    i++;
+
+                } else if (c < 0x20 || Character.isSurrogate(c) || c == 0xFFFE || c == 0xFFFF) {
+                    throw new IOException("An invalid XML character (Unicode: 0x" + Integer.toHexString(c) + ") was found in " + (isAttribute ? "attribute value" : "text") + " '" + text + "'");
+
+                } else if (c >= 0x7F && c <= 0x9F && !isAttribute) {
+                    writeCharacterReference(c);
+
+                } else {
+                    writer.write(c);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write a CDATA section. Same as a Transformer does, "]]>" is split over two CDATA sections, line breaks are written as a line separator and characters are not escaped.
+     *
+     * @param text CDATA section content
+     * @throws IOException Failed to write or text contains characters not allowed in XML
+     */
+    private void writeCData(String text) throws IOException {
+
+        int length = text.length();
+        // As in a Transformer, a section is not opened before a leading surrogate pair, but at a next character
+        boolean isOpen = length > 0 && !Character.isSurrogate(text.charAt(0));
+        if (isOpen) {
+            writer.write("<![CDATA[");
+        }
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                writer.write(LINE_SEPARATOR);
+
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                writer.write(c);
+                writer.write(text.charAt(++i));
+
+            } else if ((c < 0x20 && c != '\t' && c != '\r') || Character.isSurrogate(c) || c == 0xFFFE || c == 0xFFFF) {
+                throw new IOException("An invalid XML character (Unicode: 0x" + Integer.toHexString(c) + ") was found in CDATA section '" + text + "'");
+
+            } else if (c == ']' && i + 2 < length && text.charAt(i + 1) == ']' && text.charAt(i + 2) == '>') {
+                writer.write("]]]]><![CDATA[>");
+                i += 2;
+
+            } else {
+                if (!isOpen) {
+                    writer.write("<![CDATA[");
+                    isOpen = true;
+                }
+                writer.write(c);
+            }
+        }
+        if (isOpen) {
+            writer.write("]]>");
+        }
+    }
+
+    private void writeCharacterReference(int codePoint) throws IOException {
+        writer.write("&#");
+        writer.write(Integer.toString(codePoint));
+        writer.write(';');
+    }
+
+    /**
+     * An element opened with writeStartElement()
+     */
+    private static class OpenElement {
+
+        private final String tagName;
+
+        /**
+         * Were any child nodes written and thus start tag closed
+         */
+        private boolean hasChildren;
+
+        private OpenElement(String tagName) {
+            this.tagName = tagName;
+        }
+    }
+}
@@ -5,25 +5,25 @@ import static org.meveo.service.base.ValueExpressionWrapper.evaluateExpression;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.lang3.math.NumberUtils;
 import org.hibernate.Hibernate;
 import org.meveo.admin.exception.BusinessException;
 import org.meveo.admin.exception.InvalidELException;
 import org.meveo.admin.exception.RatingException;
 import org.meveo.admin.exception.ValidationException;
 import org.meveo.api.exception.EntityDoesNotExistsException;
+import org.meveo.cache.ArticleMappingCache;
 import org.meveo.commons.utils.ParamBean;
 import org.meveo.commons.utils.StringUtils;
 import org.meveo.model.accountingScheme.AccountingCodeMapping;
@@ -31,6 +31,7 @@ import org.meveo.model.admin.Seller;
 import org.meveo.model.article.AccountingArticle;
 import org.meveo.model.article.ArticleMappingLine;
 import org.meveo.model.article.AttributeMapping;
+import org.meveo.model.billing.AccountingArticleAssignmentItem;
 import org.meveo.model.billing.AccountingCode;
 import org.meveo.model.billing.BillingAccount;
 import org.meveo.model.billing.ChargeInstance;
@@ -45,7 +46,6 @@ import org.meveo.model.catalog.OfferTemplate;
 import org.meveo.model.cpq.Attribute;
 import org.meveo.model.cpq.Product;
 import org.meveo.model.cpq.enums.OperatorEnum;
-import org.meveo.model.cpq.enums.RuleOperatorEnum;
 import org.meveo.model.tax.TaxClass;
 import org.meveo.service.base.BusinessService;
 import org.meveo.service.base.ValueExpressionWrapper;
@@ -77,6 +77,9 @@ public class AccountingArticleService extends BusinessService<AccountingArticle>
     @Inject
     private ServiceInstanceService serviceInstanceService;
 
+    @Inject
+    private ArticleMappingCache articleMappingCache;
+
     private String multiValuesAttributeSeparator = ";";
 
     @PostConstruct
@@ -96,7 +99,17 @@ public class AccountingArticleService extends BusinessService<AccountingArticle>
 	
 	public Optional<AccountingArticle> getAccountingArticleByIds(Product product, Long chargeTemplateId, Long offerId,
 				Map<String, Object> attributes, WalletOperation walletOperation) throws InvalidELException, ValidationException {
-		
+
+		if (ArticleMappingCache.isEnabled()) {
+			String[] parameters = walletOperation != null ? new String[] { walletOperation.getParameter1(), walletOperation.getParameter2(), walletOperation.getParameter3() } : null;
+			Long accountingArticleId = articleMappingCache.getDecisionTable(multiValuesAttributeSeparator).resolve(product == null ? null : product.getId(), chargeTemplateId, offerId,
+				parameters, attributes, mappingKeyEL -> filterMappingLines(walletOperation, mappingKeyEL), getExpressionEvaluator(product, walletOperation));
+
+			AccountingArticle accountingArticle = accountingArticleId != null ? getEntityManager().find(AccountingArticle.class, accountingArticleId)
+					: getFallbackAccountingArticle(walletOperation);
+			return Optional.ofNullable(accountingArticle);
+		}
+
 		List<ArticleMappingLine> articleMappingLines = null;
 		String param1 = ofNullable(walletOperation).map(WalletOperation::getParameter1).orElse(null);
 		String param2 = ofNullable(walletOperation).map(WalletOperation::getParameter2).orElse(null);
@@ -201,22 +214,38 @@ public class AccountingArticleService extends BusinessService<AccountingArticle>
             if (bestMatch != null) {
                 accountingArticle = bestMatch.getAccountingArticle();
 
-			} else if (walletOperation != null && walletOperation.getAccountingArticle() != null) {
-				accountingArticle = walletOperation.getAccountingArticle();
 			} else {
-				ParamBean paramBean = ParamBean.getInstance();
-				String defaultArticle = paramBean.getProperty("default.article", "ART-STD");
-                accountingArticle = findByCode(defaultArticle, Arrays.asList("taxClass"), true);
-
-                if (accountingArticle != null) {
-                    Hibernate.initialize(accountingArticle);
-                    detach(accountingArticle);
-		}
+				accountingArticle = getFallbackAccountingArticle(walletOperation);
+			}
 		}
-	}
         return accountingArticle != null ? Optional.of(accountingArticle) : Optional.empty();
     }
 
+	/**
+	 * Get an accounting article to use when no article mapping line matched - the one of a wallet operation or a default one defined by "default.article" property
+	 *
+	 * @param walletOperation Wallet operation. Optional.
+	 * @return Accounting article
+	 */
+	private AccountingArticle getFallbackAccountingArticle(WalletOperation walletOperation) {
+		if (walletOperation != null && walletOperation.getAccountingArticle() != null) {
+			return walletOperation.getAccountingArticle();
+		}
+		ParamBean paramBean = ParamBean.getInstance();
+		String defaultArticle = paramBean.getProperty("default.article", "ART-STD");
+		AccountingArticle accountingArticle = findByCode(defaultArticle, Arrays.asList("taxClass"), true);
+
+		if (accountingArticle != null) {
+			Hibernate.initialize(accountingArticle);
+			detach(accountingArticle);
+		}
+		return accountingArticle;
+	}
+
+	private Function<String, Object> getExpressionEvaluator(Product product, WalletOperation walletOperation) {
+		return expression -> attributeService.evaluateElExpressionAttribute(expression, product, null, null, walletOperation, Object.class);
+	}
+
 	public Optional<AccountingArticle> getAccountingArticle(Product product, ChargeTemplate chargeTemplate,
 															Map<String, Object> attributes, WalletOperation walletOperation) throws InvalidELException, ValidationException {
 		return getAccountingArticle(product, chargeTemplate,  ofNullable(walletOperation).map(WalletOperation::getOfferTemplate).orElse(null), attributes, walletOperation);
@@ -330,6 +359,35 @@ public class AccountingArticleService extends BusinessService<AccountingArticle>
         return getAccountingArticle(serviceInstanceService.findAndFetchProductById(serviceInstanceId), chargeTemplateId == null ? null : chargeTemplateService.findById(chargeTemplateId),
             offerTemplateId == null ? null : offerTemplateService.findById(offerTemplateId), null);
     }
+
+    /**
+     * Resolve accounting articles of multiple charges at once. Service instances and their attribute values are read in bulk and charges sharing the same product, charge template,
+     * offer and attribute values are resolved only once.
+     *
+     * @param items Charges to resolve accounting article for
+     * @return Accounting articles in the same order as items. An element is NULL if no accounting article was resolved.
+     */
+    public List<AccountingArticle> getAccountingArticles(List<AccountingArticleAssignmentItem> items) {
+
+        Set<Long> serviceInstanceIds = items.stream().map(AccountingArticleAssignmentItem::getServiceInstanceId).filter(Objects::nonNull).collect(Collectors.toSet());
+        Map<Long, ServiceInstance> serviceInstances = serviceInstanceService.findAndFetchProductByIds(serviceInstanceIds);
+
+        Map<List<Object>, AccountingArticle> resolvedArticles = new HashMap<>();
+        List<AccountingArticle> accountingArticles = new ArrayList<>(items.size());
+
+        for (AccountingArticleAssignmentItem item : items) {
+            ServiceInstance serviceInstance = serviceInstances.get(item.getServiceInstanceId());
+            Product product = serviceInstance != null && serviceInstance.getProductVersion() != null ? serviceInstance.getProductVersion().getProduct() : null;
+            Map<String, Object> attributes = serviceInstance != null ? serviceInstance.extractAttributes() : new HashMap<>();
+
+            List<Object> key = Arrays.asList(product != null ? product.getId() : null, item.getChargeTemplateId(), item.getOfferTemplateId(), attributes);
+            if (!resolvedArticles.containsKey(key)) {
+                resolvedArticles.put(key, getAccountingArticleByIds(product, item.getChargeTemplateId(), item.getOfferTemplateId(), attributes, null).orElse(null));
+            }
+            accountingArticles.add(resolvedArticles.get(key));
+        }
+        return accountingArticles;
+    }
     
 	
 	public List<AccountingArticle> findByTaxClassAndSubCategory(TaxClass taxClass, InvoiceSubCategory invoiceSubCategory) {
@@ -485,173 +543,10 @@ public class AccountingArticleService extends BusinessService<AccountingArticle>
 	}
 
 	private boolean checkAttribute(Product product, WalletOperation walletOperation, Map<String, Object> attributes, AttributeMapping attributeMapping) {
-		final Attribute attribute = attributeMapping.getAttribute();
-		if (attributes.get(attribute.getCode()) != null) {
-			isValidOperator(attributeMapping.getAttribute(), attributeMapping.getOperator());
-			Object value = attributes.get(attributeMapping.getAttribute().getCode());
-			switch (attribute.getAttributeType()) {
-				case TEXT:
-				case NUMERIC:
-					return valueCompare(attributeMapping.getOperator(), attributeMapping.getAttributeValue(), value);
-				case LIST_TEXT:
-				case LIST_NUMERIC:
-				case LIST_MULTIPLE_TEXT:
-				case LIST_MULTIPLE_NUMERIC:
-					List<String> source = Arrays.asList(attributeMapping.getAttributeValue().split(multiValuesAttributeSeparator));
-					List<Object> input;
-					if (value instanceof Collection) {
-						input = (List) value;
-					} else {
-						input = Arrays.asList(value.toString().split(multiValuesAttributeSeparator));
-					}
-
-					return valueCompareCollection(attributeMapping.getOperator(), source, input);
-				case EXPRESSION_LANGUAGE:
-					Object result = attributeService.evaluateElExpressionAttribute(value.toString(), product, null, null, walletOperation, Object.class);
-					if (value instanceof Collection) {
-						List<String> sourceEL = Arrays.asList(attributeMapping.getAttributeValue().split(multiValuesAttributeSeparator));
-						List<Object> inputEL = (List) value;
-						return valueCompareCollection(attributeMapping.getOperator(), sourceEL, inputEL);
-					}
-					return valueCompare(attributeMapping.getOperator(), attributeMapping.getAttributeValue(), result);
-				case TOTAL:
-				case COUNT:
-				default:
-					return valueCompare(attributeMapping.getOperator(), attributeMapping.getAttributeValue(), value);
-			}
-		}
-		return false;
+		return new CompiledAttributeMapping(attributeMapping, multiValuesAttributeSeparator).matches(attributes, multiValuesAttributeSeparator,
+			getExpressionEvaluator(product, walletOperation));
 	}
 
-	private boolean valueCompareCollection(RuleOperatorEnum operator, List<String> source, List<Object> input) {
-		if (CollectionUtils.isEmpty(source) && CollectionUtils.isEmpty(input)) {
-			return true;
-		}
-
-		if ((CollectionUtils.isEmpty(source) && CollectionUtils.isNotEmpty(input)) ||
-				(CollectionUtils.isNotEmpty(source) && CollectionUtils.isEmpty(input))) {
-			return false;
-		}
-
-		List<Object> contains = new ArrayList<>();
-		for (Object o : source) {
-			if (input.contains(o)) {
-				contains.add(o);
-			}
-		}
-
-		switch (operator) {
-			case EQUAL:
-				return contains.size() == input.size();
-			case NOT_EQUAL:
-				return contains.size() == 0;
-			case EXISTS:
-				return contains.size() > 1;
-			default:
-				return false;
-		}
-	}
-
-	private boolean valueCompare(RuleOperatorEnum operator, String sourceAttributeValue, Object convertedValue) {
-		if (convertedValue == null && StringUtils.isBlank(sourceAttributeValue)) {
-			return true;
-		}
-		if (sourceAttributeValue != null && operator != null) {
-			String convertedValueStr = convertedValue != null ? String.valueOf(convertedValue) : null;
-			switch (operator) {
-				case EQUAL:
-					if (StringUtils.isNotBlank(convertedValueStr) && NumberUtils.isCreatable(convertedValueStr.trim()) && NumberUtils.isCreatable(sourceAttributeValue.trim())) {
-						if (Double.valueOf(convertedValueStr).compareTo(Double.valueOf(sourceAttributeValue)) == 0) {
-							return true;
-						}
-					}
-					if (sourceAttributeValue.equals(convertedValueStr))
-						return true;
-					break;
-				case NOT_EQUAL:
-					if (StringUtils.isNotBlank(convertedValueStr) && NumberUtils.isCreatable(convertedValueStr.trim()) && NumberUtils.isCreatable(sourceAttributeValue.trim())) {
-						if (Double.valueOf(convertedValueStr).compareTo(Double.valueOf(sourceAttributeValue)) != 0) {
-							return true;
-						}
-					}
-					if (!sourceAttributeValue.equals(convertedValueStr))
-						return true;
-					break;
-				case LESS_THAN:
-					if (StringUtils.isNotBlank(convertedValueStr) && NumberUtils.isCreatable(convertedValueStr.trim()) && NumberUtils.isCreatable(sourceAttributeValue.trim())) {
-						if (Double.valueOf(convertedValueStr) < Double.valueOf(sourceAttributeValue))
-							return true;
-					}
-					break;
-				case LESS_THAN_OR_EQUAL:
-					if (StringUtils.isNotBlank(convertedValueStr) && NumberUtils.isCreatable(convertedValueStr.trim()) && NumberUtils.isCreatable(sourceAttributeValue.trim())) {
-						if (Double.valueOf(convertedValueStr) <= Double.valueOf(sourceAttributeValue))
-							return true;
-					}
-					break;
-				case GREATER_THAN:
-					if (StringUtils.isNotBlank(convertedValueStr) && NumberUtils.isCreatable(convertedValueStr.trim()) && NumberUtils.isCreatable(sourceAttributeValue.trim())) {
-						if (Double.valueOf(convertedValueStr) > Double.valueOf(sourceAttributeValue))
-							return true;
-					}
-					break;
-
-				case GREATER_THAN_OR_EQUAL:
-					if (StringUtils.isNotBlank(convertedValueStr) && NumberUtils.isCreatable(convertedValueStr.trim()) && NumberUtils.isCreatable(sourceAttributeValue.trim())) {
-						if (Double.valueOf(convertedValueStr) >= Double.valueOf(sourceAttributeValue))
-							return true;
-					}
-			}
-		}
-		return false;
-	}
-
-	private void isValidOperator(Attribute attribute, RuleOperatorEnum givenOperator) {
-		switch (attribute.getAttributeType()) {
-			case BOOLEAN:
-			case PHONE:
-			case EMAIL:
-			case TEXT:
-				if (isNotOneOfOperator(givenOperator, RuleOperatorEnum.EQUAL, RuleOperatorEnum.NOT_EQUAL)) {
-					throw new BusinessException(attribute.getAttributeType() + " Atttribut type cannot have operation : " + givenOperator);
-				}
-				break;
-			case TOTAL:
-			case COUNT:
-			case NUMERIC:
-			case INTEGER:
-			case DATE:
-			case CALENDAR:
-				if (isNotOneOfOperator(givenOperator, RuleOperatorEnum.EQUAL, RuleOperatorEnum.NOT_EQUAL,
-						RuleOperatorEnum.GREATER_THAN, RuleOperatorEnum.GREATER_THAN_OR_EQUAL,
-						RuleOperatorEnum.LESS_THAN, RuleOperatorEnum.LESS_THAN_OR_EQUAL)) {
-					throw new BusinessException(attribute.getAttributeType() + " Atttribut type cannot have operation : " + givenOperator);
-				}
-				break;
-			case LIST_TEXT:
-			case LIST_NUMERIC:
-			case LIST_MULTIPLE_TEXT:
-			case LIST_MULTIPLE_NUMERIC:
-				if (isNotOneOfOperator(givenOperator, RuleOperatorEnum.EQUAL, RuleOperatorEnum.NOT_EQUAL, RuleOperatorEnum.EXISTS)) {
-					throw new BusinessException(attribute.getAttributeType() + " Atttribut type cannot have operation : " + givenOperator);
-				}
-				break;
-			case EXPRESSION_LANGUAGE:
-			case INFO:
-			default:
-		}
-	}
-
-	private boolean isNotOneOfOperator(RuleOperatorEnum operator, RuleOperatorEnum... operators) {
-		for (RuleOperatorEnum op : operators) {
-			if (op == operator) {
-				return false;
-			}
-		}
-		return true;
-	}
-	
-
     public AccountingArticle getDefaultAccountingArticle() {
         String articleCode = ParamBean.getInstance().getProperty("accountingArticle.advancePayment.defautl.code", "ADV-STD");
 
@@ -0,0 +1,228 @@
+package org.meveo.service.billing.impl.article;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.meveo.admin.exception.BusinessException;
+import org.meveo.admin.exception.RatingException;
+import org.meveo.commons.utils.StringUtils;
+import org.meveo.model.article.ArticleMappingLine;
+import org.meveo.model.article.AttributeMapping;
+import org.meveo.model.cpq.enums.OperatorEnum;
+
+/**
+ * Article mapping lines compiled to an in-memory structure, indexed by product, charge template and offer, with attribute predicates prepared for evaluation.<br/>
+ * <br/>
+ * Resolves an accounting article the same way as AccountingArticleService.getAccountingArticleByIds() does with queries: mapping lines are looked up in a decreasing order of
+ * precision - product, charge and offer, product and charge, charge, product and offer, product, offer, and finally by wallet operation parameter 1, 2 or 3 - and a first non
+ * empty set of lines is matched against attribute values.
+ */
+public class ArticleMappingDecisionTable {
+
+    /**
+     * Mapping lines by &lt;product id&gt;/&lt;charge template id&gt;/&lt;offer id&gt;. Missing values are represented as "null".
+     */
+    private final Map<String, List<CompiledArticleMappingLine>> linesByKey = new HashMap<>();
+
+    private final String multiValuesAttributeSeparator;
+
+    private final int nbLines;
+
+    /**
+     * Constructor
+     *
+     * @param articleMappingLines Article mapping lines with attribute mappings and their attributes fetched
+     * @param multiValuesAttributeSeparator A separator of multiple attribute values
+     */
+    public ArticleMappingDecisionTable(List<ArticleMappingLine> articleMappingLines, String multiValuesAttributeSeparator) {
+        this.multiValuesAttributeSeparator = multiValuesAttributeSeparator;
+        for (ArticleMappingLine articleMappingLine : articleMappingLines) {
+            CompiledArticleMappingLine line = new CompiledArticleMappingLine(articleMappingLine, multiValuesAttributeSeparator);
+            linesByKey.computeIfAbsent(getKey(line.productId, line.chargeTemplateId, line.offerTemplateId), k -> new ArrayList<>()).add(line);
+        }
+        this.nbLines = articleMappingLines.size();
+    }
+
+    /**
+     * @return A number of mapping lines compiled
+     */
+    public int getNbLines() {
+        return nbLines;
+    }
+
+    /**
+     * Resolve an accounting article
+     *
+     * @param productId Product identifier
+     * @param chargeTemplateId Charge template identifier
+     * @param offerId Offer template identifier
+     * @param parameters Wallet operation parameters 1, 2 and 3. Null if not resolved for a wallet operation.
+     * @param attributes Attribute values by attribute code
+     * @param mappingKeyFilter Evaluates mapping line's mapping key EL expression
+     * @param expressionEvaluator Evaluates an attribute value of expression language type
+     * @return Accounting article identifier or NULL if no mapping line matched
+     * @throws RatingException More than one mapping line matched all attributes
+     * @throws BusinessException More than one mapping line matched the same number of attributes
+     */
+    public Long resolve(Long productId, Long chargeTemplateId, Long offerId, String[] parameters, Map<String, Object> attributes, Predicate<String> mappingKeyFilter,
+            Function<String, Object> expressionEvaluator) {
+
+        List<CompiledArticleMappingLine> lines = findLines(productId, chargeTemplateId, offerId, parameters);
+
+        List<CompiledArticleMappingLine> fullMatches = new ArrayList<>();
+        Map<Integer, CompiledArticleMappingLine> partialMatches = new HashMap<>();
+        boolean hasAmbiguousPartialMatch = false;
+
+        for (CompiledArticleMappingLine line : lines) {
+            if (!line.matchesParameters(parameters) || !mappingKeyFilter.test(line.mappingKeyEL)) {
+                continue;
+            }
+
+            if (line.attributeMappings.isEmpty()) {
+                fullMatches.add(line);
+                continue;
+            }
+
+            int nbMatched = 0;
+            Set<String> matchedAttributes = new HashSet<>();
+            for (CompiledAttributeMapping attributeMapping : line.attributeMappings) {
+                if (attributeMapping.matches(attributes, multiValuesAttributeSeparator, expressionEvaluator)) {
+                    nbMatched++;
+                    matchedAttributes.add(attributeMapping.getAttributeCode());
+                    if (line.attributeOperator == OperatorEnum.OR) {
+                        break;
+                    }
+
+                } else if (line.attributeOperator == OperatorEnum.AND) {
+                    // For AND operator a single unmatched attribute discards all previously matched attributes
+                    nbMatched = 0;
+                    matchedAttributes.clear();
+                    break;
+                }
+            }
+
+            if (matchedAttributes.size() == attributes.size()) {
+                fullMatches.add(line);
+
+            } else if (nbMatched > 0 && partialMatches.put(nbMatched, line) != null) {
+                hasAmbiguousPartialMatch = true;
+            }
+        }
+
+        if (fullMatches.size() == 1) {
+            return fullMatches.get(0).accountingArticleId;
+
+        } else if (fullMatches.size() > 1) {
+            throw new RatingException("More than one accounting article found for product " + productId + " and charge template " + chargeTemplateId);
+
+        } else if (hasAmbiguousPartialMatch) {
+            throw new BusinessException("More than one article found");
+
+        } else if (!partialMatches.isEmpty()) {
+            return partialMatches.get(Collections.max(partialMatches.keySet())).accountingArticleId;
+        }
+        return null;
+    }
+
+    private List<CompiledArticleMappingLine> findLines(Long productId, Long chargeTemplateId, Long offerId, String[] parameters) {
+
+        List<CompiledArticleMappingLine> lines = getLines(productId, chargeTemplateId, offerId);
+
+        if (lines.isEmpty() && chargeTemplateId != null && productId != null) {
+            lines = getLines(productId, chargeTemplateId, null);
+        }
+        if (lines.isEmpty() && chargeTemplateId != null) {
+            lines = getLines(null, chargeTemplateId, null);
+        }
+        if (lines.isEmpty() && offerId != null && productId != null) {
+            lines = getLines(productId, null, offerId);
+        }
+        if (lines.isEmpty() && productId != null) {
+            lines = getLines(productId, null, null);
+        }
+        if (lines.isEmpty() && offerId != null) {
+            lines = getLines(null, null, offerId);
+        }
+        if (parameters != null) {
+            for (int i = 0; i < parameters.length && lines.isEmpty(); i++) {
+                if (parameters[i] != null) {
+                    lines = new ArrayList<>();
+                    for (CompiledArticleMappingLine line : getLines(null, null, null)) {
+                        if (parameters[i].equals(line.parameters[i])) {
+                            lines.add(line);
+                        }
+                    }
+                }
+            }
+        }
+        return lines;
+    }
+
+    private List<CompiledArticleMappingLine> getLines(Long productId, Long chargeTemplateId, Long offerId) {
+        return linesByKey.getOrDefault(getKey(productId, chargeTemplateId, offerId), Collections.emptyList());
+    }
+
+    private static String getKey(Long productId, Long chargeTemplateId, Long offerId) {
+        return productId + "/" + chargeTemplateId + "/" + offerId;
+    }
+
+    /**
+     * Article mapping line information needed to resolve an accounting article
+     */
+    private static class CompiledArticleMappingLine {
+
+        private final Long accountingArticleId;
+
+        private final Long productId;
+
+        private final Long chargeTemplateId;
+
+        private final Long offerTemplateId;
+
+        private final String[] parameters;
+
+        private final String mappingKeyEL;
+
+        private final OperatorEnum attributeOperator;
+
+        private final List<CompiledAttributeMapping> attributeMappings;
+
+        private CompiledArticleMappingLine(ArticleMappingLine articleMappingLine, String multiValuesAttributeSeparator) {
+            this.accountingArticleId = articleMappingLine.getAccountingArticle() != null ? articleMappingLine.getAccountingArticle().getId() : null;
+            this.productId = articleMappingLine.getProduct() != null ? articleMappingLine.getProduct().getId() : null;
+            this.chargeTemplateId = articleMappingLine.getChargeTemplate() != null ? articleMappingLine.getChargeTemplate().getId() : null;
+            this.offerTemplateId = articleMappingLine.getOfferTemplate() != null ? articleMappingLine.getOfferTemplate().getId() : null;
+            this.parameters = new String[] { articleMappingLine.getParameter1(), articleMappingLine.getParameter2(), articleMappingLine.getParameter3() };
+            this.mappingKeyEL = articleMappingLine.getMappingKeyEL();
+            this.attributeOperator = articleMappingLine.getAttributeOperator();
+            this.attributeMappings = new ArrayList<>(articleMappingLine.getAttributesMapping().size());
+            for (AttributeMapping attributeMapping : articleMappingLine.getAttributesMapping()) {
+                attributeMappings.add(new CompiledAttributeMapping(attributeMapping, multiValuesAttributeSeparator));
+            }
+        }
+
+        /**
+         * @param values Wallet operation parameters. Null if not resolved for a wallet operation.
+         * @return True if each of line's parameters is blank or equals to a corresponding wallet operation parameter
+         */
+        private boolean matchesParameters(String[] values) {
+            if (values == null) {
+                return true;
+            }
+            for (int i = 0; i < parameters.length; i++) {
+                if (!StringUtils.isBlank(parameters[i]) && !Objects.equals(parameters[i], values[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -11,7 +11,10 @@ import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.meveo.admin.exception.BusinessException;
+import org.meveo.cache.ArticleMappingCache;
 import org.meveo.commons.utils.QueryBuilder;
+import org.meveo.event.monitoring.ClusterEventDto.ClusterEventActionEnum;
+import org.meveo.event.monitoring.ClusterEventPublisher;
 import org.meveo.model.article.AccountingArticle;
 import org.meveo.model.article.ArticleMapping;
 import org.meveo.model.article.ArticleMappingLine;
@@ -21,6 +24,7 @@ import org.meveo.model.catalog.OfferTemplate;
 import org.meveo.model.cpq.Attribute;
 import org.meveo.model.cpq.Product;
 import org.meveo.model.cpq.enums.RuleOperatorEnum;
+import org.meveo.service.base.AfterCommitService;
 import org.meveo.service.base.BusinessService;
 
 import jakarta.ejb.Stateless;
@@ -35,6 +39,15 @@ public class ArticleMappingLineService extends BusinessService<ArticleMappingLin
 	@Inject
 	private ArticleMappingService articleMappingService;
 
+	@Inject
+	private ArticleMappingCache articleMappingCache;
+
+	@Inject
+	private ClusterEventPublisher clusterEventPublisher;
+
+	@Inject
+	private AfterCommitService afterCommitService;
+
 	private static final String DEFAULT_ARTICLE_MAPPING_CODE = "DEFAULT_ARTICLE_MAPPING";
 
 	@SuppressWarnings("unchecked")
@@ -196,6 +209,44 @@ public class ArticleMappingLineService extends BusinessService<ArticleMappingLin
 	 	return articleMapping;
 	}
 
+    @Override
+    public void create(ArticleMappingLine entity) throws BusinessException {
+        super.create(entity);
+        clearArticleMappingCache(entity, ClusterEventActionEnum.create);
+    }
+
+    @Override
+    public ArticleMappingLine update(ArticleMappingLine entity) throws BusinessException {
+        entity = super.update(entity);
+        clearArticleMappingCache(entity, ClusterEventActionEnum.update);
+        return entity;
+    }
+
+    @Override
+    public void remove(ArticleMappingLine entity) throws BusinessException {
+        super.remove(entity);
+        clearArticleMappingCache(entity, ClusterEventActionEnum.remove);
+    }
+
+    @Override
+    public void remove(Set<Long> ids) throws BusinessException {
+        super.remove(ids);
+        clearArticleMappingCache(new ArticleMappingLine(), ClusterEventActionEnum.remove);
+    }
+
+    /**
+     * Article mapping decision table is no longer valid - clear it from cache locally and on other cluster nodes, once a transaction commits
+     *
+     * @param articleMappingLine Article mapping line modified
+     * @param action Action performed
+     */
+    private void clearArticleMappingCache(ArticleMappingLine articleMappingLine, ClusterEventActionEnum action) {
+        afterCommitService.runAfterCommit("articleMappingCache", () -> {
+            articleMappingCache.clear();
+            clusterEventPublisher.publishEvent(articleMappingLine, action);
+        });
+    }
+
     public List<ArticleMappingLine> findAll() {
         return getEntityManager().createNamedQuery("ArticleMappingLine.findAll").getResultList();
     }
@@ -0,0 +1,232 @@
+package org.meveo.service.billing.impl.article;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.commons.collections.CollectionUtils;
+import org.apache.commons.lang3.math.NumberUtils;
+import org.meveo.admin.exception.BusinessException;
+import org.meveo.commons.utils.StringUtils;
+import org.meveo.model.article.AttributeMapping;
+import org.meveo.model.cpq.enums.AttributeTypeEnum;
+import org.meveo.model.cpq.enums.RuleOperatorEnum;
+
+/**
+ * An attribute predicate of an article mapping line, prepared once so it can be evaluated against attribute values of many charges without accessing the AttributeMapping entity.
+ * Values to compare with are split and parsed in advance.
+ */
+public class CompiledAttributeMapping {
+
+    private final String attributeCode;
+
+    private final AttributeTypeEnum attributeType;
+
+    private final RuleOperatorEnum operator;
+
+    private final String attributeValue;
+
+    /**
+     * Attribute value split by a multi values separator. Applicable to list and expression language attribute types.
+     */
+    private final List<String> attributeValues;
+
+    /**
+     * Attribute value as a number. Null if attribute value is not numeric.
+     */
+    private final Double numericAttributeValue;
+
+    /**
+     * An error to report when a predicate is evaluated, if operator is not applicable to an attribute type
+     */
+    private final String operatorError;
+
+    /**
+     * Constructor
+     *
+     * @param attributeMapping Attribute mapping
+     * @param multiValuesAttributeSeparator A separator of multiple values
+     */
+    public CompiledAttributeMapping(AttributeMapping attributeMapping, String multiValuesAttributeSeparator) {
+        this.attributeCode = attributeMapping.getAttribute().getCode();
+        this.attributeType = attributeMapping.getAttribute().getAttributeType();
+        this.operator = attributeMapping.getOperator();
+        this.attributeValue = attributeMapping.getAttributeValue();
+        this.attributeValues = attributeValue != null ? List.of(attributeValue.split(multiValuesAttributeSeparator)) : null;
+        this.numericAttributeValue = toDouble(attributeValue);
+        this.operatorError = attributeType == null || isValidOperator(attributeType, operator) ? null : attributeType + " Atttribut type cannot have operation : " + operator;
+    }
+
+    /**
+     * @return Attribute code
+     */
+    public String getAttributeCode() {
+        return attributeCode;
+    }
+
+    /**
+     * Check if attribute value matches
+     *
+     * @param attributes Attribute values by attribute code
+     * @param multiValuesAttributeSeparator A separator of multiple values in a value to check
+     * @param expressionEvaluator Evaluates an attribute value of expression language type
+     * @return True if attribute has a value and it matches
+     * @throws BusinessException Operator is not applicable to an attribute type
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public boolean matches(Map<String, Object> attributes, String multiValuesAttributeSeparator, Function<String, Object> expressionEvaluator) {
+
+        Object value = attributes.get(attributeCode);
+        if (value == null) {
+            return false;
+        }
+        if (operatorError != null) {
+            throw new BusinessException(operatorError);
+        }
+
+        if (attributeType == null) {
+            return valueCompare(value);
+        }
+
+        switch (attributeType) {
+        case TEXT:
+        case NUMERIC:
+            return valueCompare(value);
+        case LIST_TEXT:
+        case LIST_NUMERIC:
+        case LIST_MULTIPLE_TEXT:
+        case LIST_MULTIPLE_NUMERIC:
+            List<Object> input;
+            if (value instanceof Collection) {
+                input = (List) value;
+            } else {
+                input = Arrays.asList(value.toString().split(multiValuesAttributeSeparator));
+            }
+            return valueCompareCollection(input);
+        case EXPRESSION_LANGUAGE:
+            Object result = expressionEvaluator.apply(value.toString());
+            if (value instanceof Collection) {
+                return valueCompareCollection((List) value);
+            }
+            return valueCompare(result);
+        case TOTAL:
+        case COUNT:
+        default:
+            return valueCompare(value);
+        }
+    }
+
+    private boolean valueCompareCollection(List<Object> input) {
+        if (CollectionUtils.isEmpty(attributeValues) && CollectionUtils.isEmpty(input)) {
+            return true;
+        }
+
+        if ((CollectionUtils.isEmpty(attributeValues) && CollectionUtils.isNotEmpty(input)) || (CollectionUtils.isNotEmpty(attributeValues) && CollectionUtils.isEmpty(input))) {
+            return false;
+        }
+
+        List<Object> contains = new ArrayList<>();
+        for (Object o : attributeValues) {
+            if (input.contains(o)) {
+                contains.add(o);
+            }
+        }
+
+        switch (operator) {
+        case EQUAL:
+            return contains.size() == input.size();
+        case NOT_EQUAL:
+            return contains.size() == 0;
+        case EXISTS:
+            return contains.size() > 1;
+        default:
+            return false;
+        }
+    }
+
+    private boolean valueCompare(Object convertedValue) {
+        if (convertedValue == null && StringUtils.isBlank(attributeValue)) {
+            return true;
+        }
+        if (attributeValue == null || operator == null) {
+            return false;
+        }
+
+        String convertedValueStr = convertedValue != null ? String.valueOf(convertedValue) : null;
+        Double numericValue = numericAttributeValue != null ? toDouble(convertedValueStr) : null;
+
+        switch (operator) {
+        case EQUAL:
+            return (numericValue != null && numericValue.compareTo(numericAttributeValue) == 0) || attributeValue.equals(convertedValueStr);
+        case NOT_EQUAL:
+            return (numericValue != null && numericValue.compareTo(numericAttributeValue) != 0) || !attributeValue.equals(convertedValueStr);
+        case LESS_THAN:
+            return numericValue != null && numericValue < numericAttributeValue;
+        case LESS_THAN_OR_EQUAL:
+            return numericValue != null && numericValue <= numericAttributeValue;
+        case GREATER_THAN:
+            return numericValue != null && numericValue > numericAttributeValue;
+        case GREATER_THAN_OR_EQUAL:
+            return numericValue != null && numericValue >= numericAttributeValue;
+        default:
+            return false;
+        }
+    }
+
+    private static Double toDouble(String value) {
+        if (StringUtils.isBlank(value) || !NumberUtils.isCreatable(value.trim())) {
+            return null;
+        }
+        try {
+            return Double.valueOf(value);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Check if operator is applicable to an attribute type
+     *
+     * @param attributeType Attribute type
+     * @param operator Operator
+     * @return True if operator is applicable
+     */
+    private static boolean isValidOperator(AttributeTypeEnum attributeType, RuleOperatorEnum operator) {
+        switch (attributeType) {
+        case BOOLEAN:
+        case PHONE:
+        case EMAIL:
+        case TEXT:
+            return isOneOfOperator(operator, RuleOperatorEnum.EQUAL, RuleOperatorEnum.NOT_EQUAL);
+        case TOTAL:
+        case COUNT:
+        case NUMERIC:
+        case INTEGER:
+        case DATE:
+        case CALENDAR:
+            return isOneOfOperator(operator, RuleOperatorEnum.EQUAL, RuleOperatorEnum.NOT_EQUAL, RuleOperatorEnum.GREATER_THAN, RuleOperatorEnum.GREATER_THAN_OR_EQUAL,
+                RuleOperatorEnum.LESS_THAN, RuleOperatorEnum.LESS_THAN_OR_EQUAL);
+        case LIST_TEXT:
+        case LIST_NUMERIC:
+        case LIST_MULTIPLE_TEXT:
+        case LIST_MULTIPLE_NUMERIC:
+            return isOneOfOperator(operator, RuleOperatorEnum.EQUAL, RuleOperatorEnum.NOT_EQUAL, RuleOperatorEnum.EXISTS);
+        case EXPRESSION_LANGUAGE:
+        case INFO:
+        default:
+            return true;
+        }
+    }
+
+    private static boolean isOneOfOperator(RuleOperatorEnum operator, RuleOperatorEnum... operators) {
+        for (RuleOperatorEnum op : operators) {
+            if (op == operator) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -38,8 +38,11 @@ import org.meveo.api.dto.catalog.PricePlanMatrixDto;
 import org.meveo.api.dto.catalog.PricePlanMatrixLineDto;
 import org.meveo.api.dto.catalog.PricePlanMatrixVersionDto;
 import org.meveo.api.exception.EntityDoesNotExistsException;
+import org.meveo.cache.PricePlanCandidatesCache;
 import org.meveo.commons.utils.ListUtils;
 import org.meveo.commons.utils.QueryBuilder;
+import org.meveo.event.monitoring.ClusterEventDto.ClusterEventActionEnum;
+import org.meveo.event.monitoring.ClusterEventPublisher;
 import org.meveo.jpa.JpaAmpNewTx;
 import org.meveo.model.admin.Seller;
 import org.meveo.model.billing.TradingCountry;
@@ -53,6 +56,7 @@ import org.meveo.model.catalog.PricePlanMatrixVersion;
 import org.meveo.model.cpq.enums.PriceVersionTypeEnum;
 import org.meveo.model.crm.custom.CustomFieldInheritanceEnum;
 import org.meveo.service.api.EntityToDtoConverter;
+import org.meveo.service.base.AfterCommitService;
 import org.meveo.service.base.BusinessService;
 
 import jakarta.ejb.Stateless;
@@ -77,6 +81,15 @@ public class PricePlanMatrixService extends BusinessService<PricePlanMatrix> {
 
     @Inject
     private ChargeTemplateServiceAll chargeTemplateService;
+
+    @Inject
+    private PricePlanCandidatesCache pricePlanCandidatesCache;
+
+    @Inject
+    private ClusterEventPublisher clusterEventPublisher;
+
+    @Inject
+    private AfterCommitService afterCommitService;
     // private ParamBean param = ParamBean.getInstance();
 
     // private SimpleDateFormat sdf = new SimpleDateFormat(param.getProperty("excelImport.dateFormat", "dd/MM/yyyy"));
@@ -129,7 +142,48 @@ public class PricePlanMatrixService extends BusinessService<PricePlanMatrix> {
         pp.setAmountWithoutTaxEL(StringUtils.stripToNull(pp.getAmountWithoutTaxEL()));
         pp.setAmountWithTaxEL(StringUtils.stripToNull(pp.getAmountWithTaxEL()));
         validatePricePlan(pp);
-        return super.update(pp);
+        pp = super.update(pp);
+        clearPricePlanCandidatesCache(pp, ClusterEventActionEnum.update);
+        return pp;
+    }
+
+    @Override
+    public void create(PricePlanMatrix pp) throws BusinessException {
+        super.create(pp);
+        clearPricePlanCandidatesCache(pp, ClusterEventActionEnum.create);
+    }
+
+    @Override
+    public void remove(PricePlanMatrix pp) throws BusinessException {
+        super.remove(pp);
+        clearPricePlanCandidatesCache(pp, ClusterEventActionEnum.remove);
+    }
+
+    @Override
+    public PricePlanMatrix enable(PricePlanMatrix pp) throws BusinessException {
+        pp = super.enable(pp);
+        clearPricePlanCandidatesCache(pp, ClusterEventActionEnum.enable);
+        return pp;
+    }
+
+    @Override
+    public PricePlanMatrix disable(PricePlanMatrix pp) throws BusinessException {
+        pp = super.disable(pp);
+        clearPricePlanCandidatesCache(pp, ClusterEventActionEnum.disable);
+        return pp;
+    }
+
+    /**
+     * Price plans applicable to a charge are no longer valid - clear them from cache locally and on other cluster nodes once a transaction commits
+     *
+     * @param pp Price plan modified
+     * @param action Action performed
+     */
+    private void clearPricePlanCandidatesCache(PricePlanMatrix pp, ClusterEventActionEnum action) {
+        afterCommitService.runAfterCommit("pricePlanCandidates", () -> {
+            pricePlanCandidatesCache.clearPricePlanCandidates();
+            clusterEventPublisher.publishEvent(pp, action);
+        });
     }
 
     private String getCellAsString(Cell cell) {
@@ -52,10 +52,13 @@ import org.meveo.api.dto.response.catalog.PricePlanMatrixLinesDto;
 import org.meveo.api.exception.BusinessApiException;
 import org.meveo.api.exception.MeveoApiException;
 import org.meveo.apiv2.catalog.ImportPricePlanVersionsItem;
+import org.meveo.cache.PricePlanMatrixLineMatcherCache;
 
 import org.meveo.commons.utils.ListUtils;
 import org.meveo.commons.utils.FileUtils;
 import org.meveo.commons.utils.StringUtils;
+import org.meveo.event.monitoring.ClusterEventDto.ClusterEventActionEnum;
+import org.meveo.event.monitoring.ClusterEventPublisher;
 import org.meveo.jpa.JpaAmpNewTx;
 import org.meveo.model.DatePeriod;
 import org.meveo.model.audit.logging.AuditLog;
@@ -139,6 +142,12 @@ public class PricePlanMatrixVersionService extends PersistenceService<PricePlanM
     
     @Inject
     private AdvancedSettingsService advancedSettingsService;
+
+    @Inject
+    private PricePlanMatrixLineMatcherCache pricePlanMatrixLineMatcherCache;
+
+    @Inject
+    private ClusterEventPublisher clusterEventPublisher;
     
     protected Logger log = LoggerFactory.getLogger(getClass());
 
@@ -167,6 +176,8 @@ public class PricePlanMatrixVersionService extends PersistenceService<PricePlanM
             pricePlanMatrixLineService.remove(pricePlanMatrixLine);
         }
         super.remove(pricePlanMatrixVersion);
+        pricePlanMatrixLineMatcherCache.evict(pricePlanMatrixVersion.getId());
+        clusterEventPublisher.publishEvent(pricePlanMatrixVersion, ClusterEventActionEnum.remove);
     }
 
     @JpaAmpNewTx
@@ -635,6 +646,8 @@ public class PricePlanMatrixVersionService extends PersistenceService<PricePlanM
     private PricePlanMatrixVersion update(PricePlanMatrixVersion pricePlanMatrixVersion, String auditAction) {
         final PricePlanMatrixVersion ppmv = super.update(pricePlanMatrixVersion);
         logAction(ppmv, auditAction);
+        pricePlanMatrixLineMatcherCache.evict(ppmv.getId());
+        clusterEventPublisher.publishEvent(ppmv, ClusterEventActionEnum.update);
         return ppmv;
     }
 
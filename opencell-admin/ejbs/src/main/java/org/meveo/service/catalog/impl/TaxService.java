@@ -22,11 +22,16 @@ import java.util.List;
 
 import org.meveo.admin.exception.BusinessException;
 import org.meveo.admin.exception.ElementNotFoundException;
+import org.meveo.cache.TaxMappingCache;
+import org.meveo.event.monitoring.ClusterEventDto.ClusterEventActionEnum;
+import org.meveo.event.monitoring.ClusterEventPublisher;
 import org.meveo.model.billing.AccountingCode;
 import org.meveo.model.billing.Tax;
+import org.meveo.service.base.AfterCommitService;
 import org.meveo.service.base.BusinessService;
 
 import jakarta.ejb.Stateless;
+import jakarta.inject.Inject;
 import jakarta.persistence.NoResultException;
 
 /**
@@ -35,6 +40,41 @@ import jakarta.persistence.NoResultException;
 @Stateless
 public class TaxService extends BusinessService<Tax> {
 
+    @Inject
+    private TaxMappingCache taxMappingCache;
+
+    @Inject
+    private ClusterEventPublisher clusterEventPublisher;
+
+    @Inject
+    private AfterCommitService afterCommitService;
+
+    @Override
+    public Tax update(Tax tax) throws BusinessException {
+        tax = super.update(tax);
+        clearTaxMappingCache(tax, ClusterEventActionEnum.update);
+        return tax;
+    }
+
+    @Override
+    public void remove(Tax tax) throws BusinessException {
+        super.remove(tax);
+        clearTaxMappingCache(tax, ClusterEventActionEnum.remove);
+    }
+
+    /**
+     * Tax mappings resolved to a tax are no longer valid - clear them from cache locally and on other cluster nodes, once a transaction commits
+     *
+     * @param tax Tax modified
+     * @param action Action performed
+     */
+    private void clearTaxMappingCache(Tax tax, ClusterEventActionEnum action) {
+        afterCommitService.runAfterCommit("taxMappingCache_Tax", () -> {
+            taxMappingCache.clear();
+            clusterEventPublisher.publishEvent(tax, action);
+        });
+    }
+
     /**
      * Get a number of Taxes not associated to any invoice subcategory
      * 
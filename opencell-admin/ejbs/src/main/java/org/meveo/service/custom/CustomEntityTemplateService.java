@@ -29,6 +29,7 @@ import org.meveo.admin.exception.BusinessException;
 import org.meveo.admin.util.pagination.PaginationConfiguration;
 import org.meveo.api.exception.ActionForbiddenException;
 import org.meveo.cache.CustomFieldsCacheContainerProvider;
+import org.meveo.cache.CustomTableSnapshotCache;
 import org.meveo.commons.utils.ParamBean;
 import org.meveo.commons.utils.ParamBeanFactory;
 import org.meveo.commons.utils.QueryBuilder;
@@ -44,6 +45,7 @@ import org.meveo.model.customEntities.CustomEntityInstance;
 import org.meveo.model.customEntities.CustomEntityTemplate;
 import org.meveo.model.security.Role;
 import org.meveo.service.admin.impl.RoleService;
+import org.meveo.service.base.AfterCommitService;
 import org.meveo.service.base.BusinessService;
 import org.meveo.service.crm.impl.CustomFieldTemplateService;
 
@@ -78,6 +80,12 @@ public class CustomEntityTemplateService extends BusinessService<CustomEntityTem
     @Inject
     CustomTableService customTableService;
 
+    @Inject
+    private CustomTableSnapshotCache customTableSnapshotCache;
+
+    @Inject
+    private AfterCommitService afterCommitService;
+
     private static boolean useCETCache = true;
 
     /**
@@ -194,7 +202,7 @@ public class CustomEntityTemplateService extends BusinessService<CustomEntityTem
     	roleService.findOrCreateRole(cet.getModifyPermission(), new Role(paramBean.getProperty("role.modifyAllCE", "ModifyAllCE"), null, true, null));
     	roleService.findOrCreateRole(cet.getReadPermission(), new Role(paramBean.getProperty("role.readAllCE", "ReadAllCE"), null, true, null));
     	
-    	clusterEventPublisher.publishEvent(cet, ClusterEventActionEnum.update);
+    	evictSnapshotAfterCommit(cet, ClusterEventActionEnum.update);
     	
     	return cetUpdated;
     }
@@ -215,8 +223,21 @@ public class CustomEntityTemplateService extends BusinessService<CustomEntityTem
 
         customFieldsCache.removeCustomEntityTemplate(cet);
 
-        clusterEventPublisher.publishEvent(cet, ClusterEventActionEnum.remove);
+        evictSnapshotAfterCommit(cet, ClusterEventActionEnum.remove);
+    }
 
+    /**
+     * Evict a snapshot of a custom table of a modified custom entity template locally and notify other cluster nodes, once a transaction commits, so a snapshot is not reloaded
+     * with uncommitted data
+     *
+     * @param cet Custom entity template modified
+     * @param action Action performed
+     */
+    private void evictSnapshotAfterCommit(CustomEntityTemplate cet, ClusterEventActionEnum action) {
+        afterCommitService.runAfterCommit("customEntityTemplate_" + cet.getCode() + "_" + action, () -> {
+            customTableSnapshotCache.evict(cet.getCode());
+            clusterEventPublisher.publishEvent(cet, action);
+        });
     }
 
     /**
@@ -469,7 +490,7 @@ public class CustomEntityTemplateService extends BusinessService<CustomEntityTem
         cet = super.disable(cet);
         customFieldsCache.removeCustomEntityTemplate(cet);
 
-        clusterEventPublisher.publishEvent(cet, ClusterEventActionEnum.disable);
+        evictSnapshotAfterCommit(cet, ClusterEventActionEnum.disable);
         return cet;
     }
 
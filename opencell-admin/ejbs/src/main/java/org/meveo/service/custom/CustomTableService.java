@@ -59,11 +59,15 @@ import org.meveo.api.dto.custom.CustomTableRecordDto;
 import org.meveo.api.dto.response.PagingAndFiltering.SortOrder;
 import org.meveo.api.exception.EntityDoesNotExistsException;
 import org.meveo.api.exception.InvalidParameterException;
+import org.meveo.cache.CustomTableSnapshot;
+import org.meveo.cache.CustomTableSnapshotCache;
 import org.meveo.commons.utils.FileUtils;
 import org.meveo.commons.utils.MethodCallingUtils;
 import org.meveo.commons.utils.ParamBean;
 import org.meveo.commons.utils.ParamBeanFactory;
 import org.meveo.commons.utils.QueryBuilder;
+import org.meveo.event.monitoring.ClusterEventDto.ClusterEventActionEnum;
+import org.meveo.event.monitoring.ClusterEventPublisher;
 import org.meveo.model.BusinessEntity;
 import org.meveo.model.crm.CustomFieldTemplate;
 import org.meveo.model.crm.EntityReferenceWrapper;
@@ -72,6 +76,7 @@ import org.meveo.model.customEntities.CustomEntityInstance;
 import org.meveo.model.customEntities.CustomEntityTemplate;
 import org.meveo.model.notification.NotificationEventTypeEnum;
 import org.meveo.model.shared.DateUtils;
+import org.meveo.service.base.AfterCommitService;
 import org.meveo.service.base.NativePersistenceService;
 import org.meveo.service.base.PersistenceService;
 import org.meveo.service.crm.impl.CustomFieldTemplateService;
@@ -121,12 +126,22 @@ public class CustomTableService extends NativePersistenceService {
     @Inject
     private CustomEntityTemplateService customEntityTemplateService;
 
+    @Inject
+    private CustomTableSnapshotCache customTableSnapshotCache;
+
+    @Inject
+    private ClusterEventPublisher clusterEventPublisher;
+
+    @Inject
+    private AfterCommitService afterCommitService;
+
     @Override
     public Long create(String tableName, Map<String, Object> values) throws BusinessException {
 
         Long id = super.create(tableName, values, true, true);
         values.put("id", id);
 
+        dataModified(tableName);
         return id;
     }
 
@@ -144,6 +159,7 @@ public class CustomTableService extends NativePersistenceService {
             Long id = super.create(tableName, value, true, fireNotifications);
             value.put("id", id);
         }
+        dataModified(tableName);
     }
 
     /**
@@ -164,11 +180,13 @@ public class CustomTableService extends NativePersistenceService {
 
         } else {
             super.create(tableName, customEntityTemplateCode, values);
+            dataModified(tableName);
         }
     }
 
     public void update(String tableName, Map<String, Object> values) throws BusinessException {
         super.update(tableName, values, true);
+        dataModified(tableName);
     }
 
     /**
@@ -183,37 +201,44 @@ public class CustomTableService extends NativePersistenceService {
         for (Map<String, Object> value : values) {
             super.update(tableName, value, true);
         }
+        dataModified(tableName);
     }
 
     @Override
     public void updateValue(String tableName, Long id, String fieldName, Object value) throws BusinessException {
         super.updateValue(tableName, id, fieldName, value);
+        dataModified(tableName);
     }
 
     @Override
     public void disable(String tableName, Long id) throws BusinessException {
         super.disable(tableName, id);
+        dataModified(tableName);
     }
 
     @Override
     public void disable(String tableName, Set<Long> ids) throws BusinessException {
         super.disable(tableName, ids);
+        dataModified(tableName);
     }
 
     @Override
     public void enable(String tableName, Long id) throws BusinessException {
         super.enable(tableName, id);
+        dataModified(tableName);
     }
 
     @Override
     public void enable(String tableName, Set<Long> ids) throws BusinessException {
         super.enable(tableName, ids);
+        dataModified(tableName);
         }
 
     @Override
     public int remove(String tableName, Long id) throws BusinessException {
         // validateExistance(tableName, Arrays.asList(id));
         int nrDeleted = super.remove(tableName, id);
+        dataModified(tableName);
         return nrDeleted;
     }
 
@@ -223,6 +248,7 @@ public class CustomTableService extends NativePersistenceService {
             return 0;
         }
         int nrDeleted = super.remove(tableName, ids);
+        dataModified(tableName);
         return nrDeleted;
     }
 
@@ -242,9 +268,80 @@ public class CustomTableService extends NativePersistenceService {
     @Override
     public int remove(String tableName) throws BusinessException {
         int nrDeleted = super.remove(tableName);
+        dataModified(tableName);
         return nrDeleted;
     }
 
+    /**
+     * Evict a snapshot of a modified custom table - locally and, if custom table is served from a snapshot, on other cluster nodes. Done once a transaction commits, so a snapshot
+     * is not reloaded with uncommitted data, and only once per transaction.
+     *
+     * @param tableName Modified custom table name
+     */
+    private void dataModified(String tableName) {
+
+        // Table name is more common here than a custom entity template code, and is resolved from cached templates
+        CustomEntityTemplate cet = customEntityTemplateService.findByDbTablename(tableName);
+        if (cet == null) {
+            cet = customEntityTemplateService.findByCode(tableName);
+        }
+        CustomEntityTemplate snapshotCet = cet != null && cet.isSnapshotLookups() ? cet : null;
+
+        afterCommitService.runAfterCommit("customTableSnapshot_" + tableName, () -> {
+            customTableSnapshotCache.evict(tableName);
+            if (snapshotCet != null) {
+                clusterEventPublisher.publishEvent(snapshotCet, ClusterEventActionEnum.dataModified);
+            }
+        });
+    }
+
+    /**
+     * Get a snapshot of a custom table that has snapshot lookups enabled. A snapshot is loaded on a first request.
+     *
+     * @param cetCodeOrTablename Custom entity template code, or custom table name
+     * @return A snapshot or null if custom table is not served from a snapshot
+     */
+    private CustomTableSnapshot getSnapshot(String cetCodeOrTablename) {
+        CustomTableSnapshot snapshot = customTableSnapshotCache.getSnapshot(cetCodeOrTablename, () -> loadSnapshot(cetCodeOrTablename));
+        return snapshot != CustomTableSnapshot.NONE ? snapshot : null;
+    }
+
+    /**
+     * Load all records of a custom table into a snapshot. Field values are of the same data types as returned by a cacheable query.
+     *
+     * @param cetCodeOrTablename Custom entity template code, or custom table name
+     * @return A snapshot or CustomTableSnapshot.NONE if custom table does not have snapshot lookups enabled or is too big to be held in memory
+     */
+    @SuppressWarnings("unchecked")
+    private CustomTableSnapshot loadSnapshot(String cetCodeOrTablename) {
+
+        CustomEntityTemplate cet = customEntityTemplateService.findByCodeOrDbTablename(cetCodeOrTablename);
+        if (cet == null || !cet.isStoreAsTable() || !cet.isSnapshotLookups()) {
+            return CustomTableSnapshot.NONE;
+        }
+
+        int maxRecords = CustomTableSnapshotCache.getMaxRecords();
+
+        QueryBuilder queryBuilder = getQuery(addCurrentSchema(cet.getDbTablename()), null, null, Boolean.FALSE);
+        NativeQuery query = queryBuilder.getNativeQuery(getEntityManager(), true);
+        query.addScalar(FIELD_ID, CustomFieldTypeEnum.LONG.getHibernateType());
+        Map<String, CustomFieldTemplate> cfts = customFieldTemplateService.findByAppliesTo(cet.getAppliesTo());
+        if (cfts != null) {
+            for (CustomFieldTemplate cft : cfts.values()) {
+                query.addScalar(cft.getDbFieldname(), cft.getFieldType().getHibernateType());
+            }
+        }
+        List<Map<String, Object>> records = query.setMaxResults(maxRecords + 1).list();
+
+        if (records.size() > maxRecords) {
+            log.warn("Custom table {} has more than {} records and will not be served from a snapshot", cet.getDbTablename(), maxRecords);
+            return CustomTableSnapshot.NONE;
+        }
+
+        log.debug("Loaded a snapshot of {} records of custom table {}", records.size(), cet.getDbTablename());
+        return new CustomTableSnapshot(records);
+    }
+
     /**
      * Export data into a file into exports directory. Filename is in the following format: &lt;db table name&gt;_id_&lt;formated date&gt;.csv
      *
@@ -657,6 +754,14 @@ public class CustomTableService extends NativePersistenceService {
 
         removeEmptyKeys(queryValues);
 
+        if (isCacheable && CustomTableSnapshot.isApplicable(queryValues, fieldToReturn)) {
+            CustomTableSnapshot snapshot = getSnapshot(cetCodeOrTablename);
+            if (snapshot != null) {
+                Map<String, Object> record = snapshot.getRecord(queryValues);
+                return record != null ? record.get(fieldToReturn) : null;
+            }
+        }
+
         PaginationConfiguration pagination = new PaginationConfiguration(null, 1, queryValues, null, null, FIELD_ID, SortOrder.DESCENDING);
         pagination.setCacheable(isCacheable);
         pagination.setFetchFields(Arrays.asList(fieldToReturn));
@@ -700,6 +805,16 @@ public class CustomTableService extends NativePersistenceService {
      */
     public Object getValue(String cetCodeOrTablename, String fieldToReturn, Date date, Map<String, Object> queryValues, boolean isCacheable) throws BusinessException {
 
+        removeEmptyKeys(queryValues);
+
+        if (isCacheable && CustomTableSnapshot.isApplicable(queryValues, fieldToReturn)) {
+            CustomTableSnapshot snapshot = getSnapshot(cetCodeOrTablename);
+            if (snapshot != null) {
+                Map<String, Object> record = snapshot.getRecord(queryValues, date);
+                return record != null ? record.get(fieldToReturn) : null;
+            }
+        }
+
         queryValues.put("minmaxRange valid_from valid_to", date);
         removeEmptyKeys(queryValues);
 
@@ -743,6 +858,13 @@ public class CustomTableService extends NativePersistenceService {
 
         removeEmptyKeys(queryValues);
 
+        if (isCacheable && CustomTableSnapshot.isApplicable(queryValues, fieldsToReturn)) {
+            CustomTableSnapshot snapshot = getSnapshot(cetCodeOrTablename);
+            if (snapshot != null) {
+                return getSnapshotValues(snapshot.getRecord(queryValues), fieldsToReturn);
+            }
+        }
+
         PaginationConfiguration pagination = new PaginationConfiguration(null, 1, queryValues, null, null, FIELD_ID, SortOrder.DESCENDING);
         if (fieldsToReturn != null) {
             pagination.setFetchFields(Arrays.asList(fieldsToReturn));
@@ -793,6 +915,15 @@ public class CustomTableService extends NativePersistenceService {
      */
     public Map<String, Object> getValues(String cetCodeOrTablename, String[] fieldsToReturn, Date date, Map<String, Object> queryValues, boolean isCacheable) throws BusinessException {
 
+        removeEmptyKeys(queryValues);
+
+        if (isCacheable && CustomTableSnapshot.isApplicable(queryValues, fieldsToReturn)) {
+            CustomTableSnapshot snapshot = getSnapshot(cetCodeOrTablename);
+            if (snapshot != null) {
+                return getSnapshotValues(snapshot.getRecord(queryValues, date), fieldsToReturn);
+            }
+        }
+
         queryValues.put("minmaxRange valid_from valid_to", date);
         removeEmptyKeys(queryValues);
 
@@ -820,6 +951,33 @@ public class CustomTableService extends NativePersistenceService {
         }
     }
 
+    /**
+     * Get field values of a record found in a snapshot
+     *
+     * @param record A record. Optional.
+     * @param fieldsToReturn Field values to return. Optional. If not provided all fields will be returned.
+     * @return A map of values with field name as a key and field value as a value or null if record was not found
+     */
+    private Map<String, Object> getSnapshotValues(Map<String, Object> record, String[] fieldsToReturn) {
+
+        if (record == null) {
+            return null;
+        }
+
+        Map<String, Object> valuesToReturn = new HashMap<String, Object>();
+        if (fieldsToReturn == null) {
+            valuesToReturn.putAll(record);
+
+        } else {
+            for (String fieldToReturn : fieldsToReturn) {
+                if (record.containsKey(fieldToReturn)) {
+                    valuesToReturn.put(fieldToReturn, record.get(fieldToReturn));
+                }
+            }
+        }
+        return valuesToReturn;
+    }
+
     /**
      * Convert values to a data type matching field definition
      *
@@ -30,6 +30,7 @@ import org.meveo.event.qualifier.Started;
 import org.meveo.model.audit.ChangeOriginEnum;
 import org.meveo.model.crm.CustomFieldTemplate;
 import org.meveo.model.crm.Provider;
+import org.meveo.model.crm.custom.CustomFieldTypeEnum;
 import org.meveo.model.jobs.JobCategoryEnum;
 import org.meveo.model.jobs.JobExecutionResultImpl;
 import org.meveo.model.jobs.JobExecutionResultStatusEnum;
@@ -89,6 +90,27 @@ public abstract class Job {
      */
     public static final String CF_NB_PUBLISHERS = "nbPublishers";
     
+    /**
+     * Custom field for enabling partitioned data processing, where data is split into chunks, grouped by a partition key, and processed by a work-stealing thread pool
+     */
+    public static final String CF_PARTITIONED_EXECUTION = "partitionedExecution";
+
+    /**
+     * Custom field for a minimum number of items in a chunk when data processing is partitioned
+     */
+    public static final String CF_CHUNK_SIZE = "chunkSize";
+
+    /**
+     * Custom field for running data processing tasks on virtual threads instead of platform threads. Intended for jobs that mostly wait on I/O, like calls to payment gateways or mail sending.
+     */
+    public static final String CF_VIRTUAL_THREADS = "useVirtualThreads";
+
+    /**
+     * Custom field for a maximum number of items processed concurrently when data processing runs on virtual threads. Replaces the number of threads. Keep it within DB connection pool size when each item is
+     * processed in its own transaction.
+     */
+    public static final String CF_MAX_CONCURRENCY = "maxConcurrency";
+
     /**
      * Custom field for a applyBilingRules.
      */
@@ -333,6 +355,70 @@ public abstract class Job {
         return null;
     }
 
+    /**
+     * Add custom fields to run data processing on virtual threads with a limited concurrency
+     *
+     * @param customFields Custom fields of a job to add to
+     * @param appliesTo Custom field template applies to value of a job
+     * @param guiFieldPosition A position of the first field on Configuration tab
+     */
+    protected void addVirtualThreadsCustomFields(Map<String, CustomFieldTemplate> customFields, String appliesTo, int guiFieldPosition) {
+
+        CustomFieldTemplate useVirtualThreads = new CustomFieldTemplate();
+        useVirtualThreads.setCode(CF_VIRTUAL_THREADS);
+        useVirtualThreads.setAppliesTo(appliesTo);
+        useVirtualThreads.setActive(true);
+        useVirtualThreads.setDescription(resourceMessages.getString("jobExecution.useVirtualThreads"));
+        useVirtualThreads.setFieldType(CustomFieldTypeEnum.BOOLEAN);
+        useVirtualThreads.setValueRequired(false);
+        useVirtualThreads.setDefaultValue("false");
+        useVirtualThreads.setGuiPosition("tab:Configuration:0;field:" + guiFieldPosition);
+        customFields.put(CF_VIRTUAL_THREADS, useVirtualThreads);
+
+        CustomFieldTemplate maxConcurrency = new CustomFieldTemplate();
+        maxConcurrency.setCode(CF_MAX_CONCURRENCY);
+        maxConcurrency.setAppliesTo(appliesTo);
+        maxConcurrency.setActive(true);
+        maxConcurrency.setDescription(resourceMessages.getString("jobExecution.maxConcurrency"));
+        maxConcurrency.setFieldType(CustomFieldTypeEnum.LONG);
+        maxConcurrency.setValueRequired(false);
+        maxConcurrency.setDefaultValue("100");
+        maxConcurrency.setGuiPosition("tab:Configuration:0;field:" + (guiFieldPosition + 1));
+        customFields.put(CF_MAX_CONCURRENCY, maxConcurrency);
+    }
+
+    /**
+     * Add custom fields to run data processing partitioned in chunks by a work-stealing thread pool
+     *
+     * @param customFields Custom fields of a job to add to
+     * @param appliesTo Custom field template applies to value of a job
+     * @param guiFieldPosition A position of the first field on Configuration tab
+     */
+    protected void addPartitionedExecutionCustomFields(Map<String, CustomFieldTemplate> customFields, String appliesTo, int guiFieldPosition) {
+
+        CustomFieldTemplate partitionedExecution = new CustomFieldTemplate();
+        partitionedExecution.setCode(CF_PARTITIONED_EXECUTION);
+        partitionedExecution.setAppliesTo(appliesTo);
+        partitionedExecution.setActive(true);
+        partitionedExecution.setDescription(resourceMessages.getString("jobExecution.partitionedExecution"));
+        partitionedExecution.setFieldType(CustomFieldTypeEnum.BOOLEAN);
+        partitionedExecution.setValueRequired(false);
+        partitionedExecution.setDefaultValue("false");
+        partitionedExecution.setGuiPosition("tab:Configuration:0;field:" + guiFieldPosition);
+        customFields.put(CF_PARTITIONED_EXECUTION, partitionedExecution);
+
+        CustomFieldTemplate chunkSize = new CustomFieldTemplate();
+        chunkSize.setCode(CF_CHUNK_SIZE);
+        chunkSize.setAppliesTo(appliesTo);
+        chunkSize.setActive(true);
+        chunkSize.setDescription(resourceMessages.getString("jobExecution.chunkSize"));
+        chunkSize.setFieldType(CustomFieldTypeEnum.LONG);
+        chunkSize.setValueRequired(false);
+        chunkSize.setDefaultValue("1000");
+        chunkSize.setGuiPosition("tab:Configuration:0;field:" + (guiFieldPosition + 1));
+        customFields.put(CF_CHUNK_SIZE, chunkSize);
+    }
+
     /**
      * Gets the parameter CF value if found, otherwise return CF value from job definition
      *
@@ -19,23 +19,46 @@ package org.meveo.service.medina.impl;
 
 import static org.meveo.model.shared.DateUtils.isPeriodsOverlap;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
+import org.meveo.admin.exception.BusinessException;
 import org.meveo.admin.util.pagination.PaginationConfiguration;
+import org.meveo.cache.AccessPointCache;
+import org.meveo.cache.AccessPointInterval;
 import org.meveo.commons.utils.QueryBuilder;
+import org.meveo.event.monitoring.ClusterEventDto.ClusterEventActionEnum;
+import org.meveo.event.monitoring.ClusterEventPublisher;
 import org.meveo.model.billing.Subscription;
 import org.meveo.model.mediation.Access;
 import org.meveo.model.shared.DateUtils;
+import org.meveo.service.base.AfterCommitService;
 import org.meveo.service.base.PersistenceService;
 
 import jakarta.ejb.Stateless;
+import jakarta.inject.Inject;
 import jakarta.persistence.NoResultException;
 import jakarta.persistence.Query;
 
 @Stateless
 public class AccessService extends PersistenceService<Access> {
 
+    /**
+     * Additional information key of a cluster event, holding an access user identifier of a modified access point
+     */
+    public static final String CLUSTER_EVENT_ACCESS_USER_ID = "accessUserId";
+
+    @Inject
+    private AccessPointCache accessPointCache;
+
+    @Inject
+    private ClusterEventPublisher clusterEventPublisher;
+
+    @Inject
+    private AfterCommitService afterCommitService;
+
     /**
      * Get a list of Accesses matching a given accessUserId value
      * 
@@ -46,6 +69,90 @@ public class AccessService extends PersistenceService<Access> {
         return getEntityManager().createNamedQuery("Access.getAccessesByUserId", Access.class).setParameter("accessUserId", accessUserId).getResultList();
     }
 
+    /**
+     * Get a list of active Accesses matching a given access code, as used in mediation. When access point cache is enabled, Accesses are resolved from a cache and are returned as
+     * non-managed entities with a reference to a Subscription. When prefix matching is enabled ("mediation.accessPointPrefixMatch" setting), Accesses with the longest accessUserId
+     * that is a prefix of the access code are returned.
+     * 
+     * @param accessCode Access code
+     * @param eventDate Event date. Used to choose between prefix matches of a different length.
+     * @return List of Access ordered by a validity start date
+     */
+    public List<Access> getActiveAccessByUserId(String accessCode, Date eventDate) {
+
+        if (!AccessPointCache.isEnabled()) {
+            return getActiveAccessByUserId(accessCode);
+        }
+
+        List<AccessPointInterval> intervals = accessPointCache.getAccessPoints(accessCode, eventDate);
+        List<Access> accesses = new ArrayList<>(intervals.size());
+        for (AccessPointInterval interval : intervals) {
+            Access access = new Access();
+            access.setId(interval.getAccessId());
+            access.setAccessUserId(interval.getAccessUserId());
+            access.setStartDate(interval.getStartDate());
+            access.setEndDate(interval.getEndDate());
+            access.setSubscription(getEntityManager().getReference(Subscription.class, interval.getSubscriptionId()));
+            accesses.add(access);
+        }
+        return accesses;
+    }
+
+    @Override
+    public void create(Access access) throws BusinessException {
+        super.create(access);
+        clearAccessPointCache(access, ClusterEventActionEnum.create, access.getAccessUserId());
+    }
+
+    /**
+     * As access user identifier might have changed, all access points are cleared from cache
+     */
+    @Override
+    public Access update(Access access) throws BusinessException {
+        access = super.update(access);
+        clearAccessPointCache(access, ClusterEventActionEnum.update, null);
+        return access;
+    }
+
+    @Override
+    public void remove(Access access) throws BusinessException {
+        super.remove(access);
+        clearAccessPointCache(access, ClusterEventActionEnum.remove, access.getAccessUserId());
+    }
+
+    @Override
+    public Access enable(Access access) throws BusinessException {
+        access = super.enable(access);
+        clearAccessPointCache(access, ClusterEventActionEnum.enable, access.getAccessUserId());
+        return access;
+    }
+
+    @Override
+    public Access disable(Access access) throws BusinessException {
+        access = super.disable(access);
+        clearAccessPointCache(access, ClusterEventActionEnum.disable, access.getAccessUserId());
+        return access;
+    }
+
+    /**
+     * Access points are no longer valid - clear them from cache locally and on other cluster nodes, once a transaction commits
+     * 
+     * @param access Access point modified
+     * @param action Action performed
+     * @param accessUserId Access user identifier to clear. If null, all access points are cleared.
+     */
+    private void clearAccessPointCache(Access access, ClusterEventActionEnum action, String accessUserId) {
+        afterCommitService.runAfterCommit("accessPointCache_" + (accessUserId != null ? accessUserId : ""), () -> {
+            if (accessUserId != null) {
+                accessPointCache.evict(accessUserId);
+                clusterEventPublisher.publishEvent(access, action, Map.of(CLUSTER_EVENT_ACCESS_USER_ID, accessUserId), false, null, null);
+            } else {
+                accessPointCache.clear();
+                clusterEventPublisher.publishEvent(access, action);
+            }
+        });
+    }
+
     /**
      * Check if the given access is duplicated or not across
      * all subscriptions: Over all subs, it should be only one access point with
@@ -186,6 +293,7 @@ public class AccessService extends PersistenceService<Access> {
         getEntityManager().createNamedQuery("Access.deleteBySubscriptionId")
                 .setParameter("subscriptionId", subscriptionId)
                 .executeUpdate();
+        clearAccessPointCache(new Access(), ClusterEventActionEnum.remove, null);
     }
 
 }
\ No newline at end of file
@@ -245,7 +245,7 @@ public class CDRParsingService extends PersistenceService<EDR> {
     }
     
     public List<Access> accessPointLookup(CDR cdr) throws InvalidAccessException {
-        List<Access> accesses = accessService.getActiveAccessByUserId(cdr.getAccessCode());
+        List<Access> accesses = accessService.getActiveAccessByUserId(cdr.getAccessCode(), cdr.getEventDate());
         if (accesses == null || accesses.isEmpty()) {
             throw new InvalidAccessException("No matching access point " + cdr.getAccessCode() + " was found");
         }
@@ -0,0 +1,178 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+package org.meveo.service.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.meveo.commons.utils.EjbUtils;
+
+import com.google.common.cache.Cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
+/**
+ * Timers and counters of rating, mediation and invoicing hot paths. Meters are created once when a meter registry is set, so recording a value is a plain array lookup. Until a
+ * meter registry is set, or if billing metrics are disabled, nothing is recorded and no time is measured.<br/>
+ * <br/>
+ * Usage:
+ * 
+ * <pre>
+ * long start = BillingMetrics.start();
+ * ...
+ * BillingMetrics.record(Stage.CHARGE_MATCHING, start);
+ * </pre>
+ */
+public class BillingMetrics {
+
+    /**
+     * Processing stages measured. A stage is reported as a timer with a given name and a "stage" tag.
+     */
+    public enum Stage {
+
+        CHARGE_MATCHING("rating.stage", "charge_matching"), PRICE_PLAN_SELECTION("rating.stage", "price_plan_selection"), COUNTER_UPDATE("rating.stage", "counter_update"),
+        WO_PERSIST("rating.stage", "wo_persist"), CDR_PARSE("mediation.stage", "parse"), CDR_CONVERSION("mediation.stage", "conversion"), CDR_DEDUPLICATION("mediation.stage", "deduplication"),
+        CDR_PERSIST("mediation.stage", "persist"), INVOICE_XML("invoicing.stage", "xml"), INVOICE_PDF("invoicing.stage", "pdf");
+
+        private final String meterName;
+
+        private final String stageTag;
+
+        private Stage(String meterName, String stageTag) {
+            this.meterName = meterName;
+            this.stageTag = stageTag;
+        }
+    }
+
+    /**
+     * Processing outcomes counted. An outcome is reported as a counter with a given name and a "result" tag.
+     */
+    public enum Outcome {
+
+        EDR_RATED("rating.edr", "rated"), EDR_REJECTED("rating.edr", "rejected");
+
+        private final String meterName;
+
+        private final String resultTag;
+
+        private Outcome(String meterName, String resultTag) {
+            this.meterName = meterName;
+            this.resultTag = resultTag;
+        }
+    }
+
+    private static volatile Timer[] timers;
+
+    private static volatile Counter[] counters;
+
+    private static volatile MeterRegistry meterRegistry;
+
+    /**
+     * Caches to report hit and miss statistics for. Key: cache name, value: cache
+     */
+    private static final Map<String, Cache<?, ?>> caches = new ConcurrentHashMap<>();
+
+    private BillingMetrics() {
+    }
+
+    /**
+     * Create meters in a given meter registry and start recording
+     * 
+     * @param registry Meter registry
+     * @param publishHistogram Shall timers publish percentile histogram buckets
+     */
+    public static synchronized void setMeterRegistry(MeterRegistry registry, boolean publishHistogram) {
+
+        Tags tags = Tags.of("node", String.valueOf(EjbUtils.getCurrentClusterNode()));
+
+        Timer[] newTimers = new Timer[Stage.values().length];
+        for (Stage stage : Stage.values()) {
+            newTimers[stage.ordinal()] = Timer.builder(stage.meterName).tags(tags).tag("stage", stage.stageTag).publishPercentileHistogram(publishHistogram).register(registry);
+        }
+        Counter[] newCounters = new Counter[Outcome.values().length];
+        for (Outcome outcome : Outcome.values()) {
+            newCounters[outcome.ordinal()] = Counter.builder(outcome.meterName).tags(tags).tag("result", outcome.resultTag).register(registry);
+        }
+
+        meterRegistry = registry;
+        counters = newCounters;
+        timers = newTimers;
+
+        caches.forEach((name, cache) -> GuavaCacheMetrics.monitor(registry, cache, name, tags));
+    }
+
+    /**
+     * Report hit and miss statistics of a cache. Cache must be built with recordStats() for statistics to be collected.
+     * 
+     * @param cacheName Cache name, reported as a "cache" tag
+     * @param cache Cache
+     */
+    public static synchronized void monitorCache(String cacheName, Cache<?, ?> cache) {
+        caches.put(cacheName, cache);
+        if (meterRegistry != null) {
+            GuavaCacheMetrics.monitor(meterRegistry, cache, cacheName, Tags.of("node", String.valueOf(EjbUtils.getCurrentClusterNode())));
+        }
+    }
+
+    /**
+     * @return Meter registry that billing metrics are reported to. NULL if not set yet.
+     */
+    public static MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+
+    /**
+     * Mark a start of a stage
+     * 
+     * @return Current time in nanoseconds or 0 if metrics are not recorded
+     */
+    public static long start() {
+        return timers == null ? 0 : System.nanoTime();
+    }
+
+    /**
+     * Record a duration of a stage
+     * 
+     * @param stage Stage
+     * @param start A start of a stage as returned by start()
+     */
+    public static void record(Stage stage, long start) {
+        Timer[] currentTimers = timers;
+        if (start == 0 || currentTimers == null) {
+            return;
+        }
+        currentTimers[stage.ordinal()].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Count a processing outcome
+     * 
+     * @param outcome Outcome
+     */
+    public static void increment(Outcome outcome) {
+        Counter[] currentCounters = counters;
+        if (currentCounters != null) {
+            currentCounters[outcome.ordinal()].increment();
+        }
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+package org.meveo.service.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.meveo.commons.utils.EjbUtils;
+import org.meveo.commons.utils.ParamBean;
+import org.meveo.commons.utils.ParamBeanFactory;
+import org.meveo.service.base.ValueExpressionWrapper;
+import org.slf4j.Logger;
+
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.Singleton;
+import jakarta.ejb.Startup;
+import jakarta.inject.Inject;
+
+/**
+ * Starts recording rating, mediation and invoicing metrics to a meter registry, unless disabled with "metrics.billing.enabled" setting. Timer percentile histograms are
+ * published unless disabled with "metrics.billing.histogram" setting.
+ */
+@Singleton
+@Startup
+public class BillingMetricsInitializer {
+
+    @Inject
+    private Logger log;
+
+    @Inject
+    private MeterRegistry meterRegistry;
+
+    @PostConstruct
+    private void init() {
+
+        ParamBean paramBean = ParamBeanFactory.getAppScopeInstance();
+        if (!Boolean.parseBoolean(paramBean.getProperty("metrics.billing.enabled", "true"))) {
+            log.info("Billing metrics are disabled");
+            return;
+        }
+
+        BillingMetrics.setMeterRegistry(meterRegistry, Boolean.parseBoolean(paramBean.getProperty("metrics.billing.histogram", "true")));
+
+        // EL evaluations are counted by ValueExpressionWrapper itself, so are reported without any additional cost to evaluation
+        FunctionTimer.builder("el.evaluation", ValueExpressionWrapper.class, c -> ValueExpressionWrapper.getEvaluationCount(), c -> ValueExpressionWrapper.getEvaluationTimeNanos(), TimeUnit.NANOSECONDS)
+            .tag("node", String.valueOf(EjbUtils.getCurrentClusterNode())).register(meterRegistry);
+    }
+}
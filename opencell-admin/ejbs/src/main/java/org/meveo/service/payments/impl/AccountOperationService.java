@@ -121,6 +121,9 @@ public class AccountOperationService extends PersistenceService<AccountOperation
     @Inject
     private SubAccountingPeriodService subAccountingPeriodService;
 
+    @Inject
+    private CustomerAccountBalanceLedgerService customerAccountBalanceLedgerService;
+
 	@Inject
 	private InvoiceService invoiceService;
 	@Inject
@@ -809,8 +812,11 @@ public class AccountOperationService extends PersistenceService<AccountOperation
         }
         log.info("addLitigation accountOperation.Reference:" + accountOperation.getReference() + "status:" + accountOperation.getMatchingStatus());
 
+        List<AccountOperation> accountOperations = Collections.singletonList(accountOperation);
+        CustomerAccountBalanceLedger balanceLedgerChanges = customerAccountBalanceLedgerService.track(accountOperations);
         accountOperation.setMatchingStatus(MatchingStatusEnum.I);
         update(accountOperation);
+        customerAccountBalanceLedgerService.apply(balanceLedgerChanges, accountOperations);
         log.info("addLitigation accountOperation.Reference:" + accountOperation.getReference() + " ok");
     }
 
@@ -838,6 +844,8 @@ public class AccountOperationService extends PersistenceService<AccountOperation
         if (accountOperation.getMatchingStatus() != MatchingStatusEnum.I) {
             throw new BusinessException("accountOperation is not on Litigation");
         }
+        List<AccountOperation> accountOperations = Collections.singletonList(accountOperation);
+        CustomerAccountBalanceLedger balanceLedgerChanges = customerAccountBalanceLedgerService.track(accountOperations);
         if(accountOperation.getAmount().compareTo(accountOperation.getMatchingAmount()) == 0) {
         	accountOperation.setMatchingStatus(MatchingStatusEnum.L);
         }else
@@ -848,6 +856,7 @@ public class AccountOperationService extends PersistenceService<AccountOperation
         }
         
         update(accountOperation);
+        customerAccountBalanceLedgerService.apply(balanceLedgerChanges, accountOperations);
         log.info("cancelLitigation accountOperation.Reference:" + accountOperation.getReference() + " ok , status:"+ accountOperation.getMatchingStatus());
     }
 
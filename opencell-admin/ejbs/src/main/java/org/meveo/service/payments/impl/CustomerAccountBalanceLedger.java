@@ -0,0 +1,231 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+package org.meveo.service.payments.impl;
+
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.meveo.model.payments.AccountOperation;
+import org.meveo.model.payments.MatchingStatusEnum;
+import org.meveo.model.payments.OperationCategoryEnum;
+
+/**
+ * Changes to customer account balance ledger amounts, coalesced by a customer account, matching status, transaction category and due date day. Only account operations in
+ * O, P and I (litigation) matching statuses contribute their unmatched amount to a balance.<br/>
+ * <br/>
+ * Account operations without a due date are recorded under {@link #NO_DUE_DATE}, so they are included in a total balance, but not in a balance due up to a given date, same as
+ * when a balance is aggregated from account operations.
+ */
+public class CustomerAccountBalanceLedger {
+
+    /**
+     * A due date to record account operations without a due date under
+     */
+    public static final Date NO_DUE_DATE = new Calendar.Builder().setDate(9999, Calendar.DECEMBER, 31).build().getTime();
+
+    private final Map<Key, BigDecimal> changes = new HashMap<>();
+
+    /**
+     * @param matchingStatus Account operation matching status
+     * @return Does an account operation in a given matching status contribute to a balance
+     */
+    public static boolean isCounted(MatchingStatusEnum matchingStatus) {
+        return matchingStatus == MatchingStatusEnum.O || matchingStatus == MatchingStatusEnum.P || matchingStatus == MatchingStatusEnum.I;
+    }
+
+    /**
+     * Add a current contribution of an account operation to a balance
+     *
+     * @param accountOperation Account operation
+     */
+    public void add(AccountOperation accountOperation) {
+        add(accountOperation, false);
+    }
+
+    /**
+     * Subtract a current contribution of an account operation from a balance. Used to record a state of an account operation before it is changed.
+     *
+     * @param accountOperation Account operation
+     */
+    public void subtract(AccountOperation accountOperation) {
+        add(accountOperation, true);
+    }
+
+    private void add(AccountOperation accountOperation, boolean negate) {
+        if (accountOperation.getCustomerAccount() == null || accountOperation.getUnMatchingAmount() == null) {
+            return;
+        }
+        BigDecimal amount = negate ? accountOperation.getUnMatchingAmount().negate() : accountOperation.getUnMatchingAmount();
+        add(accountOperation.getCustomerAccount().getId(), accountOperation.getMatchingStatus(), accountOperation.getTransactionCategory(), accountOperation.getDueDate(), amount);
+    }
+
+    /**
+     * Add an amount to a balance
+     *
+     * @param customerAccountId Customer account identifier
+     * @param matchingStatus Matching status
+     * @param transactionCategory Transaction category
+     * @param dueDate Due date. Optional.
+     * @param amount Amount to add
+     */
+    public void add(Long customerAccountId, MatchingStatusEnum matchingStatus, OperationCategoryEnum transactionCategory, Date dueDate, BigDecimal amount) {
+        if (customerAccountId == null || transactionCategory == null || !isCounted(matchingStatus) || amount == null || amount.signum() == 0) {
+            return;
+        }
+        changes.merge(new Key(customerAccountId, matchingStatus, transactionCategory, toDueDay(dueDate)), amount, BigDecimal::add);
+    }
+
+    /**
+     * @return Amount changes by a ledger key, ordered by a key, so concurrent transactions update ledger entries in the same order. Keys with changes that cancel each other out
+     *         are omitted.
+     */
+    public SortedMap<Key, BigDecimal> getChanges() {
+        SortedMap<Key, BigDecimal> nonZeroChanges = new TreeMap<>();
+        changes.forEach((key, amount) -> {
+            if (amount.signum() != 0) {
+                nonZeroChanges.put(key, amount);
+            }
+        });
+        return Collections.unmodifiableSortedMap(nonZeroChanges);
+    }
+
+    /**
+     * @return Are there no changes to record
+     */
+    public boolean isEmpty() {
+        return getChanges().isEmpty();
+    }
+
+    /**
+     * Truncate a due date to a day it falls on
+     *
+     * @param dueDate Due date. Optional.
+     * @return A start of a due date day or {@link #NO_DUE_DATE} if due date is not provided
+     */
+    public static Date toDueDay(Date dueDate) {
+        if (dueDate == null) {
+            return NO_DUE_DATE;
+        }
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(dueDate);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTime();
+    }
+
+    /**
+     * Get an exclusive upper bound of due date days to include in a balance due up to a given date - same as
+     * {@link org.meveo.commons.utils.QueryBuilder#addCriterionDateRangeToTruncatedToDay(String, Date, boolean, boolean)} with an inclusive date.
+     *
+     * @param toDate Include account operations with a due date on or before a given date day
+     * @return A start of a day following a given date
+     */
+    public static Date getDueDayBound(Date toDate) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(toDueDay(toDate));
+        calendar.add(Calendar.DATE, 1);
+        return calendar.getTime();
+    }
+
+    /**
+     * A customer account balance ledger entry key
+     */
+    public static class Key implements Comparable<Key> {
+
+        private final Long customerAccountId;
+
+        private final MatchingStatusEnum matchingStatus;
+
+        private final OperationCategoryEnum transactionCategory;
+
+        private final Date dueDate;
+
+        public Key(Long customerAccountId, MatchingStatusEnum matchingStatus, OperationCategoryEnum transactionCategory, Date dueDate) {
+            this.customerAccountId = customerAccountId;
+            this.matchingStatus = matchingStatus;
+            this.transactionCategory = transactionCategory;
+            this.dueDate = dueDate;
+        }
+
+        public Long getCustomerAccountId() {
+            return customerAccountId;
+        }
+
+        public MatchingStatusEnum getMatchingStatus() {
+            return matchingStatus;
+        }
+
+        public OperationCategoryEnum getTransactionCategory() {
+            return transactionCategory;
+        }
+
+        /**
+         * @return A due date day
+         */
+        public Date getDueDate() {
+            return dueDate;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int result = customerAccountId.compareTo(other.customerAccountId);
+            if (result == 0) {
+                result = matchingStatus.compareTo(other.matchingStatus);
+            }
+            if (result == 0) {
+                result = transactionCategory.compareTo(other.transactionCategory);
+            }
+            if (result == 0) {
+                result = Long.compare(dueDate.getTime(), other.dueDate.getTime());
+            }
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return customerAccountId.equals(other.customerAccountId) && matchingStatus == other.matchingStatus && transactionCategory == other.transactionCategory
+                    && dueDate.getTime() == other.dueDate.getTime();
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(customerAccountId, matchingStatus, transactionCategory, dueDate.getTime());
+        }
+
+        @Override
+        public String toString() {
+            return customerAccountId + "/" + matchingStatus + "/" + transactionCategory + "/" + dueDate;
+        }
+    }
+}
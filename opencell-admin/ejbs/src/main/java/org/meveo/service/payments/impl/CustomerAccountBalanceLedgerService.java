@@ -0,0 +1,297 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+package org.meveo.service.payments.impl;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.SortedMap;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import org.meveo.commons.utils.ParamBean;
+import org.meveo.event.qualifier.Created;
+import org.meveo.jpa.EntityManagerProvider;
+import org.meveo.jpa.EntityManagerWrapper;
+import org.meveo.jpa.MeveoJpa;
+import org.meveo.model.payments.AccountOperation;
+import org.meveo.model.payments.MatchingStatusEnum;
+import org.meveo.model.payments.OperationCategoryEnum;
+import org.meveo.service.payments.impl.CustomerAccountBalanceLedger.Key;
+import org.slf4j.Logger;
+
+import jakarta.ejb.Stateless;
+import jakarta.enterprise.event.Observes;
+import jakarta.inject.Inject;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
+
+/**
+ * Maintains unmatched amounts of account operations summed up per customer account, matching status, transaction category and due date day in a "ar_ca_balance_ledger" table,
+ * so a customer account balance can be read without aggregating over all its account operations.<br/>
+ * <br/>
+ * Ledger is updated in the same transaction as account operations are created, matched or unmatched (MatchingCodeService, MatchingAmountService), put in or out of litigation
+ * (AccountOperationService, RecordedInvoiceService) or ventilated (PaymentVentilationService): a service changing unmatched amounts, matching statuses or due dates calls {@link #track(Collection)}
+ * before the change and {@link #apply(CustomerAccountBalanceLedger, Collection)} after it. Account operations changed by other means (e.g. a due date change or a mass update)
+ * are reconciled by CustomerAccountBalanceLedgerJob, that must also be run once after the ledger is enabled with "customerAccount.balanceLedger.enabled" setting
+ * (defaults to false).
+ */
+@Stateless
+public class CustomerAccountBalanceLedgerService {
+
+    private static final String UPSERT = "insert into ar_ca_balance_ledger (customer_account_id, matching_status, transaction_category, due_date, amount, updated)"
+            + " values (:caId, :status, :category, :dueDate, :amount, :updated) on conflict (customer_account_id, matching_status, transaction_category, due_date)"
+            + " do update set amount=ar_ca_balance_ledger.amount+excluded.amount, updated=excluded.updated";
+
+    private static final String UPSERT_ORACLE = "merge into ar_ca_balance_ledger l using (select :caId customer_account_id, :status matching_status, :category transaction_category,"
+            + " :dueDate due_date, :amount amount, :updated updated from dual) c on (l.customer_account_id=c.customer_account_id and l.matching_status=c.matching_status"
+            + " and l.transaction_category=c.transaction_category and l.due_date=c.due_date) when matched then update set l.amount=l.amount+c.amount, l.updated=c.updated"
+            + " when not matched then insert (customer_account_id, matching_status, transaction_category, due_date, amount, updated)"
+            + " values (c.customer_account_id, c.matching_status, c.transaction_category, c.due_date, c.amount, c.updated)";
+
+    @Inject
+    @MeveoJpa
+    private EntityManagerWrapper emWrapper;
+
+    @Inject
+    private Logger log;
+
+    /**
+     * @return Is customer account balance ledger maintained and used to read balances
+     */
+    public boolean isEnabled() {
+        return ParamBean.getInstance().getPropertyAsBoolean("customerAccount.balanceLedger.enabled", false);
+    }
+
+    /**
+     * Record a contribution of a newly created account operation
+     *
+     * @param accountOperation Account operation created
+     */
+    public void accountOperationCreated(@Observes @Created AccountOperation accountOperation) {
+        if (!isEnabled()) {
+            return;
+        }
+        CustomerAccountBalanceLedger changes = new CustomerAccountBalanceLedger();
+        changes.add(accountOperation);
+        apply(changes);
+    }
+
+    /**
+     * Start tracking changes of account operations, by recording their current contributions to be subtracted
+     *
+     * @param accountOperations Account operations that are about to change
+     * @return Ledger changes to be passed to {@link #apply(CustomerAccountBalanceLedger, Collection)} once account operations were changed. NULL if ledger is not enabled.
+     */
+    public CustomerAccountBalanceLedger track(Collection<AccountOperation> accountOperations) {
+        if (!isEnabled()) {
+            return null;
+        }
+        CustomerAccountBalanceLedger changes = new CustomerAccountBalanceLedger();
+        accountOperations.forEach(changes::subtract);
+        return changes;
+    }
+
+    /**
+     * Record contributions of changed account operations and apply the difference to the ledger
+     *
+     * @param changes Ledger changes as returned by {@link #track(Collection)}. Ignored if NULL.
+     * @param accountOperations Account operations that were changed
+     */
+    public void apply(CustomerAccountBalanceLedger changes, Collection<AccountOperation> accountOperations) {
+        if (changes == null) {
+            return;
+        }
+        accountOperations.forEach(changes::add);
+        apply(changes);
+    }
+
+    /**
+     * Apply amount changes to the ledger. Customer accounts are locked and entries are upserted in a key order, so concurrent transactions neither fail on creating the same entry
+     * nor deadlock on each other, and a ledger repair does not overwrite changes applied meanwhile.
+     *
+     * @param changes Ledger changes
+     */
+    public void apply(CustomerAccountBalanceLedger changes) {
+
+        SortedMap<Key, BigDecimal> ledgerChanges = changes.getChanges();
+        if (ledgerChanges.isEmpty()) {
+            return;
+        }
+
+        EntityManager em = emWrapper.getEntityManager();
+        lockCustomerAccounts(em, ledgerChanges.keySet().stream().map(Key::getCustomerAccountId).collect(Collectors.toList()));
+        Date now = new Date();
+
+        for (Entry<Key, BigDecimal> change : ledgerChanges.entrySet()) {
+            Key key = change.getKey();
+            upsert(em, key, change.getValue(), now);
+
+            // Fully matched amounts leave entries at zero - remove them so the ledger holds open amounts only
+            if (change.getValue().signum() < 0) {
+                em.createNativeQuery(
+                    "delete from ar_ca_balance_ledger where customer_account_id=:caId and matching_status=:status and transaction_category=:category and due_date=:dueDate and amount=0")
+                    .setParameter("caId", key.getCustomerAccountId()).setParameter("status", key.getMatchingStatus().name())
+                    .setParameter("category", key.getTransactionCategory().name()).setParameter("dueDate", key.getDueDate()).executeUpdate();
+            }
+        }
+    }
+
+    /**
+     * Lock customer account rows until the end of a transaction, in identifier order. Serializes ledger changes of a customer account with its repair, which replaces all ledger
+     * entries of a customer account.
+     */
+    private void lockCustomerAccounts(EntityManager em, Collection<Long> customerAccountIds) {
+        for (Long customerAccountId : new TreeSet<>(customerAccountIds)) {
+            em.createNativeQuery("select id from ar_customer_account where id=:caId for update").setParameter("caId", customerAccountId).getResultList();
+        }
+    }
+
+    /**
+     * Add an amount to a ledger entry, creating the entry if it does not exist yet
+     */
+    private void upsert(EntityManager em, Key key, BigDecimal amount, Date now) {
+        em.createNativeQuery(EntityManagerProvider.isDBOracle() ? UPSERT_ORACLE : UPSERT).setParameter("caId", key.getCustomerAccountId())
+            .setParameter("status", key.getMatchingStatus().name()).setParameter("category", key.getTransactionCategory().name()).setParameter("dueDate", key.getDueDate())
+            .setParameter("amount", amount).setParameter("updated", now).executeUpdate();
+    }
+
+    /**
+     * Get a customer account balance - a sum of unmatched debit amounts minus a sum of unmatched credit amounts
+     *
+     * @param customerAccountId Customer account identifier
+     * @param toDate Include account operations with a due date on or before a given date day. Optional.
+     * @param statuses Matching statuses to include
+     * @return A balance amount
+     */
+    public BigDecimal getBalance(Long customerAccountId, Date toDate, MatchingStatusEnum... statuses) {
+        return sum("sum(case when transaction_category='DEBIT' then amount else -amount end)", customerAccountId, null, toDate, statuses);
+    }
+
+    /**
+     * Get a sum of unmatched amounts of a given transaction category
+     *
+     * @param customerAccountId Customer account identifier
+     * @param transactionCategory Transaction category
+     * @param toDate Include account operations with a due date on or before a given date day. Optional.
+     * @param statuses Matching statuses to include
+     * @return An unmatched amount
+     */
+    public BigDecimal getAmount(Long customerAccountId, OperationCategoryEnum transactionCategory, Date toDate, MatchingStatusEnum... statuses) {
+        return sum("sum(amount)", customerAccountId, transactionCategory, toDate, statuses);
+    }
+
+    private BigDecimal sum(String sumExpression, Long customerAccountId, OperationCategoryEnum transactionCategory, Date toDate, MatchingStatusEnum... statuses) {
+
+        StringBuilder sql = new StringBuilder("select ").append(sumExpression).append(" from ar_ca_balance_ledger where customer_account_id=:caId and matching_status in (:statuses)");
+        if (transactionCategory != null) {
+            sql.append(" and transaction_category=:category");
+        }
+        if (toDate != null) {
+            sql.append(" and due_date<:dueDateBound");
+        }
+
+        Query query = emWrapper.getEntityManager().createNativeQuery(sql.toString()).setParameter("caId", customerAccountId)
+            .setParameter("statuses", Arrays.stream(statuses).map(MatchingStatusEnum::name).collect(Collectors.toList()));
+        if (transactionCategory != null) {
+            query.setParameter("category", transactionCategory.name());
+        }
+        if (toDate != null) {
+            query.setParameter("dueDateBound", CustomerAccountBalanceLedger.getDueDayBound(toDate));
+        }
+        Object result = query.getSingleResult();
+        return result != null ? new BigDecimal(result.toString()) : BigDecimal.ZERO;
+    }
+
+    /**
+     * Compare ledger amounts of a customer account with the ones aggregated from its account operations, optionally replacing ledger amounts when they differ
+     *
+     * @param customerAccountId Customer account identifier
+     * @param repair Replace ledger amounts when they differ
+     * @return True if ledger amounts were in sync with account operations
+     */
+    public boolean reconcile(Long customerAccountId, boolean repair) {
+
+        // Amounts are aggregated only once changes of other transactions to the ledger of a customer account are committed, and further changes wait for the repair to commit
+        if (repair) {
+            lockCustomerAccounts(emWrapper.getEntityManager(), List.of(customerAccountId));
+        }
+
+        Map<Key, BigDecimal> expected = aggregateFromAccountOperations(customerAccountId).getChanges();
+        Map<Key, BigDecimal> recorded = load(customerAccountId);
+
+        boolean inSync = expected.size() == recorded.size()
+                && expected.entrySet().stream().allMatch(entry -> recorded.containsKey(entry.getKey()) && recorded.get(entry.getKey()).compareTo(entry.getValue()) == 0);
+        if (inSync) {
+            return true;
+        }
+
+        log.warn("Balance ledger of customer account {} is out of sync with account operations: recorded {}, expected {}", customerAccountId, recorded, expected);
+        if (repair) {
+            EntityManager em = emWrapper.getEntityManager();
+            em.createNativeQuery("delete from ar_ca_balance_ledger where customer_account_id=:caId").setParameter("caId", customerAccountId).executeUpdate();
+            Date now = new Date();
+            expected.forEach((key, amount) -> upsert(em, key, amount, now));
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private CustomerAccountBalanceLedger aggregateFromAccountOperations(Long customerAccountId) {
+
+        List<Object[]> rows = emWrapper.getEntityManager()
+            .createQuery("select ao.matchingStatus, ao.transactionCategory, ao.dueDate, sum(ao.unMatchingAmount) from AccountOperation ao where ao.customerAccount.id=:caId"
+                    + " and ao.matchingStatus in (:statuses) group by ao.matchingStatus, ao.transactionCategory, ao.dueDate")
+            .setParameter("caId", customerAccountId).setParameter("statuses", Arrays.asList(MatchingStatusEnum.O, MatchingStatusEnum.P, MatchingStatusEnum.I)).getResultList();
+
+        CustomerAccountBalanceLedger ledger = new CustomerAccountBalanceLedger();
+        for (Object[] row : rows) {
+            ledger.add(customerAccountId, (MatchingStatusEnum) row[0], (OperationCategoryEnum) row[1], (Date) row[2], (BigDecimal) row[3]);
+        }
+        return ledger;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<Key, BigDecimal> load(Long customerAccountId) {
+
+        List<Object[]> rows = emWrapper.getEntityManager()
+            .createNativeQuery("select matching_status, transaction_category, due_date, amount from ar_ca_balance_ledger where customer_account_id=:caId and amount<>0")
+            .setParameter("caId", customerAccountId).getResultList();
+
+        Map<Key, BigDecimal> amounts = new HashMap<>();
+        for (Object[] row : rows) {
+            Key key = new Key(customerAccountId, MatchingStatusEnum.valueOf((String) row[0]), OperationCategoryEnum.valueOf((String) row[1]),
+                CustomerAccountBalanceLedger.toDueDay((Date) row[2]));
+            amounts.put(key, new BigDecimal(row[3].toString()));
+        }
+        return amounts;
+    }
+
+    /**
+     * @return Identifiers of all customer accounts
+     */
+    @SuppressWarnings("unchecked")
+    public List<Long> getCustomerAccountIds() {
+        return emWrapper.getEntityManager().createQuery("select ca.id from CustomerAccount ca order by ca.id").getResultList();
+    }
+}
@@ -118,6 +118,9 @@ public class CustomerAccountService extends AccountService<CustomerAccount> {
     @Inject
     private DunningCollectionPlanService collectionPlanService;
 
+    @Inject
+    private CustomerAccountBalanceLedgerService customerAccountBalanceLedgerService;
+
     @Inject
     private DunningSettingsService dunningSettingsService;
 
@@ -173,6 +176,10 @@ public class CustomerAccountService extends AccountService<CustomerAccount> {
      * @return The computed balance
      */
     private BigDecimal computeOccAmount(CustomerAccount customerAccount, OperationCategoryEnum operationCategoryEnum, Date toDate, boolean useDueDate, MatchingStatusEnum... status) {
+        if (customerAccount != null && isBalanceLedgerApplicable(toDate, useDueDate)) {
+            return customerAccountBalanceLedgerService.getAmount(customerAccount.getId(), operationCategoryEnum, toDate, status);
+        }
+
         QueryBuilder queryBuilder = new QueryBuilder("select sum(unMatchingAmount) from AccountOperation");
         queryBuilder.addCriterionEnum("transactionCategory", operationCategoryEnum);
         queryBuilder.addCriterionDateRangeToTruncatedToDay(useDueDate ? "dueDate" : "transactionDate", toDate, true, false);
@@ -183,6 +190,18 @@ public class CustomerAccountService extends AccountService<CustomerAccount> {
         return (BigDecimal) query.getSingleResult();
     }
 
+    /**
+     * Can a balance be read from a customer account balance ledger instead of aggregating account operations. Ledger tracks amounts by a due date only, so a balance up to a
+     * given transaction date is always aggregated.
+     *
+     * @param toDate Include account operations with a due date or transactionDate less than a given date
+     * @param useDueDate If true and toDate is provided, use account operation dueDate instead of transactionDate to filter account operations by date
+     * @return True if balance ledger is enabled and can answer a given date criteria
+     */
+    private boolean isBalanceLedgerApplicable(Date toDate, boolean useDueDate) {
+        return (toDate == null || useDueDate) && customerAccountBalanceLedgerService.isEnabled();
+    }
+
     private void addCriterionStatuses(QueryBuilder queryBuilder, MatchingStatusEnum[] status) {
         if (status.length == 1) {
             queryBuilder.addCriterionEnum("matchingStatus", status[0]);
@@ -209,12 +228,18 @@ public class CustomerAccountService extends AccountService<CustomerAccount> {
             return BigDecimal.ZERO;
         }
 
-        QueryBuilder queryBuilder = new QueryBuilder("select sum(case when ao.transactionCategory = 'DEBIT' then ao.unMatchingAmount else (-1 * ao.unMatchingAmount) end) from AccountOperation as ao");
-        queryBuilder.addCriterionDateRangeToTruncatedToDay(useDueDate ? "dueDate" : "transactionDate", toDate, true, false);
-        queryBuilder.addCriterionEntity("customerAccount", customerAccount);
-        addCriterionStatuses(queryBuilder, status);
-        Query query = queryBuilder.getQuery(getEntityManager());
-        BigDecimal balance = (BigDecimal) Optional.ofNullable(query.getSingleResult()).orElse(BigDecimal.ZERO);
+        BigDecimal balance;
+        if (isBalanceLedgerApplicable(toDate, useDueDate)) {
+            balance = customerAccountBalanceLedgerService.getBalance(customerAccount.getId(), toDate, status);
+
+        } else {
+            QueryBuilder queryBuilder = new QueryBuilder("select sum(case when ao.transactionCategory = 'DEBIT' then ao.unMatchingAmount else (-1 * ao.unMatchingAmount) end) from AccountOperation as ao");
+            queryBuilder.addCriterionDateRangeToTruncatedToDay(useDueDate ? "dueDate" : "transactionDate", toDate, true, false);
+            queryBuilder.addCriterionEntity("customerAccount", customerAccount);
+            addCriterionStatuses(queryBuilder, status);
+            Query query = queryBuilder.getQuery(getEntityManager());
+            balance = (BigDecimal) Optional.ofNullable(query.getSingleResult()).orElse(BigDecimal.ZERO);
+        }
 
         int balanceFlag = paramBeanFactory.getInstance().getPropertyAsInteger("balance.multiplier", 1);
         balance = balance.multiply(new BigDecimal(balanceFlag));
@@ -0,0 +1,206 @@
+/*
+ * (C) Copyright 2015-2020 Opencell SAS (https://opencellsoft.com/) and contributors.
+ *
+ * This program is free software: you can redistribute it and/or modify it under the terms of the GNU Affero General
+ * Public License as published by the Free Software Foundation, either version 3 of the License, or (at your option)
+ * any later version.
+ *
+ * THERE IS NO WARRANTY FOR THE PROGRAM, TO THE EXTENT PERMITTED BY APPLICABLE LAW. EXCEPT WHEN
+ * OTHERWISE STATED IN WRITING THE COPYRIGHT HOLDERS AND/OR OTHER PARTIES PROVIDE THE PROGRAM "AS
+ * IS" WITHOUT WARRANTY OF ANY KIND, EITHER EXPRESSED OR IMPLIED, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE. THE ENTIRE RISK AS TO
+ * THE QUALITY AND PERFORMANCE OF THE PROGRAM IS WITH YOU. SHOULD THE PROGRAM PROVE DEFECTIVE,
+ * YOU ASSUME THE COST OF ALL NECESSARY SERVICING, REPAIR OR CORRECTION.
+ *
+ * For more information on the GNU Affero General Public License, please consult
+ * <https://www.gnu.org/licenses/agpl-3.0.en.html>.
+ */
+package org.meveo.service.payments.impl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of evaluating active dunning policies over unpaid invoices in a single pass: invoices eligible for a collection plan, grouped by a policy they were assigned to, and a
+ * number of invoices each policy and policy rule matched.<br/>
+ * <br/>
+ * An invoice is assigned to a highest priority policy whose rules it matches, and is then checked for eligibility against that policy only.
+ */
+public class DunningPolicyEvaluation {
+
+    private final List<CompiledPolicy> policies;
+
+    private final Map<Long, List<Long>> eligibleInvoiceIds = new LinkedHashMap<>();
+
+    private final Map<Long, Long> invoicesMatchedByPolicy = new HashMap<>();
+
+    private final Map<Long, Long> invoicesMatchedByRule = new HashMap<>();
+
+    private final Date today;
+
+    /**
+     * Constructor
+     *
+     * @param policies Policies to evaluate, in priority order
+     * @param today Date to compute invoice days overdue at
+     */
+    public DunningPolicyEvaluation(List<CompiledPolicy> policies, Date today) {
+        this.policies = policies;
+        this.today = toDay(today);
+        for (CompiledPolicy policy : policies) {
+            eligibleInvoiceIds.put(policy.getPolicyId(), new ArrayList<>());
+        }
+    }
+
+    /**
+     * @return Policies evaluated, in priority order
+     */
+    public List<CompiledPolicy> getPolicies() {
+        return policies;
+    }
+
+    /**
+     * Record an invoice assigned to a policy and check if it is eligible for a collection plan
+     *
+     * @param policyIndex An index of a policy in a priority order that invoice was assigned to
+     * @param invoiceId Invoice identifier
+     * @param dueDate Invoice due date
+     * @param unMatchingAmount Unmatched amount of invoice account operation
+     * @param currencyCode Invoice currency code
+     * @return True if invoice is eligible for a collection plan
+     */
+    public boolean assign(int policyIndex, Long invoiceId, Date dueDate, BigDecimal unMatchingAmount, String currencyCode) {
+        CompiledPolicy policy = policies.get(policyIndex);
+        invoicesMatchedByPolicy.merge(policy.getPolicyId(), 1L, Long::sum);
+
+        if (policy.isEligible(dueDate, unMatchingAmount, currencyCode, today)) {
+            eligibleInvoiceIds.get(policy.getPolicyId()).add(invoiceId);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record an invoice matching a policy rule
+     *
+     * @param ruleId Policy rule identifier
+     */
+    public void ruleMatched(Long ruleId) {
+        invoicesMatchedByRule.merge(ruleId, 1L, Long::sum);
+    }
+
+    /**
+     * @param policyId Policy identifier
+     * @return Identifiers of invoices eligible for a collection plan of a given policy
+     */
+    public List<Long> getEligibleInvoiceIds(Long policyId) {
+        return eligibleInvoiceIds.getOrDefault(policyId, Collections.emptyList());
+    }
+
+    /**
+     * @param policyId Policy identifier
+     * @return A number of invoices assigned to a policy
+     */
+    public long getInvoicesMatchedByPolicy(Long policyId) {
+        return invoicesMatchedByPolicy.getOrDefault(policyId, 0L);
+    }
+
+    /**
+     * @param ruleId Policy rule identifier
+     * @return A number of invoices matching a policy rule, regardless of a policy they were assigned to
+     */
+    public long getInvoicesMatchedByRule(Long ruleId) {
+        return invoicesMatchedByRule.getOrDefault(ruleId, 0L);
+    }
+
+    private static Date toDay(Date date) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(date);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        return calendar.getTime();
+    }
+
+    /**
+     * Dunning policy settings needed to check invoice eligibility, resolved once per evaluation
+     */
+    public static class CompiledPolicy {
+
+        private final Long policyId;
+
+        private final String policyName;
+
+        private final Integer daysOverdue;
+
+        private final BigDecimal minBalanceTrigger;
+
+        private final String currencyCode;
+
+        private final List<Long> ruleIds;
+
+        /**
+         * Constructor
+         *
+         * @param policyId Policy identifier
+         * @param policyName Policy name
+         * @param daysOverdue Days overdue of a first non reminder policy level. NULL if policy has no such level, so no invoice is eligible.
+         * @param minBalanceTrigger Minimum unmatched amount. Optional.
+         * @param currencyCode Currency code invoice must be in. Optional.
+         * @param ruleIds Policy rule identifiers
+         */
+        public CompiledPolicy(Long policyId, String policyName, Integer daysOverdue, Double minBalanceTrigger, String currencyCode, List<Long> ruleIds) {
+            this.policyId = policyId;
+            this.policyName = policyName;
+            this.daysOverdue = daysOverdue;
+            this.minBalanceTrigger = minBalanceTrigger != null ? BigDecimal.valueOf(minBalanceTrigger) : null;
+            this.currencyCode = currencyCode;
+            this.ruleIds = ruleIds;
+        }
+
+        public Long getPolicyId() {
+            return policyId;
+        }
+
+        public String getPolicyName() {
+            return policyName;
+        }
+
+        public List<Long> getRuleIds() {
+            return ruleIds;
+        }
+
+        /**
+         * Check if invoice is eligible for a collection plan - it is overdue for at least as many days as a first policy level requires, has a positive unmatched amount not
+         * below a policy minimum balance and is in a policy currency
+         *
+         * @param dueDate Invoice due date
+         * @param unMatchingAmount Unmatched amount of invoice account operation
+         * @param invoiceCurrencyCode Invoice currency code
+         * @param today A current date, truncated to a day
+         * @return True if invoice is eligible
+         */
+        boolean isEligible(Date dueDate, BigDecimal unMatchingAmount, String invoiceCurrencyCode, Date today) {
+            if (daysOverdue == null || dueDate == null || unMatchingAmount == null || unMatchingAmount.signum() <= 0) {
+                return false;
+            }
+            if (minBalanceTrigger != null && unMatchingAmount.compareTo(minBalanceTrigger) < 0) {
+                return false;
+            }
+            if (currencyCode != null && !currencyCode.equals(invoiceCurrencyCode)) {
+                return false;
+            }
+            long daysDiff = TimeUnit.DAYS.convert(today.getTime() - toDay(dueDate).getTime(), TimeUnit.MILLISECONDS);
+            return daysOverdue <= daysDiff;
+        }
+    }
+}
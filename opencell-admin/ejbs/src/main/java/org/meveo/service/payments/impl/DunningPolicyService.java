@@ -18,8 +18,12 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
 import org.meveo.admin.exception.BusinessException;
 import org.meveo.admin.util.ResourceBundle;
+import org.meveo.jpa.JpaAmpNewTx;
 import org.meveo.model.admin.Currency;
 import org.meveo.model.billing.Invoice;
 import org.meveo.model.billing.TradingCurrency;
@@ -52,6 +56,13 @@ public class DunningPolicyService extends PersistenceService<DunningPolicy> {
 
     private static final String DUNNING_POLICY_NOT_FOUND = "Policy does not exists";
 
+    /**
+     * Entities that policy rule lines filter on, joined explicitly as outer joins. Implicit joins of path expressions are inner joins, so a rule on e.g. a credit category would
+     * otherwise exclude invoices without one from the whole query and not only from the policy owning the rule.
+     */
+    private static final String RULE_TARGET_JOINS = " LEFT JOIN inv.billingAccount ruleBa LEFT JOIN ruleBa.customerAccount ruleCa LEFT JOIN ruleCa.creditCategory ruleCc"
+            + " LEFT JOIN ruleCa.customer ruleCust LEFT JOIN ruleCust.customerCategory ruleCustCat LEFT JOIN inv.paymentMethod rulePm";
+
     @Inject
     private InvoiceService invoiceService;
 
@@ -108,8 +119,9 @@ public class DunningPolicyService extends PersistenceService<DunningPolicy> {
         if (policy != null) {
             if(policy.getDunningPolicyRules() != null && !policy.getDunningPolicyRules().isEmpty()) {
                 try {
-                        String query = "SELECT inv FROM Invoice inv WHERE (inv.paymentStatus = 'UNPAID' OR inv.paymentStatus = 'PPAID' OR inv.paymentStatus = 'PENDING') AND inv.invoiceType.code = 'COM' AND inv.dunningCollectionPlanTriggered = false AND "
-                            + buildPolicyRulesFilter(policy.getDunningPolicyRules());
+                        String query = "SELECT inv FROM Invoice inv" + RULE_TARGET_JOINS
+                            + " WHERE (inv.paymentStatus = 'UNPAID' OR inv.paymentStatus = 'PPAID' OR inv.paymentStatus = 'PENDING') AND inv.invoiceType.code = 'COM' AND inv.dunningCollectionPlanTriggered = false AND ("
+                            + buildPolicyRulesFilter(policy.getDunningPolicyRules()) + ")";
                         invoices = (List<Invoice>) invoiceService.executeSelectQuery(query, null);
                 } catch (Exception exception) {
                     throw new BusinessException(exception.getMessage());
@@ -135,7 +147,7 @@ public class DunningPolicyService extends PersistenceService<DunningPolicy> {
         if (policy != null) {
             if(policy.getDunningPolicyRules() != null && !policy.getDunningPolicyRules().isEmpty()) {
                 try {
-                    String query = "SELECT inv FROM Invoice inv WHERE inv.id in ("+ invoiceIds.stream().map(String::valueOf).collect(Collectors.joining(",")) + ") and ( " + buildPolicyRulesFilter(policy.getDunningPolicyRules()) +" )";
+                    String query = "SELECT inv FROM Invoice inv" + RULE_TARGET_JOINS + " WHERE inv.id in ("+ invoiceIds.stream().map(String::valueOf).collect(Collectors.joining(",")) + ") and ( " + buildPolicyRulesFilter(policy.getDunningPolicyRules()) +" )";
                         invoices = (List<Invoice>) invoiceService.executeSelectQuery(query, null);
                 } catch (Exception exception) {
                     throw new BusinessException(exception.getMessage());
@@ -271,14 +283,14 @@ public class DunningPolicyService extends PersistenceService<DunningPolicy> {
             lineFilter.append("(");
             if(ruleLines.get(0).getPolicyConditionTarget().equalsIgnoreCase(PolicyConditionTargetEnum.creditCategory.toString())) {
             	if (ruleLines.get(0).getPolicyConditionOperator().equalsIgnoreCase(PolicyConditionOperatorEnum.NOT_EQUALS.toString())) {
-	                lineFilter.append(" (inv.billingAccount.customerAccount.creditCategory IS NULL or ")
-	                .append("inv.billingAccount.customerAccount.creditCategory in (select creditCategory from CreditCategory creditCategory where creditCategory.code <> ")
+	                lineFilter.append(" (ruleCc IS NULL or ")
+	                .append("ruleCc in (select creditCategory from CreditCategory creditCategory where creditCategory.code <> ")
 	                .append(toQueryValue(ruleLines.get(0).getPolicyConditionTargetValue(),
 	                        ruleLines.get(0).getPolicyConditionTarget()))
 	                .append(")) ");
             	} else if(ruleLines.get(0).getPolicyConditionOperator().equalsIgnoreCase(PolicyConditionOperatorEnum.EQUALS.toString())) {
-                    lineFilter.append(" ( inv.billingAccount.customerAccount.creditCategory IS NOT NULL and ")
-                	.append(valueOf(ruleLines.get(0).getPolicyConditionTarget()).getField())
+                    lineFilter.append(" ( ruleCc IS NOT NULL and ")
+                	.append(getRuleLineField(ruleLines.get(0).getPolicyConditionTarget()))
                     .append(" ")
                     .append(PolicyConditionOperatorEnum
                             .valueOf(ruleLines.get(0).getPolicyConditionOperator().toUpperCase()).getOperator())
@@ -288,7 +300,7 @@ public class DunningPolicyService extends PersistenceService<DunningPolicy> {
                     .append(") ");
             	}
             } else {
-            	lineFilter.append(valueOf(ruleLines.get(0).getPolicyConditionTarget()).getField())
+            	lineFilter.append(getRuleLineField(ruleLines.get(0).getPolicyConditionTarget()))
                 .append(" ")
                 .append(PolicyConditionOperatorEnum
                         .valueOf(ruleLines.get(0).getPolicyConditionOperator().toUpperCase()).getOperator())
@@ -302,14 +314,14 @@ public class DunningPolicyService extends PersistenceService<DunningPolicy> {
                 lineFilter.append(checkRuleLineJoint(ruleLines.get(index).getRuleLineJoint()));
                 if(ruleLines.get(index).getPolicyConditionTarget().equalsIgnoreCase(PolicyConditionTargetEnum.creditCategory.toString())) {
                 	if (ruleLines.get(index).getPolicyConditionOperator().equalsIgnoreCase(PolicyConditionOperatorEnum.NOT_EQUALS.toString())) {
-    	                lineFilter.append(" (inv.billingAccount.customerAccount.creditCategory IS NULL or ")
-    	                .append("inv.billingAccount.customerAccount.creditCategory in (select creditCategory from CreditCategory creditCategory where creditCategory.code <> ")
+    	                lineFilter.append(" (ruleCc IS NULL or ")
+    	                .append("ruleCc in (select creditCategory from CreditCategory creditCategory where creditCategory.code <> ")
     	                .append(toQueryValue(ruleLines.get(index).getPolicyConditionTargetValue(),
     	                        ruleLines.get(index).getPolicyConditionTarget()))
     	                .append(")) ");
                 	} else if(ruleLines.get(index).getPolicyConditionOperator().equalsIgnoreCase(PolicyConditionOperatorEnum.EQUALS.toString())) {
-                        lineFilter.append(" ( inv.billingAccount.customerAccount.creditCategory IS NOT NULL and ")
-                    	.append(valueOf(ruleLines.get(index).getPolicyConditionTarget()).getField())
+                        lineFilter.append(" ( ruleCc IS NOT NULL and ")
+                    	.append(getRuleLineField(ruleLines.get(index).getPolicyConditionTarget()))
                         .append(" ")
                         .append(PolicyConditionOperatorEnum
                                 .valueOf(ruleLines.get(index).getPolicyConditionOperator().toUpperCase()).getOperator())
@@ -320,7 +332,7 @@ public class DunningPolicyService extends PersistenceService<DunningPolicy> {
                 	}
                 } else {
                 	lineFilter.append(" ")
-                    .append(valueOf(ruleLines.get(index).getPolicyConditionTarget()).getField())
+                    .append(getRuleLineField(ruleLines.get(index).getPolicyConditionTarget()))
                     .append(" ")
                     .append(PolicyConditionOperatorEnum
                             .valueOf(ruleLines.get(index).getPolicyConditionOperator()).getOperator())
@@ -335,6 +347,26 @@ public class DunningPolicyService extends PersistenceService<DunningPolicy> {
         return lineFilter.append(")").toString();
     }
 
+    /**
+     * Get a field a rule line condition applies to, expressed over the aliases joined in {@link #RULE_TARGET_JOINS}
+     * @param policyConditionTarget Policy condition target
+     * @return A field to filter on
+     */
+    private String getRuleLineField(String policyConditionTarget) {
+        switch (valueOf(policyConditionTarget)) {
+        case creditCategory:
+            return "ruleCc.code";
+        case customerCategory:
+            return "ruleCustCat.code";
+        case isCompany:
+            return "ruleBa.isCompany";
+        case paymentMethod:
+            return "rulePm.paymentType";
+        default:
+            throw new BusinessException("Invalid policy condition target [" + policyConditionTarget + "]");
+        }
+    }
+
     /**
      * Convert policy condition target value to query value
      * @param policyConditionTargetValue Policy condition target value
@@ -359,11 +391,7 @@ public class DunningPolicyService extends PersistenceService<DunningPolicy> {
         AtomicInteger dunningCollectionPlanNumber = new AtomicInteger(0);
         for (Map.Entry<DunningPolicy, List<Invoice>> entry : eligibleInvoice.entrySet()) {
             DunningPolicy policy = refreshOrRetrieve(entry.getKey());
-            boolean policyIsReminderExists = doesPolicyContainReminder(policy.getDunningLevels());
-            Optional<DunningPolicyLevel> firstLevel = policy.getDunningLevels()
-                    .stream()
-                    .filter(policyLevel -> ((policyIsReminderExists && policyLevel.getSequence() == 1) || ( policyLevel.getSequence() == 0)) && !policyLevel.getDunningLevel().isReminder())
-                    .findFirst();
+            Optional<DunningPolicyLevel> firstLevel = getFirstLevel(policy);
             if(!firstLevel.isEmpty()) {
                 Integer dayOverDue = firstLevel.map(policyLevel -> policyLevel.getDunningLevel().getDaysOverdue()).get();
                 entry.getValue()
@@ -382,6 +410,115 @@ public class DunningPolicyService extends PersistenceService<DunningPolicy> {
         return dunningCollectionPlanNumber.get();
     }
 
+    /**
+     * Get a first non reminder level of a policy - the one a collection plan starts with
+     * @param policy Dunning policy
+     * @return A first non reminder level
+     */
+    private Optional<DunningPolicyLevel> getFirstLevel(DunningPolicy policy) {
+        boolean policyIsReminderExists = doesPolicyContainReminder(policy.getDunningLevels());
+        return policy.getDunningLevels()
+                .stream()
+                .filter(policyLevel -> ((policyIsReminderExists && policyLevel.getSequence() == 1) || ( policyLevel.getSequence() == 0)) && !policyLevel.getDunningLevel().isReminder())
+                .findFirst();
+    }
+
+    /**
+     * Evaluate dunning policies over unpaid invoices in a single query. Rules of all policies are compiled into one filter, and each invoice is assigned in the query to a highest
+     * priority policy whose rules it matches. Only invoice identifiers and the amounts, due date and currency needed to check eligibility are retrieved.
+     * @param sortedPolicies Dunning policies in priority order
+     * @return Invoices eligible for a collection plan by policy and a number of invoices each policy and policy rule matched
+     */
+    public DunningPolicyEvaluation evaluateInvoiceLevelPolicies(List<DunningPolicy> sortedPolicies) {
+        List<DunningPolicyEvaluation.CompiledPolicy> compiledPolicies = new ArrayList<>();
+        List<String> policyFilters = new ArrayList<>();
+        List<String> ruleFilters = new ArrayList<>();
+        List<Long> ruleIds = new ArrayList<>();
+
+        for (DunningPolicy sortedPolicy : sortedPolicies) {
+            DunningPolicy policy = refreshOrRetrieve(sortedPolicy);
+            if (policy == null) {
+                throw new BusinessException(DUNNING_POLICY_NOT_FOUND);
+            }
+            if (policy.getDunningPolicyRules() == null || policy.getDunningPolicyRules().isEmpty()) {
+                continue;
+            }
+
+            // A policy without a first level still takes invoices matching its rules away from lower priority policies, but no collection plan is created for them
+            Integer daysOverdue = getFirstLevel(policy).map(policyLevel -> policyLevel.getDunningLevel().getDaysOverdue()).orElse(null);
+            if (daysOverdue == null) {
+                log.error("No level configured do meet the conditions for policy {}", policy.getPolicyName());
+            }
+
+            policyFilters.add(buildPolicyRulesFilter(policy.getDunningPolicyRules()));
+            List<Long> policyRuleIds = new ArrayList<>();
+            for (DunningPolicyRule rule : policy.getDunningPolicyRules()) {
+                if (rule.getDunningPolicyRuleLines() == null || rule.getDunningPolicyRuleLines().isEmpty()) {
+                    continue;
+                }
+                ruleFilters.add(buildRuleLinesFilter(rule.getDunningPolicyRuleLines()));
+                ruleIds.add(rule.getId());
+                policyRuleIds.add(rule.getId());
+            }
+            compiledPolicies.add(new DunningPolicyEvaluation.CompiledPolicy(policy.getId(), policy.getPolicyName(), daysOverdue, policy.getMinBalanceTrigger(),
+                ofNullable(policy.getMinBalanceTriggerCurrency()).map(Currency::getCurrencyCode).orElse(null), policyRuleIds));
+        }
+
+        DunningPolicyEvaluation evaluation = new DunningPolicyEvaluation(compiledPolicies, new Date());
+        if (compiledPolicies.isEmpty()) {
+            return evaluation;
+        }
+
+        StringBuilder query = new StringBuilder("SELECT inv.id, inv.dueDate, ri.unMatchingAmount, cur.currencyCode, CASE");
+        for (int index = 0; index < policyFilters.size(); index++) {
+            query.append(" WHEN (").append(policyFilters.get(index)).append(") THEN ").append(index);
+        }
+        query.append(" ELSE -1 END");
+        for (String ruleFilter : ruleFilters) {
+            query.append(", CASE WHEN ").append(ruleFilter).append(" THEN 1 ELSE 0 END");
+        }
+        query.append(" FROM Invoice inv JOIN inv.recordedInvoice ri LEFT JOIN inv.tradingCurrency tc LEFT JOIN tc.currency cur").append(RULE_TARGET_JOINS)
+            .append(" WHERE (inv.paymentStatus = 'UNPAID' OR inv.paymentStatus = 'PPAID' OR inv.paymentStatus = 'PENDING') AND inv.invoiceType.code = 'COM' AND inv.dunningCollectionPlanTriggered = false")
+            .append(" AND ri.transactionCategory = 'DEBIT' AND NOT EXISTS (SELECT dcp.id FROM DunningCollectionPlan dcp WHERE dcp.relatedInvoice.id = inv.id) AND (")
+            .append(policyFilters.stream().map(filter -> "(" + filter + ")").collect(Collectors.joining(" OR "))).append(")");
+
+        int fetchSize = paramBeanFactory.getInstance().getPropertyAsInteger("dunning.evaluation.fetchSize", 1000);
+        try (ScrollableResults<Object[]> rows = getEntityManager().unwrap(Session.class).createQuery(query.toString(), Object[].class).setReadOnly(true).setFetchSize(fetchSize)
+            .scroll(ScrollMode.FORWARD_ONLY)) {
+            while (rows.next()) {
+                Object[] row = rows.get();
+                int policyIndex = ((Number) row[4]).intValue();
+                if (policyIndex < 0) {
+                    continue;
+                }
+                for (int index = 0; index < ruleIds.size(); index++) {
+                    if (((Number) row[5 + index]).intValue() == 1) {
+                        evaluation.ruleMatched(ruleIds.get(index));
+                    }
+                }
+                evaluation.assign(policyIndex, (Long) row[0], (Date) row[1], (BigDecimal) row[2], (String) row[3]);
+            }
+        }
+        return evaluation;
+    }
+
+    /**
+     * Create collection plans for a batch of invoices in a separate transaction. Invoices that got a collection plan in the meantime are skipped.
+     * @param policyId Dunning policy identifier
+     * @param invoiceIds Invoice identifiers
+     * @return Number of collection plans created
+     */
+    @JpaAmpNewTx
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int createCollectionPlans(Long policyId, List<Long> invoiceIds) {
+        DunningPolicy policy = findById(policyId);
+        DunningCollectionPlanStatus collectionPlanStatus = collectionPlanStatusService.findByStatus(DunningCollectionPlanStatusEnum.ONGOING);
+        List<Invoice> invoices = getEntityManager().createQuery("SELECT inv FROM Invoice inv WHERE inv.id IN (:invoiceIds) AND inv.dunningCollectionPlanTriggered = false", Invoice.class)
+            .setParameter("invoiceIds", invoiceIds).getResultList();
+        invoices.forEach(invoice -> collectionPlanService.createCollectionPlanFrom(invoice, policy, collectionPlanStatus));
+        return invoices.size();
+    }
+
     /**
      * Check if policy currency is the same as invoice currency
      * @param policy Dunning policy
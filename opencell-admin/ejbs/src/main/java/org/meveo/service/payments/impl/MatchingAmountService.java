@@ -20,6 +20,8 @@ package org.meveo.service.payments.impl;
 import static java.util.Optional.ofNullable;
 
 import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
 
 import org.meveo.admin.exception.BusinessException;
 import org.meveo.commons.utils.QueryBuilder;
@@ -38,6 +40,9 @@ public class MatchingAmountService extends PersistenceService<MatchingAmount> {
 	@Inject
 	private AccountOperationService accountOperationService;
 
+	@Inject
+	private CustomerAccountBalanceLedgerService customerAccountBalanceLedgerService;
+
 	public void unmatching(Long idMatchingAmount) throws BusinessException {
 		log.info("start cancelMatchingAmount with id:#0,user:#1", idMatchingAmount);
         if (idMatchingAmount == null) {
@@ -54,6 +59,8 @@ public class MatchingAmountService extends PersistenceService<MatchingAmount> {
 				&& operation.getMatchingStatus() != MatchingStatusEnum.L) {
 			throw new BusinessException("Error:matchingCode containt unMatching operation");
 		}
+		List<AccountOperation> operations = Collections.singletonList(operation);
+		CustomerAccountBalanceLedger balanceLedgerChanges = customerAccountBalanceLedgerService.track(operations);
 		operation.setUnMatchingAmount(operation.getUnMatchingAmount().add(matchingAmount.getMatchingAmount()));
 		operation.setMatchingAmount(operation.getMatchingAmount().subtract(matchingAmount.getMatchingAmount()));
 		operation.setTransactionalUnMatchingAmount(operation.
@@ -67,6 +74,7 @@ public class MatchingAmountService extends PersistenceService<MatchingAmount> {
 		}
 		operation.getMatchingAmounts().remove(matchingAmount);
 		accountOperationService.updateNoCheck(operation);
+		customerAccountBalanceLedgerService.apply(balanceLedgerChanges, operations);
 		log.info("cancel one accountOperation!");
 
 		log.info("successfully end cancelMatching!");
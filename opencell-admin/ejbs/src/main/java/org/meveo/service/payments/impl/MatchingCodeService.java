@@ -139,6 +139,9 @@ public class MatchingCodeService extends PersistenceService<MatchingCode> {
     @Inject
     private PaymentHistoryService paymentHistoryService;
 
+    @Inject
+    private CustomerAccountBalanceLedgerService customerAccountBalanceLedgerService;
+
     private static final String DATE_FORMAT_PATTERN = "yyyy-MM-dd HH:mm:ss.SSS";
     private final SimpleDateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT_PATTERN);
 	
@@ -182,6 +185,7 @@ public class MatchingCodeService extends PersistenceService<MatchingCode> {
         // Specially for this case, Invoice will pass to PENDING_PLAN status
         boolean isPplCreationCreditAo = false;
 
+        CustomerAccountBalanceLedger balanceLedgerChanges = customerAccountBalanceLedgerService.track(listOcc);
         
         for (AccountOperation accountOperation : listOcc) {
             if (accountOperation instanceof WriteOff) {
@@ -508,6 +512,7 @@ public class MatchingCodeService extends PersistenceService<MatchingCode> {
         matchingCode.setMatchingDate(new Date());
         matchingCode.setMatchingType(matchingTypeEnum);
         create(matchingCode);
+        customerAccountBalanceLedgerService.apply(balanceLedgerChanges, listOcc);
         if (!listPaymentScheduleInstanceItem.isEmpty()) {
             for (PaymentScheduleInstanceItem paymentScheduleInstanceItem : listPaymentScheduleInstanceItem) {
                 paymentScheduleInstanceItemService.applyOneShotPS(paymentScheduleInstanceItem);
@@ -674,6 +679,12 @@ public class MatchingCodeService extends PersistenceService<MatchingCode> {
 
         if (matchingAmounts != null) {
             log.info("matchingAmounts.size:" + matchingAmounts.size());
+
+            // Exchange gain/loss operations are removed when unmatched, and being matched, they never contributed to a balance
+            List<AccountOperation> operationsToUnmatch = matchingAmounts.stream().map(MatchingAmount::getAccountOperation)
+                .filter(operation -> !XCH_LOSS.equalsIgnoreCase(operation.getCode()) && !XCH_GAIN.equalsIgnoreCase(operation.getCode())).collect(toList());
+            CustomerAccountBalanceLedger balanceLedgerChanges = customerAccountBalanceLedgerService.track(operationsToUnmatch);
+
             for (MatchingAmount matchingAmount : matchingAmounts) {
                 AccountOperation operation = matchingAmount.getAccountOperation();
                 if (operation.getMatchingStatus() != MatchingStatusEnum.P && operation.getMatchingStatus() != MatchingStatusEnum.L) {
@@ -737,6 +748,7 @@ public class MatchingCodeService extends PersistenceService<MatchingCode> {
                 UnMatchingAmount unMatchingAmount = new UnMatchingAmount(matchingAmount, unMatchingCode);
                 unMatchingAmountService.create(unMatchingAmount);
             }
+            customerAccountBalanceLedgerService.apply(balanceLedgerChanges, operationsToUnmatch);
         }
         log.info("remove matching code ....");
         remove(matchingCode);
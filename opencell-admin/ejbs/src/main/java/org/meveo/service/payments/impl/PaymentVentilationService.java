@@ -20,6 +20,7 @@ package org.meveo.service.payments.impl;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
@@ -27,6 +28,7 @@ import org.meveo.admin.exception.BusinessException;
 import org.meveo.admin.exception.UnbalanceAmountException;
 import org.meveo.commons.utils.ParamBean;
 import org.meveo.jpa.JpaAmpNewTx;
+import org.meveo.model.payments.AccountOperation;
 import org.meveo.model.payments.CustomerAccount;
 import org.meveo.model.payments.MatchingStatusEnum;
 import org.meveo.model.payments.MatchingTypeEnum;
@@ -70,6 +72,9 @@ public class PaymentVentilationService extends PersistenceService<PaymentVentila
 
     @Inject
     private JournalService journalService;
+
+    @Inject
+    private CustomerAccountBalanceLedgerService customerAccountBalanceLedgerService;
     
 
     @JpaAmpNewTx
@@ -78,11 +83,14 @@ public class PaymentVentilationService extends PersistenceService<PaymentVentila
         BigDecimal ventilationAmout = entity.getVentilationAmount();
         BigDecimal unventilatedAmount = entity.getOriginalOT().getUnMatchingAmount();
         OtherTransactionGeneral originalOTG = (OtherTransactionGeneral) entity.getOriginalOT();
+        List<AccountOperation> originalOperations = Collections.singletonList(originalOTG);
+        CustomerAccountBalanceLedger balanceLedgerChanges = customerAccountBalanceLedgerService.track(originalOperations);
         originalOTG.setUnMatchingAmount(unventilatedAmount.subtract(ventilationAmout));
         originalOTG.setMatchingAmount(originalOTG.getMatchingAmount().add(ventilationAmout));
         MatchingStatusEnum matchingStatus = originalOTG.getUnMatchingAmount().compareTo(BigDecimal.ZERO) == 0 ? MatchingStatusEnum.L : MatchingStatusEnum.P;
         originalOTG.setMatchingStatus(matchingStatus);
         otherTransactionGeneralService.update(originalOTG);
+        customerAccountBalanceLedgerService.apply(balanceLedgerChanges, originalOperations);
         entity.setVentilationDate(new Date());
         ParamBean paramBean = paramBeanFactory.getInstance();
         OCCTemplate occTemplate = getOCCTemplate(paramBean.getProperty("occ.payment.arc", "ARC"));
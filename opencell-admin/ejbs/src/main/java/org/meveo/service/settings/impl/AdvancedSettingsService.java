@@ -6,10 +6,16 @@ import java.util.stream.Collectors;
 
 import org.meveo.admin.exception.BusinessException;
 import org.meveo.api.exception.InvalidParameterException;
+import org.meveo.cache.PricePlanCandidatesCache;
+import org.meveo.event.monitoring.ClusterEventDto.ClusterEventActionEnum;
+import org.meveo.event.monitoring.ClusterEventPublisher;
 import org.meveo.model.settings.AdvancedSettings;
+import org.meveo.service.base.AfterCommitService;
 import org.meveo.service.base.BusinessService;
+import org.meveo.service.billing.impl.PricePlanFilters;
 
 import jakarta.ejb.Stateless;
+import jakarta.inject.Inject;
 import jakarta.persistence.TypedQuery;
 
 @Stateless
@@ -17,16 +23,49 @@ public class AdvancedSettingsService extends BusinessService<AdvancedSettings> {
 	
 	public static final String DISABLE_SYNC_MRR_UPDATE =  "disableSynchronousMrrUpdate";
 
+	@Inject
+	private PricePlanCandidatesCache pricePlanCandidatesCache;
+
+	@Inject
+	private ClusterEventPublisher clusterEventPublisher;
+
+	@Inject
+	private AfterCommitService afterCommitService;
+
 	@Override
 	public void create(AdvancedSettings entity) throws BusinessException {
 		checkParameters(entity);
 		super.create(entity);
+		clearCachedSettings(entity, ClusterEventActionEnum.create);
 	}
 
 	@Override
 	public AdvancedSettings update(AdvancedSettings entity) throws BusinessException {
 		checkParameters(entity);
-		return super.update(entity);
+		entity = super.update(entity);
+		clearCachedSettings(entity, ClusterEventActionEnum.update);
+		return entity;
+	}
+
+	@Override
+	public void remove(AdvancedSettings entity) throws BusinessException {
+		super.remove(entity);
+		clearCachedSettings(entity, ClusterEventActionEnum.remove);
+	}
+
+	/**
+	 * Clear settings that are cached elsewhere - locally and on other cluster nodes once a transaction commits
+	 * 
+	 * @param setting Advanced setting modified
+	 * @param action Action performed
+	 */
+	private void clearCachedSettings(AdvancedSettings setting, ClusterEventActionEnum action) {
+		if (PricePlanFilters.ADVANCED_SETTINGS_GROUP.equals(setting.getGroup())) {
+			afterCommitService.runAfterCommit("pricePlanFilters", () -> {
+				pricePlanCandidatesCache.clearPricePlanFilters();
+				clusterEventPublisher.publishEvent(setting, action);
+			});
+		}
 	}
 	
 	public <T>  Map<String, T> getAdvancedSettingsMapByGroup(String group, Class<T> valueType) {
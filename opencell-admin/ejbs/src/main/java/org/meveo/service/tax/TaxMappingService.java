@@ -22,6 +22,8 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 import org.hibernate.proxy.HibernateProxy;
 import org.meveo.admin.exception.BusinessException;
@@ -31,9 +33,13 @@ import org.meveo.admin.exception.InvalidELException;
 import org.meveo.admin.exception.InvalidParameterException;
 import org.meveo.admin.exception.NoTaxException;
 import org.meveo.admin.util.ResourceBundle;
+import org.meveo.cache.TaxMappingCache;
+import org.meveo.cache.TaxMappingCandidate;
 import org.meveo.commons.utils.ParamBean;
 import org.meveo.commons.utils.QueryBuilder;
 import org.meveo.commons.utils.StringUtils;
+import org.meveo.event.monitoring.ClusterEventDto.ClusterEventActionEnum;
+import org.meveo.event.monitoring.ClusterEventPublisher;
 import org.meveo.model.DatePeriod;
 import org.meveo.model.admin.Seller;
 import org.meveo.model.article.AccountingArticle;
@@ -49,6 +55,7 @@ import org.meveo.model.shared.DateUtils;
 import org.meveo.model.tax.TaxCategory;
 import org.meveo.model.tax.TaxClass;
 import org.meveo.model.tax.TaxMapping;
+import org.meveo.service.base.AfterCommitService;
 import org.meveo.service.base.PersistenceService;
 import org.meveo.service.base.ValueExpressionWrapper;
 import org.meveo.service.billing.impl.BillingAccountService;
@@ -82,6 +89,15 @@ public class TaxMappingService extends PersistenceService<TaxMapping> {
 
     @Inject
     private AccountingArticleService accountingArticleService;
+
+    @Inject
+    private TaxMappingCache taxMappingCache;
+
+    @Inject
+    private ClusterEventPublisher clusterEventPublisher;
+
+    @Inject
+    private AfterCommitService afterCommitService;
     
     private static Boolean IS_DETERMINE_TAX_CLASS_FROM_AA = null;
 
@@ -100,13 +116,41 @@ public class TaxMappingService extends PersistenceService<TaxMapping> {
     public void create(TaxMapping entity) throws InvalidParameterException {
         validateValidityDates(entity);
         super.create(entity);
+        clearTaxMappingCache(entity, ClusterEventActionEnum.create);
     }
 
     @Override
     public TaxMapping update(TaxMapping entity) throws InvalidParameterException {
         validateValidityDates(entity);
 
-        return super.update(entity);
+        entity = super.update(entity);
+        clearTaxMappingCache(entity, ClusterEventActionEnum.update);
+        return entity;
+    }
+
+    @Override
+    public void remove(TaxMapping entity) throws BusinessException {
+        super.remove(entity);
+        clearTaxMappingCache(entity, ClusterEventActionEnum.remove);
+    }
+
+    @Override
+    public void remove(Set<Long> ids) throws BusinessException {
+        super.remove(ids);
+        clearTaxMappingCache(new TaxMapping(), ClusterEventActionEnum.remove);
+    }
+
+    /**
+     * Tax mappings are no longer valid - clear them from cache locally and on other cluster nodes, once a transaction commits
+     *
+     * @param taxMapping Tax mapping modified
+     * @param action Action performed
+     */
+    private void clearTaxMappingCache(TaxMapping taxMapping, ClusterEventActionEnum action) {
+        afterCommitService.runAfterCommit("taxMappingCache_TaxMapping", () -> {
+            taxMappingCache.clear();
+            clusterEventPublisher.publishEvent(taxMapping, action);
+        });
     }
 
     /**
@@ -427,21 +471,22 @@ public class TaxMappingService extends PersistenceService<TaxMapping> {
                 
                 date = DateUtils.truncateTime(date);
 
-                TaxMapping taxMapping = findBestTaxMappingMatch(taxCategory, taxClass, seller, billingAccount, date, walletoperation);
+                TaxMappingCandidate taxMapping = findBestTaxMappingMatch(taxCategory, taxClass, seller, billingAccount, date, walletoperation);
 
                 if (taxMapping.getTaxEL() != null) {
                     tax = evaluateTaxExpression(taxMapping.getTaxEL(), seller, billingAccount, taxCategory, taxClass, date, walletoperation);
 
-                } else if (taxMapping.getTaxScript() != null) {
+                } else if (taxMapping.getTaxScriptCode() != null) {
 
-                    List<Tax> taxes = taxScriptService.computeTaxesIfApplicable(taxMapping.getTaxScript().getCode(), userAccount, seller, taxClass, date, walletoperation);
+                    List<Tax> taxes = taxScriptService.computeTaxesIfApplicable(taxMapping.getTaxScriptCode(), userAccount, seller, taxClass, date, walletoperation);
                     if (taxes != null && !taxes.isEmpty()) {
                         tax = taxes.get(0);
                     }
                 }
 
-                if (tax == null) {
-                    tax = taxMapping.getTax();
+                // Tax is a cacheable entity, so it is not read from DB each time
+                if (tax == null && taxMapping.getTaxId() != null) {
+                    tax = getEntityManager().find(Tax.class, taxMapping.getTaxId());
                 }
             }
 
@@ -485,7 +530,7 @@ public class TaxMappingService extends PersistenceService<TaxMapping> {
     }
 
     /**
-     * Find Tax mapping with the highest priority (highest number)
+     * Find Tax mapping with the highest priority (highest number). Applicable tax mappings are taken from a cache, unless cache is disabled with "cache.cacheTaxMappings" setting.
      * 
      * @param taxCategory Tax category
      * @param taxClass Tax class
@@ -496,7 +541,7 @@ public class TaxMappingService extends PersistenceService<TaxMapping> {
      * @throws InvalidParameterException Parameters for best tax mapping lookup are insufficient
      * @throws IncorrectChargeTemplateException No tax mapping matched
      */
-    private TaxMapping findBestTaxMappingMatch(TaxCategory taxCategory, TaxClass taxClass, Seller seller, BillingAccount billingAccount, Date applicationDate , WalletOperation walletOperation)
+    private TaxMappingCandidate findBestTaxMappingMatch(TaxCategory taxCategory, TaxClass taxClass, Seller seller, BillingAccount billingAccount, Date applicationDate , WalletOperation walletOperation)
             throws InvalidParameterException, IncorrectChargeTemplateException {
         if (seller == null) {
             throw new InvalidParameterException("Seller is mandatory for finding a tax mapping");
@@ -505,10 +550,17 @@ public class TaxMappingService extends PersistenceService<TaxMapping> {
         TradingCountry sellersCountry = seller.getTradingCountry();
         TradingCountry buyersCountry = billingAccount.getTradingCountry();
 
-        List<TaxMapping> taxMappings = getEntityManager().createNamedQuery("TaxMapping.findApplicableTax", TaxMapping.class).setParameter("taxCategory", taxCategory).setParameter("taxClass", taxClass)
-            .setParameter("sellerCountry", sellersCountry).setParameter("buyerCountry", buyersCountry).setParameter("applicationDate", applicationDate).setFlushMode(FlushModeType.COMMIT).getResultList();
+        List<TaxMappingCandidate> taxMappings;
+        if (TaxMappingCache.isEnabled()) {
+            taxMappings = taxMappingCache.getCandidates(taxCategory, taxClass, sellersCountry, buyersCountry, applicationDate);
 
-        for (TaxMapping taxMapping : taxMappings) {
+        } else {
+            taxMappings = getEntityManager().createNamedQuery("TaxMapping.findApplicableTax", TaxMapping.class).setParameter("taxCategory", taxCategory).setParameter("taxClass", taxClass)
+                .setParameter("sellerCountry", sellersCountry).setParameter("buyerCountry", buyersCountry).setParameter("applicationDate", applicationDate).setFlushMode(FlushModeType.COMMIT).getResultList()
+                .stream().map(TaxMappingCandidate::of).collect(Collectors.toList());
+        }
+
+        for (TaxMappingCandidate taxMapping : taxMappings) {
             if (taxMapping.getFilterEL() == null || evaluateBooleanExpression(taxMapping.getFilterEL(), seller, billingAccount, taxCategory, taxClass, applicationDate, walletOperation)) {
                 return taxMapping;
             }
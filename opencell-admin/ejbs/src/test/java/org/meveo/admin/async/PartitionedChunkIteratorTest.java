@@ -0,0 +1,58 @@
+package org.meveo.admin.async;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.meveo.admin.async.PartitionedChunkIterator.Chunk;
+
+public class PartitionedChunkIteratorTest {
+
+    @Test
+    public void items_of_the_same_key_are_kept_in_the_same_chunk() {
+
+        // Items are encoded as key * 100 + sequence
+        List<Integer> data = Arrays.asList(100, 200, 101, 300, 201, 102, 400, 202);
+
+        PartitionedChunkIterator<Integer> iterator = new PartitionedChunkIterator<>(new SynchronizedIterator<>(data), item -> item / 100, 3);
+
+        Chunk<Integer> chunk = iterator.nextChunk();
+        assertThat(chunk.getIndex()).isEqualTo(0);
+        assertThat(chunk.getItems()).containsExactly(100, 101, 102);
+        assertThat(chunk.getNbKeys()).isEqualTo(1);
+
+        chunk = iterator.nextChunk();
+        assertThat(chunk.getItems()).containsExactly(200, 201, 202);
+
+        chunk = iterator.nextChunk();
+        assertThat(chunk.getItems()).containsExactly(300, 400);
+        assertThat(chunk.getNbKeys()).isEqualTo(2);
+
+        assertThat(iterator.nextChunk()).isNull();
+    }
+
+    @Test
+    public void items_without_key_are_chunked_in_order() {
+
+        List<Integer> data = Arrays.asList(1, 2, 3, 4, 5);
+
+        PartitionedChunkIterator<Integer> iterator = new PartitionedChunkIterator<>(new SynchronizedIterator<>(data), null, 2);
+
+        assertThat(iterator.nextChunk().getItems()).containsExactly(1, 2);
+        assertThat(iterator.nextChunk().getItems()).containsExactly(3, 4);
+
+        Chunk<Integer> chunk = iterator.nextChunk();
+        assertThat(chunk.getItems()).containsExactly(5);
+
+        chunk.markStarted();
+        chunk.addProcessed(1);
+        chunk.markFinished();
+        assertThat(chunk.getItems()).isNull();
+        assertThat(chunk.getNbItems()).isEqualTo(1);
+        assertThat(chunk.getNbProcessed()).isEqualTo(1);
+
+        assertThat(iterator.nextChunk()).isNull();
+    }
+}
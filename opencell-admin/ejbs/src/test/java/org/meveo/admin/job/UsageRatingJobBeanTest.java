@@ -0,0 +1,49 @@
+package org.meveo.admin.job;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+import org.meveo.admin.async.PartitionedChunkIterator;
+import org.meveo.admin.async.PartitionedChunkIterator.Chunk;
+import org.meveo.admin.async.SynchronizedIterator;
+
+public class UsageRatingJobBeanTest {
+
+    @Test
+    public void edrs_of_the_same_subscription_are_rated_in_the_same_chunk() {
+
+        UsageRatingJobBean jobBean = new UsageRatingJobBean();
+
+        // EDR id, subscription id
+        List<Long> ids = jobBean.setEdrSubscriptions(Arrays.asList(new Object[] { 1L, 10L }, new Object[] { 2L, 20L }, new Object[] { 3L, 10L }, new Object[] { 4L, 30L },
+            new Object[] { 5L, 20L }, new Object[] { 6L, 10L }, new Object[] { 7L, null }));
+
+        assertThat(ids).containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L);
+
+        PartitionedChunkIterator<Long> iterator = new PartitionedChunkIterator<>(new SynchronizedIterator<>(ids), jobBean::getPartitionKey, 2);
+
+        Chunk<Long> chunk = iterator.nextChunk();
+        assertThat(chunk.getItems()).containsExactly(1L, 3L, 6L);
+        assertThat(chunk.getNbKeys()).isEqualTo(1);
+
+        chunk = iterator.nextChunk();
+        assertThat(chunk.getItems()).containsExactly(2L, 5L);
+
+        chunk = iterator.nextChunk();
+        assertThat(chunk.getItems()).containsExactly(4L, 7L);
+        assertThat(chunk.getNbKeys()).isEqualTo(2);
+
+        assertThat(iterator.nextChunk()).isNull();
+    }
+
+    @Test
+    public void edrs_are_not_partitioned_when_subscriptions_are_not_known() {
+
+        UsageRatingJobBean jobBean = new UsageRatingJobBean();
+
+        assertThat(jobBean.getPartitionKey(1L)).isNull();
+    }
+}
@@ -0,0 +1,50 @@
+package org.meveo.admin.job.payload;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class IdListPayloadCodecTest {
+
+    private final IdListPayloadCodec codec = new IdListPayloadCodec();
+
+    @Test
+    public void ids_are_decoded_as_encoded() throws Exception {
+        List<Long> ids = Arrays.asList(1L, 2L, 1000000L, 999999L, 0L, -5L, Long.MAX_VALUE, Long.MIN_VALUE, 3L);
+
+        assertThat(codec.canEncode(ids)).isTrue();
+        assertThat(codec.decode(codec.encode(ids))).isEqualTo(ids);
+    }
+
+    @Test
+    public void id_lists_are_decoded_as_encoded() throws Exception {
+        List<List<Long>> idLists = Arrays.asList(Arrays.asList(10L, 11L, 12L), new ArrayList<>(), Arrays.asList(5L));
+
+        assertThat(codec.canEncode(idLists)).isTrue();
+        assertThat(codec.decode(codec.encode(idLists))).isEqualTo(idLists);
+    }
+
+    @Test
+    public void ascending_ids_take_less_space_than_java_serialization() throws Exception {
+        List<Long> ids = new ArrayList<>();
+        for (long id = 1000000; id < 1010000; id++) {
+            ids.add(id);
+        }
+
+        byte[] encoded = codec.encode(ids);
+        assertThat(encoded.length).isLessThan(10010);
+        assertThat(encoded.length).isLessThan(new JavaSerializationPayloadCodec().encode(ids).length / 5);
+        assertThat(codec.decode(JobPayloadCodecs.decompress(JobPayloadCodecs.compress(encoded)))).isEqualTo(ids);
+    }
+
+    @Test
+    public void other_items_are_not_supported() {
+        assertThat(codec.canEncode(Arrays.asList(1L, "2"))).isFalse();
+        assertThat(codec.canEncode(Arrays.asList(Arrays.asList(1L), Arrays.asList(1)))).isFalse();
+        assertThat(codec.canEncode(new ArrayList<>())).isFalse();
+    }
+}
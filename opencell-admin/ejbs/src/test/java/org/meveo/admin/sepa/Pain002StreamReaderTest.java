@@ -0,0 +1,60 @@
+package org.meveo.admin.sepa;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+import org.meveo.admin.exception.BusinessException;
+
+public class Pain002StreamReaderTest {
+
+    private static final String NAMESPACE = "urn:iso:std:iso:20022:tech:xsd:pain.002.001.03";
+
+    @Test
+    public void rejected_transactions_are_collected() throws Exception {
+
+        String report = "<OrgnlGrpInfAndSts><OrgnlMsgId>DDREF-42</OrgnlMsgId><OrgnlMsgNmId>pain.008.001.02</OrgnlMsgNmId></OrgnlGrpInfAndSts><OrgnlPmtInfAndSts>"
+                + transaction("1", "11", "RJCT") + transaction("2", "12", "ACCP") + transaction("3", "notANumber", "RJCT") + "</OrgnlPmtInfAndSts>";
+
+        DDRejectFileInfos infos = read(report);
+
+        assertThat(infos.getFileName()).isEqualTo("pain002.xml");
+        assertThat(infos.getDdRequestLotId()).isEqualTo(42L);
+        assertThat(infos.isTheDDRequestFileWasRejected()).isFalse();
+        assertThat(infos.getListInvoiceRefsRejected()).containsOnlyKeys(11L);
+        assertThat(infos.getNbItemsOk()).isEqualTo(1);
+        assertThat(infos.getNbItemsKo()).isEqualTo(1);
+    }
+
+    @Test
+    public void rejected_file_reports_a_group_reason() throws Exception {
+
+        DDRejectFileInfos infos = read("<OrgnlGrpInfAndSts><OrgnlMsgId>DDREF-7</OrgnlMsgId><GrpSts>RJCT</GrpSts><StsRsnInf><Rsn><Cd>FF01</Cd></Rsn></StsRsnInf></OrgnlGrpInfAndSts>"
+                + "<OrgnlPmtInfAndSts>" + transaction("1", "11", "RJCT") + "</OrgnlPmtInfAndSts>");
+
+        assertThat(infos.getDdRequestLotId()).isEqualTo(7L);
+        assertThat(infos.isTheDDRequestFileWasRejected()).isTrue();
+        assertThat(infos.getReturnStatusCode()).isEqualTo("FF01");
+        assertThat(infos.getListInvoiceRefsRejected()).isEmpty();
+    }
+
+    @Test
+    public void missing_group_information_is_rejected() {
+        assertThatThrownBy(() -> read("<OrgnlPmtInfAndSts>" + transaction("1", "11", "RJCT") + "</OrgnlPmtInfAndSts>")).isInstanceOf(BusinessException.class)
+            .hasMessageContaining("OriginalGroupInformationAndStatus");
+    }
+
+    private static String transaction(String instructionId, String endToEndId, String status) {
+        return "<TxInfAndSts><OrgnlInstrId>" + instructionId + "</OrgnlInstrId><OrgnlEndToEndId>" + endToEndId + "</OrgnlEndToEndId><TxSts>" + status
+                + "</TxSts><StsRsnInf><Rsn><Cd>AM04</Cd></Rsn></StsRsnInf></TxInfAndSts>";
+    }
+
+    private static DDRejectFileInfos read(String report) throws Exception {
+        String document = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><Document xmlns=\"" + NAMESPACE + "\"><CstmrPmtStsRpt><GrpHdr><MsgId>BANK-1</MsgId></GrpHdr>" + report
+                + "</CstmrPmtStsRpt></Document>";
+        return Pain002StreamReader.read(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)), "pain002.xml");
+    }
+}
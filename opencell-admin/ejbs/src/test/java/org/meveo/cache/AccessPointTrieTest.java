@@ -0,0 +1,59 @@
+package org.meveo.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.meveo.model.shared.DateUtils;
+
+public class AccessPointTrieTest {
+
+    private static final Date JAN = DateUtils.newDate(2024, 0, 1, 0, 0, 0);
+
+    private static final Date FEB = DateUtils.newDate(2024, 1, 1, 0, 0, 0);
+
+    private static final Date MAR = DateUtils.newDate(2024, 2, 1, 0, 0, 0);
+
+    @Test
+    public void the_longest_prefix_wins() {
+
+        AccessPointTrie trie = new AccessPointTrie(Arrays.asList(new AccessPointInterval(1L, "33", 10L, null, null), new AccessPointInterval(2L, "3361", 20L, null, null),
+            new AccessPointInterval(3L, "336123", 30L, null, null), new AccessPointInterval(4L, "32", 40L, null, null)));
+
+        assertThat(trie.size()).isEqualTo(4);
+        assertThat(trie.getLongestPrefixMatch("33612345678", FEB).get(0).getAccessId()).isEqualTo(3L);
+        assertThat(trie.getLongestPrefixMatch("33619999", FEB).get(0).getAccessId()).isEqualTo(2L);
+        assertThat(trie.getLongestPrefixMatch("3361", FEB).get(0).getAccessId()).isEqualTo(2L);
+        assertThat(trie.getLongestPrefixMatch("3370", FEB).get(0).getAccessId()).isEqualTo(1L);
+        assertThat(trie.getLongestPrefixMatch("3", FEB)).isEmpty();
+        assertThat(trie.getLongestPrefixMatch("44", FEB)).isEmpty();
+    }
+
+    @Test
+    public void a_valid_prefix_wins_over_a_longer_expired_one() {
+
+        AccessPointTrie trie = new AccessPointTrie(Arrays.asList(new AccessPointInterval(1L, "33", 10L, null, null), new AccessPointInterval(2L, "3361", 20L, JAN, FEB),
+            new AccessPointInterval(3L, "3361", 30L, MAR, null)));
+
+        List<AccessPointInterval> matched = trie.getLongestPrefixMatch("33612345678", DateUtils.newDate(2024, 0, 15, 0, 0, 0));
+        assertThat(matched).extracting(AccessPointInterval::getAccessId).containsExactly(2L, 3L);
+
+        assertThat(trie.getLongestPrefixMatch("33612345678", FEB).get(0).getAccessId()).isEqualTo(1L);
+        assertThat(trie.getLongestPrefixMatch("33612345678", MAR)).extracting(AccessPointInterval::getAccessId).containsExactly(2L, 3L);
+    }
+
+    @Test
+    public void interval_end_date_is_exclusive() {
+
+        List<AccessPointInterval> intervals = AccessPointInterval.sortByStartDate(Arrays.asList(new AccessPointInterval(2L, "33", 20L, FEB, MAR), new AccessPointInterval(1L, "33", 10L, JAN, FEB)));
+
+        assertThat(intervals.get(0).getAccessId()).isEqualTo(1L);
+        assertThat(AccessPointInterval.isAnyValidOn(intervals, JAN)).isTrue();
+        assertThat(AccessPointInterval.isAnyValidOn(intervals, FEB)).isTrue();
+        assertThat(AccessPointInterval.isAnyValidOn(intervals, MAR)).isFalse();
+        assertThat(intervals.get(0).isValidOn(FEB)).isFalse();
+    }
+}
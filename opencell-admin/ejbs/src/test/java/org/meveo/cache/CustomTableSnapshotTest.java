@@ -0,0 +1,66 @@
+package org.meveo.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.meveo.model.shared.DateUtils;
+
+public class CustomTableSnapshotTest {
+
+    private static Map<String, Object> record(Object... values) {
+        Map<String, Object> record = new HashMap<>();
+        for (int i = 0; i < values.length; i = i + 2) {
+            record.put((String) values[i], values[i + 1]);
+        }
+        return record;
+    }
+
+    @Test
+    public void records_are_matched_by_multiple_fields_and_the_latest_one_wins() {
+
+        List<Map<String, Object>> records = Arrays.asList(record("id", 1L, "prefix", "33", "country", "FR", "zone", 1L), record("id", 2L, "prefix", "33", "country", "FR", "zone", 2L),
+            record("id", 3L, "prefix", "32", "country", "BE", "zone", 3L));
+
+        CustomTableSnapshot snapshot = new CustomTableSnapshot(records);
+
+        assertThat(snapshot.getRecord(record("prefix", "33", "country", "fr")).get("zone")).isEqualTo(2L);
+        assertThat(snapshot.getRecord(record("zone", new BigDecimal("3.00"))).get("prefix")).isEqualTo("32");
+        assertThat(snapshot.getRecord(record("prefix", "33", "country", "BE"))).isNull();
+        assertThat(snapshot.getRecord(record("prefix", "", "country", null)).get("id")).isEqualTo(3L);
+    }
+
+    @Test
+    public void records_are_matched_by_validity_date() {
+
+        Date jan = DateUtils.newDate(2024, 0, 1, 0, 0, 0);
+        Date feb = DateUtils.newDate(2024, 1, 1, 0, 0, 0);
+        Date mar = DateUtils.newDate(2024, 2, 1, 0, 0, 0);
+
+        List<Map<String, Object>> records = Arrays.asList(record("id", 1L, "code", "A", "valid_from", jan, "valid_to", mar, "valid_priority", 1, "price", 10),
+            record("id", 2L, "code", "A", "valid_from", feb, "valid_to", mar, "valid_priority", 1, "price", 20),
+            record("id", 3L, "code", "A", "valid_from", jan, "valid_to", mar, "valid_priority", 5, "price", 30), record("id", 4L, "code", "B", "valid_from", jan, "valid_to", feb, "price", 40));
+
+        CustomTableSnapshot snapshot = new CustomTableSnapshot(records);
+
+        assertThat(snapshot.getRecord(record("code", "A"), DateUtils.newDate(2024, 1, 15, 10, 0, 0)).get("price")).isEqualTo(30);
+        assertThat(snapshot.getRecord(record("code", "B"), DateUtils.newDate(2024, 0, 31, 23, 0, 0)).get("price")).isEqualTo(40);
+        assertThat(snapshot.getRecord(record("code", "B"), feb)).isNull();
+    }
+
+    @Test
+    public void only_plain_criteria_are_applicable() {
+
+        assertThat(CustomTableSnapshot.isApplicable(record("prefix", "33", "zone", 1L), "zone")).isTrue();
+        assertThat(CustomTableSnapshot.isApplicable(record("prefix", "3*"), "zone")).isFalse();
+        assertThat(CustomTableSnapshot.isApplicable(record("fromRange zone", 1L), "zone")).isFalse();
+        assertThat(CustomTableSnapshot.isApplicable(record("created", new Date()), "zone")).isFalse();
+        assertThat(CustomTableSnapshot.isApplicable(record("prefix", "33"), "max(zone)")).isFalse();
+    }
+}
@@ -0,0 +1,60 @@
+package org.meveo.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Path;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class EdrBloomFilterTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void added_values_are_found_and_reported_as_new_once() throws Exception {
+        try (EdrBloomFilter filter = EdrBloomFilter.open(temporaryFolder.getRoot().toPath().resolve("1.bloom"), 1000, 0.001)) {
+            for (int i = 0; i < 1000; i++) {
+                assertThat(filter.put("record" + i)).isTrue();
+            }
+            for (int i = 0; i < 1000; i++) {
+                assertThat(filter.mightContain("record" + i)).isTrue();
+                assertThat(filter.put("record" + i)).isFalse();
+            }
+        }
+    }
+
+    @Test
+    public void false_positives_are_close_to_desired_probability() throws Exception {
+        try (EdrBloomFilter filter = EdrBloomFilter.open(temporaryFolder.getRoot().toPath().resolve("1.bloom"), 10000, 0.01)) {
+            for (int i = 0; i < 10000; i++) {
+                filter.put("record" + i);
+            }
+            int falsePositives = 0;
+            for (int i = 10000; i < 20000; i++) {
+                if (filter.mightContain("record" + i)) {
+                    falsePositives++;
+                }
+            }
+            assertThat(falsePositives).isLessThan(200);
+        }
+    }
+
+    @Test
+    public void filter_is_reopened_from_file() throws Exception {
+        Path file = temporaryFolder.getRoot().toPath().resolve("1.bloom");
+        long numBits;
+        try (EdrBloomFilter filter = EdrBloomFilter.open(file, 1000, 0.001)) {
+            filter.put("record");
+            numBits = filter.getNumBits();
+        }
+
+        try (EdrBloomFilter filter = EdrBloomFilter.open(file, 5000, 0.01)) {
+            assertThat(filter.getNumBits()).isEqualTo(numBits);
+            assertThat(filter.mightContain("record")).isTrue();
+            assertThat(filter.mightContain("other")).isFalse();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package org.meveo.cache;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.meveo.model.shared.DateUtils;
+
+public class TaxMappingIntervalIndexTest {
+
+    private static final Date JAN = DateUtils.newDate(2024, 0, 1, 0, 0, 0);
+
+    private static final Date FEB = DateUtils.newDate(2024, 1, 1, 0, 0, 0);
+
+    private static final Date MAR = DateUtils.newDate(2024, 2, 1, 0, 0, 0);
+
+    private static final Date APR = DateUtils.newDate(2024, 3, 1, 0, 0, 0);
+
+    @Test
+    public void candidates_valid_on_a_date_keep_precedence_order() {
+
+        TaxMappingIntervalIndex index = new TaxMappingIntervalIndex(Arrays.asList(new TaxMappingCandidate(1L, 10L, "#{true}", null, null, FEB, MAR),
+            new TaxMappingCandidate(2L, 20L, null, null, null, null, FEB), new TaxMappingCandidate(3L, 30L, null, null, null, JAN, null)));
+
+        assertThat(index.getNbBuckets()).isEqualTo(4);
+        assertThat(index.getCandidates(DateUtils.newDate(2023, 5, 1, 0, 0, 0))).extracting(TaxMappingCandidate::getTaxMappingId).containsExactly(2L);
+        assertThat(index.getCandidates(JAN)).extracting(TaxMappingCandidate::getTaxMappingId).containsExactly(2L, 3L);
+        assertThat(index.getCandidates(FEB)).extracting(TaxMappingCandidate::getTaxMappingId).containsExactly(1L, 3L);
+        assertThat(index.getCandidates(DateUtils.newDate(2024, 1, 15, 0, 0, 0))).extracting(TaxMappingCandidate::getTaxMappingId).containsExactly(1L, 3L);
+        assertThat(index.getCandidates(MAR)).extracting(TaxMappingCandidate::getTaxMappingId).containsExactly(3L);
+        assertThat(index.getCandidates(APR)).extracting(TaxMappingCandidate::getTaxMappingId).containsExactly(3L);
+    }
+
+    @Test
+    public void no_candidates_gives_a_single_empty_bucket() {
+
+        TaxMappingIntervalIndex index = new TaxMappingIntervalIndex(List.of());
+
+        assertThat(index.getNbBuckets()).isEqualTo(1);
+        assertThat(index.getCandidates(JAN)).isEmpty();
+    }
+}
@@ -0,0 +1,63 @@
+package org.meveo.commons.utils.lock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Test;
+import org.meveo.commons.utils.lock.LockProvider.AcquiredLock;
+
+public class LocalLockProviderTest {
+
+    @Test
+    public void locks_of_different_identifiers_do_not_block_each_other() throws Exception {
+
+        LocalLockProvider provider = new LocalLockProvider();
+        AcquiredLock lock = provider.lock(5L);
+
+        AcquiredLock otherIdLock = CompletableFuture.supplyAsync(() -> {
+            AcquiredLock acquired = provider.tryLock(6L);
+            if (acquired != null) {
+                acquired.unlock();
+            }
+            return acquired;
+        }).get();
+        assertThat(otherIdLock).isNotNull();
+
+        lock.unlock();
+    }
+
+    @Test
+    public void lock_held_by_another_thread_is_not_acquired_until_released() throws Exception {
+
+        LocalLockProvider provider = new LocalLockProvider();
+        AcquiredLock lock = provider.lock(5L);
+
+        assertThat(CompletableFuture.supplyAsync(() -> provider.tryLock(5L)).get()).isNull();
+
+        lock.unlock();
+
+        AcquiredLock otherThreadLock = CompletableFuture.supplyAsync(() -> {
+            AcquiredLock acquired = provider.tryLock(5L);
+            acquired.unlock();
+            return acquired;
+        }).get();
+        assertThat(otherThreadLock).isNotNull();
+    }
+
+    @Test
+    public void lock_is_removed_once_released_by_all_holders_and_waiters() throws Exception {
+
+        LocalLockProvider provider = new LocalLockProvider();
+        AcquiredLock lock = provider.lock(5L);
+        assertThat(provider.getLockCount()).isEqualTo(1);
+
+        CompletableFuture<Void> waiter = CompletableFuture.runAsync(() -> provider.lock(5L).unlock());
+        CompletableFuture.runAsync(() -> assertThat(provider.tryLock(5L)).isNull()).get();
+
+        lock.unlock();
+        waiter.get();
+
+        assertThat(provider.getLockCount()).isZero();
+    }
+}
@@ -0,0 +1,63 @@
+package org.meveo.service.billing.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class BillingRunCheckpointTrackerTest {
+
+    @Test
+    public void billing_accounts_are_split_into_partitions_of_consecutive_ids() {
+
+        List<BillingRunCheckpoint> partitions = BillingRunCheckpoint.split(Arrays.asList(3L, 5L, 8L, 13L, 21L), 2);
+
+        assertThat(partitions).hasSize(3);
+        assertThat(partitions.get(0).getFromBillingAccountId()).isEqualTo(3L);
+        assertThat(partitions.get(0).getToBillingAccountId()).isEqualTo(5L);
+        assertThat(partitions.get(2).getPartitionNumber()).isEqualTo(2);
+        assertThat(partitions.get(2).getNbAccounts()).isEqualTo(1);
+        assertThat(partitions.get(2).contains(21L)).isTrue();
+        assertThat(partitions.get(1).contains(10L)).isTrue();
+        assertThat(partitions.get(1).contains(14L)).isFalse();
+    }
+
+    @Test
+    public void partition_is_completed_once_all_its_items_are_processed() {
+
+        BillingRunCheckpointTracker tracker = new BillingRunCheckpointTracker(BillingRunCheckpoint.split(Arrays.asList(1L, 2L, 3L, 4L), 2));
+        tracker.addItems(1L, 2);
+        tracker.addItems(2L, 1);
+        tracker.addItems(4L, 1);
+
+        assertThat(tracker.completeEmptyPartitions()).isEmpty();
+        assertThat(tracker.itemsProcessed(Arrays.asList(1L, 2L))).isEmpty();
+        assertThat(tracker.itemsProcessed(Arrays.asList(1L, 4L))).extracting(BillingRunCheckpoint::getPartitionNumber).containsExactly(0, 1);
+        assertThat(tracker.getNbPartitionsCompleted()).isEqualTo(2);
+        assertThat(tracker.getNbAccountsRemaining()).isZero();
+    }
+
+    @Test
+    public void completed_partitions_are_skipped_on_resume() {
+
+        List<BillingRunCheckpoint> checkpoints = Arrays.asList(new BillingRunCheckpoint(0, 1L, 10L, 5, true), new BillingRunCheckpoint(1, 11L, 20L, 5, false),
+            new BillingRunCheckpoint(2, 21L, 30L, 5, false));
+        BillingRunCheckpointTracker tracker = new BillingRunCheckpointTracker(checkpoints);
+
+        List<Long> untracked = new ArrayList<>();
+        Map<BillingRunCheckpoint, List<Long>> pending = tracker.groupByPendingPartition(Arrays.asList(2L, 12L, 15L, 40L), untracked);
+
+        assertThat(pending.keySet()).extracting(BillingRunCheckpoint::getPartitionNumber).containsExactly(1, 2);
+        assertThat(pending.get(checkpoints.get(1))).containsExactly(12L, 15L);
+        assertThat(pending.get(checkpoints.get(2))).isEmpty();
+        assertThat(untracked).containsExactly(40L);
+
+        tracker.addItems(12L, 1);
+        assertThat(tracker.completeEmptyPartitions()).containsExactly(checkpoints.get(2));
+        assertThat(tracker.getNbAccountsRemaining()).isEqualTo(5);
+    }
+}
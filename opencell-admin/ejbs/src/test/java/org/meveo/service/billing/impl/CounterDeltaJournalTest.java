@@ -0,0 +1,70 @@
+package org.meveo.service.billing.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.meveo.cache.CacheKeyLong;
+
+public class CounterDeltaJournalTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void changes_are_coalesced_by_provider_and_counter_period() throws Exception {
+
+        Path dir = temporaryFolder.getRoot().toPath();
+        CounterDeltaJournal journal = new CounterDeltaJournal(dir);
+
+        journal.append(null, 1L, new BigDecimal("1.5"), null);
+        journal.append(null, 1L, new BigDecimal("2"), null);
+        journal.append("TENANT", 1L, new BigDecimal("10"), null);
+        journal.append(null, 2L, new BigDecimal("3"), "FR");
+        journal.append(null, 2L, new BigDecimal("4"), "BE");
+        journal.append(null, 2L, new BigDecimal("5"), "FR");
+
+        long segment = journal.rotate();
+        journal.append(null, 1L, new BigDecimal("100"), null);
+
+        Map<CacheKeyLong, CounterDelta> deltas = journal.read(segment);
+
+        assertThat(deltas.size()).isEqualTo(3);
+        assertThat(deltas.get(new CacheKeyLong(null, 1L)).getValue()).isEqualByComparingTo("3.5");
+        assertThat(deltas.get(new CacheKeyLong("TENANT", 1L)).getValue()).isEqualByComparingTo("10");
+        assertThat(deltas.get(new CacheKeyLong(null, 2L)).getValue()).isEqualByComparingTo("12");
+        assertThat(journal.read(journal.getSegment()).get(new CacheKeyLong(null, 1L)).getValue()).isEqualByComparingTo("100");
+    }
+
+    @Test
+    public void segments_left_over_are_recovered_and_a_partial_record_is_ignored() throws Exception {
+
+        Path dir = temporaryFolder.getRoot().toPath();
+        CounterDeltaJournal journal = new CounterDeltaJournal(dir);
+        journal.append(null, 1L, new BigDecimal("7"), null);
+        long crashedSegment = journal.getSegment();
+
+        // Simulate a crash in the middle of writing a record
+        Path segmentFile = dir.resolve("counters-" + crashedSegment + ".journal");
+        byte[] record = Files.readAllBytes(segmentFile);
+        Files.write(segmentFile, Arrays.copyOf(record, 5), StandardOpenOption.APPEND);
+
+        CounterDeltaJournal reopened = new CounterDeltaJournal(dir);
+
+        assertThat(reopened.getSegment()).isGreaterThan(crashedSegment);
+        assertThat(reopened.listSegments()).containsExactly(crashedSegment, reopened.getSegment());
+        assertThat(reopened.read(crashedSegment).get(new CacheKeyLong(null, 1L)).getValue()).isEqualByComparingTo("7");
+
+        reopened.delete(crashedSegment);
+        reopened.close();
+        assertThat(reopened.listSegments()).isEmpty();
+    }
+}
@@ -0,0 +1,138 @@
+package org.meveo.service.billing.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Test;
+import org.meveo.admin.exception.BusinessException;
+import org.meveo.service.billing.impl.InvoicePdfPipeline.InvoicePdfRendering;
+import org.w3c.dom.Document;
+
+import net.sf.jasperreports.engine.JasperPrint;
+
+public class InvoicePdfPipelineTest {
+
+    private final Map<String, Document> documents = new ConcurrentHashMap<>();
+
+    private final List<String> exported = Collections.synchronizedList(new ArrayList<>());
+
+    private InvoicePdfPipeline pipeline;
+
+    @After
+    public void tearDown() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    public void parsed_documents_follow_the_submission_order_and_every_invoice_is_exported() throws Exception {
+
+        pipeline = new StubPipeline(null);
+
+        List<InvoicePdfRendering> renderings = renderings(20);
+        List<Future<Document>> parses = new ArrayList<>();
+        for (InvoicePdfRendering rendering : renderings) {
+            parses.add(pipeline.submitParse(rendering));
+        }
+
+        List<Future<?>> exports = new ArrayList<>();
+        for (int i = 0; i < renderings.size(); i++) {
+            assertThat(parses.get(i).get()).isSameAs(documents.get(renderings.get(i).getPdfFullFilename()));
+            exports.add(pipeline.submitExport(renderings.get(i), new JasperPrint()));
+        }
+        for (Future<?> export : exports) {
+            export.get();
+        }
+
+        assertThat(exported).hasSize(20).containsExactlyInAnyOrderElementsOf(renderings.stream().map(InvoicePdfRendering::getPdfFullFilename).toList());
+        assertThat(pipeline.getNbInvoices()).isEqualTo(20);
+    }
+
+    @Test
+    public void a_failing_invoice_does_not_fail_the_other_invoices() throws Exception {
+
+        pipeline = new StubPipeline("invoice_3.pdf");
+
+        List<InvoicePdfRendering> renderings = renderings(6);
+        List<Future<Document>> parses = new ArrayList<>();
+        for (InvoicePdfRendering rendering : renderings) {
+            parses.add(pipeline.submitParse(rendering));
+        }
+
+        List<Future<?>> exports = new ArrayList<>();
+        for (int i = 0; i < renderings.size(); i++) {
+            if (i == 3) {
+                Future<Document> failedParse = parses.get(i);
+                assertThatThrownBy(failedParse::get).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(BusinessException.class);
+            } else {
+                assertThat(parses.get(i).get()).isNotNull();
+            }
+            exports.add(pipeline.submitExport(renderings.get(i), new JasperPrint()));
+        }
+
+        for (int i = 0; i < exports.size(); i++) {
+            if (i == 3) {
+                Future<?> failedExport = exports.get(i);
+                assertThatThrownBy(failedExport::get).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(BusinessException.class);
+            } else {
+                exports.get(i).get();
+            }
+        }
+
+        assertThat(exported).hasSize(5).doesNotContain("invoice_3.pdf");
+        assertThat(pipeline.getNbInvoices()).isEqualTo(5);
+    }
+
+    private List<InvoicePdfRendering> renderings(int nbInvoices) {
+        List<InvoicePdfRendering> renderings = new ArrayList<>(nbInvoices);
+        for (int i = 0; i < nbInvoices; i++) {
+            renderings.add(new InvoicePdfRendering(null, null, null, null, "invoice_" + i + ".pdf", null));
+        }
+        return renderings;
+    }
+
+    /**
+     * Pipeline with parse and export stages that do not touch a file system. Both stages fail for an invoice with a given PDF file name.
+     */
+    private class StubPipeline extends InvoicePdfPipeline {
+
+        private final String failingPdfFilename;
+
+        StubPipeline(String failingPdfFilename) {
+            super(3, 2, 2, Executors.defaultThreadFactory());
+            this.failingPdfFilename = failingPdfFilename;
+        }
+
+        @Override
+        protected Document runParse(InvoicePdfRendering rendering) throws BusinessException {
+            failIfRequested(rendering);
+            Document document = mock(Document.class);
+            documents.put(rendering.getPdfFullFilename(), document);
+            return document;
+        }
+
+        @Override
+        protected void runExport(InvoicePdfRendering rendering, JasperPrint jasperPrint) throws BusinessException {
+            failIfRequested(rendering);
+            exported.add(rendering.getPdfFullFilename());
+        }
+
+        private void failIfRequested(InvoicePdfRendering rendering) throws BusinessException {
+            if (rendering.getPdfFullFilename().equals(failingPdfFilename)) {
+                throw new BusinessException("Failed to render " + rendering.getPdfFullFilename());
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.meveo.service.billing.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.meveo.model.catalog.PricePlanMatrixForRating;
+
+public class PricePlanFiltersTest {
+
+    private final Date operationDate = new Date(1000000L);
+
+    private final PricePlanFilters.Criteria criteria = new PricePlanFilters.Criteria("CHARGE", 1L, null, null, null, "param1", null, null, operationDate, 0L, operationDate, operationDate, operationDate,
+        BigDecimal.ONE);
+
+    @Test
+    public void all_price_plans_match_when_filters_are_disabled() {
+        PricePlanFilters filters = PricePlanFilters.of(Map.of("pricePlanFilters.enableSeller", Boolean.TRUE));
+
+        assertThat(filters.isMatch(createPricePlan(2L, "other", null, null), criteria)).isTrue();
+        assertThat(filters.isMatchLong()).isFalse();
+    }
+
+    @Test
+    public void empty_price_plan_values_match_any_criteria() {
+        PricePlanFilters filters = PricePlanFilters.of(getAdvancedSettings());
+
+        assertThat(filters.isMatch(createPricePlan(null, null, null, null), criteria)).isTrue();
+        assertThat(filters.isMatch(createPricePlan(1L, "param1", BigDecimal.TEN, operationDate), criteria)).isTrue();
+    }
+
+    @Test
+    public void price_plan_values_are_compared_like_in_query() {
+        PricePlanFilters filters = PricePlanFilters.of(getAdvancedSettings());
+
+        assertThat(filters.isMatch(createPricePlan(2L, null, null, null), criteria)).isFalse();
+        assertThat(filters.isMatch(createPricePlan(null, "param2", null, null), criteria)).isFalse();
+        assertThat(filters.isMatch(createPricePlan(null, null, BigDecimal.ONE, null), criteria)).isFalse();
+        assertThat(filters.isMatch(createPricePlan(null, null, null, new Date(operationDate.getTime() - 1)), criteria)).isFalse();
+    }
+
+    @Test
+    public void query_parameters_follow_enabled_filters() {
+        PricePlanFilters filters = PricePlanFilters.of(getAdvancedSettings());
+        Map<String, Object> queryParams = new HashMap<>();
+
+        String query = filters.buildQuery(criteria, queryParams);
+
+        assertThat(query).startsWith("SELECT ppm FROM PricePlanMatrix ppm").endsWith(" ORDER BY ppm.priority ASC, ppm.id");
+        assertThat(queryParams).containsOnlyKeys("chargeCode", "sellerId", "param1", "quantity", "startDate", "endDate");
+    }
+
+    private Map<String, Object> getAdvancedSettings() {
+        Map<String, Object> advancedSettings = new HashMap<>();
+        advancedSettings.put("pricePlanFilters.enablePricePlanFilters", Boolean.TRUE);
+        advancedSettings.put("pricePlanFilters.enableSeller", Boolean.TRUE);
+        advancedSettings.put("pricePlanFilters.enableCriteria1Value", 1);
+        advancedSettings.put("pricePlanFilters.enableMaxQuantity", Boolean.TRUE);
+        advancedSettings.put("pricePlanFilters.enableValidityDate", Boolean.TRUE);
+        return advancedSettings;
+    }
+
+    private PricePlanMatrixForRating createPricePlan(Long sellerId, String criteria1Value, BigDecimal maxQuantity, Date validityDate) {
+        return new PricePlanMatrixForRating(1L, "PP", null, null, null, null, null, null, maxQuantity, null, null, criteria1Value, null, null, null, null, null, null, null, null, null, 0, sellerId, null, null, null,
+            null, null, null, null, validityDate);
+    }
+}
@@ -0,0 +1,37 @@
+package org.meveo.service.billing.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+import org.meveo.model.billing.RatedTransactionStatusEnum;
+import org.meveo.model.shared.DateUtils;
+
+public class RatedTransactionCopyWriterTest {
+
+    @Test
+    public void values_are_written_in_copy_text_format() {
+
+        assertThat(RatedTransactionCopyWriter.appendValue(new StringBuilder(), null).toString()).isEqualTo("\\N");
+        assertThat(RatedTransactionCopyWriter.appendValue(new StringBuilder(), "a\tb\nc\\d\re").toString()).isEqualTo("a\\tb\\nc\\\\d\\re");
+        assertThat(RatedTransactionCopyWriter.appendValue(new StringBuilder(), new BigDecimal("1E+3")).toString()).isEqualTo("1000");
+        assertThat(RatedTransactionCopyWriter.appendValue(new StringBuilder(), true).toString()).isEqualTo("1");
+        assertThat(RatedTransactionCopyWriter.appendValue(new StringBuilder(), RatedTransactionStatusEnum.OPEN).toString()).isEqualTo("OPEN");
+        assertThat(RatedTransactionCopyWriter.appendValue(new StringBuilder(), DateUtils.newDate(2024, 1, 29, 13, 5, 7)).toString()).isEqualTo("2024-02-29 13:05:07.0");
+    }
+
+    @Test
+    public void identifiers_are_taken_from_blocks_reserved_by_sequence_values() {
+
+        Long[] ids = new Long[7];
+        int filled = RatedTransactionCopyWriter.addIdBlock(ids, 0, 1, 5);
+        assertThat(filled).isEqualTo(1);
+
+        filled = RatedTransactionCopyWriter.addIdBlock(ids, filled, 10, 5);
+        filled = RatedTransactionCopyWriter.addIdBlock(ids, filled, 20, 5);
+
+        assertThat(filled).isEqualTo(7);
+        assertThat(ids).containsExactly(1L, 6L, 7L, 8L, 9L, 10L, 16L);
+    }
+}
@@ -0,0 +1,150 @@
+package org.meveo.service.billing.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public class XmlInvoiceStreamWriterTest {
+
+    private Document doc;
+
+    @Before
+    public void setUp() throws Exception {
+        doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+    }
+
+    @Test
+    public void written_document_is_same_as_transformed() throws Exception {
+        Element invoice = createInvoice();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (XmlInvoiceStreamWriter writer = new XmlInvoiceStreamWriter(out)) {
+            writer.writeStartDocument();
+            writer.writeElement(invoice);
+            writer.writeEndDocument();
+        }
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(transform());
+    }
+
+    @Test
+    public void explicitly_opened_elements_are_same_as_transformed() throws Exception {
+        Element invoice = createInvoice();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (XmlInvoiceStreamWriter writer = new XmlInvoiceStreamWriter(out)) {
+            writer.writeStartDocument();
+            writer.writeStartElement(invoice);
+            writer.writeElement((Element) invoice.getFirstChild());
+            Element subCategory = (Element) invoice.getLastChild();
+            writer.writeStartElement(subCategory);
+            writer.writeElement((Element) subCategory.getFirstChild());
+            writer.writeElement((Element) subCategory.getLastChild());
+            writer.writeEndElement();
+            writer.writeEndDocument();
+        }
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(transform());
+    }
+
+    @Test
+    public void explicitly_opened_element_without_children_is_empty() throws Exception {
+        Element invoice = doc.createElement("invoice");
+        invoice.setAttribute("number", "INV-1");
+        doc.appendChild(invoice);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (XmlInvoiceStreamWriter writer = new XmlInvoiceStreamWriter(out)) {
+            writer.writeStartDocument();
+            writer.writeStartElement(invoice);
+            writer.writeEndDocument();
+        }
+
+        assertThat(out.toString(StandardCharsets.UTF_8)).isEqualTo(transform());
+    }
+
+    @Test
+    public void cdata_sections_are_same_as_transformed() throws Exception {
+        Element invoice = doc.createElement("invoice");
+        doc.appendChild(invoice);
+
+        Element comment = doc.createElement("comment");
+        comment.appendChild(doc.createCDATASection("Tom & <Jerry> ]]> done\nline \u0085 😀"));
+        invoice.appendChild(comment);
+        Element blank = doc.createElement("parameterExtra");
+        blank.appendChild(doc.createCDATASection(" "));
+        invoice.appendChild(blank);
+        Element mixed = doc.createElement("mixed");
+        mixed.appendChild(doc.createTextNode("text & "));
+        mixed.appendChild(doc.createCDATASection("<cdata>"));
+        mixed.appendChild(doc.createElement("child"));
+        mixed.appendChild(doc.createCDATASection("\nafter child"));
+        invoice.appendChild(mixed);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (XmlInvoiceStreamWriter writer = new XmlInvoiceStreamWriter(out)) {
+            writer.writeStartDocument();
+            writer.writeElement(invoice);
+            writer.writeEndDocument();
+        }
+
+        String written = out.toString(StandardCharsets.UTF_8);
+        assertThat(written).contains("<comment><![CDATA[Tom & <Jerry> ]]]]><![CDATA[> done");
+        assertThat(written).isEqualTo(transform());
+    }
+
+    private Element createInvoice() {
+        Element invoice = doc.createElement("invoice");
+        invoice.setAttribute("number", "INV-1");
+        invoice.setAttribute("description", "Tom & \"Jerry\" <sàrl>\nline\ttab");
+        doc.appendChild(invoice);
+
+        Element header = doc.createElement("header");
+        invoice.appendChild(header);
+        Element label = doc.createElement("label");
+        label.appendChild(doc.createTextNode("Première ligne & <seconde>\nligne \u0085 😀"));
+        header.appendChild(label);
+        Element empty = doc.createElement("empty");
+        empty.appendChild(doc.createTextNode(""));
+        header.appendChild(empty);
+        Element mixed = doc.createElement("mixed");
+        mixed.appendChild(doc.createTextNode("\ntext"));
+        mixed.appendChild(doc.createElement("child"));
+        header.appendChild(mixed);
+
+        Element subCategory = doc.createElement("subCategory");
+        subCategory.setAttribute("code", "SUB_CAT");
+        invoice.appendChild(subCategory);
+        for (int i = 0; i < 2; i++) {
+            Element line = doc.createElement("line");
+            line.setAttribute("code", "LINE_" + i);
+            Element amount = doc.createElement("amountWithoutTax");
+            amount.appendChild(doc.createTextNode("10.5"));
+            line.appendChild(amount);
+            subCategory.appendChild(line);
+        }
+        return invoice;
+    }
+
+    private String transform() throws Exception {
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transformer.transform(new DOMSource(doc), new StreamResult(out));
+        return out.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,111 @@
+package org.meveo.service.billing.impl.article;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.meveo.admin.exception.BusinessException;
+import org.meveo.admin.exception.RatingException;
+import org.meveo.model.article.AccountingArticle;
+import org.meveo.model.article.ArticleMappingLine;
+import org.meveo.model.article.AttributeMapping;
+import org.meveo.model.catalog.ChargeTemplate;
+import org.meveo.model.catalog.OneShotChargeTemplate;
+import org.meveo.model.cpq.Attribute;
+import org.meveo.model.cpq.Product;
+import org.meveo.model.cpq.enums.AttributeTypeEnum;
+import org.meveo.model.cpq.enums.OperatorEnum;
+import org.meveo.model.cpq.enums.RuleOperatorEnum;
+
+public class ArticleMappingDecisionTableTest {
+
+    @Test
+    public void lines_are_looked_up_from_most_to_least_precise() {
+
+        List<ArticleMappingLine> lines = Arrays.asList(line(1L, 10L, 20L, null), line(2L, null, 20L, null), line(3L, 10L, null, null), line(4L, null, null, "P1"));
+        ArticleMappingDecisionTable decisionTable = new ArticleMappingDecisionTable(lines, ";");
+
+        assertThat(resolve(decisionTable, 10L, 20L, null, new HashMap<>())).isEqualTo(1L);
+        assertThat(resolve(decisionTable, 11L, 20L, null, new HashMap<>())).isEqualTo(2L);
+        assertThat(resolve(decisionTable, 10L, 21L, null, new HashMap<>())).isEqualTo(3L);
+        assertThat(resolve(decisionTable, 11L, 21L, new String[] { "P1", null, null }, new HashMap<>())).isEqualTo(4L);
+        assertThat(resolve(decisionTable, 11L, 21L, new String[] { "P2", null, null }, new HashMap<>())).isNull();
+    }
+
+    @Test
+    public void full_attribute_match_wins_over_partial_match() {
+
+        ArticleMappingLine gold = line(1L, 10L, null, null);
+        gold.setAttributesMapping(new ArrayList<>(Arrays.asList(mapping("LEVEL", AttributeTypeEnum.TEXT, "GOLD", RuleOperatorEnum.EQUAL),
+            mapping("SPEED", AttributeTypeEnum.NUMERIC, "100", RuleOperatorEnum.GREATER_THAN_OR_EQUAL))));
+
+        ArticleMappingLine speed = line(2L, 10L, null, null);
+        speed.setAttributesMapping(new ArrayList<>(Arrays.asList(mapping("SPEED", AttributeTypeEnum.NUMERIC, "100", RuleOperatorEnum.LESS_THAN))));
+
+        ArticleMappingDecisionTable decisionTable = new ArticleMappingDecisionTable(Arrays.asList(gold, speed), ";");
+
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("LEVEL", "GOLD");
+        attributes.put("SPEED", 200d);
+        assertThat(resolve(decisionTable, 10L, null, null, attributes)).isEqualTo(1L);
+
+        attributes.put("SPEED", 50d);
+        assertThat(resolve(decisionTable, 10L, null, null, attributes)).isEqualTo(2L);
+    }
+
+    @Test
+    public void ambiguous_matches_are_rejected() {
+
+        ArticleMappingDecisionTable decisionTable = new ArticleMappingDecisionTable(Arrays.asList(line(1L, 10L, null, null), line(2L, 10L, null, null)), ";");
+        assertThatThrownBy(() -> resolve(decisionTable, 10L, null, null, new HashMap<>())).isInstanceOf(RatingException.class);
+
+        ArticleMappingLine first = line(3L, 11L, null, null);
+        first.setAttributeOperator(OperatorEnum.OR);
+        first.setAttributesMapping(new ArrayList<>(Arrays.asList(mapping("LEVEL", AttributeTypeEnum.TEXT, "GOLD", RuleOperatorEnum.EQUAL))));
+        ArticleMappingLine second = line(4L, 11L, null, null);
+        second.setAttributesMapping(new ArrayList<>(Arrays.asList(mapping("OPTIONS", AttributeTypeEnum.LIST_TEXT, "A;B", RuleOperatorEnum.EQUAL))));
+
+        ArticleMappingDecisionTable partialDecisionTable = new ArticleMappingDecisionTable(Arrays.asList(first, second), ";");
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("LEVEL", "GOLD");
+        attributes.put("OPTIONS", "A;B");
+        attributes.put("SPEED", 10);
+        assertThatThrownBy(() -> resolve(partialDecisionTable, 11L, null, null, attributes)).isInstanceOf(BusinessException.class);
+    }
+
+    private static Long resolve(ArticleMappingDecisionTable decisionTable, Long productId, Long chargeTemplateId, String[] parameters, Map<String, Object> attributes) {
+        return decisionTable.resolve(productId, chargeTemplateId, null, parameters, attributes, mappingKeyEL -> true, expression -> expression);
+    }
+
+    private static ArticleMappingLine line(Long articleId, Long productId, Long chargeTemplateId, String parameter1) {
+        ArticleMappingLine line = new ArticleMappingLine();
+        AccountingArticle accountingArticle = new AccountingArticle();
+        accountingArticle.setId(articleId);
+        line.setAccountingArticle(accountingArticle);
+        if (productId != null) {
+            Product product = new Product();
+            product.setId(productId);
+            line.setProduct(product);
+        }
+        if (chargeTemplateId != null) {
+            ChargeTemplate chargeTemplate = new OneShotChargeTemplate();
+            chargeTemplate.setId(chargeTemplateId);
+            line.setChargeTemplate(chargeTemplate);
+        }
+        line.setParameter1(parameter1);
+        return line;
+    }
+
+    private static AttributeMapping mapping(String code, AttributeTypeEnum attributeType, String value, RuleOperatorEnum operator) {
+        Attribute attribute = new Attribute();
+        attribute.setCode(code);
+        attribute.setAttributeType(attributeType);
+        return new AttributeMapping(attribute, value, operator);
+    }
+}
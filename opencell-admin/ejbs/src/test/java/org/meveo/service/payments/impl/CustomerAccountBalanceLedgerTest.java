@@ -0,0 +1,102 @@
+package org.meveo.service.payments.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.meveo.model.payments.AccountOperation;
+import org.meveo.model.payments.CustomerAccount;
+import org.meveo.model.payments.MatchingStatusEnum;
+import org.meveo.model.payments.OperationCategoryEnum;
+import org.meveo.service.payments.impl.CustomerAccountBalanceLedger.Key;
+
+public class CustomerAccountBalanceLedgerTest {
+
+    @Test
+    public void matching_moves_unmatched_amounts_between_statuses() {
+
+        CustomerAccount customerAccount = new CustomerAccount();
+        customerAccount.setId(1L);
+        Date dueDate = new Calendar.Builder().setDate(2026, Calendar.MARCH, 15).setTimeOfDay(14, 30, 0).build().getTime();
+
+        AccountOperation invoice = accountOperation(customerAccount, OperationCategoryEnum.DEBIT, MatchingStatusEnum.O, "100", dueDate);
+        AccountOperation payment = accountOperation(customerAccount, OperationCategoryEnum.CREDIT, MatchingStatusEnum.O, "40", null);
+        List<AccountOperation> matched = Arrays.asList(invoice, payment);
+
+        CustomerAccountBalanceLedger changes = new CustomerAccountBalanceLedger();
+        matched.forEach(changes::subtract);
+
+        invoice.setUnMatchingAmount(new BigDecimal("60"));
+        invoice.setMatchingStatus(MatchingStatusEnum.P);
+        payment.setUnMatchingAmount(BigDecimal.ZERO);
+        payment.setMatchingStatus(MatchingStatusEnum.L);
+        matched.forEach(changes::add);
+
+        Date dueDay = CustomerAccountBalanceLedger.toDueDay(dueDate);
+        Map<Key, BigDecimal> amounts = changes.getChanges();
+
+        assertThat(amounts.size()).isEqualTo(3);
+        assertThat(amounts.get(new Key(1L, MatchingStatusEnum.O, OperationCategoryEnum.DEBIT, dueDay))).isEqualByComparingTo("-100");
+        assertThat(amounts.get(new Key(1L, MatchingStatusEnum.P, OperationCategoryEnum.DEBIT, dueDay))).isEqualByComparingTo("60");
+        assertThat(amounts.get(new Key(1L, MatchingStatusEnum.O, OperationCategoryEnum.CREDIT, CustomerAccountBalanceLedger.NO_DUE_DATE))).isEqualByComparingTo("-40");
+    }
+
+    @Test
+    public void unchanged_and_not_counted_operations_are_omitted() {
+
+        CustomerAccount customerAccount = new CustomerAccount();
+        customerAccount.setId(1L);
+        AccountOperation litigation = accountOperation(customerAccount, OperationCategoryEnum.DEBIT, MatchingStatusEnum.I, "10", new Date());
+        AccountOperation closed = accountOperation(customerAccount, OperationCategoryEnum.DEBIT, MatchingStatusEnum.C, "20", new Date());
+
+        CustomerAccountBalanceLedger changes = new CustomerAccountBalanceLedger();
+        changes.subtract(litigation);
+        changes.add(litigation);
+        changes.add(closed);
+
+        assertThat(changes.isEmpty()).isTrue();
+    }
+
+    @Test
+    public void changes_are_ordered_by_key() {
+
+        Date dueDate = new Calendar.Builder().setDate(2026, Calendar.MARCH, 15).build().getTime();
+
+        CustomerAccountBalanceLedger changes = new CustomerAccountBalanceLedger();
+        changes.add(2L, MatchingStatusEnum.O, OperationCategoryEnum.DEBIT, dueDate, BigDecimal.ONE);
+        changes.add(1L, MatchingStatusEnum.P, OperationCategoryEnum.DEBIT, null, BigDecimal.ONE);
+        changes.add(1L, MatchingStatusEnum.P, OperationCategoryEnum.DEBIT, dueDate, BigDecimal.ONE);
+        changes.add(1L, MatchingStatusEnum.O, OperationCategoryEnum.CREDIT, dueDate, BigDecimal.ONE);
+
+        assertThat(changes.getChanges().keySet()).containsExactly(new Key(1L, MatchingStatusEnum.O, OperationCategoryEnum.CREDIT, dueDate),
+            new Key(1L, MatchingStatusEnum.P, OperationCategoryEnum.DEBIT, dueDate), new Key(1L, MatchingStatusEnum.P, OperationCategoryEnum.DEBIT, CustomerAccountBalanceLedger.NO_DUE_DATE),
+            new Key(2L, MatchingStatusEnum.O, OperationCategoryEnum.DEBIT, dueDate));
+    }
+
+    @Test
+    public void due_day_bound_includes_a_whole_given_day() {
+
+        Date toDate = new Calendar.Builder().setDate(2026, Calendar.MARCH, 15).setTimeOfDay(9, 0, 0).build().getTime();
+        Date bound = CustomerAccountBalanceLedger.getDueDayBound(toDate);
+
+        assertThat(bound).isEqualTo(new Calendar.Builder().setDate(2026, Calendar.MARCH, 16).build().getTime());
+        assertThat(CustomerAccountBalanceLedger.toDueDay(toDate)).isBefore(bound);
+        assertThat(CustomerAccountBalanceLedger.NO_DUE_DATE).isAfter(bound);
+    }
+
+    private AccountOperation accountOperation(CustomerAccount customerAccount, OperationCategoryEnum category, MatchingStatusEnum status, String unMatchingAmount, Date dueDate) {
+        AccountOperation accountOperation = new AccountOperation();
+        accountOperation.setCustomerAccount(customerAccount);
+        accountOperation.setTransactionCategory(category);
+        accountOperation.setMatchingStatus(status);
+        accountOperation.setUnMatchingAmount(new BigDecimal(unMatchingAmount));
+        accountOperation.setDueDate(dueDate);
+        return accountOperation;
+    }
+}
@@ -0,0 +1,66 @@
+package org.meveo.service.payments.impl;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+import org.meveo.service.payments.impl.DunningPolicyEvaluation.CompiledPolicy;
+
+public class DunningPolicyEvaluationTest {
+
+    private final Date today = new Calendar.Builder().setDate(2026, Calendar.MARCH, 31).setTimeOfDay(10, 0, 0).build().getTime();
+
+    @Test
+    public void invoices_are_checked_against_an_assigned_policy_only() {
+
+        List<CompiledPolicy> policies = Arrays.asList(new CompiledPolicy(1L, "HIGH", 10, 50d, "EUR", Arrays.asList(11L, 12L)),
+            new CompiledPolicy(2L, "LOW", 0, null, null, Arrays.asList(21L)));
+        DunningPolicyEvaluation evaluation = new DunningPolicyEvaluation(policies, today);
+
+        // Overdue for 30 days
+        assertThat(evaluation.assign(0, 100L, daysBefore(30), new BigDecimal("80"), "EUR")).isTrue();
+        // Below a minimum balance
+        assertThat(evaluation.assign(0, 101L, daysBefore(30), new BigDecimal("20"), "EUR")).isFalse();
+        // Not in a policy currency
+        assertThat(evaluation.assign(0, 102L, daysBefore(30), new BigDecimal("80"), "USD")).isFalse();
+        // Overdue for 5 days only
+        assertThat(evaluation.assign(0, 103L, daysBefore(5), new BigDecimal("80"), "EUR")).isFalse();
+        // Nothing left to pay
+        assertThat(evaluation.assign(1, 104L, daysBefore(5), BigDecimal.ZERO, "EUR")).isFalse();
+        assertThat(evaluation.assign(1, 105L, daysBefore(0), new BigDecimal("1"), "USD")).isTrue();
+
+        evaluation.ruleMatched(11L);
+        evaluation.ruleMatched(11L);
+        evaluation.ruleMatched(21L);
+
+        assertThat(evaluation.getEligibleInvoiceIds(1L)).containsExactly(100L);
+        assertThat(evaluation.getEligibleInvoiceIds(2L)).containsExactly(105L);
+        assertThat(evaluation.getInvoicesMatchedByPolicy(1L)).isEqualTo(4L);
+        assertThat(evaluation.getInvoicesMatchedByPolicy(2L)).isEqualTo(2L);
+        assertThat(evaluation.getInvoicesMatchedByRule(11L)).isEqualTo(2L);
+        assertThat(evaluation.getInvoicesMatchedByRule(12L)).isEqualTo(0L);
+    }
+
+    @Test
+    public void no_invoice_is_eligible_for_a_policy_without_a_first_level() {
+
+        DunningPolicyEvaluation evaluation = new DunningPolicyEvaluation(Arrays.asList(new CompiledPolicy(1L, "NO_LEVEL", null, null, null, Arrays.asList(11L))), today);
+
+        assertThat(evaluation.assign(0, 100L, daysBefore(30), new BigDecimal("80"), "EUR")).isFalse();
+        assertThat(evaluation.getInvoicesMatchedByPolicy(1L)).isEqualTo(1L);
+        assertThat(evaluation.getEligibleInvoiceIds(1L)).isEmpty();
+    }
+
+    private Date daysBefore(int days) {
+        Calendar calendar = Calendar.getInstance();
+        calendar.setTime(today);
+        calendar.add(Calendar.DATE, -days);
+        calendar.set(Calendar.HOUR_OF_DAY, 18);
+        return calendar.getTime();
+    }
+}
@@ -22,10 +22,12 @@ import static org.meveo.model.payments.OperationCategoryEnum.CREDIT;
 import static org.meveo.model.payments.OperationCategoryEnum.DEBIT;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.Date;
 
 import org.apache.commons.lang3.time.DateUtils;
@@ -80,6 +82,9 @@ public class RecordedInvoiceServiceTest {
     @Mock
     private DunningCollectionPlanService dunningCollectionPlanService;
 
+    @Mock
+    private CustomerAccountBalanceLedgerService customerAccountBalanceLedgerService;
+
     @Before
     public void setUp() {
         when(entityManager.contains(any())).thenReturn(true);
@@ -98,6 +103,8 @@ public class RecordedInvoiceServiceTest {
         assertEquals(LITIGATION_REASON, disputedRecordedInvoice.getLitigationReason());
         assertEquals(I, disputedRecordedInvoice.getMatchingStatus());
         assertEquals(DISPUTED, disputedRecordedInvoice.getInvoice().getPaymentStatus());
+        verify(customerAccountBalanceLedgerService).track(Collections.singletonList(recordedInvoice));
+        verify(customerAccountBalanceLedgerService).apply(null, Collections.singletonList(recordedInvoice));
     }
 
     @Test
@@ -79,6 +79,12 @@ public class CustomEntityTemplateDto extends EnableBusinessDto {
     
     @XmlAttribute
     private Boolean versioned;
+
+    /**
+     * Serve custom table lookups from EL expressions from an in-memory snapshot of the table
+     */
+    @XmlAttribute
+    private Boolean snapshotLookups;
     /**
      * Instantiates a new custom entity template dto.
      */
@@ -110,6 +116,9 @@ public class CustomEntityTemplateDto extends EnableBusinessDto {
         if (!cet.isVersioned()) {
             setVersioned(false);
         }
+        if (cet.isSnapshotLookups()) {
+            setSnapshotLookups(true);
+        }
         if (cetActions != null) {
             List<EntityCustomActionDto> actions = new ArrayList<EntityCustomActionDto>();
             for (EntityCustomAction action : cetActions) {
@@ -219,6 +228,14 @@ public class CustomEntityTemplateDto extends EnableBusinessDto {
 		this.versioned = versioned;
 	}
 
+	public Boolean getSnapshotLookups() {
+		return snapshotLookups;
+	}
+
+	public void setSnapshotLookups(Boolean snapshotLookups) {
+		this.snapshotLookups = snapshotLookups;
+	}
+
 	/*
      * (non-Javadoc)
      * 
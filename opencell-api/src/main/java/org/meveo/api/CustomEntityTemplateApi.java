@@ -556,6 +556,10 @@ public class CustomEntityTemplateApi extends BaseCrudApi<CustomEntityTemplate, C
             cet.setVersioned(dto.getVersioned());
         }
 
+        if (dto.getSnapshotLookups() != null) {
+            cet.setSnapshotLookups(dto.getSnapshotLookups());
+        }
+
         return cet;
     }
 
@@ -190,7 +190,20 @@ public interface GenericResource {
             @Parameter(description = "fields Separator") @QueryParam("fieldsSeparator") String fieldsSeparator,
             @Parameter(description = "decimal Separator") @QueryParam("decimalSeparator") String decimalSeparator,
             @Parameter(description = "file Name Extension") @QueryParam("fileNameExtension") String fileNameExtension,
+            @Parameter(description = "Run export asynchronously. An export identifier is returned to query export status and a resulting file path with") @QueryParam("async") Boolean async,
             @Parameter(description = "requestDto carries the wanted fields ex: {genericFields = [code, description]}", required = true) GenericPagingAndFiltering searchConfig) throws ClassNotFoundException;
 
+    @GET
+    @Path("/export/status/{exportId}")
+    @Operation(summary = "Get a status of an export launched asynchronously",
+            tags = { "Generic" },
+            description ="specify an export identifier as returned by an asynchronous export. "
+                    + "Returns export status, a number of records processed and a total number of records, and a file path once export is completed.",
+            responses = {
+                    @ApiResponse(responseCode="200", description = "export status successfully retrieved"),
+                    @ApiResponse(responseCode = "404", description = "export not found or its status has expired")
+            })
+    Response getExportStatus(@Parameter(description = "the export identifier", required = true) @PathParam("exportId") String exportId);
+
 
 }
\ No newline at end of file
@@ -29,6 +29,8 @@ import org.meveo.apiv2.generic.core.GenericRequestMapper;
 import org.meveo.apiv2.generic.exception.MeveoExceptionMapper;
 import org.meveo.apiv2.generic.services.GenericApiAlteringService;
 import org.meveo.apiv2.generic.services.GenericApiLoadService;
+import org.meveo.apiv2.generic.services.GenericExportStatus;
+import org.meveo.apiv2.generic.services.GenericExportTracker;
 import org.meveo.apiv2.generic.services.PersistenceServiceHelper;
 import org.meveo.apiv2.settings.globalSettings.service.AdvancedSettingsApiService;
 import org.meveo.commons.utils.StringUtils;
@@ -36,6 +38,8 @@ import org.meveo.model.BusinessEntity;
 import org.meveo.model.HugeEntity;
 import org.meveo.model.securityDeposit.FinanceSettings;
 import org.meveo.model.settings.AdvancedSettings;
+import org.meveo.security.CurrentUser;
+import org.meveo.security.MeveoUser;
 import org.meveo.service.securityDeposit.impl.FinanceSettingsService;
 import org.meveo.util.Inflector;
 
@@ -54,6 +58,13 @@ public class GenericResourceImpl implements GenericResource {
 	@Inject
 	private AdvancedSettingsApiService advancedSettingsApiService;
 
+    @Inject
+    private GenericExportTracker exportTracker;
+
+    @Inject
+    @CurrentUser
+    private MeveoUser currentUser;
+
     @Override
     public Response count(Boolean extractList, String entityName, GenericPagingAndFiltering searchConfig) {
         Class entityClass = GenericHelper.getEntityClass(entityName);
@@ -200,7 +211,7 @@ public class GenericResourceImpl implements GenericResource {
     }
     
     @Override
-    public Response export(String entityName, String fileFormat, String locale, String fieldsSeparator, String decimalSeparator, String fileNameExtension, GenericPagingAndFiltering searchConfig) throws ClassNotFoundException {
+    public Response export(String entityName, String fileFormat, String locale, String fieldsSeparator, String decimalSeparator, String fileNameExtension, Boolean async, GenericPagingAndFiltering searchConfig) throws ClassNotFoundException {
         Set<String> genericFields = null;
         List<GenericFieldDetails> genericFieldDetails = null;
 
@@ -238,10 +249,28 @@ public class GenericResourceImpl implements GenericResource {
         }
         Class entityClass = GenericHelper.getEntityClass(entityName);
         GenericRequestMapper genericRequestMapper = new GenericRequestMapper(entityClass, PersistenceServiceHelper.getPersistenceService());
+        if (Boolean.TRUE.equals(async)) {
+            GenericExportStatus exportStatus = exportTracker.register(entityName, fileFormat, currentUser.getUserName());
+            loadService.exportAsync(entityClass, genericRequestMapper.mapTo(searchConfig), genericFields, genericFieldDetails, fileFormat, entityName, locale, fieldsSeparator, decimalSeparator,
+                fileNameExtension, exportStatus, currentUser.unProxy());
+            return Response.ok()
+                    .entity("{\"actionStatus\":{\"status\":\"SUCCESS\",\"message\":\"\"}, \"data\":{ \"exportId\":\""+ exportStatus.getId() +"\"}}")
+                    .build();
+        }
         String filePath = loadService.export(entityClass, genericRequestMapper.mapTo(searchConfig), genericFields, genericFieldDetails, fileFormat, entityName, locale, fieldsSeparator, decimalSeparator, fileNameExtension);
         return Response.ok()
                 .entity("{\"actionStatus\":{\"status\":\"SUCCESS\",\"message\":\"\"}, \"data\":{ \"filePath\":\""+ filePath +"\"}}")
                 .build();
     }
+
+    @Override
+    public Response getExportStatus(String exportId) {
+        // Export status is only visible to a user that launched an export
+        GenericExportStatus exportStatus = exportTracker.getStatus(exportId, currentUser.getUserName());
+        if (exportStatus == null) {
+            throw new NotFoundException("export " + exportId + " not found.");
+        }
+        return Response.ok().entity(exportStatus).type(MediaType.APPLICATION_JSON_TYPE).build();
+    }
     
 }
@@ -12,6 +12,7 @@ import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
@@ -22,8 +23,12 @@ import java.util.stream.Stream;
 
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.query.Query;
 import org.meveo.admin.exception.BusinessException;
 import org.meveo.admin.util.pagination.PaginationConfiguration;
+import org.meveo.api.dto.response.PagingAndFiltering.SortOrder;
 import org.meveo.api.restful.util.GenericPagingAndFilteringUtils;
 import org.meveo.apiv2.JaxRsActivatorApiV2;
 import org.meveo.apiv2.generic.GenericFieldDetails;
@@ -31,10 +36,14 @@ import org.meveo.apiv2.generic.ImmutableGenericPaginatedResource;
 import org.meveo.apiv2.generic.common.ExcelExportConfiguration;
 import org.meveo.apiv2.generic.core.mapper.JsonGenericMapper;
 import org.meveo.commons.utils.ParamBeanFactory;
+import org.meveo.commons.utils.QueryBuilder;
 import org.meveo.model.IEntity;
 import org.meveo.model.persistence.CustomFieldJsonDataType;
+import org.meveo.security.MeveoUser;
+import org.meveo.security.keycloak.CurrentUserProvider;
 import org.meveo.service.base.NativePersistenceService;
 import org.meveo.service.base.ValueExpressionWrapper;
+import org.slf4j.Logger;
 
 import com.fasterxml.jackson.annotation.JsonAutoDetect.Visibility;
 import com.fasterxml.jackson.annotation.JsonInclude;
@@ -43,13 +52,21 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.MapperFeature;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import jakarta.ejb.Asynchronous;
 import jakarta.ejb.Stateless;
+import jakarta.ejb.TransactionAttribute;
+import jakarta.ejb.TransactionAttributeType;
 import jakarta.inject.Inject;
 import jakarta.inject.Named;
+import jakarta.persistence.EntityManager;
 
 @Stateless
 public class GenericApiLoadService {
 
+    private static final String EXPORT_ID_FROM = "exportIdFrom";
+
+    private static final String EXPORT_ID_TO = "exportIdTo";
+
     @Inject
     JaxRsActivatorApiV2 genericOpencellRestful;
 
@@ -69,6 +86,12 @@ public class GenericApiLoadService {
     @Inject
     private GenericPagingAndFilteringUtils genericPagingAndFilteringUtils;
 
+    @Inject
+    private CurrentUserProvider currentUserProvider;
+
+    @Inject
+    private Logger log;
+
     public Long count(Class entityClass, PaginationConfiguration searchConfig) {
         searchConfig.setForceCount(true);
         return persistenceDelegate.count(entityClass, searchConfig);
@@ -240,8 +263,41 @@ public class GenericApiLoadService {
 	public String export(Class entityClass, PaginationConfiguration searchConfig, Set<String> genericFields,
                          List<GenericFieldDetails> genericFieldDetails, String fileFormat, String entityName, String locale,
                          String fieldsSeparator, String decimalSeparator, String fileNameExtension, ExcelExportConfiguration excelExportConfiguration) {
+        return export(entityClass, searchConfig, genericFields, genericFieldDetails, fileFormat, entityName, locale, fieldsSeparator, decimalSeparator, fileNameExtension, excelExportConfiguration, null);
+    }
+
+    /**
+     * Export records of an entity to a file. Records are read from a scrollable cursor and written to a file one by one, so a whole result is never held in memory. An
+     * asynchronous export runs outside a transaction, where a cursor can not stay open, so records are read page by page instead.
+     * 
+     * @param exportStatus Export progress to update. Only an asynchronous export has it.
+     * @return A path of a file exported or NULL if there were no records to export
+     */
+    private String export(Class entityClass, PaginationConfiguration searchConfig, Set<String> genericFields,
+                         List<GenericFieldDetails> genericFieldDetails, String fileFormat, String entityName, String locale,
+                         String fieldsSeparator, String decimalSeparator, String fileNameExtension, ExcelExportConfiguration excelExportConfiguration, GenericExportStatus exportStatus) {
+
+        boolean readInPages = exportStatus != null;
+
+        // Pages have to be read in a stable order
+        boolean orderedById = false;
+        if (readInPages && !searchConfig.isSorted() && !isAggregated(genericFields, genericFieldDetails)) {
+            searchConfig.setOrderings(new Object[] { "id", SortOrder.ASCENDING });
+            orderedById = true;
+        }
 
-        List<List<Object>> list = extractDataForExport(entityClass, searchConfig, genericFields, genericFieldDetails);
+        QueryBuilder queryBuilder = prepareQueryForExport(entityClass, searchConfig, genericFields, genericFieldDetails);
+
+        // Pages ordered by an identifier are read by an identifier range instead of an offset, so a database does not skip over all the rows read before for each page
+        if (orderedById) {
+            queryBuilder.addSqlCriterion("a.id > :" + EXPORT_ID_FROM, EXPORT_ID_FROM, Long.MIN_VALUE);
+            queryBuilder.addSqlCriterion("a.id <= :" + EXPORT_ID_TO, EXPORT_ID_TO, Long.MAX_VALUE);
+        }
+
+        if (exportStatus != null) {
+            long total = persistenceDelegate.count(entityClass, searchConfig);
+            exportStatus.setTotal(searchConfig.getLimit() != null ? Math.min(total, searchConfig.getLimit()) : total);
+        }
 
         Map<String, GenericFieldDetails> fieldDetails = new HashMap<>();
         if(CollectionUtils.isNotEmpty(genericFieldDetails)) {
@@ -262,14 +318,183 @@ public class GenericApiLoadService {
             finalFieldDetails.keySet().stream()
                     .filter(key -> Objects.isNull(finalFieldDetails.get(key).getFormula()))
                     .forEach(key -> resultLines.put(nameOrHeader(finalFieldDetails.get(key)), inputs.get(key)));
+            if (exportStatus != null) {
+                exportStatus.incrementProcessed();
+            }
 			return resultLines;
 		};
 
-		return genericExportManager.export(entityName, list.stream().map(originalLine).collect(toList()), fileFormat, fieldDetails,
+        int fetchSize = paramBeanFactory.getInstance().getPropertyAsInteger("api.export.fetchSize", 1000);
+
+        if (readInPages) {
+            Iterator<Object> rows = readInPages(queryBuilder, searchConfig, fetchSize, orderedById);
+            Iterator<Map<String, Object>> records = new Iterator<>() {
+
+                @Override
+                public boolean hasNext() {
+                    return rows.hasNext();
+                }
+
+                @Override
+                public Map<String, Object> next() {
+                    return originalLine.apply(Arrays.asList(rows.next()));
+                }
+            };
+            return genericExportManager.export(entityName, records, fileFormat, fieldDetails,
                 genericFieldDetails.stream().map(GenericFieldDetails::getName).collect(Collectors.toList()), locale, fieldsSeparator, decimalSeparator, fileNameExtension, excelExportConfiguration);
+        }
+
+        Query query = queryBuilder.getQuery(nativePersistenceService.getEntityManager()).unwrap(Query.class);
+        try (ScrollableResults<?> scrollableResults = query.setReadOnly(true).setCacheable(false).setFetchSize(fetchSize).scroll(ScrollMode.FORWARD_ONLY)) {
+
+            Iterator<Map<String, Object>> records = new Iterator<>() {
+
+                private Boolean hasNext;
+
+                @Override
+                public boolean hasNext() {
+                    if (hasNext == null) {
+                        hasNext = scrollableResults.next();
+                    }
+                    return hasNext;
+                }
+
+                @Override
+                public Map<String, Object> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    hasNext = null;
+                    return originalLine.apply(Arrays.asList((Object) scrollableResults.get()));
+                }
+            };
+
+            return genericExportManager.export(entityName, records, fileFormat, fieldDetails,
+                genericFieldDetails.stream().map(GenericFieldDetails::getName).collect(Collectors.toList()), locale, fieldsSeparator, decimalSeparator, fileNameExtension, excelExportConfiguration);
+        }
 	}
 
+    /**
+     * Read export rows page by page, each page with its own query, so no transaction or cursor has to stay open while a file is written
+     * 
+     * @param queryBuilder Export query
+     * @param searchConfig Search configuration with a first row and a number of rows to export
+     * @param pageSize Number of rows to read in a page
+     * @param orderedById Are rows ordered by an identifier, and export query restricted to an identifier range with "exportIdFrom" and "exportIdTo" parameters. If so, pages
+     *        are read by an identifier range (keyset pagination), otherwise by an offset.
+     * @return An iterator over export rows
+     */
+    private Iterator<Object> readInPages(QueryBuilder queryBuilder, PaginationConfiguration searchConfig, int pageSize, boolean orderedById) {
+
+        int firstRow = searchConfig.getFirstRow() != null ? searchConfig.getFirstRow() : 0;
+        Integer numberOfRows = searchConfig.getNumberOfRows();
+
+        return new Iterator<>() {
+
+            private Iterator<?> page = Collections.emptyIterator();
+
+            private int rowsRead;
+
+            private boolean lastPage;
+
+            /**
+             * An identifier of a last row read, when rows are read by an identifier range
+             */
+            private Long lastId;
+
+            @Override
+            public boolean hasNext() {
+                if (!page.hasNext() && !lastPage) {
+                    int maxResults = numberOfRows != null ? Math.min(pageSize, numberOfRows - rowsRead) : pageSize;
+                    if (maxResults <= 0) {
+                        lastPage = true;
+                        return false;
+                    }
+                    if (orderedById) {
+                        page = readPageById(maxResults);
+                    } else {
+                        List<?> rows = queryBuilder.getQuery(nativePersistenceService.getEntityManager()).setFirstResult(firstRow + rowsRead).setMaxResults(maxResults).getResultList();
+                        rowsRead += rows.size();
+                        lastPage = rows.size() < maxResults;
+                        page = rows.iterator();
+                    }
+                }
+                return page.hasNext();
+            }
+
+            /**
+             * Read identifiers of a next page first, then rows within a range of these identifiers. Only a first page is positioned by an offset.
+             */
+            private Iterator<?> readPageById(int maxResults) {
+                EntityManager em = nativePersistenceService.getEntityManager();
+                List<Long> ids = queryBuilder.getIdQuery(em).setParameter(EXPORT_ID_FROM, lastId != null ? lastId : Long.MIN_VALUE).setParameter(EXPORT_ID_TO, Long.MAX_VALUE)
+                    .setFirstResult(lastId != null ? 0 : firstRow).setMaxResults(maxResults).getResultList();
+                rowsRead += ids.size();
+                lastPage = ids.size() < maxResults;
+                if (ids.isEmpty()) {
+                    return Collections.emptyIterator();
+                }
+
+                // Identifiers are read in ascending order, so a range from just before a first one to a last one covers a page exactly
+                lastId = ids.get(ids.size() - 1);
+                List<?> rows = queryBuilder.getQuery(em).setParameter(EXPORT_ID_FROM, ids.get(0) - 1).setParameter(EXPORT_ID_TO, lastId).setFirstResult(0)
+                    .setMaxResults(Integer.MAX_VALUE).getResultList();
+                return rows.iterator();
+            }
+
+            @Override
+            public Object next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return page.next();
+            }
+        };
+    }
+
+    /**
+     * @return True if any of export fields is an aggregation function, so export rows can not be ordered by an identifier
+     */
+    private boolean isAggregated(Set<String> genericFields, List<GenericFieldDetails> genericFieldDetails) {
+        if (CollectionUtils.isNotEmpty(genericFields)) {
+            return genericFields.stream().anyMatch(field -> field.contains("("));
+        }
+        return CollectionUtils.isNotEmpty(genericFieldDetails) && genericFieldDetails.stream().anyMatch(field -> field.getName() != null && field.getName().contains("("));
+    }
+
+    /**
+     * Export records of an entity to a file asynchronously. Progress and a resulting file path are reported in an export status.<br/>
+     * <br/>
+     * Export runs outside a transaction, so a long export is not bound by a transaction timeout. Records are read page by page, each page in its own query.
+     * 
+     * @param exportStatus Export status to update with a progress and a result
+     * @param lastCurrentUser Current user to run export as
+     */
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void exportAsync(Class entityClass, PaginationConfiguration searchConfig, Set<String> genericFields, List<GenericFieldDetails> genericFieldDetails, String fileFormat,
+            String entityName, String locale, String fieldsSeparator, String decimalSeparator, String fileNameExtension, GenericExportStatus exportStatus, MeveoUser lastCurrentUser) {
+
+        currentUserProvider.reestablishAuthentication(lastCurrentUser);
+        try {
+            String filePath = export(entityClass, searchConfig, genericFields, genericFieldDetails, fileFormat, entityName, locale, fieldsSeparator, decimalSeparator, fileNameExtension,
+                null, exportStatus);
+            exportStatus.completed(filePath);
+
+        } catch (Exception e) {
+            log.error("Failed to export {} records", entityName, e);
+            exportStatus.failed(e.getMessage());
+        }
+    }
+
     public List<List<Object>> extractDataForExport(Class entityClass, PaginationConfiguration searchConfig, Set<String> genericFields, List<GenericFieldDetails> genericFieldDetails) {
+        return (List<List<Object>>) prepareQueryForExport(entityClass, searchConfig, genericFields, genericFieldDetails).find(nativePersistenceService.getEntityManager())
+                                                                               .stream()
+                                                                               .map(ObjectArrays -> Arrays.asList(ObjectArrays))
+                                                                               .collect(toList());
+    }
+
+    private QueryBuilder prepareQueryForExport(Class entityClass, PaginationConfiguration searchConfig, Set<String> genericFields, List<GenericFieldDetails> genericFieldDetails) {
         if (CollectionUtils.isNotEmpty(genericFields)) {
             searchConfig.setFetchFields(new ArrayList<>(genericFields));
         } else if (CollectionUtils.isNotEmpty(genericFieldDetails)) {
@@ -298,11 +523,7 @@ public class GenericApiLoadService {
             }
         }
         
-        return (List<List<Object>>) nativePersistenceService.getQuery(entityClass.getCanonicalName(), searchConfig, null, Boolean.TRUE)
-                                                                               .find(nativePersistenceService.getEntityManager())
-                                                                               .stream()
-                                                                               .map(ObjectArrays -> Arrays.asList(ObjectArrays))
-                                                                               .collect(toList());
+        return nativePersistenceService.getQuery(entityClass.getCanonicalName(), searchConfig, null, Boolean.TRUE);
     }
 
     private String nameOrHeader(GenericFieldDetails x) {
@@ -0,0 +1,129 @@
+package org.meveo.apiv2.generic.services;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of a generic export running asynchronously
+ */
+public class GenericExportStatus {
+
+    public enum ExportStatusEnum {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id;
+
+    private final String entityName;
+
+    private final String fileFormat;
+
+    /**
+     * Username of a user that launched an export. Only this user can query export status.
+     */
+    private final String owner;
+
+    private final Date startDate = new Date();
+
+    private volatile Date endDate;
+
+    private volatile ExportStatusEnum status = ExportStatusEnum.RUNNING;
+
+    private final AtomicLong processed = new AtomicLong();
+
+    private volatile Long total;
+
+    private volatile String filePath;
+
+    private volatile String error;
+
+    public GenericExportStatus(String id, String entityName, String fileFormat, String owner) {
+        this.id = id;
+        this.entityName = entityName;
+        this.fileFormat = fileFormat;
+        this.owner = owner;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getEntityName() {
+        return entityName;
+    }
+
+    public String getFileFormat() {
+        return fileFormat;
+    }
+
+    public String getOwner() {
+        return owner;
+    }
+
+    public Date getStartDate() {
+        return startDate;
+    }
+
+    public Date getEndDate() {
+        return endDate;
+    }
+
+    public ExportStatusEnum getStatus() {
+        return status;
+    }
+
+    /**
+     * @return Number of records written so far
+     */
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * Increment a number of records written
+     */
+    public void incrementProcessed() {
+        processed.incrementAndGet();
+    }
+
+    /**
+     * @return Total number of records to export. Null if not known yet.
+     */
+    public Long getTotal() {
+        return total;
+    }
+
+    public void setTotal(Long total) {
+        this.total = total;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * Mark export as completed
+     *
+     * @param filePath Path of a file exported. Null if there was nothing to export.
+     */
+    public void completed(String filePath) {
+        this.filePath = filePath;
+        this.endDate = new Date();
+        this.status = ExportStatusEnum.COMPLETED;
+    }
+
+    /**
+     * Mark export as failed
+     *
+     * @param error Error message
+     */
+    public void failed(String error) {
+        this.error = error;
+        this.endDate = new Date();
+        this.status = ExportStatusEnum.FAILED;
+    }
+}
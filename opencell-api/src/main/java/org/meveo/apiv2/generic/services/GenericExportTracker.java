@@ -0,0 +1,61 @@
+package org.meveo.apiv2.generic.services;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.meveo.commons.utils.ParamBean;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.ejb.ConcurrencyManagement;
+import jakarta.ejb.ConcurrencyManagementType;
+import jakarta.ejb.Singleton;
+
+/**
+ * Keeps track of generic exports running asynchronously, so their progress and a resulting file can be queried by an export identifier.<br/>
+ * <br/>
+ * Status is kept in memory of a node that runs an export and is forgotten after "api.export.statusRetentionHours" hours (defaults to 24).
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class GenericExportTracker {
+
+    private Cache<String, GenericExportStatus> exports;
+
+    @PostConstruct
+    public void init() {
+        int retentionHours = ParamBean.getInstance().getPropertyAsInteger("api.export.statusRetentionHours", 24);
+        exports = CacheBuilder.newBuilder().expireAfterWrite(retentionHours, TimeUnit.HOURS).build();
+    }
+
+    /**
+     * Register a new export
+     *
+     * @param entityName Entity name
+     * @param fileFormat File format
+     * @param owner Username of a user that launched an export
+     * @return Export status
+     */
+    public GenericExportStatus register(String entityName, String fileFormat, String owner) {
+        GenericExportStatus status = new GenericExportStatus(UUID.randomUUID().toString(), entityName, fileFormat, owner);
+        exports.put(status.getId(), status);
+        return status;
+    }
+
+    /**
+     * Get export status of an export launched by a given user
+     *
+     * @param exportId Export identifier
+     * @param owner Username of a user requesting export status
+     * @return Export status or NULL if export is not known, its status has expired or it was launched by another user
+     */
+    public GenericExportStatus getStatus(String exportId, String owner) {
+        GenericExportStatus status = exports.getIfPresent(exportId);
+        if (status == null || status.getOwner() == null || !status.getOwner().equals(owner)) {
+            return null;
+        }
+        return status;
+    }
+}
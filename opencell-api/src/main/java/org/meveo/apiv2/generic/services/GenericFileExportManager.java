@@ -9,6 +9,7 @@ import static java.time.temporal.ChronoField.SECOND_OF_MINUTE;
 import static java.time.temporal.ChronoField.YEAR;
 import static java.util.stream.Collectors.toMap;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -30,6 +31,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -90,6 +92,7 @@ public class GenericFileExportManager {
     private static final String FR_DATE_FORMAT = "dd/MM/yyyy";
     private static final String EN_AGED_BALANCE_FILENAME = "Aged_trial_balance_";
     private static final String EN_DATE_FORMAT = "MM/dd/yyyy";
+    private static final int PDF_ROWS_PER_PART = 500;
     private String saveDirectory;
 
     /**
@@ -103,11 +106,30 @@ public class GenericFileExportManager {
     }
 
     public String export(String entityName, List<Map<String, Object>> mapResult, String fileType, Map<String, GenericFieldDetails> fieldDetails, List<String> ordredColumn, String locale, String fieldsSeparator, String decimalSeparator, String fileNameExtension, ExcelExportConfiguration configuration){
+        return export(entityName, mapResult == null ? null : mapResult.iterator(), fileType, fieldDetails, ordredColumn, locale, fieldsSeparator, decimalSeparator, fileNameExtension, configuration);
+    }
+
+    /**
+     * Export records to a file. Records are written one by one as they are iterated, so they don't need to be held in memory all at once.
+     * 
+     * @param entityName Entity name, used to name a file
+     * @param records Records to export
+     * @param fileType File type - CSV, EXCEL or PDF
+     * @param fieldDetails Field details by a field name
+     * @param ordredColumn Fields to export, in the order of columns
+     * @param locale Locale
+     * @param fieldsSeparator CSV field separator
+     * @param decimalSeparator Decimal separator
+     * @param fileNameExtension CSV file extension
+     * @param configuration Excel export configuration. Optional.
+     * @return A path of a file exported or NULL if there were no records to export
+     */
+    public String export(String entityName, Iterator<Map<String, Object>> records, String fileType, Map<String, GenericFieldDetails> fieldDetails, List<String> ordredColumn, String locale, String fieldsSeparator, String decimalSeparator, String fileNameExtension, ExcelExportConfiguration configuration){
     	log.debug("Save directory "+paramBeanFactory.getChrootDir());
         String time = LocalDateTime.now().format(getDateTimeFormatter());
     	saveDirectory = paramBeanFactory.getChrootDir() + File.separator + PATH_STRING_FOLDER + entityName + File.separator +time.substring(0,8) + File.separator;
-        if (mapResult != null && !mapResult.isEmpty()) {        	
-            Path filePath = saveAsRecord(entityName, mapResult, fileType, fieldDetails, ordredColumn, locale, fieldsSeparator, decimalSeparator, fileNameExtension, configuration);
+        if (records != null && records.hasNext()) {
+            Path filePath = saveAsRecord(entityName, records, fileType, fieldDetails, ordredColumn, locale, fieldsSeparator, decimalSeparator, fileNameExtension, configuration);
             return filePath == null? null : filePath.toString();
         }
         return null;
@@ -125,7 +147,7 @@ public class GenericFileExportManager {
     }
 
     private Path saveAsRecord(String fileName, List<Map<String, Object>> records, String fileType, Map<String, GenericFieldDetails> fieldDetails, List<String> ordredColumn, String locale, String fieldsSeparator, String decimalSeparator, String fileNameExtension) {
-        return saveAsRecord(fileName, records, fileType, fieldDetails, ordredColumn, locale, fieldsSeparator, decimalSeparator, fileNameExtension, null);
+        return saveAsRecord(fileName, records.iterator(), fileType, fieldDetails, ordredColumn, locale, fieldsSeparator, decimalSeparator, fileNameExtension, null);
     }
     
     /**
@@ -135,7 +157,7 @@ public class GenericFileExportManager {
      * @param fileType
      * @return
      */
-    private Path saveAsRecord(String fileName, List<Map<String, Object>> records, String fileType, Map<String, GenericFieldDetails> fieldDetails, List<String> ordredColumn, String locale, String fieldsSeparator, String decimalSeparator, String fileNameExtension, ExcelExportConfiguration configuration) {
+    private Path saveAsRecord(String fileName, Iterator<Map<String, Object>> records, String fileType, Map<String, GenericFieldDetails> fieldDetails, List<String> ordredColumn, String locale, String fieldsSeparator, String decimalSeparator, String fileNameExtension, ExcelExportConfiguration configuration) {
         String extensionFile = null;
         String time = LocalDateTime.now().format(getDateTimeFormatter());
         
@@ -185,25 +207,28 @@ public class GenericFileExportManager {
      * @param ordredColumn
      * @throws IOException
      */
-	private void writeCsvFile(List<Map<String, Object>> records, File csvFile, Map<String, GenericFieldDetails> fieldDetails, List<String> ordredColumn, String locale, String fieldsSeparator, String decimalSeparator, String fileNameExtension) throws IOException {
-		CsvBuilder csv = new CsvBuilder(fieldsSeparator, true);
-        ordredColumn.forEach(field -> {
-            GenericFieldDetails fieldDetail = fieldDetails.get(field);
-            csv.appendValue(extractValue(field, fieldDetail));
-        });
-        csv.startNewLine();
-        for (Map<String, Object> item : records) {
-            ordredColumn.forEach(field ->
-                    csv.appendValue(applyTransformation(fieldDetails.get(field), item.get(field), locale, decimalSeparator))
-            );
-            csv.startNewLine();
-        }
-
-		try (OutputStream fop = FileUtils.getOutputStream(csvFile, true)) {
-			fop.write(csv.toString().getBytes());
+	private void writeCsvFile(Iterator<Map<String, Object>> records, File csvFile, Map<String, GenericFieldDetails> fieldDetails, List<String> ordredColumn, String locale, String fieldsSeparator, String decimalSeparator, String fileNameExtension) throws IOException {
+
+		try (OutputStream fop = new BufferedOutputStream(FileUtils.getOutputStream(csvFile, true))) {
+			CsvBuilder header = new CsvBuilder(fieldsSeparator, true);
+			ordredColumn.forEach(field -> {
+				GenericFieldDetails fieldDetail = fieldDetails.get(field);
+				header.appendValue(extractValue(field, fieldDetail));
+			});
+			header.startNewLine();
+			fop.write(header.toString().getBytes());
+
+			// Write line by line, so records are not held in memory
+			while (records.hasNext()) {
+				Map<String, Object> item = records.next();
+				CsvBuilder csv = new CsvBuilder(fieldsSeparator, true);
+				ordredColumn.forEach(field ->
+						csv.appendValue(applyTransformation(fieldDetails.get(field), item.get(field), locale, decimalSeparator))
+				);
+				csv.startNewLine();
+				fop.write(csv.toString().getBytes());
+			}
 			fop.flush();
-		} catch (IOException ex) {
-			throw ex;
 		}
 	}
 
@@ -217,7 +242,7 @@ public class GenericFileExportManager {
      * @throws IOException - Exception if file writing fails
      */
     private void writeExcelFile(File file, List<Map<String, Object>> records, Map<String, GenericFieldDetails> fieldDetails, List<String> orderedColumn) throws IOException {
-        this.writeExcelFile(file, records, fieldDetails, orderedColumn, null);
+        this.writeExcelFile(file, records.iterator(), fieldDetails, orderedColumn, null);
     }
 
 	/**
@@ -227,7 +252,7 @@ public class GenericFileExportManager {
      * @param ordredColumn
      * @throws IOException
      */
-    private void writeExcelFile(File file, List<Map<String, Object>> records, Map<String, GenericFieldDetails> fieldDetails, List<String> ordredColumn, ExcelExportConfiguration configuration) throws IOException {
+    private void writeExcelFile(File file, Iterator<Map<String, Object>> records, Map<String, GenericFieldDetails> fieldDetails, List<String> ordredColumn, ExcelExportConfiguration configuration) throws IOException {
         var wb = new SXSSFWorkbook();
         wb.setCompressTempFiles(true);
         SXSSFSheet sheet = wb.createSheet();
@@ -253,7 +278,7 @@ public class GenericFileExportManager {
             i.set(configuration.getHeader().apply(sheet));
         }   
 
-        if (records != null && !records.isEmpty()) {
+        if (records != null && records.hasNext()) {
         	var rowHeader = sheet.createRow(i.getAndIncrement());
             IntStream.range(0, ordredColumn.size())
                     .forEach(index -> {
@@ -263,14 +288,16 @@ public class GenericFileExportManager {
                         cell.setCellValue(extractValue(ordredColumn.get(index), fieldDetail));
                     });
 		    //Cell
-            IntStream.range(0, records.size())
-                .forEach(indexRow -> {
+            // SXSSF workbook keeps only a window of the last rows in memory, so records are written as they are iterated
+            int indexRow = 0;
+            while (records.hasNext()) {
+                    Map<String, Object> record = records.next();
                     var rowCell = sheet.createRow(i.get()+indexRow);
                     IntStream.range(0, ordredColumn.size())
                         .forEach(indexCol -> {
                             Cell cell = rowCell.createCell(indexCol);
                             String key = ordredColumn.get(indexCol);
-                            Object value = records.get(indexRow).get(key);
+                            Object value = record.get(key);
 
                             GenericFieldDetails fieldDetail = fieldDetails.get(key);
 
@@ -307,11 +334,12 @@ public class GenericFileExportManager {
                                 cell.setCellStyle(excelCellStyles.get(wb.hashCode() + ExcelStylesEnum.STRING_FORMAT.name()));
                             }
                         });
-                });
+                    indexRow++;
+            }
             
             if(configuration != null && configuration.getFooter() != null) {
                 // apply function where inputs are sheet and last row index
-                configuration.getFooter().apply(sheet, i.get() + records.size());
+                configuration.getFooter().apply(sheet, i.get() + indexRow);
             }
 
             OutputStream fileOut = null;
@@ -329,15 +357,25 @@ public class GenericFileExportManager {
         }
     }
     
-    private void writePdfFile(File file, List<Map<String, Object>> lineRecords, Map<String, GenericFieldDetails> fieldDetails, List<String> ordredColumn, String locale) throws IOException, DocumentException{
-        if(!CollectionUtils.isEmpty(lineRecords)) {
+    private void writePdfFile(File file, Iterator<Map<String, Object>> lineRecords, Map<String, GenericFieldDetails> fieldDetails, List<String> ordredColumn, String locale) throws IOException, DocumentException{
+        if(lineRecords != null && lineRecords.hasNext()) {
             Document doc = new Document();
             PdfWriter.getInstance(doc, FileUtils.getOutputStream(file));
             doc.open();
-            final PdfPTable table = new PdfPTable(lineRecords.get(0).size());
+            final PdfPTable table = new PdfPTable(ordredColumn.size());
             table.setWidthPercentage(100);
+            // Table is added to a document in parts, and rows already added are released from memory
+            table.setComplete(false);
             addColumns(ordredColumn, table, fieldDetails);
-            lineRecords.forEach(map -> addRows(map, table, fieldDetails, ordredColumn, locale));
+            int nrOfRows = 0;
+            while (lineRecords.hasNext()) {
+                addRows(lineRecords.next(), table, fieldDetails, ordredColumn, locale);
+                nrOfRows++;
+                if (nrOfRows % PDF_ROWS_PER_PART == 0) {
+                    doc.add(table);
+                }
+            }
+            table.setComplete(true);
             doc.add(table);
             doc.close();
         }
@@ -4,27 +4,38 @@ import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.meveo.admin.exception.BusinessException;
 import org.meveo.admin.util.pagination.PaginationConfiguration;
 import org.meveo.api.restful.util.GenericPagingAndFilteringUtils;
+import org.meveo.apiv2.generic.GenericFieldDetails;
+import org.meveo.apiv2.generic.ImmutableGenericFieldDetails;
+import org.meveo.apiv2.generic.services.GenericExportStatus.ExportStatusEnum;
 import org.meveo.commons.utils.ParamBean;
 import org.meveo.commons.utils.ParamBeanFactory;
 import org.meveo.commons.utils.QueryBuilder;
 import org.meveo.model.admin.Seller;
+import org.meveo.security.MeveoUser;
+import org.meveo.security.keycloak.CurrentUserProvider;
 import org.meveo.service.base.NativePersistenceService;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.Spy;
 import org.mockito.junit.MockitoJUnitRunner;
+import org.slf4j.Logger;
 
 import jakarta.inject.Inject;
 import jakarta.persistence.EntityManager;
+import jakarta.persistence.Query;
 import java.util.*;
 
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -48,6 +59,18 @@ public class GenericApiLoadServiceTest {
     @Mock
     private GenericPagingAndFilteringUtils genericPagingAndFilteringUtils;
 
+    @Mock
+    private GenericApiPersistenceDelegate persistenceDelegate;
+
+    @Mock
+    private GenericFileExportManager genericExportManager;
+
+    @Mock
+    private CurrentUserProvider currentUserProvider;
+
+    @Mock
+    private Logger log;
+
     private Set<String> fetchFieldsSet;
 
 
@@ -135,6 +158,62 @@ public class GenericApiLoadServiceTest {
         String paginatedRecords = loadService.findPaginatedRecords(false, Seller.class, searchConfig, fetchFieldsSet, null, null, null, null);
         Assert.assertEquals("{\"total\":1,\"limit\":0,\"offset\":0,\"data\":[{\"AVG(id)\":5.0}]}", paginatedRecords);
     }
+
+    @Test
+    public void async_export_reads_records_page_by_page() {
+        PaginationConfiguration searchConfig = new PaginationConfiguration(new HashMap<>());
+        List<GenericFieldDetails> fieldDetails = Arrays.asList(ImmutableGenericFieldDetails.builder().name("code").build(),
+            ImmutableGenericFieldDetails.builder().name("description").build());
+        QueryBuilder queryBuilder = Mockito.mock(QueryBuilder.class);
+        Query query = Mockito.mock(Query.class);
+        when(paramBeanFactory.getInstance()).thenReturn(paramBean);
+        when(paramBean.getPropertyAsInteger("api.export.fetchSize", 1000)).thenReturn(2);
+        when(persistenceDelegate.count(Seller.class, searchConfig)).thenReturn(5L);
+        when(nativePersistenceService.getQuery(Seller.class.getCanonicalName(), searchConfig, null, Boolean.TRUE)).thenReturn(queryBuilder);
+        when(queryBuilder.getQuery(entityManager)).thenReturn(query);
+        when(query.setFirstResult(anyInt())).thenReturn(query);
+        when(query.setMaxResults(anyInt())).thenReturn(query);
+        when(query.getResultList()).thenReturn(Arrays.asList(new Object[] { "C1", "D1" }, new Object[] { "C2", "D2" }),
+            Arrays.asList(new Object[] { "C3", "D3" }, new Object[] { "C4", "D4" }), Collections.singletonList(new Object[] { "C5", "D5" }));
+
+        List<Map<String, Object>> exported = new ArrayList<>();
+        when(genericExportManager.export(eq("Seller"), any(Iterator.class), eq("CSV"), any(), any(), isNull(), isNull(), isNull(), isNull(), isNull())).thenAnswer(invocation -> {
+            Iterator<Map<String, Object>> records = invocation.getArgument(1);
+            records.forEachRemaining(exported::add);
+            return "/exports/seller.csv";
+        });
+
+        GenericExportStatus exportStatus = new GenericExportStatus("1", "Seller", "CSV", "opencell.admin");
+        loadService.exportAsync(Seller.class, searchConfig, null, fieldDetails, "CSV", "Seller", null, null, null, null, exportStatus, mock(MeveoUser.class));
+
+        Assert.assertEquals(ExportStatusEnum.COMPLETED, exportStatus.getStatus());
+        Assert.assertEquals("/exports/seller.csv", exportStatus.getFilePath());
+        Assert.assertEquals(Long.valueOf(5), exportStatus.getTotal());
+        Assert.assertEquals(5, exportStatus.getProcessed());
+        Assert.assertEquals(5, exported.size());
+        Assert.assertEquals("C5", exported.get(4).get("code"));
+        Assert.assertEquals("D5", exported.get(4).get("description"));
+        // Pages are read in a stable order
+        Assert.assertTrue(searchConfig.isSorted());
+        verify(query).setFirstResult(0);
+        verify(query).setFirstResult(2);
+        verify(query).setFirstResult(4);
+    }
+
+    @Test
+    public void async_export_failure_is_reported_in_status() {
+        PaginationConfiguration searchConfig = new PaginationConfiguration(new HashMap<>());
+        List<GenericFieldDetails> fieldDetails = Collections.singletonList(ImmutableGenericFieldDetails.builder().name("code").build());
+        when(nativePersistenceService.getQuery(Seller.class.getCanonicalName(), searchConfig, null, Boolean.TRUE)).thenReturn(Mockito.mock(QueryBuilder.class));
+        when(persistenceDelegate.count(Seller.class, searchConfig)).thenThrow(new BusinessException("Database is not available"));
+
+        GenericExportStatus exportStatus = new GenericExportStatus("1", "Seller", "CSV", "opencell.admin");
+        loadService.exportAsync(Seller.class, searchConfig, null, fieldDetails, "CSV", "Seller", null, null, null, null, exportStatus, mock(MeveoUser.class));
+
+        Assert.assertEquals(ExportStatusEnum.FAILED, exportStatus.getStatus());
+        Assert.assertEquals("Database is not available", exportStatus.getError());
+        Assert.assertNotNull(exportStatus.getEndDate());
+    }
     
 
     //@Test
@@ -0,0 +1,46 @@
+package org.meveo.apiv2.generic.services;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.meveo.apiv2.generic.services.GenericExportStatus.ExportStatusEnum;
+import org.meveo.commons.utils.ParamBean;
+import org.mockito.MockedStatic;
+
+public class GenericExportTrackerTest {
+
+    private GenericExportTracker tracker;
+
+    @Before
+    public void setUp() {
+        ParamBean paramBean = mock(ParamBean.class);
+        when(paramBean.getPropertyAsInteger("api.export.statusRetentionHours", 24)).thenReturn(24);
+        try (MockedStatic<ParamBean> paramBeanMock = mockStatic(ParamBean.class)) {
+            paramBeanMock.when(ParamBean::getInstance).thenReturn(paramBean);
+            tracker = new GenericExportTracker();
+            tracker.init();
+        }
+    }
+
+    @Test
+    public void export_status_is_visible_to_its_owner() {
+        GenericExportStatus exportStatus = tracker.register("Seller", "CSV", "opencell.admin");
+
+        assertThat(tracker.getStatus(exportStatus.getId(), "opencell.admin")).isSameAs(exportStatus);
+        assertThat(exportStatus.getStatus()).isEqualTo(ExportStatusEnum.RUNNING);
+        assertThat(exportStatus.getOwner()).isEqualTo("opencell.admin");
+    }
+
+    @Test
+    public void export_status_is_not_visible_to_other_users() {
+        GenericExportStatus exportStatus = tracker.register("Seller", "CSV", "opencell.admin");
+
+        assertThat(tracker.getStatus(exportStatus.getId(), "opencell.user")).isNull();
+        assertThat(tracker.getStatus(exportStatus.getId(), null)).isNull();
+        assertThat(tracker.getStatus("unknown", "opencell.admin")).isNull();
+    }
+}
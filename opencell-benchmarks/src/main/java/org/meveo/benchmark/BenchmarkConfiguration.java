@@ -0,0 +1,28 @@
+package org.meveo.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Points application configuration to a temporary file, so classes reading settings via ParamBean can be used outside of an application server.
+ */
+final class BenchmarkConfiguration {
+
+    private static final String CONFIGURATION_PROPERTY = "opencell-admin.properties";
+
+    private BenchmarkConfiguration() {
+    }
+
+    /**
+     * Use a temporary configuration file, unless a configuration file was specified with a "opencell-admin.properties" system property. Must be called before any class that reads settings is loaded.
+     *
+     * @throws IOException Failed to create a temporary file
+     */
+    static synchronized void init() throws IOException {
+        if (System.getProperty(CONFIGURATION_PROPERTY) == null) {
+            File configuration = File.createTempFile("opencell-admin", ".properties");
+            configuration.deleteOnExit();
+            System.setProperty(CONFIGURATION_PROPERTY, configuration.getAbsolutePath());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package org.meveo.benchmark;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks and compares their scores with a baseline stored in a properties file, failing with exit code 1 if any benchmark got slower than a tolerated ratio.<br/>
+ * <br/>
+ * Usage: java -cp opencell-benchmarks/target/benchmarks.jar org.meveo.benchmark.BenchmarkRegressionGate [benchmark name regex]<br/>
+ * <br/>
+ * Settings, passed as system properties:
+ * <ul>
+ * <li>benchmark.baseline - a baseline file. Defaults to "baseline.properties" in a current directory.</li>
+ * <li>benchmark.tolerance - a tolerated score degradation ratio. Defaults to 0.1 (10%).</li>
+ * <li>benchmark.updateBaseline - store current scores as a new baseline instead of comparing them. Defaults to false.</li>
+ * </ul>
+ * A baseline must be recorded on the same machine that runs a gate, as scores are not comparable between machines. Benchmarks without a baseline score are reported, but do not
+ * fail a gate.
+ */
+public class BenchmarkRegressionGate {
+
+    private BenchmarkRegressionGate() {
+    }
+
+    public static void main(String[] args) throws IOException, RunnerException {
+
+        Path baselineFile = Paths.get(System.getProperty("benchmark.baseline", "baseline.properties"));
+        double tolerance = Double.parseDouble(System.getProperty("benchmark.tolerance", "0.1"));
+        boolean updateBaseline = Boolean.parseBoolean(System.getProperty("benchmark.updateBaseline", "false"));
+
+        ChainedOptionsBuilder options = new OptionsBuilder();
+        options.include(args.length > 0 ? args[0] : BenchmarkRegressionGate.class.getPackage().getName() + ".*Benchmark");
+        Collection<RunResult> results = new Runner(options.build()).run();
+
+        Map<String, Double> scores = new TreeMap<>();
+        Map<String, Mode> modes = new TreeMap<>();
+        for (RunResult result : results) {
+            String key = getKey(result.getParams());
+            scores.put(key, result.getPrimaryResult().getScore());
+            modes.put(key, result.getParams().getMode());
+        }
+
+        Properties baseline = new Properties();
+        if (Files.exists(baselineFile)) {
+            try (Reader reader = Files.newBufferedReader(baselineFile)) {
+                baseline.load(reader);
+            }
+        }
+
+        if (updateBaseline) {
+            scores.forEach((key, score) -> baseline.setProperty(key, Double.toString(score)));
+            try (Writer writer = Files.newBufferedWriter(baselineFile)) {
+                baseline.store(writer, "Benchmark baseline scores. Update with -Dbenchmark.updateBaseline=true");
+            }
+            System.out.println("Baseline " + baselineFile.toAbsolutePath() + " updated with " + scores.size() + " scores");
+            return;
+        }
+
+        int nbRegressions = 0;
+        for (Map.Entry<String, Double> score : scores.entrySet()) {
+            String baselineScore = baseline.getProperty(score.getKey());
+            if (baselineScore == null) {
+                System.out.println(String.format("NEW        %s: %.3f, no baseline score", score.getKey(), score.getValue()));
+                continue;
+            }
+            double expected = Double.parseDouble(baselineScore);
+            // Throughput scores are better when higher, time scores are better when lower
+            double degradation = modes.get(score.getKey()) == Mode.Throughput ? (expected - score.getValue()) / expected : (score.getValue() - expected) / expected;
+            boolean isRegression = degradation > tolerance;
+            if (isRegression) {
+                nbRegressions++;
+            }
+            System.out.println(String.format("%-10s %s: %.3f, baseline %.3f, %+.1f%%", isRegression ? "REGRESSION" : "OK", score.getKey(), score.getValue(), expected, degradation * 100));
+        }
+
+        if (nbRegressions > 0) {
+            System.out.println(nbRegressions + " benchmark(s) regressed by more than " + (tolerance * 100) + "% compared to a baseline " + baselineFile.toAbsolutePath());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param params Benchmark parameters
+     * @return A key identifying a benchmark and its parameter values, e.g. org.meveo.benchmark.XmlInvoiceBenchmark.writeStreamed[nbLines=100]
+     */
+    private static String getKey(BenchmarkParams params) {
+        StringBuilder key = new StringBuilder(params.getBenchmark());
+        if (!params.getParamsKeys().isEmpty()) {
+            StringBuilder paramValues = new StringBuilder();
+            for (String paramKey : params.getParamsKeys()) {
+                paramValues.append(paramValues.length() > 0 ? "," : "").append(paramKey).append('=').append(params.getParam(paramKey));
+            }
+            key.append('[').append(paramValues).append(']');
+        }
+        return key.toString();
+    }
+}
@@ -0,0 +1,57 @@
+package org.meveo.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.meveo.admin.parse.csv.MEVEOCdrParser;
+import org.meveo.model.rating.CDR;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures parsing of a CDR line in a default mediation format: date;quantity;access code;parameter1;...
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CdrParserBenchmark {
+
+    private MEVEOCdrParser cdrParser;
+
+    private String minimalLine;
+
+    private String fullLine;
+
+    @Setup
+    public void setup() {
+        cdrParser = new MEVEOCdrParser();
+        minimalLine = "2024-03-15T10:15:30.000+0100;1.5;ACCESS_123;ZONE_1";
+        fullLine = "2024-03-15T10:15:30+0100;1.5;ACCESS_123;ZONE_1;PARAM2;PARAM3;PARAM4;PARAM5;PARAM6;PARAM7;PARAM8;PARAM9;2024-03-01T00:00:00.000+0100;;;;;12.34";
+    }
+
+    /**
+     * Parse a line with a date with milliseconds and a single parameter
+     */
+    @Benchmark
+    public CDR parseMinimalLine() throws Exception {
+        return cdrParser.parse(minimalLine);
+    }
+
+    /**
+     * Parse a line with a date without milliseconds, that is parsed with a fallback date format, all parameters, a date and a decimal parameter
+     */
+    @Benchmark
+    public CDR parseFullLine() throws Exception {
+        return cdrParser.parse(fullLine);
+    }
+}
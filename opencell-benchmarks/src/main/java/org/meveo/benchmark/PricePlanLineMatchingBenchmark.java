@@ -0,0 +1,114 @@
+package org.meveo.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.meveo.model.catalog.ColumnTypeEnum;
+import org.meveo.model.catalog.PricePlanMatrixLineMatcher;
+import org.meveo.model.catalog.PricePlanMatrixValueForRating;
+import org.meveo.model.cpq.Attribute;
+import org.meveo.model.cpq.AttributeValue;
+import org.meveo.model.cpq.QuoteAttribute;
+import org.meveo.model.cpq.enums.AttributeTypeEnum;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares price plan matrix line lookup: checking price plan values line by line with PricePlanMatrixValueForRating.isMatch(), as done when price plan values are read from DB,
+ * versus a compiled PricePlanMatrixLineMatcher.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PricePlanLineMatchingBenchmark {
+
+    /**
+     * Number of price plan matrix lines. Only a line before a default line matches.
+     */
+    @Param({ "10", "100", "1000" })
+    private int nbLines;
+
+    private List<PricePlanMatrixValueForRating> ppValues;
+
+    private PricePlanMatrixLineMatcher lineMatcher;
+
+    @SuppressWarnings("rawtypes")
+    private Set<AttributeValue> attributeValues;
+
+    @Setup
+    public void setup() {
+
+        Attribute zone = createAttribute(1L, "zone", AttributeTypeEnum.TEXT);
+        Attribute volume = createAttribute(2L, "volume", AttributeTypeEnum.NUMERIC);
+
+        ppValues = new ArrayList<>();
+        for (long lineId = 1; lineId <= nbLines; lineId++) {
+            ppValues.add(new PricePlanMatrixValueForRating(zone.getId(), ColumnTypeEnum.String, lineId, false, null, null, "ZONE_" + lineId, null, null, null, null, null, null));
+            ppValues.add(new PricePlanMatrixValueForRating(volume.getId(), ColumnTypeEnum.Range_Numeric, lineId, false, null, null, null, null, null, null, 0d, 100d, null));
+        }
+        ppValues.add(new PricePlanMatrixValueForRating(null, null, nbLines + 1L, true, null, null, null, null, null, null, null, null, null));
+
+        lineMatcher = PricePlanMatrixLineMatcher.compile(ppValues);
+
+        QuoteAttribute zoneValue = new QuoteAttribute();
+        zoneValue.setAttribute(zone);
+        zoneValue.setStringValue("ZONE_" + nbLines);
+        QuoteAttribute volumeValue = new QuoteAttribute();
+        volumeValue.setAttribute(volume);
+        volumeValue.setDoubleValue(50d);
+        attributeValues = Set.of(zoneValue, volumeValue);
+    }
+
+    /**
+     * Check price plan values, ordered by line priority, one by one until all values of a line match
+     */
+    @Benchmark
+    public Long matchLineByLine() {
+
+        long lastPLId = -100;
+        boolean allMatch = true;
+        for (PricePlanMatrixValueForRating ppValue : ppValues) {
+            if (lastPLId != ppValue.getPricePlanMatrixLineId()) {
+                if (lastPLId > 0 && allMatch) {
+                    return lastPLId;
+                }
+                lastPLId = ppValue.getPricePlanMatrixLineId();
+
+            } else if (!allMatch) {
+                continue;
+            }
+            allMatch = ppValue.isMatch(attributeValues);
+        }
+        return lastPLId > 0 && allMatch ? lastPLId : null;
+    }
+
+    /**
+     * Match a line with a compiled line matcher
+     */
+    @Benchmark
+    public Long matchCompiled() {
+        return lineMatcher.match(attributeValues);
+    }
+
+    private Attribute createAttribute(Long id, String code, AttributeTypeEnum type) {
+        Attribute attribute = new Attribute();
+        attribute.setId(id);
+        attribute.setCode(code);
+        attribute.setAttributeType(type);
+        return attribute;
+    }
+}
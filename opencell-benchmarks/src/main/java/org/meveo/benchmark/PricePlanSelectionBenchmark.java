@@ -0,0 +1,112 @@
+package org.meveo.benchmark;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.meveo.model.catalog.PricePlanMatrixForRating;
+import org.meveo.service.billing.impl.PricePlanFilters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares price plan selection work done per wallet operation: parsing filter settings and building a query (DB roundtrip excluded) versus filtering cached price plans in memory.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PricePlanSelectionBenchmark {
+
+    /**
+     * Number of price plans associated to a charge
+     */
+    @Param({ "1", "10", "100" })
+    private int nbPricePlans;
+
+    private Map<String, Object> advancedSettingsValues;
+
+    private PricePlanFilters pricePlanFilters;
+
+    private List<PricePlanMatrixForRating> pricePlans;
+
+    private PricePlanFilters.Criteria criteria;
+
+    @Setup
+    public void setup() {
+
+        advancedSettingsValues = new HashMap<>();
+        advancedSettingsValues.put("pricePlanFilters.enablePricePlanFilters", Boolean.TRUE);
+        advancedSettingsValues.put("pricePlanFilters.enableSeller", Boolean.TRUE);
+        advancedSettingsValues.put("pricePlanFilters.enableOfferTemplate", Boolean.TRUE);
+        advancedSettingsValues.put("pricePlanFilters.enableTradingCountry", Boolean.TRUE);
+        advancedSettingsValues.put("pricePlanFilters.enableTradingCurrency", Boolean.TRUE);
+        advancedSettingsValues.put("pricePlanFilters.enableCriteria1Value", 1);
+        advancedSettingsValues.put("pricePlanFilters.enableCriteria2Value", Boolean.FALSE);
+        advancedSettingsValues.put("pricePlanFilters.enableCriteria3Value", Boolean.FALSE);
+        advancedSettingsValues.put("pricePlanFilters.enableCriteriaEL", Boolean.FALSE);
+        advancedSettingsValues.put("pricePlanFilters.enableValidityCalendar", Boolean.FALSE);
+        advancedSettingsValues.put("pricePlanFilters.enableStartSubscriptionDate", Boolean.TRUE);
+        advancedSettingsValues.put("pricePlanFilters.enableEndSubscriptionDate", Boolean.TRUE);
+        advancedSettingsValues.put("pricePlanFilters.enableMinSubscriptionAgeInMonth", Boolean.TRUE);
+        advancedSettingsValues.put("pricePlanFilters.enableMaxSubscriptionAgeInMonth", Boolean.TRUE);
+        advancedSettingsValues.put("pricePlanFilters.enableStartRatingDate", Boolean.TRUE);
+        advancedSettingsValues.put("pricePlanFilters.enableEndRatingDate", Boolean.TRUE);
+        advancedSettingsValues.put("pricePlanFilters.enableValidityFrom", Boolean.TRUE);
+        advancedSettingsValues.put("pricePlanFilters.enableValidityDate", Boolean.TRUE);
+        advancedSettingsValues.put("pricePlanFilters.enableMaxQuantity", Boolean.TRUE);
+        advancedSettingsValues.put("pricePlanFilters.enableMinQuantity", Boolean.TRUE);
+
+        pricePlanFilters = PricePlanFilters.of(advancedSettingsValues);
+
+        Date now = new Date();
+        pricePlans = new ArrayList<>();
+        for (int i = 0; i < nbPricePlans; i++) {
+            // Only the last price plan matches the criteria
+            String criteria1Value = i == nbPricePlans - 1 ? null : "value" + i;
+            pricePlans.add(new PricePlanMatrixForRating((long) i, "PP_" + i, null, null, null, null, null, null, null, null, null, criteria1Value, null, null, null, BigDecimal.TEN, null, null, null, null, null, i, 1L,
+                null, null, null, null, null, null, null, null));
+        }
+
+        criteria = new PricePlanFilters.Criteria("CHARGE", 1L, 2L, 3L, 4L, "param1", null, null, now, 0L, now, now, now, BigDecimal.ONE);
+    }
+
+    /**
+     * Work done per wallet operation before price plans were cached: parse filter settings and build a query
+     */
+    @Benchmark
+    public void buildQuery(Blackhole blackhole) {
+        Map<String, Object> queryParams = new HashMap<>();
+        blackhole.consume(PricePlanFilters.of(advancedSettingsValues).buildQuery(criteria, queryParams));
+        blackhole.consume(queryParams);
+    }
+
+    /**
+     * Work done per wallet operation with cached price plans: filter them in memory
+     */
+    @Benchmark
+    public void filterCachedPricePlans(Blackhole blackhole) {
+        for (PricePlanMatrixForRating pricePlan : pricePlans) {
+            if (pricePlanFilters.isMatch(pricePlan, criteria)) {
+                blackhole.consume(pricePlan);
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.meveo.benchmark;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.concurrent.TimeUnit;
+
+import org.meveo.commons.utils.NumberUtils;
+import org.meveo.model.BaseEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures amount, tax and rounding calculation done by RatingService.calculateAmounts() per wallet operation, once a unit price and a tax are known.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RatingAmountsBenchmark {
+
+    /**
+     * Is it a B2B (prices are without tax) or a B2C (prices are with tax) provider
+     */
+    @Param({ "true", "false" })
+    private boolean isEnterprise;
+
+    private BigDecimal quantity;
+
+    private BigDecimal unitPrice;
+
+    private BigDecimal taxPercent;
+
+    @Setup
+    public void setup() {
+        quantity = new BigDecimal("37.125");
+        unitPrice = new BigDecimal("0.123456789012");
+        taxPercent = new BigDecimal("20");
+    }
+
+    /**
+     * Calculate unit amounts with a high precision and total amounts rounded to a provider's rounding
+     */
+    @Benchmark
+    public void calculateAmounts(Blackhole blackhole) {
+        BigDecimal amount = quantity.multiply(unitPrice);
+        blackhole.consume(NumberUtils.computeDerivedAmounts(unitPrice, unitPrice, taxPercent, isEnterprise, BaseEntity.NB_DECIMALS, RoundingMode.HALF_UP));
+        blackhole.consume(NumberUtils.computeDerivedAmounts(amount, amount, taxPercent, isEnterprise, 2, RoundingMode.HALF_UP));
+    }
+}
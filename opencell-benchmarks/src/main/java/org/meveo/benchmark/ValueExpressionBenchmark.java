@@ -0,0 +1,64 @@
+package org.meveo.benchmark;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.meveo.model.billing.WalletOperation;
+import org.meveo.service.base.ValueExpressionWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures EL expression evaluation with cached compiled expressions: a simple property chain, as used in most rating and mediation settings, and an arithmetic expression.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValueExpressionBenchmark {
+
+    private Map<Object, Object> contextMap;
+
+    @Setup
+    public void setup() throws Exception {
+
+        BenchmarkConfiguration.init();
+
+        WalletOperation walletOperation = new WalletOperation();
+        walletOperation.setCode("USAGE_CHARGE");
+        walletOperation.setQuantity(new BigDecimal("12.5"));
+        walletOperation.setUnitAmountWithoutTax(new BigDecimal("0.75"));
+        walletOperation.setParameter1("ZONE_1");
+
+        contextMap = new HashMap<>();
+        contextMap.put("op", walletOperation);
+    }
+
+    /**
+     * Evaluate a property chain expression
+     */
+    @Benchmark
+    public String evaluatePropertyChain() throws Exception {
+        return ValueExpressionWrapper.evaluateExpression("#{op.parameter1}", contextMap, String.class);
+    }
+
+    /**
+     * Evaluate an arithmetic expression
+     */
+    @Benchmark
+    public Double evaluateArithmetic() throws Exception {
+        return ValueExpressionWrapper.evaluateExpression("#{op.quantity * op.unitAmountWithoutTax + (op.parameter1 eq 'ZONE_1' ? 10 : 0)}", contextMap, Double.class);
+    }
+}
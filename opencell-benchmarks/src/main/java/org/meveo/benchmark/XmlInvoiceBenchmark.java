@@ -0,0 +1,143 @@
+package org.meveo.benchmark;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.meveo.model.billing.Invoice;
+import org.meveo.model.rating.EDR;
+import org.meveo.service.billing.impl.XmlInvoiceCreatorScript;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Measures XML invoice production for a synthetic invoice: building invoice line DOM elements and writing a DOM to a file with a Transformer versus a streaming writer.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class XmlInvoiceBenchmark {
+
+    /**
+     * Number of invoice lines, each with an EDR
+     */
+    @Param({ "100", "10000" })
+    private int nbLines;
+
+    private BenchmarkXmlInvoiceCreator xmlInvoiceCreator;
+
+    private Invoice invoice;
+
+    private EDR edr;
+
+    private Document doc;
+
+    private File xmlFile;
+
+    @Setup
+    public void setup() throws Exception {
+
+        BenchmarkConfiguration.init();
+
+        xmlInvoiceCreator = new BenchmarkXmlInvoiceCreator();
+        invoice = new Invoice();
+        invoice.setId(1L);
+        invoice.setInvoiceNumber("INV_0001");
+
+        edr = new EDR();
+        edr.setOriginRecord("ORIGIN_RECORD");
+        edr.setOriginBatch("ORIGIN_BATCH");
+        edr.setEventDate(new Date());
+        edr.setQuantity(new BigDecimal("1.5"));
+        edr.setAccessCode("ACCESS_123");
+        edr.setParameter1("ZONE_1");
+        edr.setParameter2("PARAM2");
+        edr.setDecimalParam1(new BigDecimal("12.34"));
+
+        doc = createDocument();
+        xmlFile = File.createTempFile("invoice", ".xml");
+    }
+
+    @TearDown
+    public void tearDown() {
+        xmlFile.delete();
+    }
+
+    /**
+     * Create invoice line DOM elements
+     */
+    @Benchmark
+    public Document buildDocument() throws Exception {
+        return createDocument();
+    }
+
+    /**
+     * Write a DOM to a file with a Transformer
+     */
+    @Benchmark
+    public File writeWithTransformer() {
+        return xmlInvoiceCreator.createFile(doc, invoice, xmlFile.getAbsolutePath());
+    }
+
+    /**
+     * Write a DOM to a file with a streaming writer
+     */
+    @Benchmark
+    public File writeStreamed() {
+        return xmlInvoiceCreator.createFileStreamed(doc, invoice, xmlFile.getAbsolutePath());
+    }
+
+    private Document createDocument() throws Exception {
+
+        Document document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
+        Element invoiceTag = document.createElement("invoice");
+        invoiceTag.setAttribute("invoiceNumber", invoice.getInvoiceNumber());
+        document.appendChild(invoiceTag);
+
+        Element subCategoryTag = document.createElement("subCategory");
+        subCategoryTag.setAttribute("code", "SUB_CAT");
+        invoiceTag.appendChild(document.createElement("details")).appendChild(document.createElement("categories")).appendChild(document.createElement("category"))
+            .appendChild(document.createElement("subCategories")).appendChild(subCategoryTag);
+
+        for (int i = 0; i < nbLines; i++) {
+            Element lineTag = document.createElement("line");
+            lineTag.setAttribute("code", "LINE_" + i);
+            lineTag.setAttribute("quantity", "1.5");
+            lineTag.setAttribute("amountWithoutTax", "18.52");
+            lineTag.setAttribute("amountWithTax", "22.22");
+            lineTag.appendChild(document.createElement("label")).appendChild(document.createTextNode("Usage & consumption <" + i + ">"));
+            lineTag.appendChild(xmlInvoiceCreator.createEDRSection(document, edr, "dd/MM/yyyy", "dd/MM/yyyy HH:mm:ss"));
+            subCategoryTag.appendChild(lineTag);
+        }
+        return document;
+    }
+
+    /**
+     * Exposes XML invoice section creation used by a benchmark
+     */
+    private static class BenchmarkXmlInvoiceCreator extends XmlInvoiceCreatorScript {
+
+        @Override
+        protected Element createEDRSection(Document doc, EDR edr, String invoiceDateFormat, String invoiceDateTimeFormat) {
+            return super.createEDRSection(doc, edr, invoiceDateFormat, invoiceDateTimeFormat);
+        }
+    }
+}
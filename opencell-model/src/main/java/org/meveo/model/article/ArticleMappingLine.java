@@ -35,7 +35,8 @@ import jakarta.validation.constraints.NotNull;
 @Table(name = "billing_article_mapping_line")
 @GenericGenerator(name = "ID_GENERATOR", type = org.hibernate.id.enhanced.SequenceStyleGenerator.class, parameters = {
         @org.hibernate.annotations.Parameter(name = "sequence_name", value = "billing_article_mapping_line_seq"), @Parameter(name = "increment_size", value = "1") })
-@NamedQueries({ @NamedQuery(name = "ArticleMappingLine.findAll", query = "SELECT a FROM ArticleMappingLine a") })
+@NamedQueries({ @NamedQuery(name = "ArticleMappingLine.findAll", query = "SELECT a FROM ArticleMappingLine a"),
+        @NamedQuery(name = "ArticleMappingLine.findAllWithAttributeMappings", query = "SELECT distinct a FROM ArticleMappingLine a left join fetch a.attributesMapping am left join fetch am.attribute") })
 @Cacheable
 public class ArticleMappingLine extends BusinessEntity {
 
@@ -90,6 +90,10 @@ import jakarta.validation.constraints.Size;
         @Parameter(name = "increment_size", value = "5000") })
 @NamedQueries({ @NamedQuery(name = "InvoiceLine.listToInvoiceByBillingAccountAndIDs", query = "select il FROM InvoiceLine il where il.billingAccount.id=:billingAccountId AND il.status='OPEN' AND id in (:listOfIds) "),
 		@NamedQuery(name = "InvoiceLine.InvoiceLinesByInvoiceID", query = "select il FROM InvoiceLine il WHERE il.invoice.id =:invoiceId"),
+		@NamedQuery(name = "InvoiceLine.countByInvoiceID", query = "select count(il.id) FROM InvoiceLine il WHERE il.invoice.id =:invoiceId"),
+		@NamedQuery(name = "InvoiceLine.listByInvoiceIDOrderById", query = "select il FROM InvoiceLine il WHERE il.invoice.id =:invoiceId order by il.id"),
+		@NamedQuery(name = "InvoiceLine.listByInvoiceIDAndCategoryAndSubCategoryAggregate", query = "select il FROM InvoiceLine il WHERE il.invoice.id =:invoiceId and il.accountingArticle.invoiceSubCategory.invoiceCategory.id=:invoiceCategoryId and (il.invoiceAggregateF is null or il.invoiceAggregateF.id=:subCategoryAggregateId) order by il.id"),
+		@NamedQuery(name = "InvoiceLine.listFirstByInvoiceIDGroupedByOfferServiceAndSubscription", query = "select il FROM InvoiceLine il WHERE il.id in (select min(il2.id) FROM InvoiceLine il2 WHERE il2.invoice.id =:invoiceId group by il2.offerTemplate.id, il2.serviceInstance.id, il2.subscription.id) order by il.id"),
 		@NamedQuery(name = "InvoiceLine.InvoiceLinesByBRs", query = "select il FROM InvoiceLine il WHERE il.billingRun IN (:BillingRus)"),
         @NamedQuery(name = "InvoiceLine.findByCommercialOrder", query = "select il from InvoiceLine il where il.commercialOrder = :commercialOrder"),
 		@NamedQuery(name = "InvoiceLine.InvoiceLinesByBRID", query = "select il FROM InvoiceLine il WHERE il.billingRun.id = :billingRunId"),
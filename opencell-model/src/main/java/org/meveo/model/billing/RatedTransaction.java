@@ -178,6 +178,7 @@ import jakarta.validation.constraints.Size;
         @NamedQuery(name = "RatedTransaction.listByInvoiceSubCategoryAggr", query = "SELECT r FROM RatedTransaction r where r.invoiceLine.invoice=:invoice and r.invoiceAgregateF=:invoiceAgregateF and r.status='BILLED' order by r.usageDate"),
         @NamedQuery(name = "RatedTransaction.deleteInvoiceAggrByInvoice", query = "UPDATE RatedTransaction r set r.invoiceAgregateF=null where r.invoiceLine.id in (select il.id from InvoiceLine il where il.invoice.id=:invoiceId)"),
         @NamedQuery(name = "RatedTransaction.listAllByInvoice", query = "SELECT r FROM RatedTransaction r where r.invoiceLine.invoice=:invoice order by r.usageDate"),
+        @NamedQuery(name = "RatedTransaction.listFirstByInvoiceGroupedBySubscriptionAndUserAccount", query = "SELECT r FROM RatedTransaction r where r.id in (select min(r2.id) FROM RatedTransaction r2 where r2.invoiceLine.invoice=:invoice group by r2.subscription.id, r2.userAccount.id) order by r.usageDate"),
         @NamedQuery(name = "RatedTransaction.listToInvoiceByOrderNumber", query = "SELECT r FROM RatedTransaction r left join fetch r.wallet where r.status='OPEN' AND r.orderNumber=:orderNumber AND :firstTransactionDate<=r.usageDate AND r.usageDate<:lastTransactionDate and (r.invoicingDate is NULL or r.invoicingDate<:invoiceUpToDate)  order by r.billingAccount.id "),
         @NamedQuery(name = "RatedTransaction.listToInvoiceBySubscription", query = "SELECT r FROM RatedTransaction r left join fetch r.wallet where r.subscription.id=:subscriptionId AND r.status='OPEN' AND :firstTransactionDate<=r.usageDate AND r.usageDate<:lastTransactionDate and (r.invoicingDate is NULL or r.invoicingDate<:invoiceUpToDate) "),
         @NamedQuery(name = "RatedTransaction.listToInvoiceByBillingAccount", query = "SELECT r FROM RatedTransaction r left join fetch r.wallet where r.billingAccount.id=:billingAccountId AND r.status='OPEN' AND :firstTransactionDate<=r.usageDate AND r.usageDate<:lastTransactionDate and (r.invoicingDate is NULL or r.invoicingDate<:invoiceUpToDate) "),
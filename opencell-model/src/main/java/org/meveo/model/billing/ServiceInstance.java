@@ -114,6 +114,7 @@ import jakarta.validation.constraints.Size;
         @NamedQuery(name = "ServiceInstance.findByServiceCodeAndSubscriptionId", query = "select s from ServiceInstance s where s.code = :code and s.subscription.id = :subscriptionId"),
         @NamedQuery(name = "ServiceInstance.findBySubscriptionIdLoadAttributes", query = "select distinct(s) from ServiceInstance s left join fetch s.attributeInstances sai where s.subscription.id = :subscriptionId"),
         @NamedQuery(name = "ServiceInstance.findByIdAndFetchProduct", query = "select s from ServiceInstance s left join fetch s.attributeInstances ai where s.id = :id "),
+        @NamedQuery(name = "ServiceInstance.findByIdsAndFetchProduct", query = "select distinct s from ServiceInstance s left join fetch s.attributeInstances ai where s.id in (:ids) "),
         @NamedQuery(name = "ServiceInstance.getPendingToActivate", query = "select s.id from ServiceInstance s where s.subscription.status in (:subscriptionStatuses) AND s.subscriptionDate is not null and s.subscriptionDate<:date and s.status in (:statuses)"),
         @NamedQuery(name = "ServiceInstance.listActiveRecurrentServiceInstances", query = "select s from ServiceInstance s where s.status = org.meveo.model.billing.InstanceStatusEnum.ACTIVE and s.serviceRenewal.initialTermType =  org.meveo.model.billing.SubscriptionRenewal$InitialTermTypeEnum.RECURRING"),
 })
@@ -0,0 +1,405 @@
+package org.meveo.model.catalog;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.meveo.model.cpq.AttributeValue;
+
+/**
+ * A compiled, immutable representation of Price plan matrix version lines used to determine a matching price line in memory.<br/>
+ * <br/>
+ * Lines are kept in the same order as returned by "PricePlanMatrixValue.findByPPVersionForRating" query (priority, rating accuracy desc, id). String type columns are indexed by value and Range type
+ * columns are indexed with an interval tree. Indexes are used only to narrow down candidate lines - each candidate is then verified with {@link PricePlanMatrixValueForRating#isMatch(Set)} in line order,
+ * so line priority and default line semantics are exactly the same as with a linear scan of values.
+ */
+public class PricePlanMatrixLineMatcher implements Serializable {
+
+    private static final long serialVersionUID = -2170580297766542734L;
+
+    /**
+     * A separator used in multi value attributes
+     */
+    private static final String MULTI_VALUES_SEPARATOR = ";";
+
+    /**
+     * Price plan line IDs in a matching order
+     */
+    private final long[] lineIds;
+
+    /**
+     * Price plan values for each line in a matching order
+     */
+    private final PricePlanMatrixValueForRating[][] lineValues;
+
+    /**
+     * A first default line (rating accuracy = 0) ID
+     */
+    private final Long defaultLineId;
+
+    /**
+     * Column indexes by an attribute ID
+     */
+    private final Map<Long, ColumnIndex> columnIndexes;
+
+    private PricePlanMatrixLineMatcher(long[] lineIds, PricePlanMatrixValueForRating[][] lineValues, Long defaultLineId, Map<Long, ColumnIndex> columnIndexes) {
+        this.lineIds = lineIds;
+        this.lineValues = lineValues;
+        this.defaultLineId = defaultLineId;
+        this.columnIndexes = columnIndexes;
+    }
+
+    /**
+     * Compile Price plan matrix values into a line matcher
+     *
+     * @param ppValues Price plan values as returned by "PricePlanMatrixValue.findByPPVersionForRating" query, ordered by line
+     * @return A compiled line matcher
+     */
+    public static PricePlanMatrixLineMatcher compile(List<PricePlanMatrixValueForRating> ppValues) {
+
+        List<Long> lineIdList = new ArrayList<>();
+        List<PricePlanMatrixValueForRating[]> lineValueList = new ArrayList<>();
+        Long defaultLineId = null;
+
+        // Group consecutive values by a line, same as a linear scan does
+        int from = 0;
+        for (int i = 1; i <= ppValues.size(); i++) {
+            if (i == ppValues.size() || ppValues.get(i).getPricePlanMatrixLineId() != ppValues.get(from).getPricePlanMatrixLineId()) {
+                PricePlanMatrixValueForRating[] values = ppValues.subList(from, i).toArray(new PricePlanMatrixValueForRating[0]);
+                lineIdList.add(values[0].getPricePlanMatrixLineId());
+                lineValueList.add(values);
+                if (defaultLineId == null && values[0].isDefaultLine()) {
+                    defaultLineId = values[0].getPricePlanMatrixLineId();
+                }
+                from = i;
+            }
+        }
+
+        int nbLines = lineIdList.size();
+        Map<Long, ColumnIndex> columnIndexes = new HashMap<>();
+
+        for (int linePosition = 0; linePosition < nbLines; linePosition++) {
+            for (PricePlanMatrixValueForRating ppValue : lineValueList.get(linePosition)) {
+                if (ppValue.isDefaultLine() || ppValue.getPricePlanMatrixColumnType() == null) {
+                    continue;
+                }
+                switch (ppValue.getPricePlanMatrixColumnType()) {
+                case String:
+                    if (!StringUtils.isEmpty(ppValue.getStringValue())) {
+                        ColumnIndex columnIndex = columnIndexes.computeIfAbsent(ppValue.getAttributeId(), id -> new StringColumnIndex(nbLines));
+                        if (columnIndex instanceof StringColumnIndex) {
+                            ((StringColumnIndex) columnIndex).add(linePosition, ppValue.getStringValue());
+                        } else {
+                            columnIndex.inconsistent = true;
+                        }
+                    }
+                    break;
+                case Range_Numeric:
+                    if (ppValue.getFromDoubleValue() != null || ppValue.getToDoubleValue() != null) {
+                        addRange(columnIndexes, ppValue.getAttributeId(), nbLines, false, linePosition, ppValue.getFromDoubleValue() != null ? ppValue.getFromDoubleValue() : Double.NEGATIVE_INFINITY,
+                            ppValue.getToDoubleValue() != null ? ppValue.getToDoubleValue() : Double.POSITIVE_INFINITY);
+                    }
+                    break;
+                case Range_Date:
+                    if (ppValue.getFromDateValue() != null || ppValue.getToDateValue() != null) {
+                        addRange(columnIndexes, ppValue.getAttributeId(), nbLines, true, linePosition, ppValue.getFromDateValue() != null ? ppValue.getFromDateValue().getTime() : Double.NEGATIVE_INFINITY,
+                            ppValue.getToDateValue() != null ? ppValue.getToDateValue().getTime() : Double.POSITIVE_INFINITY);
+                    }
+                    break;
+                default:
+                    // Other column types are verified directly
+                }
+            }
+        }
+
+        // A column can be declared with a different type in different lines only by a data corruption, so index is dropped in such case
+        columnIndexes.values().removeIf(ColumnIndex::isInconsistent);
+        columnIndexes.values().forEach(ColumnIndex::build);
+
+        return new PricePlanMatrixLineMatcher(lineIdList.stream().mapToLong(Long::longValue).toArray(), lineValueList.toArray(new PricePlanMatrixValueForRating[0][]), defaultLineId, columnIndexes);
+    }
+
+    private static void addRange(Map<Long, ColumnIndex> columnIndexes, long attributeId, int nbLines, boolean dateRange, int linePosition, double start, double end) {
+        ColumnIndex columnIndex = columnIndexes.computeIfAbsent(attributeId, id -> new RangeColumnIndex(nbLines, dateRange));
+        if (columnIndex instanceof RangeColumnIndex && ((RangeColumnIndex) columnIndex).dateRange == dateRange) {
+            ((RangeColumnIndex) columnIndex).add(linePosition, start, end);
+        } else {
+            columnIndex.inconsistent = true;
+        }
+    }
+
+    /**
+     * Determine a price plan line matching the attribute values passed
+     *
+     * @param attributeValues Attributes to match
+     * @return A matched price plan line ID or NULL if no line was matched
+     */
+    @SuppressWarnings("rawtypes")
+    public Long match(Set<AttributeValue> attributeValues) {
+
+        BitSet candidates = new BitSet(lineIds.length);
+        candidates.set(0, lineIds.length);
+
+        for (Map.Entry<Long, ColumnIndex> columnIndex : columnIndexes.entrySet()) {
+            BitSet columnCandidates = columnIndex.getValue().getCandidates(columnIndex.getKey(), attributeValues);
+            if (columnCandidates != null) {
+                candidates.and(columnCandidates);
+            }
+        }
+
+        for (int linePosition = candidates.nextSetBit(0); linePosition >= 0; linePosition = candidates.nextSetBit(linePosition + 1)) {
+            if (isLineMatch(lineValues[linePosition], attributeValues)) {
+                return lineIds[linePosition];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return A first default line (rating accuracy = 0) ID or NULL if version has no default line
+     */
+    public Long getDefaultLineId() {
+        return defaultLineId;
+    }
+
+    /**
+     * @return Number of lines in a price plan version
+     */
+    public int getNbLines() {
+        return lineIds.length;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static boolean isLineMatch(PricePlanMatrixValueForRating[] values, Set<AttributeValue> attributeValues) {
+        for (PricePlanMatrixValueForRating ppValue : values) {
+            if (!ppValue.isMatch(attributeValues)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * An index of lines by values of a single column (attribute)
+     */
+    private abstract static class ColumnIndex implements Serializable {
+
+        private static final long serialVersionUID = 6571026618432386150L;
+
+        /**
+         * Lines that have a non-wildcard value for the column
+         */
+        protected final BitSet constrainedLines;
+
+        /**
+         * Lines that are not restricted by the column
+         */
+        protected BitSet unconstrainedLines;
+
+        protected final int nbLines;
+
+        protected boolean inconsistent;
+
+        protected ColumnIndex(int nbLines) {
+            this.nbLines = nbLines;
+            this.constrainedLines = new BitSet(nbLines);
+        }
+
+        protected void build() {
+            unconstrainedLines = new BitSet(nbLines);
+            unconstrainedLines.set(0, nbLines);
+            unconstrainedLines.andNot(constrainedLines);
+        }
+
+        protected boolean isInconsistent() {
+            return inconsistent;
+        }
+
+        /**
+         * Determine candidate lines for a given column
+         *
+         * @param attributeId Column attribute ID
+         * @param attributeValues Attributes to match
+         * @return Lines that might match or NULL if index can not be applied
+         */
+        @SuppressWarnings("rawtypes")
+        protected BitSet getCandidates(long attributeId, Set<AttributeValue> attributeValues) {
+
+            BitSet candidates = (BitSet) unconstrainedLines.clone();
+            for (AttributeValue attributeValue : attributeValues) {
+                if (attributeValue.getAttribute().getId().longValue() == attributeId && !addMatchedLines(attributeValue, candidates)) {
+                    return null;
+                }
+            }
+            return candidates;
+        }
+
+        /**
+         * Add lines matching a given attribute value
+         *
+         * @param attributeValue Attribute value
+         * @param candidates Lines matched
+         * @return False if index can not be applied to this attribute value
+         */
+        @SuppressWarnings("rawtypes")
+        protected abstract boolean addMatchedLines(AttributeValue attributeValue, BitSet candidates);
+    }
+
+    /**
+     * String type column index - a hash lookup by value
+     */
+    private static class StringColumnIndex extends ColumnIndex {
+
+        private static final long serialVersionUID = -5590167233693127883L;
+
+        private final Map<String, BitSet> linesByValue = new HashMap<>();
+
+        private StringColumnIndex(int nbLines) {
+            super(nbLines);
+        }
+
+        private void add(int linePosition, String value) {
+            constrainedLines.set(linePosition);
+            linesByValue.computeIfAbsent(value, v -> new BitSet(nbLines)).set(linePosition);
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        protected boolean addMatchedLines(AttributeValue attributeValue, BitSet candidates) {
+
+            String value = attributeValue.getStringValue();
+            switch (attributeValue.getAttribute().getAttributeType()) {
+            case LIST_MULTIPLE_TEXT:
+            case LIST_TEXT:
+                if (!StringUtils.isEmpty(value)) {
+                    for (String listValue : value.split(MULTI_VALUES_SEPARATOR)) {
+                        addLines(listValue, candidates);
+                    }
+                }
+                return true;
+            case TEXT:
+            case EMAIL:
+            case INFO:
+            case PHONE:
+                addLines(value, candidates);
+                return true;
+            default:
+                // Expression language attributes are compared by a converted value
+                return false;
+            }
+        }
+
+        private void addLines(String value, BitSet candidates) {
+            BitSet lines = value != null ? linesByValue.get(value) : null;
+            if (lines != null) {
+                candidates.or(lines);
+            }
+        }
+    }
+
+    /**
+     * Range type column index - a static interval tree over closed intervals. An upper bound exclusion is resolved when verifying a line.
+     */
+    private static class RangeColumnIndex extends ColumnIndex {
+
+        private static final long serialVersionUID = 1930290306734282564L;
+
+        private final boolean dateRange;
+
+        private final List<double[]> intervals = new ArrayList<>();
+
+        /**
+         * Interval starts, sorted ascending
+         */
+        private double[] starts;
+
+        /**
+         * Interval ends, in the same order as starts
+         */
+        private double[] ends;
+
+        /**
+         * Line positions, in the same order as starts
+         */
+        private int[] linePositions;
+
+        /**
+         * A maximum end value of a subtree rooted in a given position
+         */
+        private double[] maxEnds;
+
+        private RangeColumnIndex(int nbLines, boolean dateRange) {
+            super(nbLines);
+            this.dateRange = dateRange;
+        }
+
+        private void add(int linePosition, double start, double end) {
+            constrainedLines.set(linePosition);
+            intervals.add(new double[] { start, end, linePosition });
+        }
+
+        @Override
+        protected void build() {
+            super.build();
+
+            intervals.sort((one, two) -> Double.compare(one[0], two[0]));
+
+            int size = intervals.size();
+            starts = new double[size];
+            ends = new double[size];
+            linePositions = new int[size];
+            maxEnds = new double[size];
+            for (int i = 0; i < size; i++) {
+                starts[i] = intervals.get(i)[0];
+                ends[i] = intervals.get(i)[1];
+                linePositions[i] = (int) intervals.get(i)[2];
+            }
+            intervals.clear();
+            buildMaxEnds(0, size - 1);
+        }
+
+        private double buildMaxEnds(int low, int high) {
+            if (low > high) {
+                return Double.NEGATIVE_INFINITY;
+            }
+            int middle = (low + high) >>> 1;
+            maxEnds[middle] = Math.max(ends[middle], Math.max(buildMaxEnds(low, middle - 1), buildMaxEnds(middle + 1, high)));
+            return maxEnds[middle];
+        }
+
+        @SuppressWarnings("rawtypes")
+        @Override
+        protected boolean addMatchedLines(AttributeValue attributeValue, BitSet candidates) {
+            if (dateRange) {
+                if (attributeValue.getDateValue() != null) {
+                    stab(0, starts.length - 1, attributeValue.getDateValue().getTime(), candidates);
+                }
+            } else if (attributeValue.getDoubleValue() != null) {
+                stab(0, starts.length - 1, attributeValue.getDoubleValue(), candidates);
+            }
+            return true;
+        }
+
+        private void stab(int low, int high, double value, BitSet candidates) {
+            if (low > high) {
+                return;
+            }
+            int middle = (low + high) >>> 1;
+            if (maxEnds[middle] < value) {
+                return;
+            }
+            stab(low, middle - 1, value, candidates);
+            if (starts[middle] <= value) {
+                if (value <= ends[middle]) {
+                    candidates.set(linePositions[middle]);
+                }
+                stab(middle + 1, high, value, candidates);
+            }
+        }
+    }
+}
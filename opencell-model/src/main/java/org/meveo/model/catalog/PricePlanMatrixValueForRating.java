@@ -168,6 +168,17 @@ public class PricePlanMatrixValueForRating implements Serializable {
         this.toDoubleValue = toDoubleValue;
     }
 
+    /**
+     * @return Is this a default line
+     */
+    public boolean isDefaultLine() {
+        return defaultLine;
+    }
+
+    public void setDefaultLine(boolean defaultLine) {
+        this.defaultLine = defaultLine;
+    }
+
     /**
      * @return the booleanValue
      */
@@ -108,6 +108,13 @@ public class CustomEntityTemplate extends EnableBusinessEntity implements Compar
     @Column(name = "disableable")
     private boolean disableable = false;
 
+    /**
+     * Should custom table lookups from EL expressions be served from an in-memory snapshot of the table instead of querying a database
+     */
+    @Convert(converter = NumericBooleanConverter.class)
+    @Column(name = "snapshot_lookups")
+    private boolean snapshotLookups = false;
+
     public String getName() {
         return name;
     }
@@ -227,4 +234,12 @@ public class CustomEntityTemplate extends EnableBusinessEntity implements Compar
         this.disableable = disableable;
     }
 
+    public boolean isSnapshotLookups() {
+        return snapshotLookups;
+    }
+
+    public void setSnapshotLookups(boolean snapshotLookups) {
+        this.snapshotLookups = snapshotLookups;
+    }
+
 }
\ No newline at end of file
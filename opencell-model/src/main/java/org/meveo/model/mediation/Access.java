@@ -62,7 +62,9 @@ import jakarta.validation.constraints.Size;
                 @QueryHint(name = "org.hibernate.cacheable", value = "true") }),
         @NamedQuery(name = "Access.getCountByParent", query = "select count(*) from Access a where a.subscription=:parent"),
         @NamedQuery(name = "Access.deleteBySubscriptionId", query = "delete from Access where subscription.id=:subscriptionId") ,
-        @NamedQuery(name = "Access.getAccessesByCodeSubscriptionAndCode", query = "SELECT a from Access a where a.disabled=false and a.accessUserId=:code and a.subscription.code=:subscriptionCode") })
+        @NamedQuery(name = "Access.getAccessesByCodeSubscriptionAndCode", query = "SELECT a from Access a where a.disabled=false and a.accessUserId=:code and a.subscription.code=:subscriptionCode"),
+        @NamedQuery(name = "Access.getAccessPointIntervalsByUserId", query = "SELECT a.id, a.accessUserId, a.subscription.id, a.startDate, a.endDate from Access a where a.disabled=false and a.accessUserId=:accessUserId"),
+        @NamedQuery(name = "Access.getActiveAccessPointIntervals", query = "SELECT a.id, a.accessUserId, a.subscription.id, a.startDate, a.endDate from Access a where a.disabled=false") })
 public class Access extends EnableCFEntity {
 
     private static final long serialVersionUID = 1L;
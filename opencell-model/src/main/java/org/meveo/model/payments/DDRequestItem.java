@@ -31,6 +31,8 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.FetchType;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
+import jakarta.persistence.NamedQueries;
+import jakarta.persistence.NamedQuery;
 import jakarta.persistence.OneToMany;
 import jakarta.persistence.OneToOne;
 import jakarta.persistence.Table;
@@ -42,6 +44,8 @@ import jakarta.validation.constraints.Size;
 @Entity
 @Table(name = "ar_ddrequest_item")
 @GenericGenerator(name = "ID_GENERATOR", type = org.hibernate.id.enhanced.SequenceStyleGenerator.class, parameters = { @Parameter(name = "sequence_name", value = "ar_ddrequest_item_seq"), @Parameter(name = "increment_size", value = "1") })
+@NamedQueries({ @NamedQuery(name = "DDRequestItem.listByDDRequestLot", query = "select i from DDRequestItem i where i.ddRequestLOT.id=:ddRequestLotId order by i.id"),
+        @NamedQuery(name = "DDRequestItem.listAmountsByDDRequestLot", query = "select i.amount, i.errorMsg from DDRequestItem i where i.ddRequestLOT.id=:ddRequestLotId order by i.id") })
 public class DDRequestItem extends AuditableEntity {
 
     private static final long serialVersionUID = 1L;
@@ -62,6 +62,7 @@ import jakarta.validation.constraints.Size;
 @GenericGenerator(name = "ID_GENERATOR", type = org.hibernate.id.enhanced.SequenceStyleGenerator.class, parameters = { @Parameter(name = "sequence_name", value = "rating_edr_seq"),
         @Parameter(name = "increment_size", value = "5000") })
 @NamedQueries({ @NamedQuery(name = "EDR.getEdrsForCache", query = "select case when e.originRecord is null then '' else e.originRecord end as cacheKey from EDR e where e.status='OPEN' ORDER BY e.eventDate DESC"),
+        @NamedQuery(name = "EDR.getOriginRecordsCreatedSince", query = "select case when e.originRecord is null then '' else e.originRecord end, e.created, e.id from EDR e where e.created>=:createdFrom and e.id>:lastId order by e.id"),
 
         @NamedQuery(name = "EDR.listToRateIds", query = "SELECT e.id from EDR e where e.status='OPEN' order by e.id"),
         @NamedQuery(name = "EDR.findByIdWithSubscription", query = "SELECT e from EDR e left join fetch e.subscription where e.status='OPEN' and e.id=:id "),
@@ -59,7 +59,8 @@ import jakarta.validation.constraints.Size;
 @NamedQueries({
         @NamedQuery(name = "TaxMapping.findApplicableTax", query = "select m from TaxMapping m where m.accountTaxCategory=:taxCategory and (m.chargeTaxClass=:taxClass or m.chargeTaxClass is null) and (m.sellerCountry=:sellerCountry or m.sellerCountry is null) and (m.buyerCountry=:buyerCountry or m.buyerCountry is null) and ((m.valid.from is null or m.valid.from<=:applicationDate) AND (:applicationDate<m.valid.to or m.valid.to is null)) ORDER BY m.chargeTaxClass asc NULLS LAST, m.sellerCountry asc NULLS LAST, m.buyerCountry asc NULLS LAST, priority DESC", hints = {
                 @QueryHint(name = "org.hibernate.cacheable", value = "TRUE"), @QueryHint(name = "org.hibernate.readOnly", value = "true") }),
-        @NamedQuery(name = "TaxMapping.findApplicableTaxByIds", query = "select m from TaxMapping m where m.accountTaxCategory.id=:taxCategoryId and (m.chargeTaxClass.id=:taxClassId or m.chargeTaxClass is null) and (m.sellerCountry.id=:sellerCountryId or m.sellerCountry.id is null) and (m.buyerCountry.id=:buyerCountryId or m.buyerCountry is null) and ((m.valid.from is null or m.valid.from<=:applicationDate) AND (:applicationDate<m.valid.to or m.valid.to is null)) ORDER BY m.chargeTaxClass asc NULLS LAST, m.sellerCountry asc NULLS LAST, m.buyerCountry asc NULLS LAST, priority DESC"), })
+        @NamedQuery(name = "TaxMapping.findApplicableTaxByIds", query = "select m from TaxMapping m where m.accountTaxCategory.id=:taxCategoryId and (m.chargeTaxClass.id=:taxClassId or m.chargeTaxClass is null) and (m.sellerCountry.id=:sellerCountryId or m.sellerCountry.id is null) and (m.buyerCountry.id=:buyerCountryId or m.buyerCountry is null) and ((m.valid.from is null or m.valid.from<=:applicationDate) AND (:applicationDate<m.valid.to or m.valid.to is null)) ORDER BY m.chargeTaxClass asc NULLS LAST, m.sellerCountry asc NULLS LAST, m.buyerCountry asc NULLS LAST, priority DESC"),
+        @NamedQuery(name = "TaxMapping.findCandidatesByIds", query = "select m.id, m.tax.id, m.filterEL, m.taxEL, s.code, m.valid.from, m.valid.to from TaxMapping m left join m.taxScript s where m.accountTaxCategory.id=:taxCategoryId and (m.chargeTaxClass.id=:taxClassId or m.chargeTaxClass is null) and (m.sellerCountry.id=:sellerCountryId or m.sellerCountry is null) and (m.buyerCountry.id=:buyerCountryId or m.buyerCountry is null) ORDER BY m.chargeTaxClass.id asc NULLS LAST, m.sellerCountry.id asc NULLS LAST, m.buyerCountry.id asc NULLS LAST, m.priority DESC"), })
 public class TaxMapping extends AuditableEntity implements Serializable {
     private static final long serialVersionUID = 1L;
 
@@ -0,0 +1,103 @@
+package org.meveo.model.catalog;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+import org.meveo.model.cpq.Attribute;
+import org.meveo.model.cpq.QuoteAttribute;
+import org.meveo.model.cpq.enums.AttributeTypeEnum;
+
+public class PricePlanMatrixLineMatcherTest {
+
+    private final Attribute billingCycle = createAttribute(1L, "billing_cycle", AttributeTypeEnum.LIST_TEXT);
+
+    private final Attribute zone = createAttribute(2L, "zone", AttributeTypeEnum.TEXT);
+
+    private final Attribute startDate = createAttribute(3L, "start_date", AttributeTypeEnum.DATE);
+
+    @Test
+    public void first_line_in_priority_order_is_matched() {
+        PricePlanMatrixLineMatcher lineMatcher = PricePlanMatrixLineMatcher.compile(getPricePlanValues());
+
+        assertThat(lineMatcher.getNbLines()).isEqualTo(5);
+        assertThat(lineMatcher.match(Set.of(stringValue(billingCycle, "Monthly"), stringValue(zone, "EU"), dateValue(startDate, new Date(150L))))).isEqualTo(10L);
+        assertThat(lineMatcher.match(Set.of(stringValue(billingCycle, "Weekly;Monthly"), stringValue(zone, "US"), dateValue(startDate, new Date(150L))))).isEqualTo(20L);
+        assertThat(lineMatcher.match(Set.of(stringValue(billingCycle, "Annually"), stringValue(zone, "EU"), dateValue(startDate, new Date(500L))))).isEqualTo(40L);
+    }
+
+    @Test
+    public void wildcard_and_open_range_values_are_matched() {
+        PricePlanMatrixLineMatcher lineMatcher = PricePlanMatrixLineMatcher.compile(getPricePlanValues());
+
+        assertThat(lineMatcher.match(Set.of(stringValue(billingCycle, "Annually"), stringValue(zone, "ASIA"), dateValue(startDate, new Date(5000L))))).isEqualTo(30L);
+    }
+
+    @Test
+    public void default_line_is_matched_when_nothing_else_matches() {
+        PricePlanMatrixLineMatcher lineMatcher = PricePlanMatrixLineMatcher.compile(getPricePlanValues());
+
+        assertThat(lineMatcher.match(Set.of(stringValue(billingCycle, "Weekly"), stringValue(zone, "EU"), dateValue(startDate, new Date(150L))))).isEqualTo(50L);
+        assertThat(lineMatcher.getDefaultLineId()).isEqualTo(50L);
+    }
+
+    @Test
+    public void missing_attribute_does_not_match_constrained_lines() {
+        List<PricePlanMatrixValueForRating> ppValues = getPricePlanValues();
+        ppValues.removeIf(PricePlanMatrixValueForRating::isDefaultLine);
+        PricePlanMatrixLineMatcher lineMatcher = PricePlanMatrixLineMatcher.compile(ppValues);
+
+        assertThat(lineMatcher.match(Set.of(stringValue(billingCycle, "Monthly")))).isNull();
+        assertThat(lineMatcher.getDefaultLineId()).isNull();
+    }
+
+    /**
+     * Lines ordered by priority: <br/>
+     * 10 - Monthly, EU, [100-200] <br/>
+     * 20 - Monthly, US, [100-200] <br/>
+     * 30 - Annually, any zone, [1000-...) <br/>
+     * 40 - Annually, EU, any date <br/>
+     * 50 - default line
+     */
+    private List<PricePlanMatrixValueForRating> getPricePlanValues() {
+        List<PricePlanMatrixValueForRating> ppValues = new ArrayList<>();
+        addLine(ppValues, 10L, "Monthly", "EU", new Date(100L), new Date(200L));
+        addLine(ppValues, 20L, "Monthly", "US", new Date(100L), new Date(200L));
+        addLine(ppValues, 30L, "Annually", "", new Date(1000L), null);
+        addLine(ppValues, 40L, "Annually", "EU", null, null);
+        ppValues.add(new PricePlanMatrixValueForRating(null, null, 50L, true, null, null, null, null, null, null, null, null, null));
+        return ppValues;
+    }
+
+    private void addLine(List<PricePlanMatrixValueForRating> ppValues, Long lineId, String billingCycleValue, String zoneValue, Date from, Date to) {
+        ppValues.add(new PricePlanMatrixValueForRating(billingCycle.getId(), ColumnTypeEnum.String, lineId, false, null, null, billingCycleValue, null, null, null, null, null, null));
+        ppValues.add(new PricePlanMatrixValueForRating(zone.getId(), ColumnTypeEnum.String, lineId, false, null, null, zoneValue, null, null, null, null, null, null));
+        ppValues.add(new PricePlanMatrixValueForRating(startDate.getId(), ColumnTypeEnum.Range_Date, lineId, false, null, null, null, null, from, to, null, null, null));
+    }
+
+    private QuoteAttribute stringValue(Attribute attribute, String value) {
+        QuoteAttribute quoteAttribute = new QuoteAttribute();
+        quoteAttribute.setAttribute(attribute);
+        quoteAttribute.setStringValue(value);
+        return quoteAttribute;
+    }
+
+    private QuoteAttribute dateValue(Attribute attribute, Date value) {
+        QuoteAttribute quoteAttribute = new QuoteAttribute();
+        quoteAttribute.setAttribute(attribute);
+        quoteAttribute.setDateValue(value);
+        return quoteAttribute;
+    }
+
+    private Attribute createAttribute(Long id, String code, AttributeTypeEnum type) {
+        Attribute attribute = new Attribute();
+        attribute.setId(id);
+        attribute.setCode(code);
+        attribute.setAttributeType(type);
+        return attribute;
+    }
+}